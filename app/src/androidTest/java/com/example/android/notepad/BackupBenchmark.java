@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Measures backup and restore of a large database. Seeds about a gigabyte of uncompressed
+ * notes, backs it up with and without compression while a writer keeps saving notes, restores
+ * the compressed backup, and reports the throughput and the writer's longest save to logcat
+ * under the {@code BackupBenchmark} tag:
+ *
+ * <pre>
+ * adb shell am instrument -w -e class com.example.android.notepad.BackupBenchmark \
+ *     com.example.android.notepad.test/android.test.InstrumentationTestRunner
+ * </pre>
+ */
+public class BackupBenchmark extends ProviderTestCase2<NotePadProvider> {
+
+    private static final String TAG = "BackupBenchmark";
+
+    // The database is seeded in chunks of notes until it reaches this size.
+    private static final long TARGET_BYTES = 1024L * 1024 * 1024;
+    private static final int CHUNK_NOTES = 2000;
+    private static final int MEDIAN_CHARS = 8000;
+    private static final int MAX_CHARS = 64000;
+
+    private SQLiteDatabase mDb;
+
+    public BackupBenchmark() {
+        super(NotePadProvider.class, NotePad.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = getProvider().getOpenHelperForTest().getWritableDatabase();
+    }
+
+    /*
+     * Backs up and restores the seeded database. Only the outcome is checked: every note comes
+     * back and no save fails during a backup; the timings depend on the device.
+     */
+    public void testBackupThroughput() throws Exception {
+        // Plain bodies, so the database is as large as the text and compression has work to do.
+        getProvider().setCompressionThresholdForTest(Integer.MAX_VALUE);
+        int notes = 0;
+        while (databaseBytes() < TARGET_BYTES) {
+            getProvider().call(CorpusGenerator.METHOD_SEED, null,
+                    new CorpusGenerator.Builder()
+                            .setStart(notes)
+                            .setCount(CHUNK_NOTES)
+                            .setBodySize(MEDIAN_CHARS, MAX_CHARS)
+                            .build().toBundle());
+            notes += CHUNK_NOTES;
+        }
+        Log.i(TAG, String.format(java.util.Locale.US, "seeded %d notes, db %d MB",
+                notes, databaseBytes() / (1024 * 1024)));
+
+        File plain = new File(mDb.getPath() + "-benchmark.db");
+        File compressed = new File(mDb.getPath() + "-benchmark.db.gz");
+        try {
+            backUpWhileWriting(plain, false);
+            backUpWhileWriting(compressed, true);
+
+            Bundle report = getProvider().call(DatabaseBackup.METHOD_RESTORE,
+                    Uri.fromFile(compressed).toString(), null);
+            Log.i(TAG, "restore: " + DatabaseBackup.format(report));
+            mDb = getProvider().getOpenHelperForTest().getWritableDatabase();
+            assertEquals(notes, report.getLong(DatabaseBackup.KEY_NOTES));
+        } finally {
+            plain.delete();
+            compressed.delete();
+        }
+    }
+
+    // Backs up to the given file while another thread saves notes, and reports both.
+    private void backUpWhileWriting(File file, boolean compress) throws Exception {
+        Writer writer = new Writer();
+        writer.start();
+        Bundle extras = new Bundle();
+        extras.putBoolean(DatabaseBackup.EXTRA_COMPRESS, compress);
+        Bundle report;
+        try {
+            report = getProvider().call(DatabaseBackup.METHOD_BACKUP,
+                    Uri.fromFile(file).toString(), extras);
+        } finally {
+            writer.finish();
+        }
+        Log.i(TAG, (compress ? "gzip backup: " : "plain backup: ")
+                + DatabaseBackup.format(report));
+        Log.i(TAG, String.format(java.util.Locale.US,
+                "  %d saves during the backup, longest %.1f ms",
+                writer.saves, writer.maxNanos / 1e6));
+        assertNull(writer.failure);
+        assertEquals(file.length(), report.getLong(DatabaseBackup.KEY_WRITTEN_BYTES));
+    }
+
+    // The size of the used pages of the database.
+    private long databaseBytes() {
+        return (DatabaseUtils.longForQuery(mDb, "PRAGMA page_count", null)
+                - DatabaseUtils.longForQuery(mDb, "PRAGMA freelist_count", null))
+                * DatabaseUtils.longForQuery(mDb, "PRAGMA page_size", null);
+    }
+
+    // Saves the first note over and over, as the editor would, and times each save.
+    private class Writer extends Thread {
+        volatile boolean stopped;
+        int saves;
+        long maxNanos;
+        Throwable failure;
+
+        @Override
+        public void run() {
+            Uri uri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, 1);
+            try {
+                while (!stopped) {
+                    ContentValues values = new ContentValues();
+                    values.put(NotePad.Notes.COLUMN_NAME_NOTE, "save " + saves);
+                    long start = System.nanoTime();
+                    getMockContentResolver().update(uri, values, null, null);
+                    maxNanos = Math.max(maxNanos, System.nanoTime() - start);
+                    saves++;
+                    Thread.sleep(20);
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        void finish() throws InterruptedException {
+            stopped = true;
+            join();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests the undo history of the note editor.
+ */
+public class EditHistoryTest extends AndroidTestCase {
+
+    /*
+     * Tests the editor's undo history: a burst of typing is undone at once, a line break or a
+     * pause starts a new operation, a new edit drops what was undone, an edit too large to keep
+     * clears the history, and a saved history is read back only for the text it was saved with.
+     */
+    public void testEditHistory() throws IOException {
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        EditHistory history = new EditHistory();
+        text.setSpan(history, 0, 0, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+
+        // Typing "hello", then backspacing once, is one operation.
+        text.append("h").append("e").append("l").append("l").append("o");
+        text.delete(4, 5);
+        assertEquals("hell", text.toString());
+        assertEquals(0, history.undo(text));
+        assertEquals("", text.toString());
+        assertFalse(history.canUndo());
+        assertEquals(4, history.redo(text));
+        assertEquals("hell", text.toString());
+
+        // A line break ends the burst, and so does a pause.
+        text.append("\n").append("x");
+        history.setRecording(false);
+        text.append("y");
+        history.setRecording(true);
+        history.record(6, "", "y", SystemClock.uptimeMillis()
+            + EditHistory.COALESCE_MILLIS + 1);
+        assertEquals("hell\nxy", text.toString());
+        history.undo(text);
+        assertEquals("hell\nx", text.toString());
+        history.undo(text);
+        assertEquals("hell\n", text.toString());
+        history.undo(text);
+        assertEquals("hell", text.toString());
+
+        // An edit after an undo drops the operations that were undone.
+        assertTrue(history.canRedo());
+        text.insert(0, "!");
+        assertFalse(history.canRedo());
+        history.undo(text);
+        assertEquals("hell", text.toString());
+
+        // Backspacing over saved text is undone at once; the cursor goes after the restored text.
+        history.redo(text);
+        history.undo(text);
+        text.delete(3, 4);
+        text.delete(2, 3);
+        assertEquals("he", text.toString());
+        assertEquals(4, history.undo(text));
+        assertEquals("hell", text.toString());
+
+        // The history survives a round trip through a file, but only for the same text.
+        File file = new File(getContext().getCacheDir(), "edit_history_test");
+        try {
+            history.writeTo(file, text, "original");
+            EditHistory restored = new EditHistory();
+            assertFalse(restored.readFrom(file, "other"));
+            assertTrue(restored.readFrom(file, text));
+            assertEquals("original", restored.getOriginal());
+            assertEquals(history.canUndo(), restored.canUndo());
+            assertEquals(history.canRedo(), restored.canRedo());
+            assertEquals(2, restored.redo(text));
+            assertEquals("he", text.toString());
+        } finally {
+            file.delete();
+        }
+
+        // An edit larger than the history can hold clears it.
+        char[] large = new char[EditHistory.MAX_CHARS + 1];
+        Arrays.fill(large, 'a');
+        text.append(new String(large));
+        assertFalse(history.canUndo());
+        assertFalse(history.canRedo());
+
+        // An undo that no longer matches the text clears the history instead of corrupting it.
+        text.append("b");
+        history.setRecording(false);
+        text.replace(text.length() - 1, text.length(), "c");
+        history.setRecording(true);
+        assertEquals(-1, history.undo(text));
+        assertFalse(history.canUndo());
+    }
+}
@@ -16,23 +16,35 @@
 
 package com.example.android.notepad;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
 import android.test.ProviderTestCase2;
 import android.test.mock.MockContentResolver;
 
+import org.json.JSONObject;
+
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 /*
  */
@@ -165,8 +177,17 @@ public class NotePadProviderTest extends ProviderTestCase2<NotePadProvider> {
         String mimeType = mMockResolver.getType(NotePad.Notes.CONTENT_URI);
         assertEquals(NotePad.Notes.CONTENT_TYPE, mimeType);
 
-        // Tests the MIME type for the live folder URI.
-        mimeType = mMockResolver.getType(NotePad.Notes.LIVE_FOLDER_URI);
+        // The live folder URI was replaced by the widget URI and is no longer served.
+        try {
+            mMockResolver.getType(
+                Uri.parse("content://" + NotePad.AUTHORITY + "/live_folders/notes"));
+            fail("Expected an IllegalArgumentException for the live folder URI");
+        } catch (IllegalArgumentException e) {
+            // succeeded, so do nothing.
+        }
+
+        // Tests the MIME type for the widget URI.
+        mimeType = mMockResolver.getType(NotePad.Notes.WIDGET_URI);
         assertEquals(NotePad.Notes.CONTENT_TYPE, mimeType);
 
         // Creates a URI with a pattern for note ids. The id doesn't have to exist.
@@ -190,9 +211,9 @@ public class NotePadProviderTest extends ProviderTestCase2<NotePadProvider> {
         // not provide a stream MIME type for multiple notes.
         assertNull(mMockResolver.getStreamTypes(NotePad.Notes.CONTENT_URI, MIME_TYPES_ALL));
 
-        // Tests the live folders URI. This should return null, since the content provider does not
+        // Tests the widget URI. This should return null, since the content provider does not
         // provide a stream MIME type for multiple notes.
-        assertNull(mMockResolver.getStreamTypes(NotePad.Notes.LIVE_FOLDER_URI, MIME_TYPES_ALL));
+        assertNull(mMockResolver.getStreamTypes(NotePad.Notes.WIDGET_URI, MIME_TYPES_ALL));
 
         /*
          * Tests the note id URI for a single note, using _ID value "1" which is a valid ID. Uses a
@@ -790,6 +811,1452 @@ public class NotePadProviderTest extends ProviderTestCase2<NotePadProvider> {
 
     }
 
+    /*
+     * Tests bulk inserts, which run in a single transaction.
+     */
+    public void testBulkInsert() {
+        ContentValues[] values = new ContentValues[TEST_NOTES.length];
+        for (int index = 0; index < TEST_NOTES.length; index++) {
+            values[index] = TEST_NOTES[index].getContentValues();
+        }
+
+        // Asserts that every note was inserted.
+        assertEquals(TEST_NOTES.length, mMockResolver.bulkInsert(NotePad.Notes.CONTENT_URI, values));
+        Cursor cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI, null, null, null, null);
+        assertEquals(TEST_NOTES.length, cursor.getCount());
+        cursor.close();
+
+        // A batch containing a duplicate ID fails as a whole, so no new rows appear.
+        ContentValues duplicate = TEST_NOTES[0].getContentValues();
+        duplicate.put(NotePad.Notes._ID, 1);
+        try {
+            mMockResolver.bulkInsert(NotePad.Notes.CONTENT_URI,
+                    new ContentValues[] { TEST_NOTES[1].getContentValues(), duplicate });
+            fail("Expected bulk insert failure for existing record but insert succeeded.");
+        } catch (Exception e) {
+            // succeeded, so do nothing.
+        }
+        cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI, null, null, null, null);
+        assertEquals(TEST_NOTES.length, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+     * Tests the synthetic corpus: the generator must be deterministic, and seeding through the
+     * provider must insert exactly the generated notes, also when done in pieces.
+     */
+    public void testSeedCorpus() {
+        CorpusGenerator.Config config = new CorpusGenerator.Builder()
+            .setSeed(42)
+            .setCount(120)
+            .setCategories(5)
+            .build();
+
+        // Two generators with the same configuration produce the same notes.
+        CorpusGenerator first = new CorpusGenerator(config);
+        CorpusGenerator second = new CorpusGenerator(CorpusGenerator.Config.fromBundle(
+            config.toBundle()));
+        for (int i = 0; i < config.count; i++) {
+            assertEquals(first.valuesFor(i).toString(), second.valuesFor(i).toString());
+        }
+
+        // Seeds the first 100 notes, then the remaining 20.
+        Bundle result = getProvider().call(CorpusGenerator.METHOD_SEED, null,
+            new CorpusGenerator.Builder().setSeed(42).setCount(100).setCategories(5)
+                .build().toBundle());
+        assertEquals(100, result.getInt(CorpusGenerator.KEY_INSERTED));
+        getProvider().call(CorpusGenerator.METHOD_SEED, null,
+            new CorpusGenerator.Builder().setSeed(42).setStart(100).setCount(20).setCategories(5)
+                .build().toBundle());
+
+        Cursor cursor = mMockResolver.query(
+            NotePad.Notes.CONTENT_URI,
+            new String[] {
+                NotePad.Notes.COLUMN_NAME_TITLE,
+                NotePad.Notes.COLUMN_NAME_NOTE,
+                NotePad.Notes.COLUMN_NAME_CATEGORY },
+            null,
+            null,
+            NotePad.Notes._ID);
+        assertEquals(config.count, cursor.getCount());
+
+        // The stored notes are the generated ones, in order, and use at most 5 categories.
+        java.util.Set<String> categories = new java.util.HashSet<String>();
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ContentValues expected = first.valuesFor(i);
+            assertEquals(expected.getAsString(NotePad.Notes.COLUMN_NAME_TITLE), cursor.getString(0));
+            assertEquals(expected.getAsString(NotePad.Notes.COLUMN_NAME_NOTE), cursor.getString(1));
+            categories.add(cursor.getString(2));
+        }
+        cursor.close();
+        assertTrue(categories.size() <= 5);
+    }
+
+    /*
+     * Tests compressed storage of large bodies: large notes are stored as compressed BLOBs, read
+     * back unchanged through the note column, and never decoded for snippet-only queries.
+     */
+    public void testCompressedStorage() {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < NoteCodec.DEFAULT_THRESHOLD_CHARS * 3) {
+            sb.append("这是一段很长的会议记录, with some plain text in between. ");
+        }
+        String largeNote = sb.toString();
+
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "Large");
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, largeNote);
+        Uri largeUri = mMockResolver.insert(NotePad.Notes.CONTENT_URI, values);
+        String largeId = largeUri.getLastPathSegment();
+
+        // The stored row has no plain text body, a compressed BLOB and a snippet.
+        Cursor raw = mDb.query(NotePad.Notes.TABLE_NAME,
+            new String[] {
+                NotePad.Notes.COLUMN_NAME_NOTE,
+                NoteCodec.COLUMN_DATA,
+                NoteCodec.COLUMN_ENCODING,
+                NotePad.Notes.COLUMN_NAME_SNIPPET },
+            NotePad.Notes._ID + " = ?", new String[] { largeId }, null, null, null);
+        assertTrue(raw.moveToFirst());
+        assertTrue(raw.isNull(0));
+        assertEquals(NoteCodec.ENCODING_DEFLATE, raw.getInt(2));
+        assertTrue(raw.getBlob(1).length < largeNote.length());
+        assertEquals(largeNote.substring(0, NoteCodec.SNIPPET_LENGTH), raw.getString(3));
+        raw.close();
+
+        // Reading the note returns the original text, and the storage columns stay hidden.
+        Cursor cursor = mMockResolver.query(largeUri,
+            new String[] { NotePad.Notes.COLUMN_NAME_TITLE, NotePad.Notes.COLUMN_NAME_NOTE },
+            null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(2, cursor.getColumnCount());
+        assertEquals(-1, cursor.getColumnIndex(NoteCodec.COLUMN_DATA));
+        assertEquals(largeNote, cursor.getString(1));
+        assertEquals(Cursor.FIELD_TYPE_STRING, cursor.getType(1));
+        cursor.close();
+
+        // A query without the note column does not go through the decoding wrapper.
+        cursor = mMockResolver.query(largeUri,
+            new String[] { NotePad.Notes.COLUMN_NAME_TITLE, NotePad.Notes.COLUMN_NAME_SNIPPET },
+            null, null, null);
+        assertFalse(cursor instanceof DecompressingCursor);
+        cursor.close();
+
+        // Updating to a short body stores it as plain text again.
+        values.clear();
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, "short");
+        assertEquals(1, mMockResolver.update(largeUri, values, null, null));
+        raw = mDb.query(NotePad.Notes.TABLE_NAME,
+            new String[] {
+                NotePad.Notes.COLUMN_NAME_NOTE,
+                NoteCodec.COLUMN_DATA,
+                NoteCodec.COLUMN_ENCODING },
+            NotePad.Notes._ID + " = ?", new String[] { largeId }, null, null, null);
+        assertTrue(raw.moveToFirst());
+        assertEquals("short", raw.getString(0));
+        assertTrue(raw.isNull(1));
+        assertEquals(NoteCodec.ENCODING_PLAIN, raw.getInt(2));
+        raw.close();
+
+        // Notes written by older versions, with only the note column, still read back.
+        insertData();
+        cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI,
+            new String[] { NotePad.Notes.COLUMN_NAME_NOTE },
+            NotePad.Notes.COLUMN_NAME_TITLE + " = ?", new String[] { TEST_NOTES[0].title }, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(TEST_NOTES[0].note, cursor.getString(0));
+        cursor.close();
+    }
+
+    /*
+     * Tests the revision history: every saved text gets a revision that can be rebuilt, the
+     * history stays a small fraction of full copies, and it is bounded and deleted with the note.
+     */
+    public void testRevisions() {
+        RevisionStore store = getProvider().getRevisionStoreForTest();
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 5000; i++) {
+            sb.append("第").append(i).append("段会议记录, the plan is to ship on time. ");
+        }
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "History");
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, sb.toString());
+        Uri noteUri = mMockResolver.insert(NotePad.Notes.CONTENT_URI, values);
+        long noteId = ContentUris.parseId(noteUri);
+        store.awaitIdle();
+
+        // Makes small edits, including characters outside the BMP, waiting after each save so
+        // none of them are coalesced.
+        java.util.List<String> texts = new java.util.ArrayList<String>();
+        texts.add(sb.toString());
+        for (int i = 1; i < 40; i++) {
+            sb.insert((i * 997) % sb.length(), " edit " + i + " \uD83D\uDE00");
+            values.clear();
+            values.put(NotePad.Notes.COLUMN_NAME_NOTE, sb.toString());
+            mMockResolver.update(noteUri, values, null, null);
+            store.awaitIdle();
+            texts.add(sb.toString());
+        }
+
+        // Saving the same text again does not add a revision.
+        mMockResolver.update(noteUri, values, null, null);
+        store.awaitIdle();
+
+        Uri revisionsUri = NotePad.NoteRevisions.buildRevisionsUri(noteId);
+        Cursor cursor = mMockResolver.query(revisionsUri,
+            new String[] {
+                NotePad.NoteRevisions.COLUMN_NAME_REVISION,
+                NotePad.NoteRevisions.COLUMN_NAME_LENGTH,
+                NotePad.NoteRevisions.COLUMN_NAME_SIZE },
+            null, null, null);
+        assertEquals(texts.size(), cursor.getCount());
+        long fullCopies = 0;
+        long stored = 0;
+        for (int i = texts.size() - 1; cursor.moveToNext(); i--) {
+            assertEquals(i + 1, cursor.getInt(0));
+            assertEquals(texts.get(i).length(), cursor.getInt(1));
+            fullCopies += texts.get(i).length();
+            stored += cursor.getInt(2);
+        }
+        cursor.close();
+        assertTrue("history " + stored + " bytes for " + fullCopies + " characters",
+            stored * 10 < fullCopies);
+
+        // Every revision rebuilds to the text that was saved.
+        for (int i = 0; i < texts.size(); i++) {
+            cursor = mMockResolver.query(
+                NotePad.NoteRevisions.buildRevisionUri(noteId, i + 1),
+                new String[] { NotePad.NoteRevisions.COLUMN_NAME_NOTE }, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals(texts.get(i), cursor.getString(0));
+            cursor.close();
+        }
+
+        // Past the limit the history is compacted; the newest revisions survive intact.
+        for (int i = texts.size(); i <= RevisionStore.MAX_REVISIONS + RevisionStore.COMPACT_SLACK;
+                i++) {
+            sb.append(" more ").append(i);
+            values.clear();
+            values.put(NotePad.Notes.COLUMN_NAME_NOTE, sb.toString());
+            mMockResolver.update(noteUri, values, null, null);
+            store.awaitIdle();
+            texts.add(sb.toString());
+        }
+        cursor = mMockResolver.query(revisionsUri,
+            new String[] { NotePad.NoteRevisions.COLUMN_NAME_REVISION }, null, null, null);
+        assertTrue(cursor.getCount() >= RevisionStore.KEEP_RECENT);
+        assertTrue(cursor.getCount() <= RevisionStore.MAX_REVISIONS);
+        while (cursor.moveToNext()) {
+            int revision = cursor.getInt(0);
+            Cursor text = mMockResolver.query(
+                NotePad.NoteRevisions.buildRevisionUri(noteId, revision),
+                new String[] { NotePad.NoteRevisions.COLUMN_NAME_NOTE }, null, null, null);
+            assertTrue(text.moveToFirst());
+            assertEquals(texts.get(revision - 1), text.getString(0));
+            text.close();
+        }
+        cursor.close();
+
+        // Revisions are read-only, and go away with their note.
+        try {
+            mMockResolver.delete(revisionsUri, null, null);
+            fail("Expected deleting revisions to fail");
+        } catch (IllegalArgumentException e) {
+            // succeeded, so do nothing.
+        }
+        mMockResolver.delete(noteUri, null, null);
+        cursor = mMockResolver.query(revisionsUri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+     * Tests database maintenance: the pages freed by deleting notes are given back, and the
+     * report records the integrity check and the steps that ran.
+     */
+    public void testMaintenance() {
+        getProvider().call(CorpusGenerator.METHOD_SEED, null,
+            new CorpusGenerator.Builder().setCount(200).setBodySize(2000, 8000).build().toBundle());
+        mMockResolver.delete(NotePad.Notes.CONTENT_URI, null, null);
+
+        Bundle report = getProvider().call(DatabaseMaintenance.METHOD_MAINTENANCE, null, null);
+        assertEquals("ok", report.getString(DatabaseMaintenance.KEY_INTEGRITY));
+        assertEquals(2, report.getInt(DatabaseMaintenance.KEY_AUTO_VACUUM));
+        assertTrue(report.getLong(DatabaseMaintenance.KEY_FREE_PAGES_BEFORE) > 0);
+        assertEquals(0, report.getLong(DatabaseMaintenance.KEY_FREE_PAGES_AFTER));
+        assertTrue(report.getLong(DatabaseMaintenance.KEY_RECLAIMED_BYTES) > 0);
+        assertFalse(report.getBoolean(DatabaseMaintenance.KEY_STOPPED));
+
+        Bundle steps = report.getBundle(DatabaseMaintenance.KEY_STEPS);
+        assertTrue(steps.containsKey("quick_check"));
+        assertTrue(steps.containsKey("incremental_vacuum"));
+    }
+
+    /*
+     * Tests the trigram search index: substring and fuzzy searches find the right notes,
+     * including compressed ones, and the index follows updates and deletes.
+     */
+    public void testTrigramSearch() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 10000; i++) {
+            sb.append("Line ").append(i).append(" of a long report. ");
+        }
+        String largeNote = sb.append("A needle in a haystack.").toString();
+
+        long shoppingId = insertNote("Shopping list", "Buy milk and eggs",
+            null, 0, System.currentTimeMillis());
+        long meetingId = insertNote("Meeting", "Discuss the quarterly budget",
+            null, 0, System.currentTimeMillis());
+        long largeId = insertNote("Report", largeNote, null, 0, System.currentTimeMillis());
+        long trapId = insertNote("Trap", "abcd bcdy", null, 0, System.currentTimeMillis());
+
+        // Case is ignored, and the compressed note is found by text past its snippet.
+        assertSearch("BUDGET", NotePad.Notes.SEARCH_MODE_SUBSTRING, meetingId);
+        assertSearch("milk and", NotePad.Notes.SEARCH_MODE_SUBSTRING, shoppingId);
+        assertSearch("haystack", NotePad.Notes.SEARCH_MODE_SUBSTRING, largeId);
+        assertSearch("shopping", NotePad.Notes.SEARCH_MODE_SUBSTRING, shoppingId);
+
+        // Every trigram of "abcdy" occurs in the trap note, but the query itself does not.
+        assertSearch("abcdy", NotePad.Notes.SEARCH_MODE_SUBSTRING);
+
+        // A query too short for the index still works, through LIKE.
+        assertSearch("mi", NotePad.Notes.SEARCH_MODE_SUBSTRING, shoppingId);
+
+        // Fuzzy search tolerates typos and puts the closest match first.
+        assertSearch("quartrly", NotePad.Notes.SEARCH_MODE_FUZZY, meetingId);
+        assertSearch("haystak", NotePad.Notes.SEARCH_MODE_FUZZY, largeId);
+        Cursor cursor = mMockResolver.query(
+            NotePad.Notes.buildSearchUri("abcd", NotePad.Notes.SEARCH_MODE_FUZZY),
+            new String[] { NotePad.Notes._ID }, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(trapId, cursor.getLong(0));
+        cursor.close();
+
+        // Updating the title or the text updates the index.
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "Groceries");
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, shoppingId),
+            values, null, null);
+        assertSearch("grocer", NotePad.Notes.SEARCH_MODE_SUBSTRING, shoppingId);
+        assertSearch("shopping", NotePad.Notes.SEARCH_MODE_SUBSTRING);
+        assertSearch("milk", NotePad.Notes.SEARCH_MODE_SUBSTRING, shoppingId);
+
+        values.clear();
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, "Nothing about money");
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, meetingId),
+            values, null, null);
+        assertSearch("budget", NotePad.Notes.SEARCH_MODE_SUBSTRING);
+
+        // Deleting a note removes its rows from the index.
+        mMockResolver.delete(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, shoppingId), null, null);
+        assertSearch("grocer", NotePad.Notes.SEARCH_MODE_SUBSTRING);
+        cursor = mDb.query(TrigramIndex.TABLE_NAME, null,
+            TrigramIndex.COLUMN_NOTE_ID + " = " + shoppingId, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+
+        // Rebuilding gives the same index as the incremental updates.
+        cursor = mDb.rawQuery("SELECT COUNT(*) FROM " + TrigramIndex.TABLE_NAME, null);
+        assertTrue(cursor.moveToFirst());
+        long rows = cursor.getLong(0);
+        cursor.close();
+        mDb.beginTransaction();
+        try {
+            TrigramIndex.rebuild(mDb);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        cursor = mDb.rawQuery("SELECT COUNT(*) FROM " + TrigramIndex.TABLE_NAME, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(rows, cursor.getLong(0));
+        cursor.close();
+    }
+
+    /*
+     * Tests the tokenizer and the full-text index: Chinese text is found by any run of its
+     * characters, Latin text by word prefixes, full-width text by its ASCII form, and the index
+     * follows updates and deletes.
+     */
+    public void testFullTextSearch() {
+        assertEquals("会议 议记 记录 录 weekly 2026", NoteTokenizer.toIndexText("会议记录，Weekly ２０２６"));
+        assertEquals("\"会议 议记\" plan*", NoteTokenizer.toMatchQuery("会议记 PLAN"));
+        assertEquals("会*", NoteTokenizer.toMatchQuery("会"));
+        assertNull(NoteTokenizer.toMatchQuery(" ，。! "));
+
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < NoteCodec.DEFAULT_THRESHOLD_CHARS * 3) {
+            sb.append("每周的项目例会。");
+        }
+        long meetingId = insertNote("周一会议记录", "讨论 weekly report 和项目计划",
+            null, 0, System.currentTimeMillis());
+        long planId = insertNote("Plan", "明天的计划：写 API 文档", null, 0, System.currentTimeMillis());
+        long largeId = insertNote("Long", sb.append("结尾有一个秘密").toString(),
+            null, 0, System.currentTimeMillis());
+        long fullWidthId = insertNote("ＡＰＩ　设计", "版本２", null, 0, System.currentTimeMillis());
+
+        // Any run of two or more characters, and any single character.
+        assertSearch("会议", NotePad.Notes.SEARCH_MODE_TEXT, meetingId);
+        assertSearch("议记", NotePad.Notes.SEARCH_MODE_TEXT, meetingId);
+        assertSearch("项目计划", NotePad.Notes.SEARCH_MODE_TEXT, meetingId);
+        assertSearch("计划", NotePad.Notes.SEARCH_MODE_TEXT, meetingId, planId);
+        assertSearch("录", NotePad.Notes.SEARCH_MODE_TEXT, meetingId);
+        assertSearch("会议计划", NotePad.Notes.SEARCH_MODE_TEXT);
+
+        // Every part of the query must match, in any order and column; Latin words match by
+        // prefix and case is ignored.
+        assertSearch("REPORT 会议", NotePad.Notes.SEARCH_MODE_TEXT, meetingId);
+        assertSearch("rep", NotePad.Notes.SEARCH_MODE_TEXT, meetingId);
+        assertSearch("eport", NotePad.Notes.SEARCH_MODE_TEXT);
+        assertSearch("api", NotePad.Notes.SEARCH_MODE_TEXT, planId, fullWidthId);
+
+        // Full-width letters and digits match their ASCII forms, both ways.
+        assertSearch("ＡＰＩ 文档", NotePad.Notes.SEARCH_MODE_TEXT, planId);
+        assertSearch("2", NotePad.Notes.SEARCH_MODE_TEXT, fullWidthId);
+
+        // The compressed note is found by text past its snippet.
+        assertSearch("秘密", NotePad.Notes.SEARCH_MODE_TEXT, largeId);
+
+        // Updates and deletes keep the index current.
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "周二例会");
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, meetingId),
+            values, null, null);
+        assertSearch("会议", NotePad.Notes.SEARCH_MODE_TEXT);
+        assertSearch("例会", NotePad.Notes.SEARCH_MODE_TEXT, meetingId, largeId);
+        mMockResolver.delete(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, largeId), null, null);
+        assertSearch("例会", NotePad.Notes.SEARCH_MODE_TEXT, meetingId);
+        Cursor cursor = mDb.rawQuery("SELECT COUNT(*) FROM " + FullTextIndex.TABLE_NAME, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(3, cursor.getLong(0));
+        cursor.close();
+    }
+
+    /*
+     * Tests the pinyin index: titles and categories are found by their pinyin, in full or by
+     * initials, from any syllable, and the index follows updates and deletes.
+     */
+    public void testPinyinSearch() {
+        java.util.Set<String> keys = PinyinIndex.keys("旧笔记本 v2");
+        assertTrue(keys.contains("jiubijibenv2"));
+        assertTrue(keys.contains("jbjbv2"));
+        assertTrue(keys.contains("jibenv2"));
+        assertTrue(keys.contains("v2"));
+        assertTrue(PinyinIndex.keys("Plan B").isEmpty());
+
+        long notebookId = insertNote("笔记本", "", null, 0, System.currentTimeMillis());
+        long oldId = insertNote("旧笔记本", "", null, 0, System.currentTimeMillis());
+        long planId = insertNote("Plan", "", null, 0, System.currentTimeMillis());
+
+        assertSearch("bjb", NotePad.Notes.SEARCH_MODE_TEXT, notebookId, oldId);
+        assertSearch("biji", NotePad.Notes.SEARCH_MODE_TEXT, notebookId, oldId);
+        assertSearch("Bi Ji", NotePad.Notes.SEARCH_MODE_TEXT, notebookId, oldId);
+        assertSearch("jiben", NotePad.Notes.SEARCH_MODE_TEXT, notebookId, oldId);
+        assertSearch("jiubiji", NotePad.Notes.SEARCH_MODE_TEXT, oldId);
+        assertSearch("jbjb", NotePad.Notes.SEARCH_MODE_TEXT, oldId);
+        assertSearch("bijibenx", NotePad.Notes.SEARCH_MODE_TEXT);
+
+        // The pinyin results are added to the full-text ones.
+        assertSearch("pla", NotePad.Notes.SEARCH_MODE_TEXT, planId);
+
+        // Categories are indexed too, and updates keep the index current.
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_CATEGORY, "工作");
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, planId),
+            values, null, null);
+        assertSearch("gongzuo", NotePad.Notes.SEARCH_MODE_TEXT, planId);
+        assertSearch("gz", NotePad.Notes.SEARCH_MODE_TEXT, planId);
+
+        values.clear();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "Old");
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, oldId),
+            values, null, null);
+        assertSearch("jiubiji", NotePad.Notes.SEARCH_MODE_TEXT);
+        assertSearch("bjb", NotePad.Notes.SEARCH_MODE_TEXT, notebookId);
+
+        // Deleting a note removes its rows.
+        mMockResolver.delete(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, notebookId), null, null);
+        Cursor cursor = mDb.query(PinyinIndex.TABLE_NAME, null,
+            PinyinIndex.COLUMN_NOTE_ID + " = " + notebookId, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+     * Tests structured search queries: filters and free text combine, negation and quoting
+     * work, invalid filters are rejected, and the filters are answered by indexes.
+     */
+    public void testStructuredQuery() {
+        NoteQuery parsed = NoteQuery.parse("Category:\"工作\" -color:red 12:30 , title:plan");
+        assertEquals(4, parsed.getTerms().size());
+        assertTrue(parsed.getTerms().get(0) instanceof NoteQuery.CategoryTerm);
+        assertEquals("工作", ((NoteQuery.CategoryTerm) parsed.getTerms().get(0)).category);
+        assertTrue(parsed.getTerms().get(1).negated);
+        assertTrue(parsed.getTerms().get(2) instanceof NoteQuery.TextTerm);
+        assertTrue(parsed.getTerms().get(3) instanceof NoteQuery.TitleTerm);
+        assertFalse(parsed.isPlainText());
+        assertTrue(NoteQuery.parse("budget 会议").isPlainText());
+        assertTrue(NoteQuery.parse("  ").isEmpty());
+        // The list requeries a search when a column it depends on changes
+        Set<String> columns = parsed.getColumns();
+        assertTrue(columns.contains(NotePad.Notes.COLUMN_NAME_CATEGORY));
+        assertTrue(columns.contains(NotePad.Notes.COLUMN_NAME_COLOR));
+        assertTrue(columns.contains(NotePad.Notes.COLUMN_NAME_NOTE));
+        assertTrue(columns.contains(NotePad.Notes.COLUMN_NAME_TITLE));
+        assertFalse(columns.contains(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE));
+        assertEquals(Collections.singleton(NotePad.Notes.COLUMN_NAME_TITLE),
+                NoteQuery.parse("title:plan").getColumns());
+
+        long workId = insertNote("工作计划", "budget review", "工作", 0xFFFFAAA5, day(2025, 12, 15));
+        long planId = insertNote("Plan", "budget", "工作", 0xFFA8E6CF, day(2026, 2, 1));
+        long shoppingId = insertNote("购物清单", "milk", "生活", 0, day(2026, 3, 1));
+        long meetingId = insertNote("会议记录本", "", "工作", 0xFFFFAAA5, day(2026, 1, 10));
+
+        String mode = NotePad.Notes.SEARCH_MODE_QUERY;
+        assertSearch("category:工作", mode, workId, planId, meetingId);
+        assertSearch("category:工作 color:red", mode, workId, meetingId);
+        assertSearch("category:工作 color:红色 before:2026-01-01", mode, workId);
+        assertSearch("after:2026-01-01 -category:工作", mode, shoppingId);
+        assertSearch("color:white", mode, shoppingId);
+        assertSearch("color:#A8E6CF", mode, planId);
+        assertSearch("budget", mode, workId, planId);
+        assertSearch("budget -title:plan", mode, workId);
+        assertSearch("title:计划", mode, workId);
+        assertSearch("title:会议记录", mode, meetingId);
+        assertSearch("title:议记会", mode);
+        assertSearch("gongzuo color:green", mode, planId);
+        assertSearch("12:30", mode);
+
+        try {
+            mMockResolver.query(NotePad.Notes.buildSearchUri("color:magenta", mode),
+                null, null, null, null);
+            fail("color:magenta was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            NoteQuery.parse("before:2026-02-30");
+            fail("before:2026-02-30 was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        // The filters are looked up in their indexes instead of scanning the notes.
+        NoteQuery query = NoteQuery.parse("category:工作 before:2026-01-01");
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN SELECT " + NotePad.Notes._ID + " FROM "
+            + NotePad.Notes.TABLE_NAME + " WHERE " + query.getSelection(), query.getSelectionArgs());
+        StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(3)).append('\n');
+        }
+        cursor.close();
+        assertTrue(plan.toString(), plan.indexOf("INDEX notes_category") >= 0);
+    }
+
+    // Inserts a note with a category, color and modification date and returns its ID.
+    private long insertNote(String title, String note, String category, int color, long modified) {
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, title);
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, note);
+        values.put(NotePad.Notes.COLUMN_NAME_CATEGORY, category);
+        values.put(NotePad.Notes.COLUMN_NAME_COLOR, color);
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, modified);
+        return ContentUris.parseId(mMockResolver.insert(NotePad.Notes.CONTENT_URI, values));
+    }
+
+    // Returns the start of a day in local time.
+    private static long day(int year, int month, int dayOfMonth) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, dayOfMonth);
+        return calendar.getTimeInMillis();
+    }
+
+    /*
+     * Tests the sort orders: titles sort by their pinyin and without regard to case or accents,
+     * the sort key follows title updates, and every sort order is read from an index.
+     */
+    public void testSortOrders() {
+        assertEquals("bi ji ben \u0001笔记本", TitleCollation.titleKey("笔记本"));
+        assertEquals("cafe bi ji 2\u0001Café, 笔记２", TitleCollation.titleKey("Café, 笔记２"));
+        assertEquals("api bi ji \u0001API笔记", TitleCollation.titleKey("API笔记"));
+
+        long zooId = insertNote("Zoo", "", null, 0, System.currentTimeMillis());
+        long bikeId = insertNote("bike", "", null, 0, System.currentTimeMillis());
+        long notebookId = insertNote("笔记本", "", null, 0, System.currentTimeMillis());
+        long appleId = insertNote("Apple", "", null, 0, System.currentTimeMillis());
+        long editId = insertNote("编辑", "", null, 0, System.currentTimeMillis());
+        long auntId = insertNote("阿姨", "", null, 0, System.currentTimeMillis());
+        assertOrder(NotePad.Notes.SORT_ORDER_TITLE,
+            auntId, appleId, notebookId, editId, bikeId, zooId);
+
+        // Renaming a note moves it.
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "Ápple pie");
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, zooId),
+            values, null, null);
+        assertOrder(NotePad.Notes.SORT_ORDER_TITLE,
+            auntId, appleId, zooId, notebookId, editId, bikeId);
+
+        // No sort order needs a temporary b-tree to sort the notes.
+        String[] orders = {
+            NotePad.Notes.DEFAULT_SORT_ORDER,
+            NotePad.Notes.SORT_ORDER_CREATED,
+            NotePad.Notes.SORT_ORDER_TITLE,
+            NotePad.Notes.SORT_ORDER_COLOR
+        };
+        for (String order : orders) {
+            Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN SELECT " + NotePad.Notes._ID
+                + " FROM " + NotePad.Notes.TABLE_NAME + " ORDER BY " + order, null);
+            StringBuilder plan = new StringBuilder();
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(3)).append('\n');
+            }
+            cursor.close();
+            assertTrue(order + ": " + plan, plan.indexOf("TEMP B-TREE") < 0);
+        }
+    }
+
+    /*
+     * Tests pinned notes: new notes are not pinned, pinning does not change the modification
+     * date, and the pinned section is read from its own index.
+     */
+    public void testPinnedNotes() {
+        long firstId = insertNote("first", "", null, 0, 1000L);
+        long secondId = insertNote("second", "", null, 0, 2000L);
+        long thirdId = insertNote("third", "", null, 0, 3000L);
+
+        Uri firstUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, firstId);
+        Cursor cursor = mMockResolver.query(firstUri,
+            new String[] { NotePad.Notes.COLUMN_NAME_PINNED }, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(0, cursor.getInt(0));
+        cursor.close();
+
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_PINNED, 1);
+        assertEquals(1, mMockResolver.update(firstUri, values, null, null));
+        assertEquals(1, mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, thirdId),
+            values, null, null));
+
+        assertPinned(1, thirdId, firstId);
+        assertPinned(0, secondId);
+
+        cursor = mMockResolver.query(firstUri,
+            new String[] { NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE }, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1000L, cursor.getLong(0));
+        cursor.close();
+
+        // Unpinning moves the note back to the main list.
+        values.put(NotePad.Notes.COLUMN_NAME_PINNED, 0);
+        mMockResolver.update(firstUri, values, null, null);
+        assertPinned(1, thirdId);
+        assertPinned(0, secondId, firstId);
+
+        cursor = mDb.rawQuery("EXPLAIN QUERY PLAN SELECT " + NotePad.Notes._ID
+            + " FROM " + NotePad.Notes.TABLE_NAME + " WHERE " + NotePad.Notes.COLUMN_NAME_PINNED
+            + " = 1 ORDER BY " + NotePad.Notes.DEFAULT_SORT_ORDER, null);
+        StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(3)).append('\n');
+        }
+        cursor.close();
+        assertTrue(plan.toString(), plan.indexOf("notes_pinned") >= 0);
+        assertTrue(plan.toString(), plan.indexOf("TEMP B-TREE") < 0);
+    }
+
+    /*
+     * Tests the widget snapshot: it holds the pinned notes and then the newest ones, follows
+     * pins and deletes, and is left alone by writes to notes that are not in it.
+     */
+    public void testWidgetSnapshot() {
+        int max = WidgetSnapshot.MAX_NOTES;
+        long[] ids = new long[max + 5];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = insertNote("note " + i, "", null, 0, 1000L * (i + 1));
+        }
+        long[] expected = new long[max];
+        for (int i = 0; i < max; i++) {
+            expected[i] = ids[ids.length - 1 - i];
+        }
+        assertWidget(expected);
+
+        // Pinning the oldest note puts it first.
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_PINNED, 1);
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, ids[0]),
+            values, null, null);
+        expected[0] = ids[0];
+        for (int i = 1; i < max; i++) {
+            expected[i] = ids[ids.length - i];
+        }
+        assertWidget(expected);
+
+        // Editing the text of a note that is not shown does not touch the snapshot.
+        assertFalse(WidgetSnapshot.noteChanged(mDb, ids[1]));
+        values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, "edited");
+        mMockResolver.update(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, ids[1]),
+            values, null, null);
+        assertWidget(expected);
+        assertFalse(WidgetSnapshot.refresh(mDb));
+
+        // Deleting a shown note lets the next newest one in.
+        mMockResolver.delete(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, ids[ids.length - 1]),
+            null, null);
+        for (int i = 1; i < max; i++) {
+            expected[i] = ids[ids.length - 1 - i];
+        }
+        assertWidget(expected);
+    }
+
+    /*
+     * Tests the incremental export: a run appends only the notes changed and deleted since the
+     * previous one, drops the tail of an interrupted run, and a compaction rewrites the log
+     * with the current notes only.
+     */
+    public void testIncrementalExport() throws Exception {
+        long oldId = insertNote("旧笔记", "old", "工作", 0, 1000L);
+        long goneId = insertNote("将删除", "gone", "生活", 0, 2000L);
+
+        Bundle extras = new Bundle();
+        extras.putBoolean(IncrementalExport.EXTRA_FULL, true);
+        Bundle report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, extras);
+        File log = new File(report.getString(IncrementalExport.KEY_FILE));
+        assertTrue(report.getBoolean(IncrementalExport.KEY_FULL));
+        assertEquals(2, report.getInt(IncrementalExport.KEY_PUTS));
+        assertEquals(log.length(), report.getLong(IncrementalExport.KEY_LOG_BYTES));
+        assertEquals(2, replayExport(log).size());
+
+        // Nothing changed, so nothing is written.
+        report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, null);
+        assertFalse(report.getBoolean(IncrementalExport.KEY_FULL));
+        assertEquals(0, report.getLong(IncrementalExport.KEY_WRITTEN_BYTES));
+
+        // One save and one delete give one put and one delete.
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, "new body\nsecond line");
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, System.currentTimeMillis());
+        mMockResolver.update(ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, oldId),
+            values, null, null);
+        mMockResolver.delete(ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, goneId),
+            null, null);
+        long before = log.length();
+        report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, null);
+        assertFalse(report.getBoolean(IncrementalExport.KEY_FULL));
+        assertEquals(1, report.getInt(IncrementalExport.KEY_PUTS));
+        assertEquals(1, report.getInt(IncrementalExport.KEY_DELETES));
+        assertEquals(before + report.getLong(IncrementalExport.KEY_WRITTEN_BYTES), log.length());
+        Map<Long, JSONObject> notes = replayExport(log);
+        assertEquals(1, notes.size());
+        assertEquals("new body\nsecond line", notes.get(oldId).getString("note"));
+        assertEquals("工作", notes.get(oldId).getString("category"));
+
+        // The tail of an interrupted run is dropped before the next run appends.
+        FileOutputStream out = new FileOutputStream(log, true);
+        out.write("{\"op\":\"delete\",\"_id\":".getBytes("UTF-8"));
+        out.close();
+        mMockResolver.delete(ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, oldId),
+            null, null);
+        report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, null);
+        assertEquals(1, report.getInt(IncrementalExport.KEY_DELETES));
+        assertEquals(log.length(), report.getLong(IncrementalExport.KEY_LOG_BYTES));
+        assertTrue(replayExport(log).isEmpty());
+
+        // A compaction leaves only the current notes, and the next run has nothing to add.
+        long newId = insertNote("新笔记", "new", null, 0, System.currentTimeMillis());
+        report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, extras);
+        assertEquals(1, report.getInt(IncrementalExport.KEY_PUTS));
+        assertEquals(0, report.getInt(IncrementalExport.KEY_DELETES));
+        assertEquals(java.util.Collections.singleton(newId), replayExport(log).keySet());
+        report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, null);
+        assertEquals(0, report.getLong(IncrementalExport.KEY_WRITTEN_BYTES));
+
+        // A change that keeps the modification date is exported too.
+        values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_CATEGORY, "生活");
+        mMockResolver.update(ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, newId),
+            values, null, null);
+        report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, null);
+        assertFalse(report.getBoolean(IncrementalExport.KEY_FULL));
+        assertEquals(1, report.getInt(IncrementalExport.KEY_PUTS));
+        assertEquals("生活", replayExport(log).get(newId).getString("category"));
+
+        // Once the change log no longer holds the changes since the last run, the run compacts.
+        mMockResolver.delete(ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, newId),
+            null, null);
+        ChangeLog.truncate(mDb, System.currentTimeMillis() + ChangeLog.MAX_AGE_MILLIS + 1);
+        report = getProvider().call(IncrementalExport.METHOD_EXPORT, null, null);
+        assertTrue(report.getBoolean(IncrementalExport.KEY_FULL));
+        assertTrue(replayExport(log).isEmpty());
+    }
+
+    // Applies the records of an export log up to its last commit and returns the notes.
+    private Map<Long, JSONObject> replayExport(File log) throws Exception {
+        Map<Long, JSONObject> notes = new HashMap<Long, JSONObject>();
+        Map<Long, JSONObject> pending = new HashMap<Long, JSONObject>();
+        java.util.Set<Long> deleted = new java.util.HashSet<Long>();
+        BufferedReader reader = new BufferedReader(new java.io.InputStreamReader(
+            new java.io.FileInputStream(log), "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            JSONObject record = new JSONObject(line);
+            String op = record.getString("op");
+            if (IncrementalExport.OP_PUT.equals(op)) {
+                deleted.remove(record.getLong("_id"));
+                pending.put(record.getLong("_id"), record);
+            } else if (IncrementalExport.OP_DELETE.equals(op)) {
+                pending.remove(record.getLong("_id"));
+                deleted.add(record.getLong("_id"));
+            } else {
+                assertEquals(IncrementalExport.OP_COMMIT, op);
+                notes.keySet().removeAll(deleted);
+                notes.putAll(pending);
+                pending.clear();
+                deleted.clear();
+            }
+        }
+        reader.close();
+        assertTrue("Records after the last commit", pending.isEmpty() && deleted.isEmpty());
+        return notes;
+    }
+
+    /*
+     * Tests the change log: inserts, deletes and visible updates are logged with the columns they
+     * changed, readers get the changes after a sequence number, and a reader whose changes were
+     * dropped, or who is ahead of the log, gets a single truncated row.
+     */
+    public void testChangeLog() {
+        assertEquals(NotePad.NoteChanges.CONTENT_TYPE,
+            mMockResolver.getType(NotePad.NoteChanges.CONTENT_URI));
+        assertEquals(0, changes(0).getCount());
+
+        long noteId = insertNote("变更", "body", "工作", 0, 1000L);
+        Uri noteUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, noteId);
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "变更后");
+        mMockResolver.update(noteUri, values, null, null);
+        values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, "new body");
+        values.put(NotePad.Notes.COLUMN_NAME_COLOR, 2);
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, 2000L);
+        mMockResolver.update(noteUri, values, null, null);
+
+        // Updates of columns readers cannot see, or that change nothing, are not logged.
+        mDb.execSQL("UPDATE " + NotePad.Notes.TABLE_NAME + " SET "
+            + SyncEngine.COLUMN_SYNC_DIRTY + " = 0");
+        mMockResolver.update(noteUri, values, null, null);
+        mMockResolver.delete(noteUri, null, null);
+
+        Cursor cursor = changes(0);
+        assertEquals(4, cursor.getCount());
+        String[] operations = {NotePad.NoteChanges.OPERATION_INSERT,
+            NotePad.NoteChanges.OPERATION_UPDATE, NotePad.NoteChanges.OPERATION_UPDATE,
+            NotePad.NoteChanges.OPERATION_DELETE};
+        String[] columns = {null, "title", "note,color,modified", null};
+        long sequence = 0;
+        while (cursor.moveToNext()) {
+            assertTrue(cursor.getLong(0) > sequence);
+            sequence = cursor.getLong(0);
+            assertEquals(noteId, cursor.getLong(1));
+            assertEquals(operations[cursor.getPosition()], cursor.getString(2));
+            assertEquals(columns[cursor.getPosition()], cursor.getString(3));
+        }
+        cursor.close();
+
+        // Reading from a sequence number, and a page at a time.
+        assertEquals(0, changes(sequence).getCount());
+        cursor = mMockResolver.query(NotePad.NoteChanges.buildChangesUri(0).buildUpon()
+                .appendQueryParameter(NotePad.NoteChanges.QUERY_PARAMETER_LIMIT, "1").build(),
+            null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        // A sequence number that is not a number is rejected.
+        try {
+            mMockResolver.query(NotePad.NoteChanges.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(NotePad.NoteChanges.QUERY_PARAMETER_SINCE, "latest")
+                    .build(),
+                null, null, null, null);
+            fail("Expected an IllegalArgumentException for an invalid since parameter");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid since: latest", e.getMessage());
+        }
+
+        // Dropped changes, or a sequence number the log has not reached, give a truncated row
+        // that continues from the newest change.
+        assertEquals(4, ChangeLog.truncate(mDb,
+            System.currentTimeMillis() + ChangeLog.MAX_AGE_MILLIS + 1));
+        assertTruncated(changes(0), sequence);
+        assertTruncated(changes(sequence + 10), sequence);
+        assertEquals(0, changes(sequence).getCount());
+    }
+
+    // Queries the changes after the given sequence number, with the default projection.
+    private Cursor changes(long since) {
+        return mMockResolver.query(NotePad.NoteChanges.buildChangesUri(since), null, null, null,
+            null);
+    }
+
+    private void assertTruncated(Cursor cursor, long sequence) {
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(sequence, cursor.getLong(0));
+        assertEquals(NotePad.NoteChanges.OPERATION_TRUNCATED, cursor.getString(2));
+        cursor.close();
+    }
+
+    /*
+     * Tests the URIs notified for updates: they list the updated notes and the columns as a
+     * client sees them, batches of updates merge into one, and anything else is notified
+     * without details.
+     */
+    public void testChangeNotifications() {
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, "body");
+        values.put(NoteCodec.COLUMN_ENCODING, NoteCodec.ENCODING_PLAIN);
+        java.util.Set<String> columns = ChangeNotifications.columnsOf(values);
+        assertEquals(new java.util.HashSet<String>(java.util.Arrays.asList(
+            NotePad.Notes.COLUMN_NAME_NOTE, NotePad.Notes.COLUMN_NAME_SNIPPET)), columns);
+
+        // A single note names itself; the query of the update URI is dropped.
+        Uri noteUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, 7);
+        Uri notified = ChangeNotifications.forUpdate(SyncEngine.asSyncAdapter(noteUri), null,
+            java.util.Collections.singleton(NotePad.Notes.COLUMN_NAME_COLOR));
+        assertEquals(noteUri, notified.buildUpon().clearQuery().build());
+        assertNull(notified.getQueryParameter(SyncEngine.PARAM_CALLER_IS_SYNC_ADAPTER));
+        assertTrue(java.util.Arrays.equals(new long[] { 7 },
+            ChangeNotifications.getIds(notified)));
+        assertEquals(java.util.Collections.singleton(NotePad.Notes.COLUMN_NAME_COLOR),
+            ChangeNotifications.getColumns(notified));
+
+        // Updates of many notes list them, up to a limit.
+        notified = ChangeNotifications.forUpdate(NotePad.Notes.CONTENT_URI, new long[] { 1, 2 },
+            java.util.Collections.singleton(NotePad.Notes.COLUMN_NAME_CATEGORY));
+        assertTrue(java.util.Arrays.equals(new long[] { 1, 2 },
+            ChangeNotifications.getIds(notified)));
+        long[] many = new long[ChangeNotifications.MAX_IDS + 1];
+        notified = ChangeNotifications.forUpdate(NotePad.Notes.CONTENT_URI, many,
+            java.util.Collections.singleton(NotePad.Notes.COLUMN_NAME_CATEGORY));
+        assertNull(ChangeNotifications.getIds(notified));
+        assertNotNull(ChangeNotifications.getColumns(notified));
+
+        // A batch of updates merges; a batch with a delete does not.
+        java.util.List<Uri> batch = new ArrayList<Uri>();
+        batch.add(ChangeNotifications.forUpdate(noteUri, null,
+            java.util.Collections.singleton(NotePad.Notes.COLUMN_NAME_COLOR)));
+        batch.add(ChangeNotifications.forUpdate(
+            ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, 8), null,
+            java.util.Collections.singleton(NotePad.Notes.COLUMN_NAME_TITLE)));
+        notified = ChangeNotifications.merge(batch);
+        assertTrue(java.util.Arrays.equals(new long[] { 7, 8 },
+            ChangeNotifications.getIds(notified)));
+        assertEquals(2, ChangeNotifications.getColumns(notified).size());
+        batch.add(ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, 9));
+        assertEquals(NotePad.Notes.CONTENT_URI, ChangeNotifications.merge(batch));
+        assertNull(ChangeNotifications.getColumns(NotePad.Notes.CONTENT_URI));
+        assertNull(ChangeNotifications.getIds(NotePad.Notes.CONTENT_URI));
+    }
+
+    /*
+     * Tests the provider metrics: every operation is counted per operation and per URI pattern
+     * with the rows it returned or changed, a reset clears the counters, and latencies fall into
+     * power-of-two buckets.
+     */
+    public void testProviderMetrics() {
+        insertData();
+        getProvider().call(ProviderMetrics.METHOD_METRICS, ProviderMetrics.ARG_RESET, null);
+
+        Cursor cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI, null, null, null, null);
+        cursor.close();
+        cursor = mMockResolver.query(noteUri(1), null, null, null, null);
+        cursor.close();
+        long id = insertNote("metrics", "body", null, 0, System.currentTimeMillis());
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_COLOR, 0xFFA8E6CF);
+        assertEquals(1, mMockResolver.update(noteUri(id), values, null, null));
+        assertEquals(1, mMockResolver.delete(noteUri(id), null, null));
+
+        Bundle metrics = getProvider().call(ProviderMetrics.METHOD_METRICS, null, null);
+        Bundle query = metrics.getBundle("query");
+        assertEquals(2, query.getLong("count"));
+        assertEquals(TEST_NOTES.length + 1, query.getLong("rows"));
+        assertEquals(1, query.getBundle("uris").getBundle("notes").getLong("count"));
+        assertEquals(1, query.getBundle("uris").getBundle("notes/#").getLong("count"));
+        assertTrue(query.getLong("p50_us") <= query.getLong("p99_us"));
+        assertTrue(query.getLong("p99_us") <= query.getLong("max_us"));
+        for (String op : new String[] { "insert", "update", "delete" }) {
+            assertEquals(op, 1, metrics.getBundle(op).getLong("count"));
+            assertEquals(op, 1, metrics.getBundle(op).getLong("rows"));
+        }
+        assertNull(metrics.getBundle("openTypedAssetFile"));
+        assertTrue(metrics.getLong("notifications") >= 3);
+
+        // The snapshot taken with a reset still has the counts; the next one is empty.
+        metrics = getProvider().call(ProviderMetrics.METHOD_METRICS, ProviderMetrics.ARG_RESET,
+            null);
+        assertNotNull(metrics.getBundle("query"));
+        metrics = getProvider().call(ProviderMetrics.METHOD_METRICS, null, null);
+        assertNull(metrics.getBundle("query"));
+        assertEquals(0, metrics.getLong("notifications"));
+
+        // Bucket i holds [2^(i-1), 2^i) microseconds; a percentile reports its bucket's upper
+        // bound, but never more than the maximum.
+        ProviderMetrics.Histogram histogram = new ProviderMetrics.Histogram();
+        histogram.add(0);
+        histogram.add(3);
+        histogram.add(100);
+        histogram.add(5000);
+        assertEquals(4, histogram.count());
+        assertEquals(4, histogram.percentile(0.50));
+        assertEquals(5000, histogram.percentile(0.90));
+        assertEquals((0 + 3 + 100 + 5000) / 4, histogram.mean());
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.50));
+    }
+
+    /*
+     * Tests the slow-query log: a query at or over the threshold is recorded with its plan, one
+     * under it is not, and the threshold set through call() applies to provider queries.
+     */
+    public void testSlowQueryLog() {
+        insertData();
+        try {
+            // No provider query takes a minute, so none is recorded.
+            getProvider().call(SlowQueryLog.METHOD_SET_THRESHOLD, "60000", null);
+            getProvider().call(SlowQueryLog.METHOD_SLOW_QUERIES, SlowQueryLog.ARG_CLEAR, null);
+            Cursor cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI, null, null, null,
+                null);
+            cursor.close();
+            Bundle log = getProvider().call(SlowQueryLog.METHOD_SLOW_QUERIES, null, null);
+            assertEquals(60000, log.getLong(SlowQueryLog.KEY_THRESHOLD_MS));
+            assertTrue(log.getParcelableArrayList(SlowQueryLog.KEY_ENTRIES).isEmpty());
+
+            // A query at the threshold is slow and is recorded with its plan; one just under
+            // it is not slow.
+            SlowQueryLog slowQueries = new SlowQueryLog(getMockContext());
+            slowQueries.setThresholdMillis(100);
+            assertFalse(slowQueries.isSlow(99 * 1000000L));
+            assertTrue(slowQueries.isSlow(100 * 1000000L));
+            String sql = "SELECT " + NotePad.Notes._ID + " FROM " + NotePad.Notes.TABLE_NAME
+                + " WHERE " + NotePad.Notes.COLUMN_NAME_CATEGORY + " = ?";
+            slowQueries.record(mDb, NotePad.Notes.CONTENT_URI, sql, new String[] { "工作" },
+                150 * 1000000L, 2);
+            slowQueries.awaitIdle();
+            ArrayList<Bundle> entries =
+                slowQueries.toBundle().getParcelableArrayList(SlowQueryLog.KEY_ENTRIES);
+            assertEquals(1, entries.size());
+            assertEquals(sql, entries.get(0).getString(SlowQueryLog.KEY_SQL));
+            assertEquals(150, entries.get(0).getLong(SlowQueryLog.KEY_DURATION_MS));
+            assertEquals(2, entries.get(0).getInt(SlowQueryLog.KEY_ROWS));
+            String plan = entries.get(0).getString(SlowQueryLog.KEY_PLAN);
+            assertTrue(plan, plan.indexOf("notes_category") >= 0);
+
+            // A threshold of 0 turns the log off.
+            slowQueries.setThresholdMillis(0);
+            assertFalse(slowQueries.isSlow(Long.MAX_VALUE));
+            slowQueries.clear();
+            slowQueries.awaitIdle();
+        } finally {
+            getProvider().call(SlowQueryLog.METHOD_SET_THRESHOLD,
+                String.valueOf(SlowQueryLog.DEFAULT_THRESHOLD_MS), null);
+        }
+    }
+
+    /*
+     * Tests that a slow search leaves no trace of the search text: not in the URI, the SQL, the
+     * arguments or the plan, neither in the entries returned by call() nor in the log file.
+     */
+    public void testSlowQueryLogOmitsSearchText() throws IOException {
+        String secret = "机密预算";
+        for (int i = 0; i < 300; i++) {
+            insertNote("笔记" + i, "第" + i + "篇，关于" + secret + "的讨论", null, 0, START_DATE + i);
+        }
+        File logFile = new File(getProvider().getContext().getFilesDir(), "slow_queries.log");
+        try {
+            // Every search over a few hundred notes takes at least a millisecond.
+            getProvider().call(SlowQueryLog.METHOD_SET_THRESHOLD, "1", null);
+            getProvider().call(SlowQueryLog.METHOD_SLOW_QUERIES, SlowQueryLog.ARG_CLEAR, null);
+            String[] modes = {
+                NotePad.Notes.SEARCH_MODE_SUBSTRING,
+                NotePad.Notes.SEARCH_MODE_FUZZY,
+                NotePad.Notes.SEARCH_MODE_QUERY
+            };
+            for (String mode : modes) {
+                Cursor cursor = mMockResolver.query(NotePad.Notes.buildSearchUri(secret, mode),
+                    null, null, null, null);
+                cursor.close();
+            }
+            getProvider().getSlowQueryLogForTest().awaitIdle();
+
+            ArrayList<Bundle> entries = getProvider().call(SlowQueryLog.METHOD_SLOW_QUERIES, null,
+                null).getParcelableArrayList(SlowQueryLog.KEY_ENTRIES);
+            assertFalse(entries.isEmpty());
+            for (Bundle entry : entries) {
+                for (String key : entry.keySet()) {
+                    String value = String.valueOf(entry.get(key));
+                    assertTrue(key + ": " + value, value.indexOf(secret) < 0);
+                }
+                assertTrue(entry.getString(SlowQueryLog.KEY_URI),
+                    entry.getString(SlowQueryLog.KEY_URI).indexOf('?') < 0);
+            }
+
+            assertTrue(logFile.exists());
+            StringBuilder log = new StringBuilder();
+            BufferedReader reader = new BufferedReader(new java.io.InputStreamReader(
+                new java.io.FileInputStream(logFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.append(line).append('\n');
+                }
+            } finally {
+                reader.close();
+            }
+            assertTrue(log.toString(), log.indexOf(secret) < 0);
+        } finally {
+            getProvider().call(SlowQueryLog.METHOD_SLOW_QUERIES, SlowQueryLog.ARG_CLEAR, null);
+            getProvider().call(SlowQueryLog.METHOD_SET_THRESHOLD,
+                String.valueOf(SlowQueryLog.DEFAULT_THRESHOLD_MS), null);
+        }
+    }
+
+    /*
+     * Tests sync with the stand-in server: local inserts, edits and deletes are pushed once,
+     * remote ones are applied without being pushed back, and a local change wins over a remote
+     * change to the same note.
+     */
+    public void testSync() throws Exception {
+        SyncTestServer server = new SyncTestServer();
+        try {
+            long firstId = insertNote("同步一", "one", "工作", 0, 1000L);
+            long secondId = insertNote("同步二", "two", "生活", 0, 2000L);
+
+            Bundle report = sync(server);
+            assertEquals(2, report.getInt(SyncEngine.KEY_PUSHED));
+            assertEquals(0, report.getInt(SyncEngine.KEY_PULLED));
+            assertEquals(2, server.getNoteCount());
+            String firstSyncId = syncId(firstId);
+            String secondSyncId = syncId(secondId);
+            assertEquals("one", server.getNote(firstSyncId).getString("note"));
+
+            // Nothing changed: one pull and nothing to push.
+            int requests = server.getRequests();
+            report = sync(server);
+            assertEquals(0, report.getInt(SyncEngine.KEY_PUSHED));
+            assertEquals(0, report.getInt(SyncEngine.KEY_PULLED));
+            assertEquals(requests + 1, server.getRequests());
+
+            // A remote edit and a remote note come in; a local edit goes out.
+            server.putNote(firstSyncId, "远程标题", "remote body");
+            server.putNote("remote-note", "远程新笔记", "new");
+            ContentValues values = new ContentValues();
+            values.put(NotePad.Notes.COLUMN_NAME_NOTE, "local edit");
+            mMockResolver.update(noteUri(secondId), values, null, null);
+            report = sync(server);
+            assertEquals(2, report.getInt(SyncEngine.KEY_PULLED));
+            assertEquals(2, report.getInt(SyncEngine.KEY_APPLIED));
+            assertEquals(1, report.getInt(SyncEngine.KEY_PUSHED));
+            assertEquals("远程标题", noteTitle(firstId));
+            assertEquals("local edit", server.getNote(secondSyncId).getString("note"));
+            assertSearch("远程新笔记", NotePad.Notes.SEARCH_MODE_TEXT, noteId("remote-note"));
+
+            // Applied remote changes are not pushed back.
+            report = sync(server);
+            assertEquals(0, report.getInt(SyncEngine.KEY_PUSHED));
+
+            // A local delete goes out as a tombstone; a remote delete leaves none.
+            mMockResolver.delete(noteUri(secondId), null, null);
+            server.deleteNote(firstSyncId);
+            report = sync(server);
+            assertEquals(1, report.getInt(SyncEngine.KEY_APPLIED));
+            assertEquals(1, report.getInt(SyncEngine.KEY_PUSHED_DELETES));
+            assertNull(server.getNote(secondSyncId));
+            assertEquals(-1, noteId(firstSyncId));
+            assertEquals(0, android.database.DatabaseUtils.queryNumEntries(mDb,
+                SyncEngine.TOMBSTONES_TABLE));
+
+            // A note changed on both sides keeps the local change, on both sides.
+            long remoteId = noteId("remote-note");
+            values.put(NotePad.Notes.COLUMN_NAME_NOTE, "local wins");
+            mMockResolver.update(noteUri(remoteId), values, null, null);
+            server.putNote("remote-note", "远程新笔记", "remote loses");
+            report = sync(server);
+            assertEquals(0, report.getInt(SyncEngine.KEY_APPLIED));
+            assertEquals(1, report.getInt(SyncEngine.KEY_PUSHED));
+            assertEquals("local wins", server.getNote("remote-note").getString("note"));
+            Cursor cursor = mMockResolver.query(noteUri(remoteId),
+                new String[] { NotePad.Notes.COLUMN_NAME_NOTE }, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals("local wins", cursor.getString(0));
+            cursor.close();
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /*
+     * Tests that saving a note again with the same title and text, as the editor does when it
+     * is closed without edits, does not mark it for sync, even with a new modification date; a
+     * real edit does.
+     */
+    public void testUnchangedSaveIsNotDirty() {
+        StringBuilder large = new StringBuilder();
+        while (large.length() < NoteCodec.DEFAULT_THRESHOLD_CHARS) {
+            large.append("一段很长的正文，压缩存储。");
+        }
+        long smallId = insertNote("短笔记", "short body", null, 0, 1000L);
+        long largeId = insertNote("长笔记", large.toString(), null, 0, 1000L);
+        mDb.execSQL("UPDATE " + NotePad.Notes.TABLE_NAME + " SET "
+            + SyncEngine.COLUMN_SYNC_DIRTY + " = 0");
+
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "短笔记");
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, "short body");
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, 2000L);
+        assertEquals(1, mMockResolver.update(noteUri(smallId), values, null, null));
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "长笔记");
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, large.toString());
+        assertEquals(1, mMockResolver.update(noteUri(largeId), values, null, null));
+        assertEquals(0, syncDirty(smallId));
+        assertEquals(0, syncDirty(largeId));
+
+        // The same through the notes URI, which updates by selection.
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, 3000L);
+        mMockResolver.update(NotePad.Notes.CONTENT_URI, values,
+            NotePad.Notes._ID + " = ?", new String[] { String.valueOf(largeId) });
+        assertEquals(0, syncDirty(largeId));
+
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, large + "！");
+        mMockResolver.update(noteUri(largeId), values, null, null);
+        assertTrue(syncDirty(largeId) > 0);
+        values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, "短笔记，已改");
+        mMockResolver.update(noteUri(smallId), values, null, null);
+        assertTrue(syncDirty(smallId) > 0);
+    }
+
+    private long syncDirty(long id) {
+        return android.database.DatabaseUtils.longForQuery(mDb, "SELECT "
+            + SyncEngine.COLUMN_SYNC_DIRTY + " FROM " + NotePad.Notes.TABLE_NAME + " WHERE "
+            + NotePad.Notes._ID + " = " + id, null);
+    }
+
+    private Bundle sync(SyncTestServer server) {
+        return getProvider().call(SyncEngine.METHOD_SYNC, server.getUrl(), null);
+    }
+
+    private static Uri noteUri(long id) {
+        return ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, id);
+    }
+
+    private String syncId(long id) {
+        return android.database.DatabaseUtils.stringForQuery(mDb, "SELECT "
+            + SyncEngine.COLUMN_SYNC_ID + " FROM " + NotePad.Notes.TABLE_NAME + " WHERE "
+            + NotePad.Notes._ID + " = " + id, null);
+    }
+
+    // Returns the ID of the note with a sync ID, or -1 if there is none.
+    private long noteId(String syncId) {
+        return android.database.DatabaseUtils.longForQuery(mDb, "SELECT IFNULL(MAX("
+            + NotePad.Notes._ID + "), -1) FROM " + NotePad.Notes.TABLE_NAME + " WHERE "
+            + SyncEngine.COLUMN_SYNC_ID + " = ?", new String[] { syncId });
+    }
+
+    private String noteTitle(long id) {
+        Cursor cursor = mMockResolver.query(noteUri(id),
+            new String[] { NotePad.Notes.COLUMN_NAME_TITLE }, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        String title = cursor.getString(0);
+        cursor.close();
+        return title;
+    }
+
+    /*
+     * Tests backup and restore: the restore brings back every column of the notes as they were
+     * at the backup, with their search index, and a file that is not a backup is rejected
+     * without touching the notes.
+     */
+    public void testBackupAndRestore() throws Exception {
+        long id = insertNote("备份笔记", "backup body", "工作", 0xFFA8E6CF, 1000L);
+        File file = new File(mDb.getPath() + "-test.db.gz");
+        file.delete();
+
+        Bundle report = getProvider().call(DatabaseBackup.METHOD_BACKUP,
+            Uri.fromFile(file).toString(), null);
+        assertEquals(1, report.getLong(DatabaseBackup.KEY_NOTES));
+        assertEquals(file.length(), report.getLong(DatabaseBackup.KEY_WRITTEN_BYTES));
+        assertTrue(file.length() < report.getLong(DatabaseBackup.KEY_DATABASE_BYTES));
+
+        // Changes made after the backup are undone by the restore.
+        mMockResolver.delete(NotePad.Notes.CONTENT_URI, null, null);
+        insertNote("later", "", null, 0, 2000L);
+        report = getProvider().call(DatabaseBackup.METHOD_RESTORE,
+            Uri.fromFile(file).toString(), null);
+        assertEquals(1, report.getLong(DatabaseBackup.KEY_NOTES));
+        mDb = getProvider().getOpenHelperForTest().getWritableDatabase();
+
+        Cursor cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI, new String[] {
+                NotePad.Notes._ID,
+                NotePad.Notes.COLUMN_NAME_TITLE,
+                NotePad.Notes.COLUMN_NAME_NOTE,
+                NotePad.Notes.COLUMN_NAME_CATEGORY,
+                NotePad.Notes.COLUMN_NAME_COLOR,
+                NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE },
+            null, null, null);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(id, cursor.getLong(0));
+        assertEquals("备份笔记", cursor.getString(1));
+        assertEquals("backup body", cursor.getString(2));
+        assertEquals("工作", cursor.getString(3));
+        assertEquals(0xFFA8E6CF, cursor.getInt(4));
+        assertEquals(1000L, cursor.getLong(5));
+        cursor.close();
+        assertSearch("备份", NotePad.Notes.SEARCH_MODE_TEXT, id);
+
+        // A file that is not a backup leaves the notes alone.
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("not a database".getBytes("UTF-8"));
+        out.close();
+        try {
+            getProvider().call(DatabaseBackup.METHOD_RESTORE, Uri.fromFile(file).toString(), null);
+            fail("Restored a file that is not a backup");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertWidget(id);
+        file.delete();
+    }
+
+    // Asserts the notes in the widget snapshot, in widget order.
+    private void assertWidget(long... expectedIds) {
+        Cursor cursor = mMockResolver.query(NotePad.Notes.WIDGET_URI,
+            new String[] { NotePad.Notes._ID }, null, null, null);
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        assertEquals(java.util.Arrays.toString(expectedIds), java.util.Arrays.toString(ids));
+    }
+
+    // Asserts the notes with the given pinned flag, newest first.
+    private void assertPinned(int pinned, long... expectedIds) {
+        Cursor cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI,
+            new String[] { NotePad.Notes._ID }, NotePad.Notes.COLUMN_NAME_PINNED + " = ?",
+            new String[] { Integer.toString(pinned) }, NotePad.Notes.DEFAULT_SORT_ORDER);
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        assertEquals(java.util.Arrays.toString(expectedIds), java.util.Arrays.toString(ids));
+    }
+
+    // Asserts that the notes come back in the given order.
+    private void assertOrder(String sortOrder, long... expectedIds) {
+        Cursor cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI,
+            new String[] { NotePad.Notes._ID }, null, null, sortOrder);
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        assertEquals(sortOrder,
+            java.util.Arrays.toString(expectedIds), java.util.Arrays.toString(ids));
+    }
+
+    // Asserts that a search returns exactly the given notes, in any order.
+    private void assertSearch(String query, String mode, long... expectedIds) {
+        Cursor cursor = mMockResolver.query(NotePad.Notes.buildSearchUri(query, mode),
+            new String[] { NotePad.Notes._ID }, null, null, null);
+        java.util.Set<Long> found = new java.util.HashSet<Long>();
+        while (cursor.moveToNext()) {
+            found.add(cursor.getLong(0));
+        }
+        cursor.close();
+        java.util.Set<Long> expected = new java.util.HashSet<Long>();
+        for (long id : expectedIds) {
+            expected.add(id);
+        }
+        assertEquals(query, expected, found);
+    }
+
+    /*
+     * Tests batches: all operations are applied in one transaction and observers are notified
+     * once; a failing operation rolls back the whole batch.
+     */
+    public void testApplyBatch() throws Exception {
+        insertData();
+        getProvider().call(ProviderMetrics.METHOD_METRICS, ProviderMetrics.ARG_RESET, null);
+
+        // Recolors and moves notes 1 to 5 and deletes notes 6 to 8.
+        ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+        for (int id = 1; id <= 5; id++) {
+            ops.add(ContentProviderOperation.newUpdate(
+                    ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, id))
+                .withValue(NotePad.Notes.COLUMN_NAME_COLOR, 0xFFA8E6CF)
+                .withValue(NotePad.Notes.COLUMN_NAME_CATEGORY, "Batch")
+                .build());
+        }
+        for (int id = 6; id <= 8; id++) {
+            ops.add(ContentProviderOperation.newDelete(
+                    ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, id)).build());
+        }
+        ContentProviderResult[] results = mMockResolver.applyBatch(NotePad.AUTHORITY, ops);
+        assertEquals(ops.size(), results.length);
+        for (ContentProviderResult result : results) {
+            assertEquals(1, result.count.intValue());
+        }
+
+        Cursor cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI,
+            new String[] { NotePad.Notes.COLUMN_NAME_COLOR },
+            NotePad.Notes.COLUMN_NAME_CATEGORY + " = ?", new String[] { "Batch" }, null);
+        assertEquals(5, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertEquals(0xFFA8E6CF, cursor.getInt(0));
+        }
+        cursor.close();
+        cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI, null, null, null, null);
+        assertEquals(TEST_NOTES.length - 3, cursor.getCount());
+        cursor.close();
+
+        // Eight operations, one notification.
+        Bundle metrics = getProvider().call(ProviderMetrics.METHOD_METRICS, null, null);
+        assertEquals(1, metrics.getLong("notifications"));
+
+        // The second operation fails, so the delete before it is rolled back.
+        ops.clear();
+        ops.add(ContentProviderOperation.newDelete(
+                ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, 9)).build());
+        ops.add(ContentProviderOperation.newDelete(INVALID_URI).build());
+        try {
+            mMockResolver.applyBatch(NotePad.AUTHORITY, ops);
+            fail("Expected batch failure for an invalid URI but the batch succeeded.");
+        } catch (Exception e) {
+            // succeeded, so do nothing.
+        }
+        cursor = mMockResolver.query(NotePad.Notes.CONTENT_URI, null, null, null, null);
+        assertEquals(TEST_NOTES.length - 3, cursor.getCount());
+        cursor.close();
+    }
+
     // A utility for converting note data to a ContentValues map.
     private static class NoteInfo {
         String title;
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the background search behind the find bar of the note editor.
+ */
+public class NoteSearchTest extends TestCase {
+
+    /*
+     * Tests find-in-note: literal and regular expression queries ignore case, matches arrive in
+     * batches up to a limit, and a new search cancels the running one so that none of its
+     * matches are reported.
+     */
+    public void testNoteSearch() throws InterruptedException {
+        final Semaphore finished = new Semaphore(0);
+        final int[] updates = new int[1];
+        final NoteSearch[] holder = new NoteSearch[1];
+        NoteSearch search = new NoteSearch(new NoteSearch.Listener() {
+            @Override
+            public void onSearchUpdated() {
+                updates[0]++;
+                if (holder[0].isDone()) {
+                    finished.release();
+                }
+            }
+        });
+        holder[0] = search;
+        try {
+            String text = "Needle hay needle HAY nEEdle";
+            assertTrue(search.start(text, "needle", false));
+            assertTrue(finished.tryAcquire(5, TimeUnit.SECONDS));
+            assertEquals(3, search.getMatchCount());
+            assertEquals(11, search.getMatchStart(1));
+            assertEquals(17, search.getMatchEnd(1));
+            assertEquals(2, search.indexOfMatchAtOrAfter(12));
+            assertFalse(search.isTruncated());
+
+            // A literal query does not treat its characters as a pattern; a regex does.
+            assertTrue(search.start(text, "n.edle", false));
+            assertTrue(finished.tryAcquire(5, TimeUnit.SECONDS));
+            assertEquals(0, search.getMatchCount());
+            assertTrue(search.start(text, "n.edle", true));
+            assertTrue(finished.tryAcquire(5, TimeUnit.SECONDS));
+            assertEquals(3, search.getMatchCount());
+            assertFalse(search.start(text, "(", true));
+            assertEquals(0, search.getMatchCount());
+
+            // Many matches arrive in more than one batch, and stop at the limit.
+            char[] many = new char[NoteSearch.MAX_MATCHES * 2];
+            Arrays.fill(many, 'a');
+            updates[0] = 0;
+            assertTrue(search.start(new String(many), "a", false));
+            assertTrue(finished.tryAcquire(5, TimeUnit.SECONDS));
+            assertEquals(NoteSearch.MAX_MATCHES, search.getMatchCount());
+            assertTrue(search.isTruncated());
+            assertTrue(updates[0] > 1);
+
+            // A search over a large snapshot is cancelled by the next one and never finishes.
+            char[] large = new char[4 * 1024 * 1024];
+            Arrays.fill(large, 'b');
+            assertTrue(search.start(new PieceTable(new String(large)).snapshot(), "a", false));
+            assertTrue(search.start("bbabb", "a", false));
+            assertTrue(finished.tryAcquire(5, TimeUnit.SECONDS));
+            assertFalse(finished.tryAcquire(500, TimeUnit.MILLISECONDS));
+            assertEquals(1, search.getMatchCount());
+            assertEquals(2, search.getMatchStart(0));
+        } finally {
+            search.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+/**
+ * Compares plain and compressed storage of note bodies. Seeds the same corpus twice, once with
+ * compression turned off and once with the default threshold, and reports the database size,
+ * the write throughput and the read throughput of full-body and list (snippet) queries to logcat
+ * under the {@code NoteStorageBenchmark} tag:
+ *
+ * <pre>
+ * adb shell am instrument -w -e class com.example.android.notepad.NoteStorageBenchmark \
+ *     com.example.android.notepad.test/android.test.InstrumentationTestRunner
+ * </pre>
+ */
+public class NoteStorageBenchmark extends ProviderTestCase2<NotePadProvider> {
+
+    private static final String TAG = "NoteStorageBenchmark";
+
+    // The corpus: prose-like bodies with a median of 4000 characters.
+    private static final int NOTE_COUNT = 500;
+    private static final int MEDIAN_CHARS = 4000;
+    private static final int MAX_CHARS = 40000;
+
+    // Each read is repeated this many times and the total is reported.
+    private static final int READ_PASSES = 3;
+
+    private SQLiteDatabase mDb;
+
+    public NoteStorageBenchmark() {
+        super(NotePadProvider.class, NotePad.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = getProvider().getOpenHelperForTest().getWritableDatabase();
+    }
+
+    /*
+     * Runs the corpus with and without compression. The compressed database must be smaller;
+     * the timings are only reported, since they depend on the device.
+     */
+    public void testCompressionTradeOff() {
+        Result plain = run("plain", Integer.MAX_VALUE);
+        Result compressed = run("deflate", NoteCodec.DEFAULT_THRESHOLD_CHARS);
+
+        Log.i(TAG, String.format(java.util.Locale.US,
+                "size ratio %.2f, write time ratio %.2f, full read time ratio %.2f",
+                (double) compressed.bytes / plain.bytes,
+                (double) compressed.writeNanos / plain.writeNanos,
+                (double) compressed.fullReadNanos / plain.fullReadNanos));
+
+        assertEquals(plain.chars, compressed.chars);
+        assertTrue(compressed.bytes < plain.bytes);
+    }
+
+    // Seeds the corpus with the given compression threshold and measures it.
+    private Result run(String name, int thresholdChars) {
+        // Starts from an empty, vacuumed database so the size only reflects this corpus.
+        mDb.delete(NotePad.Notes.TABLE_NAME, null, null);
+        mDb.execSQL("VACUUM");
+        getProvider().setCompressionThresholdForTest(thresholdChars);
+
+        Result result = new Result();
+        long start = System.nanoTime();
+        getProvider().call(CorpusGenerator.METHOD_SEED, null,
+                new CorpusGenerator.Builder()
+                        .setCount(NOTE_COUNT)
+                        .setBodySize(MEDIAN_CHARS, MAX_CHARS)
+                        .build().toBundle());
+        result.writeNanos = System.nanoTime() - start;
+
+        result.bytes = (DatabaseUtils.longForQuery(mDb, "PRAGMA page_count", null)
+                - DatabaseUtils.longForQuery(mDb, "PRAGMA freelist_count", null))
+                * DatabaseUtils.longForQuery(mDb, "PRAGMA page_size", null);
+
+        start = System.nanoTime();
+        for (int pass = 0; pass < READ_PASSES; pass++) {
+            result.chars = readAll(NotePad.Notes.COLUMN_NAME_NOTE);
+        }
+        result.fullReadNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int pass = 0; pass < READ_PASSES; pass++) {
+            readAll(NotePad.Notes.COLUMN_NAME_SNIPPET);
+        }
+        result.listReadNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format(java.util.Locale.US,
+                "%s: %d notes, %d chars, db %d KB, write %.1f notes/s, "
+                        + "full read %.1f M chars/s, list read %.1f ms/pass",
+                name, NOTE_COUNT, result.chars, result.bytes / 1024,
+                NOTE_COUNT * 1e9 / result.writeNanos,
+                result.chars * READ_PASSES * 1e3 / result.fullReadNanos,
+                result.listReadNanos / 1e6 / READ_PASSES));
+        return result;
+    }
+
+    // Reads one text column of every note through the provider and returns the total length.
+    private long readAll(String column) {
+        Cursor cursor = getMockContentResolver().query(NotePad.Notes.CONTENT_URI,
+                new String[] { NotePad.Notes._ID, column }, null, null, null);
+        long chars = 0;
+        while (cursor.moveToNext()) {
+            String text = cursor.getString(1);
+            if (text != null) {
+                chars += text.length();
+            }
+        }
+        cursor.close();
+        return chars;
+    }
+
+    private static class Result {
+        long bytes;
+        long chars;
+        long writeNanos;
+        long fullReadNanos;
+        long listReadNanos;
+    }
+}
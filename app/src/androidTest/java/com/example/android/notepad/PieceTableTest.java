@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests the piece table that holds the text of large notes in the editor.
+ */
+public class PieceTableTest extends TestCase {
+
+    /*
+     * Tests the piece table behind large notes: it follows random edits exactly, typing on does
+     * not add pieces, unedited text is returned without a copy, and windows are aligned to lines.
+     */
+    public void testPieceTable() {
+        String original = "first line\nsecond line\nthird line\n";
+        PieceTable table = new PieceTable(original);
+        assertSame(original, table.toString());
+        assertEquals(11, table.lineStart(15));
+        assertEquals(23, table.lineEnd(15));
+        assertEquals(0, table.lineStart(5));
+        assertEquals(table.length(), table.lineEnd(30));
+
+        // Typing in the middle splits the text once; typing on only lengthens the new piece.
+        table.replace(6, 6, "1");
+        table.replace(7, 7, "2");
+        table.replace(8, 8, "3");
+        assertEquals("first 123line\n", table.subSequence(0, 14));
+        assertEquals(3, table.getPieceCount());
+        int generation = table.getGeneration();
+
+        // Random edits, checked against a StringBuilder.
+        StringBuilder expected = new StringBuilder(table.toString());
+        Random random = new Random(49);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = Math.min(expected.length(), start + random.nextInt(8));
+            String text = random.nextInt(3) == 0 ? "" : Integer.toString(i) + "\n";
+            table.replace(start, end, text);
+            expected.replace(start, end, text);
+            assertEquals(expected.length(), table.length());
+            if (expected.length() > 0) {
+                int index = random.nextInt(expected.length());
+                assertEquals(expected.charAt(index), table.charAt(index));
+            }
+        }
+        assertEquals(expected.toString(), table.toString());
+        assertEquals(expected.substring(10, 40), table.subSequence(10, 40));
+        assertTrue(table.getGeneration() > generation);
+
+        // A snapshot keeps its text while the table is edited.
+        PieceTable snapshot = table.snapshot();
+        table.replace(0, 10, "");
+        table.replace(5, 5, "inserted");
+        assertEquals(expected.toString(), snapshot.toString());
+
+        // Deleting everything leaves an empty text.
+        table.replace(0, table.length(), "");
+        assertEquals(0, table.length());
+        assertEquals(0, table.getPieceCount());
+        assertEquals("", table.toString());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Compares substring search through the trigram index with the LIKE scan it replaces, and times
+ * fuzzy search. Seeds a corpus, runs each query through both paths, checks that they find the
+ * same notes and reports the latencies to logcat under the {@code SearchIndexBenchmark} tag.
+ * Full-text search is checked against matches computed from the text of every note, and the
+ * time to rebuild its index is reported as well:
+ *
+ * <pre>
+ * adb shell am instrument -w -e class com.example.android.notepad.SearchIndexBenchmark \
+ *     com.example.android.notepad.test/android.test.InstrumentationTestRunner
+ * </pre>
+ */
+public class SearchIndexBenchmark extends ProviderTestCase2<NotePadProvider> {
+
+    private static final String TAG = "SearchIndexBenchmark";
+
+    private static final int NOTE_COUNT = 5000;
+
+    // Each query is repeated this many times and the mean is reported.
+    private static final int PASSES = 5;
+
+    // Common and rare words, CJK and Latin, a phrase and a word that is not in the corpus.
+    private static final String[] QUERIES = {
+            "meeting", "deadline", "会议记录", "项目计划", "weekly report", "ipsum dolor", "zebra"
+    };
+
+    // Misspellings of words in the corpus.
+    private static final String[] FUZZY_QUERIES = {
+            "meetng", "dedline", "shoping", "summray"
+    };
+
+    // CJK runs, Latin words and prefixes, and mixed queries for full-text search.
+    private static final String[] TEXT_QUERIES = {
+            "会议", "会议记录", "议记", "项目计划", "记", "meet", "meeting notes", "api", "会议 plan",
+            "预算 budget", "zebra"
+    };
+
+    public SearchIndexBenchmark() {
+        super(NotePadProvider.class, NotePad.AUTHORITY);
+    }
+
+    /*
+     * Runs every query through LIKE and through the index. Both must find the same notes; the
+     * timings are only reported, since they depend on the device.
+     */
+    public void testSubstringSearch() {
+        // Keeps every body in plain text, so LIKE sees all of it and the results are comparable.
+        getProvider().setCompressionThresholdForTest(Integer.MAX_VALUE);
+        long seedStart = System.nanoTime();
+        getProvider().call(CorpusGenerator.METHOD_SEED, null,
+                new CorpusGenerator.Builder().setCount(NOTE_COUNT).build().toBundle());
+        Log.i(TAG, String.format(java.util.Locale.US, "seeded and indexed %d notes in %.0f ms",
+                NOTE_COUNT, (System.nanoTime() - seedStart) / 1e6));
+
+        long likeTotal = 0;
+        long indexTotal = 0;
+        for (String query : QUERIES) {
+            String pattern = "%" + query + "%";
+            long start = System.nanoTime();
+            int likeCount = 0;
+            for (int pass = 0; pass < PASSES; pass++) {
+                likeCount = count(NotePad.Notes.CONTENT_URI,
+                        NotePad.Notes.COLUMN_NAME_TITLE + " LIKE ? OR "
+                                + NotePad.Notes.COLUMN_NAME_NOTE + " LIKE ?",
+                        new String[] { pattern, pattern });
+            }
+            long likeNanos = (System.nanoTime() - start) / PASSES;
+
+            start = System.nanoTime();
+            int indexCount = 0;
+            for (int pass = 0; pass < PASSES; pass++) {
+                indexCount = count(NotePad.Notes.buildSearchUri(query,
+                        NotePad.Notes.SEARCH_MODE_SUBSTRING), null, null);
+            }
+            long indexNanos = (System.nanoTime() - start) / PASSES;
+
+            Log.i(TAG, String.format(java.util.Locale.US,
+                    "\"%s\": %d matches, LIKE %.2f ms, index %.2f ms",
+                    query, indexCount, likeNanos / 1e6, indexNanos / 1e6));
+            assertEquals(query, likeCount, indexCount);
+            likeTotal += likeNanos;
+            indexTotal += indexNanos;
+        }
+        Log.i(TAG, String.format(java.util.Locale.US,
+                "all queries: LIKE %.2f ms, index %.2f ms, ratio %.2f",
+                likeTotal / 1e6, indexTotal / 1e6, (double) indexTotal / likeTotal));
+
+        for (String query : FUZZY_QUERIES) {
+            long start = System.nanoTime();
+            int fuzzyCount = 0;
+            for (int pass = 0; pass < PASSES; pass++) {
+                fuzzyCount = count(NotePad.Notes.buildSearchUri(query,
+                        NotePad.Notes.SEARCH_MODE_FUZZY), null, null);
+            }
+            Log.i(TAG, String.format(java.util.Locale.US, "fuzzy \"%s\": %d matches, %.2f ms",
+                    query, fuzzyCount, (System.nanoTime() - start) / 1e6 / PASSES));
+            assertTrue(query, fuzzyCount > 0);
+        }
+    }
+
+    /*
+     * Runs every full-text query and compares the notes it finds with the notes that match by
+     * their text: each CJK run of the query must occur in the note, and each Latin word must
+     * start a word of the note. Recall and precision must both be complete.
+     */
+    public void testFullTextSearch() {
+        getProvider().call(CorpusGenerator.METHOD_SEED, null,
+                new CorpusGenerator.Builder().setCount(NOTE_COUNT).build().toBundle());
+
+        SQLiteDatabase db = getProvider().getOpenHelperForTest().getWritableDatabase();
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            FullTextIndex.rebuild(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(TAG, String.format(Locale.US, "rebuilt the full-text index of %d notes in %.0f ms",
+                NOTE_COUNT, (System.nanoTime() - start) / 1e6));
+
+        // The folded title and body of every note, read once.
+        String[] texts = new String[NOTE_COUNT];
+        long[] ids = new long[NOTE_COUNT];
+        Cursor cursor = getMockContentResolver().query(NotePad.Notes.CONTENT_URI,
+                new String[] { NotePad.Notes._ID, NotePad.Notes.COLUMN_NAME_TITLE,
+                        NotePad.Notes.COLUMN_NAME_NOTE }, null, null, null);
+        try {
+            assertEquals(NOTE_COUNT, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                texts[i] = (cursor.getString(1) + "\n" + cursor.getString(2)).toLowerCase(Locale.US);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String query : TEXT_QUERIES) {
+            Set<Long> expected = new HashSet<Long>();
+            for (int i = 0; i < NOTE_COUNT; i++) {
+                if (matchesText(texts[i], query)) {
+                    expected.add(ids[i]);
+                }
+            }
+
+            start = System.nanoTime();
+            Set<Long> found = new HashSet<Long>();
+            for (int pass = 0; pass < PASSES; pass++) {
+                found.clear();
+                cursor = getMockContentResolver().query(
+                        NotePad.Notes.buildSearchUri(query, NotePad.Notes.SEARCH_MODE_TEXT),
+                        new String[] { NotePad.Notes._ID }, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        found.add(cursor.getLong(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            long nanos = (System.nanoTime() - start) / PASSES;
+
+            Set<Long> relevant = new HashSet<Long>(found);
+            relevant.retainAll(expected);
+            Log.i(TAG, String.format(Locale.US,
+                    "text \"%s\": %d matches, %d expected, recall %.3f, precision %.3f, %.2f ms",
+                    query, found.size(), expected.size(),
+                    expected.isEmpty() ? 1.0 : (double) relevant.size() / expected.size(),
+                    found.isEmpty() ? 1.0 : (double) relevant.size() / found.size(),
+                    nanos / 1e6));
+            assertEquals(query, expected, found);
+        }
+    }
+
+    // Whether a lower-cased text matches a full-text query: every space-separated part must
+    // occur in it, a Latin part only at the start of a word.
+    private static boolean matchesText(String text, String query) {
+        for (String part : query.toLowerCase(Locale.US).split(" ")) {
+            boolean latin = part.charAt(0) < 0x80;
+            if (latin ? !Pattern.compile("(^|[^a-z0-9])" + Pattern.quote(part)).matcher(text).find()
+                    : !text.contains(part)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Runs a query for note IDs and returns the number of rows.
+    private int count(Uri uri, String selection, String[] selectionArgs) {
+        Cursor cursor = getMockContentResolver().query(uri,
+                new String[] { NotePad.Notes._ID }, selection, selectionArgs, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures sync with the in-process {@link SyncTestServer}: the first sync of a large corpus
+ * in each direction, and the small syncs that follow single edits. Reports the throughput,
+ * the bytes on the wire and the latencies to logcat under the {@code SyncBenchmark} tag:
+ *
+ * <pre>
+ * adb shell am instrument -w -e class com.example.android.notepad.SyncBenchmark \
+ *     com.example.android.notepad.test/android.test.InstrumentationTestRunner
+ * </pre>
+ */
+public class SyncBenchmark extends ProviderTestCase2<NotePadProvider> {
+
+    private static final String TAG = "SyncBenchmark";
+
+    // The corpus of the full sync: short notes, as most notes are.
+    private static final int FULL_NOTES = 100000;
+    private static final int MEDIAN_CHARS = 300;
+    private static final int MAX_CHARS = 3000;
+
+    // The corpus behind the incremental syncs, and how many of each are timed.
+    private static final int INCREMENTAL_NOTES = 5000;
+    private static final int INCREMENTAL_RUNS = 20;
+
+    private SQLiteDatabase mDb;
+
+    public SyncBenchmark() {
+        super(NotePadProvider.class, NotePad.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = getProvider().getOpenHelperForTest().getWritableDatabase();
+    }
+
+    /*
+     * Pushes the whole corpus to an empty server, then empties the database and pulls it back
+     * as a new device would. Every note must arrive; the timings are only reported.
+     */
+    public void testFullSync() throws Exception {
+        seed(FULL_NOTES);
+        SyncTestServer server = new SyncTestServer();
+        try {
+            Bundle push = sync(server);
+            log("push " + FULL_NOTES, push, FULL_NOTES);
+            assertEquals(FULL_NOTES, push.getInt(SyncEngine.KEY_PUSHED));
+            assertEquals(FULL_NOTES, server.getNoteCount());
+
+            // A new device: no notes and no sync state for this server.
+            mDb.delete(NotePad.Notes.TABLE_NAME, null, null);
+            SyncEngine.reset(getProvider().getContext());
+            Bundle pull = sync(server);
+            log("pull " + FULL_NOTES, pull, FULL_NOTES);
+            assertEquals(FULL_NOTES, pull.getInt(SyncEngine.KEY_APPLIED));
+            assertEquals(FULL_NOTES, DatabaseUtils.queryNumEntries(mDb, NotePad.Notes.TABLE_NAME));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /*
+     * Times the syncs that follow a single local edit, a single remote edit, and no change at
+     * all, on top of a synced corpus. Their cost must not grow with the corpus: each is a
+     * request or two, which the report shows.
+     */
+    public void testIncrementalSync() throws Exception {
+        seed(INCREMENTAL_NOTES);
+        SyncTestServer server = new SyncTestServer();
+        try {
+            sync(server);
+            String remoteId = DatabaseUtils.stringForQuery(mDb, "SELECT "
+                    + SyncEngine.COLUMN_SYNC_ID + " FROM " + NotePad.Notes.TABLE_NAME
+                    + " ORDER BY " + NotePad.Notes._ID + " DESC LIMIT 1", null);
+
+            long[] idle = new long[INCREMENTAL_RUNS];
+            long[] local = new long[INCREMENTAL_RUNS];
+            long[] remote = new long[INCREMENTAL_RUNS];
+            Bundle last = null;
+            for (int run = 0; run < INCREMENTAL_RUNS; run++) {
+                idle[run] = timeSync(server);
+
+                ContentValues values = new ContentValues();
+                values.put(NotePad.Notes.COLUMN_NAME_NOTE, "local edit " + run);
+                getMockContentResolver().update(
+                        ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, 1),
+                        values, null, null);
+                long start = System.nanoTime();
+                last = sync(server);
+                local[run] = System.nanoTime() - start;
+                assertEquals(1, last.getInt(SyncEngine.KEY_PUSHED));
+
+                server.putNote(remoteId, "remote", "remote edit " + run);
+                start = System.nanoTime();
+                Bundle pulled = sync(server);
+                remote[run] = System.nanoTime() - start;
+                assertEquals(1, pulled.getInt(SyncEngine.KEY_APPLIED));
+            }
+            log("one local edit", last, 1);
+            Log.i(TAG, String.format(Locale.US,
+                    "%d notes: median sync %.2f ms idle, %.2f ms after a local edit,"
+                            + " %.2f ms after a remote edit",
+                    INCREMENTAL_NOTES, median(idle) / 1e6, median(local) / 1e6,
+                    median(remote) / 1e6));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private void seed(int count) {
+        long start = System.nanoTime();
+        getProvider().call(CorpusGenerator.METHOD_SEED, null,
+                new CorpusGenerator.Builder()
+                        .setCount(count)
+                        .setBodySize(MEDIAN_CHARS, MAX_CHARS)
+                        .setLargeNotes(0, 1)
+                        .build().toBundle());
+        Log.i(TAG, String.format(Locale.US, "seeded %d notes in %.0f ms",
+                count, (System.nanoTime() - start) / 1e6));
+    }
+
+    private Bundle sync(SyncTestServer server) {
+        return getProvider().call(SyncEngine.METHOD_SYNC, server.getUrl(), null);
+    }
+
+    private long timeSync(SyncTestServer server) {
+        long start = System.nanoTime();
+        sync(server);
+        return System.nanoTime() - start;
+    }
+
+    private static void log(String name, Bundle report, int notes) {
+        long ms = Math.max(1, report.getLong(SyncEngine.KEY_ELAPSED_MS));
+        Log.i(TAG, String.format(Locale.US,
+                "%s: %d ms, %.0f notes/s, %d requests, sent %d KB, received %d KB",
+                name, ms, notes * 1000.0 / ms, report.getInt(SyncEngine.KEY_REQUESTS),
+                report.getLong(SyncEngine.KEY_SENT_BYTES) / 1024,
+                report.getLong(SyncEngine.KEY_RECEIVED_BYTES) / 1024));
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.net.Uri;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process stand-in for the sync server, for tests and benchmarks. Serves the push and
+ * pull endpoints described in {@link SyncClient} over HTTP on a loopback port, one connection
+ * at a time, and keeps the notes in memory. The last push of a note wins. Changes made with
+ * {@link #putNote} and {@link #deleteNote} stand for another device.
+ */
+public class SyncTestServer {
+
+    private static final String TAG = "SyncTestServer";
+
+    // The author of the changes made by the test itself.
+    private static final String OTHER_DEVICE = "other-device";
+
+    private final ServerSocket mSocket;
+    private final Thread mThread;
+    private final String mServerId = UUID.randomUUID().toString();
+
+    // The latest change of every note, by ID, and the same changes by version.
+    private final Map<String, JSONObject> mNotes = new HashMap<String, JSONObject>();
+    private final TreeMap<Long, JSONObject> mLog = new TreeMap<Long, JSONObject>();
+    private long mVersion;
+    private int mRequests;
+
+    public SyncTestServer() throws IOException {
+        mSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    /**
+     * Returns the base URL to pass to {@link SyncEngine#METHOD_SYNC}.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + mSocket.getLocalPort() + "/sync/";
+    }
+
+    public void shutdown() throws IOException, InterruptedException {
+        mSocket.close();
+        mThread.join();
+    }
+
+    /**
+     * Creates or changes a note, as another device would.
+     */
+    public synchronized void putNote(String id, String title, String note) throws JSONException {
+        JSONObject change = new JSONObject();
+        change.put("id", id);
+        change.put("title", title);
+        change.put("note", note);
+        change.put("category", "未分类");
+        change.put("color", 0);
+        change.put("pinned", 0);
+        change.put("created", System.currentTimeMillis());
+        change.put("modified", System.currentTimeMillis());
+        store(id, change, OTHER_DEVICE);
+    }
+
+    /**
+     * Deletes a note, as another device would.
+     */
+    public synchronized void deleteNote(String id) throws JSONException {
+        JSONObject change = new JSONObject();
+        change.put("id", id);
+        change.put("deleted", true);
+        change.put("modified", System.currentTimeMillis());
+        store(id, change, OTHER_DEVICE);
+    }
+
+    /**
+     * Returns the latest state of a note, or null if there is none or it is deleted.
+     */
+    public synchronized JSONObject getNote(String id) {
+        JSONObject note = mNotes.get(id);
+        return note == null || note.optBoolean("deleted") ? null : note;
+    }
+
+    /**
+     * Returns the number of notes that are not deleted.
+     */
+    public synchronized int getNoteCount() {
+        int count = 0;
+        for (JSONObject note : mNotes.values()) {
+            if (!note.optBoolean("deleted")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized int getRequests() {
+        return mRequests;
+    }
+
+    private void serve() {
+        while (!mSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = mSocket.accept();
+            } catch (IOException e) {
+                // Closed by shutdown().
+                return;
+            }
+            try {
+                handle(socket);
+            } catch (IOException e) {
+                Log.w(TAG, "Request failed", e);
+            } catch (JSONException e) {
+                Log.w(TAG, "Invalid request", e);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // Reads one request, answers it and leaves the connection to be closed.
+    private void handle(Socket socket) throws IOException, JSONException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        String[] requestLine = readLine(in).split(" ");
+        int contentLength = 0;
+        boolean gzipBody = false;
+        boolean gzipResponse = false;
+        String header;
+        while (!(header = readLine(in)).isEmpty()) {
+            int colon = header.indexOf(':');
+            String name = header.substring(0, colon).trim().toLowerCase();
+            String value = header.substring(colon + 1).trim();
+            if (name.equals("content-length")) {
+                contentLength = Integer.parseInt(value);
+            } else if (name.equals("content-encoding")) {
+                gzipBody = value.equalsIgnoreCase("gzip");
+            } else if (name.equals("accept-encoding")) {
+                gzipResponse = value.toLowerCase().contains("gzip");
+            }
+        }
+        byte[] body = new byte[contentLength];
+        for (int read = 0; read < contentLength; ) {
+            int n = in.read(body, read, contentLength - read);
+            if (n < 0) {
+                throw new IOException("Truncated request body");
+            }
+            read += n;
+        }
+        if (gzipBody) {
+            body = SyncClient.readAll(new GZIPInputStream(new ByteArrayInputStream(body)));
+        }
+
+        Uri target = Uri.parse("http://localhost" + requestLine[1]);
+        JSONObject response;
+        synchronized (this) {
+            mRequests++;
+            if (requestLine[0].equals("POST") && target.getPath().endsWith("/push")) {
+                response = push(new JSONObject(new String(body, "UTF-8")));
+            } else if (requestLine[0].equals("GET") && target.getPath().endsWith("/pull")) {
+                response = pull(Long.parseLong(target.getQueryParameter("since")),
+                        Integer.parseInt(target.getQueryParameter("limit")),
+                        target.getQueryParameter("device"));
+            } else {
+                response = null;
+            }
+        }
+
+        OutputStream out = socket.getOutputStream();
+        if (response == null) {
+            out.write(("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n"
+                    + "Connection: close\r\n\r\n").getBytes("UTF-8"));
+            out.flush();
+            return;
+        }
+        byte[] payload = response.toString().getBytes("UTF-8");
+        if (gzipResponse) {
+            payload = SyncClient.gzip(payload);
+        }
+        out.write(("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + payload.length + "\r\n"
+                + (gzipResponse ? "Content-Encoding: gzip\r\n" : "")
+                + "Connection: close\r\n\r\n").getBytes("UTF-8"));
+        out.write(payload);
+        out.flush();
+    }
+
+    private JSONObject push(JSONObject request) throws JSONException {
+        String device = request.getString("device");
+        JSONArray changes = request.getJSONArray("changes");
+        JSONObject versions = new JSONObject();
+        for (int i = 0; i < changes.length(); i++) {
+            JSONObject change = changes.getJSONObject(i);
+            String id = change.getString("id");
+            versions.put(id, store(id, new JSONObject(change.toString()), device));
+        }
+        JSONObject response = new JSONObject();
+        response.put("server", mServerId);
+        response.put("versions", versions);
+        return response;
+    }
+
+    private JSONObject pull(long since, int limit, String device) throws JSONException {
+        JSONArray changes = new JSONArray();
+        long watermark = since;
+        boolean more = false;
+        for (Map.Entry<Long, JSONObject> entry : mLog.tailMap(since, false).entrySet()) {
+            if (changes.length() == limit) {
+                more = true;
+                break;
+            }
+            watermark = entry.getKey();
+            // A device does not get its own changes back.
+            if (!device.equals(entry.getValue().optString("author"))) {
+                changes.put(entry.getValue());
+            }
+        }
+        JSONObject response = new JSONObject();
+        response.put("server", mServerId);
+        response.put("changes", changes);
+        response.put("watermark", more ? watermark : Math.max(watermark, mVersion));
+        response.put("more", more);
+        return response;
+    }
+
+    // Stores a change as the latest state of a note under a new version and returns it.
+    private long store(String id, JSONObject change, String author) throws JSONException {
+        long version = ++mVersion;
+        change.put("version", version);
+        change.put("author", author);
+        JSONObject previous = mNotes.put(id, change);
+        if (previous != null) {
+            mLog.remove(previous.getLong("version"));
+        }
+        mLog.put(version, change);
+        return version;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the change log of the notes, the {@link NotePad.NoteChanges} table. Triggers on the
+ * notes table append a row for every insert, delete and visible update, so the row is written
+ * in the same transaction as the change itself and rolls back with it. The row ID is the
+ * sequence number of the change: the table is AUTOINCREMENT, so a sequence number is never
+ * handed out twice, even after old rows are dropped.
+ * <p>
+ * An update is only logged if it changes a column a reader can see; the columns the provider
+ * derives or keeps for itself, such as the snippet, the title sort key and the sync state, are
+ * left out of the log. An update of the stored body of a compressed note is logged as a change
+ * of {@link NotePad.Notes#COLUMN_NAME_NOTE}.
+ * <p>
+ * {@link #truncate(SQLiteDatabase, long)} drops the rows older than {@link #MAX_AGE_MILLIS}
+ * and all but the newest {@link #MAX_CHANGES}. A reader that asks for changes the log no longer
+ * has gets a single {@link NotePad.NoteChanges#OPERATION_TRUNCATED} row instead.
+ */
+final class ChangeLog {
+
+    private static final String TAG = "ChangeLog";
+
+    // Retention of the log.
+    static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    static final int MAX_CHANGES = 10000;
+
+    // The current time in milliseconds, in SQL, for the triggers.
+    private static final String NOW_MILLIS =
+            "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    // The visible columns of a note whose updates are logged, with the stored columns that
+    // make up each of them.
+    private static final String[][] LOGGED_COLUMNS = {
+            {NotePad.Notes.COLUMN_NAME_TITLE},
+            {NotePad.Notes.COLUMN_NAME_NOTE, NoteCodec.COLUMN_DATA, NoteCodec.COLUMN_ENCODING},
+            {NotePad.Notes.COLUMN_NAME_CATEGORY},
+            {NotePad.Notes.COLUMN_NAME_COLOR},
+            {NotePad.Notes.COLUMN_NAME_PINNED},
+            {NotePad.Notes.COLUMN_NAME_CREATE_DATE},
+            {NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE},
+    };
+
+    private ChangeLog() {
+    }
+
+    /**
+     * Creates the change log and the triggers that fill it.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + NotePad.NoteChanges.TABLE_NAME + " ("
+                + NotePad.NoteChanges._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + NotePad.NoteChanges.COLUMN_NAME_NOTE_ID + " INTEGER NOT NULL,"
+                + NotePad.NoteChanges.COLUMN_NAME_OPERATION + " TEXT NOT NULL,"
+                + NotePad.NoteChanges.COLUMN_NAME_COLUMNS + " TEXT,"
+                + NotePad.NoteChanges.COLUMN_NAME_TIME + " INTEGER NOT NULL"
+                + ");");
+        db.execSQL("CREATE TRIGGER note_changes_insert AFTER INSERT ON "
+                + NotePad.Notes.TABLE_NAME + " BEGIN "
+                + insertChange("new", NotePad.NoteChanges.OPERATION_INSERT, "NULL")
+                + " END");
+        db.execSQL("CREATE TRIGGER note_changes_delete AFTER DELETE ON "
+                + NotePad.Notes.TABLE_NAME + " BEGIN "
+                + insertChange("old", NotePad.NoteChanges.OPERATION_DELETE, "NULL")
+                + " END");
+
+        // Lists the changed columns as "title,note,": each column that differs adds its name.
+        StringBuilder changed = new StringBuilder();
+        StringBuilder columns = new StringBuilder();
+        for (String[] column : LOGGED_COLUMNS) {
+            StringBuilder differs = new StringBuilder();
+            for (String stored : column) {
+                differs.append(differs.length() == 0 ? "" : " OR ")
+                        .append("old.").append(stored).append(" IS NOT new.").append(stored);
+            }
+            changed.append(changed.length() == 0 ? "" : " OR ").append(differs);
+            columns.append(columns.length() == 0 ? "" : " || ")
+                    .append("CASE WHEN ").append(differs)
+                    .append(" THEN '").append(column[0]).append(",' ELSE '' END");
+        }
+        db.execSQL("CREATE TRIGGER note_changes_update AFTER UPDATE ON "
+                + NotePad.Notes.TABLE_NAME + " WHEN " + changed + " BEGIN "
+                + insertChange("new", NotePad.NoteChanges.OPERATION_UPDATE,
+                "rtrim(" + columns + ", ',')")
+                + " END");
+    }
+
+    // The INSERT statement of a trigger, for the note in the given row ("new" or "old").
+    private static String insertChange(String row, String operation, String columns) {
+        return "INSERT INTO " + NotePad.NoteChanges.TABLE_NAME + " ("
+                + NotePad.NoteChanges.COLUMN_NAME_NOTE_ID + ", "
+                + NotePad.NoteChanges.COLUMN_NAME_OPERATION + ", "
+                + NotePad.NoteChanges.COLUMN_NAME_COLUMNS + ", "
+                + NotePad.NoteChanges.COLUMN_NAME_TIME + ") VALUES ("
+                + row + "." + NotePad.Notes._ID + ", '" + operation + "', " + columns + ", "
+                + NOW_MILLIS + ");";
+    }
+
+    /**
+     * Returns the sequence number of the newest change, or 0 if there was none. Rows dropped
+     * by a truncation still count.
+     */
+    static long latestSequence(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL((SELECT seq FROM sqlite_sequence"
+                + " WHERE name = ?), 0)", new String[]{NotePad.NoteChanges.TABLE_NAME});
+    }
+
+    /**
+     * Returns whether the log holds every change after the given sequence number: none of
+     * them was dropped, and the sequence number is not from the future, as it is after the
+     * database was restored from a backup.
+     */
+    static boolean isComplete(SQLiteDatabase db, long since) {
+        long latest = latestSequence(db);
+        long oldest = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MIN("
+                + NotePad.NoteChanges._ID + "), ?) FROM " + NotePad.NoteChanges.TABLE_NAME,
+                new String[]{String.valueOf(latest + 1)});
+        return since >= oldest - 1 && since <= latest;
+    }
+
+    /**
+     * Returns the changes after the given sequence number, oldest first, or a single
+     * {@link NotePad.NoteChanges#OPERATION_TRUNCATED} row if the log no longer holds all of
+     * them.
+     *
+     * @param db            The database to read.
+     * @param projection    The columns to return, or null for all of them.
+     * @param selection     An additional filter on the changes, or null.
+     * @param selectionArgs The arguments of the selection.
+     * @param since         The sequence number of the last change the caller has seen.
+     * @param limit         The most changes to return, or null for all of them.
+     */
+    static Cursor query(SQLiteDatabase db, String[] projection, String selection,
+                        String[] selectionArgs, long since, String limit) {
+        if (projection == null) {
+            projection = new String[]{
+                    NotePad.NoteChanges._ID,
+                    NotePad.NoteChanges.COLUMN_NAME_NOTE_ID,
+                    NotePad.NoteChanges.COLUMN_NAME_OPERATION,
+                    NotePad.NoteChanges.COLUMN_NAME_COLUMNS,
+                    NotePad.NoteChanges.COLUMN_NAME_TIME};
+        }
+
+        // Reads the rows before checking the bounds, so a truncation in between cannot drop
+        // rows unnoticed.
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+        qb.setTables(NotePad.NoteChanges.TABLE_NAME);
+        qb.appendWhere(NotePad.NoteChanges._ID + " > " + since);
+        Cursor c = qb.query(db, projection, selection, selectionArgs, null, null,
+                NotePad.NoteChanges.DEFAULT_SORT_ORDER, limit);
+        c.getCount();
+        if (isComplete(db, since)) {
+            return c;
+        }
+        c.close();
+        return truncated(projection, latestSequence(db));
+    }
+
+    // The row telling a reader to read the notes again and continue from the given sequence.
+    private static Cursor truncated(String[] projection, long sequence) {
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (NotePad.NoteChanges._ID.equals(projection[i])) {
+                row[i] = sequence;
+            } else if (NotePad.NoteChanges.COLUMN_NAME_OPERATION.equals(projection[i])) {
+                row[i] = NotePad.NoteChanges.OPERATION_TRUNCATED;
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /**
+     * Drops the changes older than {@link #MAX_AGE_MILLIS}, and all but the newest
+     * {@link #MAX_CHANGES}.
+     *
+     * @param db  The writable database.
+     * @param now The current time in milliseconds.
+     * @return The number of changes dropped.
+     */
+    static int truncate(SQLiteDatabase db, long now) {
+        int dropped = db.delete(NotePad.NoteChanges.TABLE_NAME,
+                NotePad.NoteChanges.COLUMN_NAME_TIME + " < ? OR "
+                        + NotePad.NoteChanges._ID + " <= ?",
+                new String[]{String.valueOf(now - MAX_AGE_MILLIS),
+                        String.valueOf(latestSequence(db) - MAX_CHANGES)});
+        if (dropped > 0) {
+            Log.i(TAG, "Dropped " + dropped + " changes");
+        }
+        return dropped;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds and reads the URIs the provider notifies when notes are updated. The URI of an update
+ * names the updated notes, in its path or in {@link NotePad.Notes#QUERY_PARAMETER_IDS}, and the
+ * columns it wrote, in {@link NotePad.Notes#QUERY_PARAMETER_COLUMNS}. Observers matching the
+ * URI ignore its query, so these URIs reach the same observers as the plain URIs; an observer
+ * that reads them can tell a color change from a body rewrite, and one note from thousands.
+ * <p>
+ * A notification without columns, or without IDs, means any column, or any note, may have
+ * changed. Inserts and deletes are notified that way.
+ */
+final class ChangeNotifications {
+
+    /**
+     * The most note IDs a notification lists. An update of more notes is notified without
+     * them, since an observer would read every note again anyway.
+     */
+    static final int MAX_IDS = 100;
+
+    private ChangeNotifications() {
+    }
+
+    /**
+     * Returns the URI to notify for an update.
+     *
+     * @param uri     The URI the update was made on, {@link NotePad.Notes#CONTENT_URI} or a note
+     *                ID URI. Its query, such as the sync adapter parameter, is dropped.
+     * @param ids     The IDs of the updated notes, or null if they are not known. Only used for
+     *                {@link NotePad.Notes#CONTENT_URI}.
+     * @param columns The columns the update wrote.
+     */
+    static Uri forUpdate(Uri uri, long[] ids, Collection<String> columns) {
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        if (ids != null && ids.length <= MAX_IDS && getPathId(uri) < 0) {
+            StringBuilder sb = new StringBuilder();
+            for (long id : ids) {
+                sb.append(sb.length() == 0 ? "" : ",").append(id);
+            }
+            builder.appendQueryParameter(NotePad.Notes.QUERY_PARAMETER_IDS, sb.toString());
+        }
+        builder.appendQueryParameter(NotePad.Notes.QUERY_PARAMETER_COLUMNS,
+                TextUtils.join(",", columns));
+        return builder.build();
+    }
+
+    /**
+     * Returns the columns an update with the given values writes, as a client sees them: the
+     * columns it names, without the storage columns the provider derives itself, and with the
+     * snippet if it writes the note.
+     */
+    static Set<String> columnsOf(ContentValues values) {
+        Set<String> columns = new LinkedHashSet<String>(values.keySet());
+        columns.remove(NoteCodec.COLUMN_DATA);
+        columns.remove(NoteCodec.COLUMN_ENCODING);
+        columns.remove(TitleCollation.COLUMN_TITLE_KEY);
+        if (columns.contains(NotePad.Notes.COLUMN_NAME_NOTE)) {
+            columns.add(NotePad.Notes.COLUMN_NAME_SNIPPET);
+        } else {
+            columns.remove(NotePad.Notes.COLUMN_NAME_SNIPPET);
+        }
+        return columns;
+    }
+
+    /**
+     * Returns one URI that notifies all the given ones: {@link NotePad.Notes#CONTENT_URI},
+     * with the union of their IDs and columns if every one of them has both.
+     */
+    static Uri merge(Collection<Uri> uris) {
+        Set<Long> ids = new LinkedHashSet<Long>();
+        Set<String> columns = new LinkedHashSet<String>();
+        for (Uri uri : uris) {
+            long[] uriIds = getIds(uri);
+            Set<String> uriColumns = getColumns(uri);
+            if (uriIds == null || uriColumns == null || ids.size() + uriIds.length > MAX_IDS) {
+                return NotePad.Notes.CONTENT_URI;
+            }
+            for (long id : uriIds) {
+                ids.add(id);
+            }
+            columns.addAll(uriColumns);
+        }
+        long[] merged = new long[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            merged[i++] = id;
+        }
+        return forUpdate(NotePad.Notes.CONTENT_URI, merged, columns);
+    }
+
+    /**
+     * Returns the IDs of the notes a notified URI names, or null if any note may have changed.
+     */
+    static long[] getIds(Uri uri) {
+        if (uri == null) {
+            return null;
+        }
+        long pathId = getPathId(uri);
+        if (pathId >= 0) {
+            return new long[]{pathId};
+        }
+        String ids = uri.getQueryParameter(NotePad.Notes.QUERY_PARAMETER_IDS);
+        if (ids == null) {
+            return null;
+        }
+        if (ids.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = ids.split(",");
+        long[] result = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                result[i] = Long.parseLong(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the columns a notified URI lists, or null if any column may have changed.
+     */
+    static Set<String> getColumns(Uri uri) {
+        String columns = uri == null ? null
+                : uri.getQueryParameter(NotePad.Notes.QUERY_PARAMETER_COLUMNS);
+        if (columns == null) {
+            return null;
+        }
+        Set<String> result = new LinkedHashSet<String>();
+        if (!columns.isEmpty()) {
+            for (String column : columns.split(",")) {
+                result.add(column);
+            }
+        }
+        return result;
+    }
+
+    // Returns the note ID in the path of a note ID URI, or -1 for any other URI.
+    private static long getPathId(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2
+                || !NotePad.Notes.TABLE_NAME.equals(segments.get(0))
+                || !TextUtils.isDigitsOnly(segments.get(1))) {
+            return -1;
+        }
+        return Long.parseLong(segments.get(1));
+    }
+}
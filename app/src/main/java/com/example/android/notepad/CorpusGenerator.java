@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentValues;
+import android.os.Bundle;
+
+import java.util.Random;
+
+/**
+ * Generates a deterministic corpus of synthetic notes for load testing. The same
+ * {@link Config} always produces the same notes, so a database of production scale can be
+ * rebuilt on any device and measurements from different builds stay comparable.
+ * <p>
+ * Each note is derived from the seed and its own index only, so a corpus can be generated in
+ * pieces: seeding notes 0-9999 and then 10000-19999 gives the same database as seeding 0-19999
+ * at once.
+ * <p>
+ * The generator is used by {@link NotePadProvider} for the {@link #METHOD_SEED} call, by the
+ * instrumentation tests, by the macrobenchmark module (through the provider call) and by the
+ * debug menu in {@link NotesList}.
+ */
+final class CorpusGenerator {
+
+    /**
+     * The provider call() method that seeds a corpus. The extras hold the configuration, as
+     * written by {@link Config#toBundle()}. The result holds {@link #KEY_INSERTED} and
+     * {@link #KEY_ELAPSED_MS}.
+     */
+    static final String METHOD_SEED = "seed_corpus";
+
+    /*
+     * Keys of the configuration Bundle. The macrobenchmark module cannot link against this
+     * class and repeats the values, so they must not change.
+     */
+    static final String KEY_SEED = "seed";
+    static final String KEY_START = "start";
+    static final String KEY_COUNT = "count";
+    static final String KEY_MEDIAN_CHARS = "median_chars";
+    static final String KEY_MAX_CHARS = "max_chars";
+    static final String KEY_LARGE_PER_MILLE = "large_per_mille";
+    static final String KEY_LARGE_CHARS = "large_chars";
+    static final String KEY_CJK_PERCENT = "cjk_percent";
+    static final String KEY_CATEGORIES = "categories";
+    static final String KEY_COLOR_WEIGHTS = "color_weights";
+    static final String KEY_BASE_TIME = "base_time";
+
+    /*
+     * Keys of the seeding result.
+     */
+    static final String KEY_INSERTED = "inserted";
+    static final String KEY_ELAPSED_MS = "elapsed_ms";
+
+    /**
+     * The note colors offered by NoteEditor. 0 is the default, uncolored card.
+     */
+    static final int[] COLORS = {
+            0,
+            0xFFFFFFFF,  // 白色
+            0xFFA8E6CF,  // 绿色
+            0xFFFFD3B6,  // 橙色
+            0xFFB2EBF2,  // 青色
+            0xFFFFAAA5,  // 粉色
+            0xFFFFF9C4,  // 黄色
+            0xFFE1BEE7   // 紫色
+    };
+
+    // Category names, used in order. Configurations with more categories than this get
+    // numbered names for the rest.
+    private static final String[] CATEGORY_NAMES = {
+            "未分类", "工作", "生活", "学习", "旅行", "购物", "读书", "健康", "财务", "家庭"
+    };
+
+    private static final String[] CJK_WORDS = {
+            "会议记录", "会议", "记录", "项目", "计划", "周报", "购物", "清单", "学习", "笔记",
+            "想法", "待办", "读书", "旅行", "预算", "客户", "需求", "设计", "测试", "发布",
+            "总结", "今天", "明天", "下午", "完成", "讨论", "问题", "方案", "时间", "安排",
+            "重要", "提醒", "资料", "整理", "联系", "电话", "邮件", "地址", "价格", "数据"
+    };
+
+    private static final String[] LATIN_WORDS = {
+            "meeting", "notes", "project", "plan", "todo", "review", "budget", "draft", "idea",
+            "release", "design", "test", "note", "record", "deadline", "follow", "up", "call",
+            "email", "report", "weekly", "list", "shopping", "travel", "book", "summary", "the",
+            "and", "with", "for", "lorem", "ipsum", "dolor", "sit", "amet", "v2", "2026", "API"
+    };
+
+    // Base of the derived per-note seeds; any large odd constant works.
+    private static final long INDEX_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final Config mConfig;
+
+    CorpusGenerator(Config config) {
+        mConfig = config;
+    }
+
+    Config getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Returns the values of the note with the given index, ready to be inserted into the notes
+     * table. Indexes start at 0; the same index always yields the same values.
+     */
+    ContentValues valuesFor(int index) {
+        Random random = new Random(mConfig.seed ^ (index * INDEX_MULTIPLIER));
+
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, title(random, index));
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, text(random, bodyLength(random)));
+
+        // Notes are a few minutes apart, newest first, and some were edited later.
+        long created = mConfig.baseTime - index * 300000L - random.nextInt(300000);
+        long modified = random.nextInt(4) == 0
+                ? created + random.nextInt(7 * 24 * 3600) * 1000L
+                : created;
+        values.put(NotePad.Notes.COLUMN_NAME_CREATE_DATE, created);
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, modified);
+
+        values.put(NotePad.Notes.COLUMN_NAME_CATEGORY, category(random));
+        values.put(NotePad.Notes.COLUMN_NAME_COLOR, color(random));
+        return values;
+    }
+
+    /**
+     * Returns the name of the category with the given index, as used by the generator.
+     */
+    static String categoryName(int index) {
+        return index < CATEGORY_NAMES.length
+                ? CATEGORY_NAMES[index]
+                : "分类" + (index + 1);
+    }
+
+    private String title(Random random, int index) {
+        StringBuilder sb = new StringBuilder();
+        int words = 1 + random.nextInt(3);
+        appendWords(sb, random, words);
+        // The index keeps titles unique, which makes search results easy to check.
+        return sb.append(' ').append(index).toString();
+    }
+
+    /**
+     * Picks a body length in characters. Most notes follow a log-normal distribution around the
+     * median, clamped to the maximum; a configurable share of notes are very large.
+     */
+    private int bodyLength(Random random) {
+        if (mConfig.largePerMille > 0 && random.nextInt(1000) < mConfig.largePerMille) {
+            return mConfig.largeChars;
+        }
+        double length = mConfig.medianChars * Math.exp(random.nextGaussian());
+        return (int) Math.max(1, Math.min(length, mConfig.maxChars));
+    }
+
+    private String text(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 16);
+        int sentence = 0;
+        while (sb.length() < length) {
+            appendWords(sb, random, 3 + random.nextInt(8));
+            char last = sb.charAt(sb.length() - 1);
+            sb.append(last >= '\u4e00' && last <= '\u9fff' ? "。" : ". ");
+            if (++sentence % 4 == 0) {
+                sb.append('\n');
+            }
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    private void appendWords(StringBuilder sb, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(100) < mConfig.cjkPercent) {
+                // CJK text is not separated by spaces.
+                sb.append(CJK_WORDS[random.nextInt(CJK_WORDS.length)]);
+            } else {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != '\n') {
+                    sb.append(' ');
+                }
+                sb.append(LATIN_WORDS[random.nextInt(LATIN_WORDS.length)]);
+            }
+        }
+    }
+
+    /**
+     * Picks a category with a skewed distribution: low indexes are much more common, like real
+     * notebooks where a few categories hold most notes.
+     */
+    private String category(Random random) {
+        double r = random.nextDouble();
+        return categoryName((int) (r * r * mConfig.categories));
+    }
+
+    private int color(Random random) {
+        int[] weights = mConfig.colorWeights;
+        int total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        if (total <= 0) {
+            return 0;
+        }
+        int pick = random.nextInt(total);
+        for (int i = 0; i < weights.length && i < COLORS.length; i++) {
+            pick -= weights[i];
+            if (pick < 0) {
+                return COLORS[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * An immutable corpus configuration. Create one with {@link Builder}.
+     */
+    static final class Config {
+        final long seed;
+        final int start;
+        final int count;
+        final int medianChars;
+        final int maxChars;
+        final int largePerMille;
+        final int largeChars;
+        final int cjkPercent;
+        final int categories;
+        final int[] colorWeights;
+        final long baseTime;
+
+        private Config(Builder b) {
+            seed = b.mSeed;
+            start = b.mStart;
+            count = b.mCount;
+            medianChars = b.mMedianChars;
+            maxChars = b.mMaxChars;
+            largePerMille = b.mLargePerMille;
+            largeChars = b.mLargeChars;
+            cjkPercent = b.mCjkPercent;
+            categories = b.mCategories;
+            colorWeights = b.mColorWeights.clone();
+            baseTime = b.mBaseTime;
+        }
+
+        Bundle toBundle() {
+            Bundle b = new Bundle();
+            b.putLong(KEY_SEED, seed);
+            b.putInt(KEY_START, start);
+            b.putInt(KEY_COUNT, count);
+            b.putInt(KEY_MEDIAN_CHARS, medianChars);
+            b.putInt(KEY_MAX_CHARS, maxChars);
+            b.putInt(KEY_LARGE_PER_MILLE, largePerMille);
+            b.putInt(KEY_LARGE_CHARS, largeChars);
+            b.putInt(KEY_CJK_PERCENT, cjkPercent);
+            b.putInt(KEY_CATEGORIES, categories);
+            b.putIntArray(KEY_COLOR_WEIGHTS, colorWeights);
+            b.putLong(KEY_BASE_TIME, baseTime);
+            return b;
+        }
+
+        /**
+         * Reads a configuration written by {@link #toBundle()}. Missing keys keep the
+         * {@link Builder} defaults, so callers only need to pass what they change.
+         */
+        static Config fromBundle(Bundle b) {
+            Builder builder = new Builder();
+            if (b == null) {
+                return builder.build();
+            }
+            Config d = builder.build();
+            builder.setSeed(b.getLong(KEY_SEED, d.seed))
+                    .setStart(b.getInt(KEY_START, d.start))
+                    .setCount(b.getInt(KEY_COUNT, d.count))
+                    .setBodySize(b.getInt(KEY_MEDIAN_CHARS, d.medianChars),
+                            b.getInt(KEY_MAX_CHARS, d.maxChars))
+                    .setLargeNotes(b.getInt(KEY_LARGE_PER_MILLE, d.largePerMille),
+                            b.getInt(KEY_LARGE_CHARS, d.largeChars))
+                    .setCjkPercent(b.getInt(KEY_CJK_PERCENT, d.cjkPercent))
+                    .setCategories(b.getInt(KEY_CATEGORIES, d.categories))
+                    .setBaseTime(b.getLong(KEY_BASE_TIME, d.baseTime));
+            int[] weights = b.getIntArray(KEY_COLOR_WEIGHTS);
+            if (weights != null) {
+                builder.setColorWeights(weights);
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Builds a {@link Config}. The defaults describe a modest, mostly Chinese notebook: 1000
+     * notes of about 300 characters, 8 categories, and 3 notes in 4 left uncolored.
+     */
+    static final class Builder {
+        private long mSeed = 20260101L;
+        private int mStart = 0;
+        private int mCount = 1000;
+        private int mMedianChars = 300;
+        private int mMaxChars = 20000;
+        private int mLargePerMille = 0;
+        private int mLargeChars = 2 * 1024 * 1024;
+        private int mCjkPercent = 70;
+        private int mCategories = 8;
+        private int[] mColorWeights = {18, 1, 1, 1, 1, 1, 1, 0};
+        // 2026-01-01 00:00:00 UTC+8, fixed so the timestamps are reproducible too.
+        private long mBaseTime = 1767196800000L;
+
+        Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Sets the index of the first note to generate, for seeding a corpus in pieces.
+         */
+        Builder setStart(int start) {
+            if (start < 0) {
+                throw new IllegalArgumentException("start < 0");
+            }
+            mStart = start;
+            return this;
+        }
+
+        Builder setCount(int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException("count < 0");
+            }
+            mCount = count;
+            return this;
+        }
+
+        /**
+         * Sets the median and maximum body length, in characters, of ordinary notes.
+         */
+        Builder setBodySize(int medianChars, int maxChars) {
+            if (medianChars < 1 || maxChars < medianChars) {
+                throw new IllegalArgumentException("Invalid body size " + medianChars
+                        + "/" + maxChars);
+            }
+            mMedianChars = medianChars;
+            mMaxChars = maxChars;
+            return this;
+        }
+
+        /**
+         * Makes {@code perMille} notes out of every 1000 very large, with {@code chars}
+         * characters each. A CJK character takes three bytes in UTF-8, so 2M characters of
+         * mostly Chinese text is a note of about 5MB.
+         */
+        Builder setLargeNotes(int perMille, int chars) {
+            if (perMille < 0 || perMille > 1000 || chars < 1) {
+                throw new IllegalArgumentException("Invalid large notes " + perMille
+                        + "/" + chars);
+            }
+            mLargePerMille = perMille;
+            mLargeChars = chars;
+            return this;
+        }
+
+        /**
+         * Sets the share of words, in percent, drawn from the Chinese vocabulary rather than
+         * the Latin one.
+         */
+        Builder setCjkPercent(int percent) {
+            if (percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("Invalid CJK percent " + percent);
+            }
+            mCjkPercent = percent;
+            return this;
+        }
+
+        Builder setCategories(int categories) {
+            if (categories < 1) {
+                throw new IllegalArgumentException("categories < 1");
+            }
+            mCategories = categories;
+            return this;
+        }
+
+        /**
+         * Sets relative weights for the entries of {@link CorpusGenerator#COLORS}.
+         */
+        Builder setColorWeights(int[] weights) {
+            mColorWeights = weights.clone();
+            return this;
+        }
+
+        /**
+         * Sets the creation time of note 0. Later notes are older.
+         */
+        Builder setBaseTime(long baseTime) {
+            mBaseTime = baseTime;
+            return this;
+        }
+
+        Config build() {
+            return new Config(this);
+        }
+    }
+}
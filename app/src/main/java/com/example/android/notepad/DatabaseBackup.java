@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Online backup and verified restore of note_pad.db, with every note, revision and index, for
+ * {@link NotePadProvider#call(String, String, Bundle)} with {@link #METHOD_BACKUP} and
+ * {@link #METHOD_RESTORE}. Unlike the TXT export, a backup keeps every column of every note.
+ * <p>
+ * A backup first takes a consistent snapshot of the database into a staging file next to it,
+ * without holding the provider's connection, so notes can be saved while it runs:
+ * <ul>
+ * <li>From API 30 (SQLite 3.28), a separate connection runs VACUUM INTO, which reads the
+ * database in one read transaction and writes a compacted copy. In WAL mode a read
+ * transaction does not block writers.</li>
+ * <li>From API 16, checkpoints are paused and the database file and its write-ahead log are
+ * copied page for page. Without checkpoints the database file does not change, and the log
+ * is only appended to, so the copy holds every transaction committed before the log was
+ * copied; opening the copy replays them.</li>
+ * <li>On API 14 and 15 the database is not in WAL mode, and the file is copied inside a
+ * transaction, which does hold up writers until the copy is done.</li>
+ * </ul>
+ * The snapshot is checked with quick_check and then streamed to the destination, gzipped if
+ * asked. A restore decompresses the backup into a staging file, checks it, and only then closes
+ * the database and puts the copy in its place; a backup that fails the checks leaves the
+ * notes untouched.
+ */
+final class DatabaseBackup {
+
+    private static final String TAG = "DatabaseBackup";
+
+    /**
+     * The provider call() method that backs up the database. The argument is the URI to write
+     * the backup to, or null for a new file in {@link #BACKUP_DIRECTORY}.
+     */
+    static final String METHOD_BACKUP = "backup";
+
+    /**
+     * The provider call() method that replaces the database with a backup. The argument is the
+     * URI of the backup, or null for the newest file in {@link #BACKUP_DIRECTORY}.
+     */
+    static final String METHOD_RESTORE = "restore";
+
+    /**
+     * The directory, under the app's files directory, of backups made without a destination.
+     */
+    static final String BACKUP_DIRECTORY = "backups";
+
+    /**
+     * Extra of {@link #METHOD_BACKUP}: whether to gzip the backup. Defaults to true.
+     */
+    static final String EXTRA_COMPRESS = "compress";
+
+    /*
+     * Keys of the report Bundle.
+     */
+    static final String KEY_LOCATION = "location";
+    static final String KEY_SNAPSHOT = "snapshot";
+    static final String KEY_DATABASE_BYTES = "database_bytes";
+    static final String KEY_WRITTEN_BYTES = "written_bytes";
+    static final String KEY_NOTES = "notes";
+    static final String KEY_VERSION = "version";
+    static final String KEY_SNAPSHOT_MS = "snapshot_ms";
+    static final String KEY_ELAPSED_MS = "elapsed_ms";
+
+    /*
+     * Values of KEY_SNAPSHOT: how the snapshot was taken.
+     */
+    static final String SNAPSHOT_VACUUM_INTO = "vacuum_into";
+    static final String SNAPSHOT_WAL_COPY = "wal_copy";
+    static final String SNAPSHOT_LOCKED_COPY = "locked_copy";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The first two bytes of a gzip stream.
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private DatabaseBackup() {
+    }
+
+    /**
+     * Writes a backup of the database to a stream, and closes the stream.
+     *
+     * @param db       The provider's database. Its connection is only used for a moment.
+     * @param out      Where to write the backup.
+     * @param compress Whether to gzip the backup.
+     * @return The report, with the keys defined by this class.
+     * @throws IOException if the snapshot or the stream cannot be written, or the snapshot
+     *                     fails its check.
+     */
+    static Bundle backup(SQLiteDatabase db, OutputStream out, boolean compress)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        Bundle report = new Bundle();
+        File staging = new File(db.getPath() + "-backup");
+        try {
+            deleteDatabaseFiles(staging);
+            report.putString(KEY_SNAPSHOT, snapshot(db, staging));
+            report.putLong(KEY_SNAPSHOT_MS, (System.nanoTime() - startNanos) / 1000000L);
+
+            verify(staging, Integer.MAX_VALUE, report);
+            report.putLong(KEY_DATABASE_BYTES, staging.length());
+
+            CountingOutputStream counter = new CountingOutputStream(out);
+            OutputStream target = compress ? new GZIPOutputStream(counter, BUFFER_SIZE) : counter;
+            InputStream in = new FileInputStream(staging);
+            try {
+                copy(in, target);
+            } finally {
+                in.close();
+            }
+            target.close();
+            report.putLong(KEY_WRITTEN_BYTES, counter.count);
+        } finally {
+            out.close();
+            deleteDatabaseFiles(staging);
+        }
+        return finish("backup", report, startNanos);
+    }
+
+    /**
+     * Replaces the database with a backup, and closes the stream. The backup is checked before
+     * the database is touched. The database is closed while the file is replaced, so the
+     * caller must keep all other work off the database until this returns; NotePadProvider
+     * holds its database lock exclusively around it.
+     *
+     * @param helper     The provider's database helper. Its next connection opens the restored
+     *                   database, and upgrades it if the backup is from an older version.
+     * @param in         The backup, gzipped or not.
+     * @param maxVersion The newest database version this app can open.
+     * @return The report, with the keys defined by this class.
+     * @throws IOException if the backup cannot be read or the database cannot be replaced.
+     * @throws IllegalArgumentException if the stream is not a backup this app can open.
+     */
+    static Bundle restore(SQLiteOpenHelper helper, InputStream in, int maxVersion)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        Bundle report = new Bundle();
+        File database = new File(helper.getWritableDatabase().getPath());
+        File staging = new File(database.getPath() + "-restore");
+        File previous = new File(database.getPath() + "-previous");
+        try {
+            deleteDatabaseFiles(staging);
+            InputStream source = new BufferedInputStream(in, BUFFER_SIZE);
+            source.mark(2);
+            int magic = source.read() | (source.read() << 8);
+            source.reset();
+            if (magic == GZIP_MAGIC) {
+                source = new GZIPInputStream(source, BUFFER_SIZE);
+            }
+            OutputStream out = new FileOutputStream(staging);
+            try {
+                copy(source, out);
+            } finally {
+                out.close();
+            }
+            report.putLong(KEY_DATABASE_BYTES, staging.length());
+            verify(staging, maxVersion, report);
+
+            // Keeps the current database until the restored one has opened and every note
+            // came through, and puts it back otherwise.
+            helper.close();
+            moveDatabaseFiles(database, previous);
+            try {
+                if (!staging.renameTo(database)) {
+                    throw new IOException("Cannot replace " + database);
+                }
+                SQLiteDatabase db = helper.getWritableDatabase();
+                long notes = DatabaseUtils.queryNumEntries(db, NotePad.Notes.TABLE_NAME);
+                if (notes != report.getLong(KEY_NOTES)) {
+                    throw new IOException("Restored " + notes + " of "
+                            + report.getLong(KEY_NOTES) + " notes");
+                }
+            } catch (IOException | RuntimeException e) {
+                helper.close();
+                deleteDatabaseFiles(database);
+                moveDatabaseFiles(previous, database);
+                throw e;
+            }
+        } finally {
+            in.close();
+            deleteDatabaseFiles(staging);
+            deleteDatabaseFiles(previous);
+        }
+        return finish("restore", report, startNanos);
+    }
+
+    /**
+     * Formats a report in one line per item, for logs and the backup dialog.
+     */
+    static String format(Bundle report) {
+        StringBuilder sb = new StringBuilder();
+        if (report.containsKey(KEY_LOCATION)) {
+            sb.append(report.getString(KEY_LOCATION)).append('\n');
+        }
+        long bytes = report.getLong(KEY_DATABASE_BYTES);
+        long elapsed = report.getLong(KEY_ELAPSED_MS);
+        sb.append("notes=").append(report.getLong(KEY_NOTES))
+                .append(" version=").append(report.getInt(KEY_VERSION));
+        sb.append("\ndatabase=").append(bytes / 1024).append("KB");
+        if (report.containsKey(KEY_WRITTEN_BYTES)) {
+            sb.append(" written=").append(report.getLong(KEY_WRITTEN_BYTES) / 1024).append("KB");
+        }
+        if (report.containsKey(KEY_SNAPSHOT)) {
+            sb.append("\nsnapshot: ").append(report.getString(KEY_SNAPSHOT)).append(' ')
+                    .append(report.getLong(KEY_SNAPSHOT_MS)).append("ms");
+        }
+        sb.append("\ntotal: ").append(elapsed).append("ms");
+        if (elapsed > 0) {
+            sb.append(String.format(java.util.Locale.US, " (%.1f MB/s)",
+                    bytes / 1048576.0 / (elapsed / 1000.0)));
+        }
+        return sb.toString();
+    }
+
+    // Takes a consistent copy of the database into the staging file and returns how.
+    private static String snapshot(SQLiteDatabase db, File staging) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // A connection of its own, in WAL mode like the provider's; opening it without
+            // the flag would try to change the journal mode.
+            SQLiteDatabase reader = SQLiteDatabase.openDatabase(db.getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS
+                            | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+            try {
+                reader.execSQL("VACUUM INTO ?", new Object[]{staging.getPath()});
+            } finally {
+                reader.close();
+            }
+            return SNAPSHOT_VACUUM_INTO;
+        }
+
+        File database = new File(db.getPath());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                && db.isWriteAheadLoggingEnabled()) {
+            int interval = autoCheckpoint(db, 0);
+            try {
+                copy(database, staging);
+                File wal = new File(db.getPath() + "-wal");
+                if (wal.exists()) {
+                    copy(wal, new File(staging.getPath() + "-wal"));
+                }
+            } finally {
+                autoCheckpoint(db, interval);
+            }
+            return SNAPSHOT_WAL_COPY;
+        }
+
+        db.beginTransaction();
+        try {
+            copy(database, staging);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return SNAPSHOT_LOCKED_COPY;
+    }
+
+    // Sets the WAL auto-checkpoint interval of the provider's connection, where the writes and
+    // so the checkpoints happen, and returns the previous interval. Runs in a transaction so the
+    // pragmas go to that connection rather than to one of the read connections.
+    private static int autoCheckpoint(SQLiteDatabase db, int pages) {
+        db.beginTransaction();
+        try {
+            int previous = (int) DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint", null);
+            Cursor c = db.rawQuery("PRAGMA wal_autocheckpoint = " + pages, null);
+            try {
+                c.getCount();
+            } finally {
+                c.close();
+            }
+            db.setTransactionSuccessful();
+            return previous;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Opens a staged copy, folds its write-ahead log into it and checks it. Adds the number of
+    // notes and the database version to the report.
+    private static void verify(File file, int maxVersion, Bundle report) throws IOException {
+        SQLiteDatabase db;
+        try {
+            db = SQLiteDatabase.openDatabase(file.getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Not a database: " + e.getMessage());
+        }
+        try {
+            drain(db, "PRAGMA journal_mode = DELETE");
+            String integrity = DatabaseUtils.stringForQuery(db, "PRAGMA quick_check", null);
+            if (!"ok".equals(integrity)) {
+                throw new IllegalArgumentException("Integrity check failed: " + integrity);
+            }
+            int version = db.getVersion();
+            if (version < 1 || version > maxVersion) {
+                throw new IllegalArgumentException("Unsupported database version " + version);
+            }
+            if (DatabaseUtils.longForQuery(db, "SELECT count(*) FROM sqlite_master"
+                    + " WHERE type = 'table' AND name = ?",
+                    new String[]{NotePad.Notes.TABLE_NAME}) == 0) {
+                throw new IllegalArgumentException("No notes table");
+            }
+            report.putInt(KEY_VERSION, version);
+            report.putLong(KEY_NOTES, DatabaseUtils.queryNumEntries(db, NotePad.Notes.TABLE_NAME));
+        } catch (android.database.sqlite.SQLiteException e) {
+            throw new IllegalArgumentException("Not a note backup: " + e.getMessage());
+        } finally {
+            db.close();
+        }
+    }
+
+    private static Bundle finish(String operation, Bundle report, long startNanos) {
+        report.putLong(KEY_ELAPSED_MS, (System.nanoTime() - startNanos) / 1000000L);
+        Log.i(TAG, operation + ": " + format(report).replace('\n', ' '));
+        return report;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // Deletes a database file and the journal, log and shared-memory files next to it.
+    private static void deleteDatabaseFiles(File file) {
+        for (String suffix : new String[]{"", "-journal", "-wal", "-shm"}) {
+            File f = new File(file.getPath() + suffix);
+            if (f.exists() && !f.delete()) {
+                Log.w(TAG, "Cannot delete " + f);
+            }
+        }
+    }
+
+    // Renames a database file and the files next to it.
+    private static void moveDatabaseFiles(File from, File to) throws IOException {
+        for (String suffix : new String[]{"", "-journal", "-wal", "-shm"}) {
+            File f = new File(from.getPath() + suffix);
+            if (f.exists() && !f.renameTo(new File(to.getPath() + suffix))) {
+                throw new IOException("Cannot move " + f);
+            }
+        }
+    }
+
+    // Counts the bytes written through it, which for a gzipped backup are the compressed ones.
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    // Runs a statement that may return rows, stepping it to completion.
+    private static void drain(SQLiteDatabase db, String sql) {
+        Cursor c = db.rawQuery(sql, null);
+        try {
+            c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic maintenance of note_pad.db: reclaims the free pages left behind by deletes, refreshes
+ * the statistics the query planner uses, merges full-text indexes, drops old entries of the
+ * change log and checks the database for corruption. Runs from {@link MaintenanceJobService}
+ * while the device is idle and charging, or on demand through
+ * {@link NotePadProvider#call(String, String, Bundle)} with {@link #METHOD_MAINTENANCE}.
+ * <p>
+ * The database uses auto_vacuum=INCREMENTAL, set by {@link NotePadProvider.DatabaseHelper}.
+ * A database created before that setting still has auto_vacuum=NONE; the first maintenance run
+ * converts it with a full VACUUM, and later runs only free pages with incremental_vacuum.
+ * <p>
+ * A stop request is checked between steps and between incremental_vacuum chunks. The full VACUUM
+ * is only started if no stop was requested, but once it has started it cannot be stopped and
+ * runs to the end.
+ */
+final class DatabaseMaintenance {
+
+    private static final String TAG = "DatabaseMaintenance";
+
+    /**
+     * The provider call() method that runs maintenance now and returns its report.
+     */
+    static final String METHOD_MAINTENANCE = "maintenance";
+
+    /*
+     * Keys of the report Bundle.
+     */
+    static final String KEY_INTEGRITY = "integrity";
+    static final String KEY_AUTO_VACUUM = "auto_vacuum";
+    static final String KEY_PAGE_SIZE = "page_size";
+    static final String KEY_PAGES_BEFORE = "pages_before";
+    static final String KEY_PAGES_AFTER = "pages_after";
+    static final String KEY_FREE_PAGES_BEFORE = "free_pages_before";
+    static final String KEY_FREE_PAGES_AFTER = "free_pages_after";
+    static final String KEY_RECLAIMED_BYTES = "reclaimed_bytes";
+    static final String KEY_REVISIONS_COMPACTED = "revisions_compacted";
+    static final String KEY_CHANGES_TRUNCATED = "changes_truncated";
+    static final String KEY_FTS_TABLES = "fts_tables";
+    static final String KEY_STEPS = "steps";
+    static final String KEY_ELAPSED_MS = "elapsed_ms";
+    static final String KEY_STOPPED = "stopped";
+
+    // PRAGMA auto_vacuum values.
+    private static final int AUTO_VACUUM_NONE = 0;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Pages freed per incremental_vacuum statement, so a stop request is noticed between chunks.
+    private static final int VACUUM_CHUNK_PAGES = 256;
+
+    // The job that runs maintenance, and how often.
+    private static final int JOB_ID = 1;
+    private static final long JOB_PERIOD_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // Set by the job service when the system stops the job and cleared when a pass is started, so
+    // a stop that arrives before run() begins is not lost; checked between steps.
+    private static volatile boolean sStopRequested;
+
+    private DatabaseMaintenance() {
+    }
+
+    /**
+     * Schedules the maintenance job, once a day while the device is idle and charging. Does
+     * nothing before API 21, where JobScheduler does not exist, or if the job is already pending.
+     */
+    static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        scheduleJob(context);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, MaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(JOB_PERIOD_MILLIS)
+                .build());
+    }
+
+    /**
+     * Clears any earlier stop request. Called when a pass is started, before it is handed to the
+     * provider, rather than by {@link #run} itself.
+     */
+    static void clearStopRequest() {
+        sStopRequested = false;
+    }
+
+    /**
+     * Asks a running maintenance pass to stop after its current step.
+     */
+    static void requestStop() {
+        sStopRequested = true;
+    }
+
+    /**
+     * Runs one maintenance pass and logs its report.
+     *
+     * @param db        The writable database. Must not be in a transaction, since VACUUM
+     *                  cannot run inside one.
+     * @param revisions The revision store, whose histories are compacted as part of the pass.
+     * @return The report, with the keys defined by this class.
+     */
+    static Bundle run(SQLiteDatabase db, RevisionStore revisions) {
+        long startNanos = System.nanoTime();
+        Bundle report = new Bundle();
+        Bundle steps = new Bundle();
+
+        long pageSize = longPragma(db, "page_size");
+        long pagesBefore = longPragma(db, "page_count");
+        long freeBefore = longPragma(db, "freelist_count");
+        report.putLong(KEY_PAGE_SIZE, pageSize);
+        report.putLong(KEY_PAGES_BEFORE, pagesBefore);
+        report.putLong(KEY_FREE_PAGES_BEFORE, freeBefore);
+
+        // Checks the database first, so nothing is rewritten on top of a corrupt file.
+        long stepNanos = System.nanoTime();
+        String integrity = integrityCheck(db);
+        report.putString(KEY_INTEGRITY, integrity);
+        stepNanos = endStep(steps, "quick_check", stepNanos);
+        if (!"ok".equals(integrity)) {
+            Log.e(TAG, "Integrity check failed, skipping maintenance: " + integrity);
+            return finish(report, steps, startNanos, db, pageSize, pagesBefore);
+        }
+
+        // Drops old revisions and changes first, so the vacuum below reclaims their pages too.
+        if (!sStopRequested) {
+            report.putInt(KEY_REVISIONS_COMPACTED, revisions.compactAll());
+            stepNanos = endStep(steps, "compact_revisions", stepNanos);
+        }
+        if (!sStopRequested) {
+            report.putInt(KEY_CHANGES_TRUNCATED,
+                    ChangeLog.truncate(db, System.currentTimeMillis()));
+            stepNanos = endStep(steps, "truncate_changes", stepNanos);
+        }
+
+        int autoVacuum = (int) longPragma(db, "auto_vacuum");
+        report.putInt(KEY_AUTO_VACUUM, autoVacuum);
+        if (autoVacuum == AUTO_VACUUM_INCREMENTAL) {
+            if (!sStopRequested) {
+                while (!sStopRequested && longPragma(db, "freelist_count") > 0) {
+                    drain(db, "PRAGMA incremental_vacuum(" + VACUUM_CHUNK_PAGES + ")");
+                }
+                stepNanos = endStep(steps, "incremental_vacuum", stepNanos);
+            }
+        } else if (autoVacuum == AUTO_VACUUM_NONE && !sStopRequested) {
+            // Applies auto_vacuum=INCREMENTAL to an older database. Only takes effect through a
+            // full VACUUM, which also reclaims every free page. The VACUUM cannot be interrupted,
+            // so the stop flag is checked right before it; a later stop waits for it to finish.
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            report.putInt(KEY_AUTO_VACUUM, (int) longPragma(db, "auto_vacuum"));
+            stepNanos = endStep(steps, "vacuum", stepNanos);
+        }
+
+        if (!sStopRequested) {
+            List<String> ftsTables = ftsTables(db);
+            for (String table : ftsTables) {
+                // Merges all index segments into one, the 'optimize' command of FTS3/4/5.
+                db.execSQL("INSERT INTO " + table + "(" + table + ") VALUES('optimize')");
+            }
+            report.putInt(KEY_FTS_TABLES, ftsTables.size());
+            stepNanos = endStep(steps, "fts_optimize", stepNanos);
+        }
+
+        if (!sStopRequested) {
+            // PRAGMA optimize needs SQLite 3.18, which ships with API 26; ANALYZE before that.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                drain(db, "PRAGMA optimize");
+                endStep(steps, "optimize", stepNanos);
+            } else {
+                db.execSQL("ANALYZE");
+                endStep(steps, "analyze", stepNanos);
+            }
+        }
+
+        return finish(report, steps, startNanos, db, pageSize, pagesBefore);
+    }
+
+    /**
+     * Formats a report in one line per item, for logs and the debug menu.
+     */
+    static String format(Bundle report) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("integrity=").append(report.getString(KEY_INTEGRITY));
+        sb.append("\nreclaimed=").append(report.getLong(KEY_RECLAIMED_BYTES) / 1024).append("KB");
+        sb.append(" pages ").append(report.getLong(KEY_PAGES_BEFORE))
+                .append(" -> ").append(report.getLong(KEY_PAGES_AFTER));
+        sb.append(" free ").append(report.getLong(KEY_FREE_PAGES_BEFORE))
+                .append(" -> ").append(report.getLong(KEY_FREE_PAGES_AFTER));
+        sb.append("\nauto_vacuum=").append(report.getInt(KEY_AUTO_VACUUM))
+                .append(" fts_tables=").append(report.getInt(KEY_FTS_TABLES))
+                .append(" revisions_compacted=").append(report.getInt(KEY_REVISIONS_COMPACTED))
+                .append(" changes_truncated=").append(report.getInt(KEY_CHANGES_TRUNCATED));
+        Bundle steps = report.getBundle(KEY_STEPS);
+        if (steps != null) {
+            for (String step : steps.keySet()) {
+                sb.append('\n').append(step).append(": ").append(steps.getLong(step)).append("ms");
+            }
+        }
+        sb.append("\ntotal: ").append(report.getLong(KEY_ELAPSED_MS)).append("ms");
+        if (report.getBoolean(KEY_STOPPED)) {
+            sb.append(" (stopped)");
+        }
+        return sb.toString();
+    }
+
+    private static Bundle finish(Bundle report, Bundle steps, long startNanos,
+                                 SQLiteDatabase db, long pageSize, long pagesBefore) {
+        long pagesAfter = longPragma(db, "page_count");
+        report.putLong(KEY_PAGES_AFTER, pagesAfter);
+        report.putLong(KEY_FREE_PAGES_AFTER, longPragma(db, "freelist_count"));
+        report.putLong(KEY_RECLAIMED_BYTES, Math.max(0, pagesBefore - pagesAfter) * pageSize);
+        report.putBundle(KEY_STEPS, steps);
+        report.putLong(KEY_ELAPSED_MS, (System.nanoTime() - startNanos) / 1000000L);
+        report.putBoolean(KEY_STOPPED, sStopRequested);
+        Log.i(TAG, format(report).replace('\n', ' '));
+        return report;
+    }
+
+    // Records the duration of a step and returns the start time of the next one.
+    private static long endStep(Bundle steps, String name, long stepStartNanos) {
+        long now = System.nanoTime();
+        steps.putLong(name, (now - stepStartNanos) / 1000000L);
+        return now;
+    }
+
+    // Runs PRAGMA quick_check and returns "ok" or the problems it found, one per line.
+    private static String integrityCheck(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("PRAGMA quick_check", null);
+        try {
+            StringBuilder sb = new StringBuilder();
+            while (c.moveToNext()) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(c.getString(0));
+            }
+            return sb.toString();
+        } finally {
+            c.close();
+        }
+    }
+
+    // Returns the names of the full-text tables in the database.
+    private static List<String> ftsTables(SQLiteDatabase db) {
+        List<String> tables = new ArrayList<String>();
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table'"
+                + " AND sql LIKE 'CREATE VIRTUAL TABLE%USING fts%'", null);
+        try {
+            while (c.moveToNext()) {
+                tables.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        return tables;
+    }
+
+    private static long longPragma(SQLiteDatabase db, String pragma) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA " + pragma, null);
+    }
+
+    // Runs a statement that may return rows, stepping it to completion.
+    private static void drain(SQLiteDatabase db, String sql) {
+        Cursor c = db.rawQuery(sql, null);
+        try {
+            c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.CrossProcessCursorWrapper;
+import android.database.CursorWindow;
+import android.database.DatabaseUtils;
+
+/**
+ * Wraps a notes cursor whose last two columns are {@link NoteCodec#COLUMN_DATA} and
+ * {@link NoteCodec#COLUMN_ENCODING}, hides those columns and returns the decoded body from the
+ * note column. A body is only decompressed when the note column of that row is read, and the
+ * last decoded body is cached so repeated reads of the same row are free.
+ * <p>
+ * When the cursor is sent to another process, the framework fills a fresh window through
+ * {@link #fillWindow(int, CursorWindow)}, which reads through this wrapper rather than copying
+ * the raw columns of the wrapped SQLite cursor.
+ */
+class DecompressingCursor extends CrossProcessCursorWrapper {
+
+    // The number of hidden storage columns at the end of the wrapped cursor.
+    private static final int HIDDEN_COLUMNS = 2;
+
+    private final int mNoteIndex;
+    private final int mDataIndex;
+    private final int mEncodingIndex;
+    private final int mColumnCount;
+
+    // The position whose body is in mCachedNote, or -1.
+    private int mCachedPosition = -1;
+    private String mCachedNote;
+
+    /**
+     * @param cursor    A cursor whose last two columns are the data and encoding columns.
+     * @param noteIndex The index of the note column in the cursor.
+     */
+    DecompressingCursor(Cursor cursor, int noteIndex) {
+        super(cursor);
+        mNoteIndex = noteIndex;
+        mColumnCount = cursor.getColumnCount() - HIDDEN_COLUMNS;
+        mDataIndex = mColumnCount;
+        mEncodingIndex = mColumnCount + 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        String[] names = new String[mColumnCount];
+        System.arraycopy(super.getColumnNames(), 0, names, 0, mColumnCount);
+        return names;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        int index = super.getColumnIndex(columnName);
+        return index < mColumnCount ? index : -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        if (columnIndex == mNoteIndex) {
+            return note();
+        }
+        return super.getString(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        if (columnIndex == mNoteIndex) {
+            return note() == null ? Cursor.FIELD_TYPE_NULL : Cursor.FIELD_TYPE_STRING;
+        }
+        return super.getType(columnIndex);
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        if (columnIndex == mNoteIndex) {
+            return note() == null;
+        }
+        return super.isNull(columnIndex);
+    }
+
+    /**
+     * Fills the window through this wrapper, so the client sees decoded bodies and no storage
+     * columns.
+     */
+    @Override
+    public void fillWindow(int position, CursorWindow window) {
+        DatabaseUtils.cursorFillWindow(this, position, window);
+    }
+
+    /**
+     * Returns null so the framework does not share the wrapped cursor's window, which holds the
+     * raw storage columns, and calls {@link #fillWindow(int, CursorWindow)} instead.
+     */
+    @Override
+    public CursorWindow getWindow() {
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requery() {
+        // The rows may have changed, so the cached body can no longer be trusted.
+        mCachedPosition = -1;
+        mCachedNote = null;
+        return super.requery();
+    }
+
+    // Decodes the body of the current row, reusing the last result for the same row.
+    private String note() {
+        int position = getPosition();
+        if (position != mCachedPosition) {
+            Cursor c = getWrappedCursor();
+            mCachedNote = NoteCodec.decode(c.getInt(mEncodingIndex), c.getString(mNoteIndex),
+                    c.isNull(mDataIndex) ? null : c.getBlob(mDataIndex));
+            mCachedPosition = position;
+        }
+        return mCachedNote;
+    }
+}
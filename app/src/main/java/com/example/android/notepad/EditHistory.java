@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The undo and redo history of the note editor. Attached to the text as a {@link TextWatcher},
+ * it records each edit as an operation: where it happened, the text it removed and the text it
+ * inserted. Only the changed text is kept, never a copy of the note.
+ * <p>
+ * Edits that follow each other within {@link #COALESCE_MILLIS} are merged into one operation
+ * when they continue the same typing or deleting, including the replacements of the word an
+ * input method is composing, so an undo takes back a burst of typing rather than a character.
+ * A line break, an undo or a redo ends the burst.
+ * <p>
+ * The operations are kept in a ring buffer of at most {@link #MAX_OPERATIONS}. Once the text
+ * they hold exceeds {@link #MAX_CHARS}, the oldest ones are dropped; a single edit larger than
+ * that, such as a huge paste, clears the history instead. The history can be written to a file
+ * and read back, so it survives the process being killed while the editor is in the background.
+ */
+final class EditHistory implements TextWatcher {
+
+    // Edits this close together can be merged into one operation.
+    static final long COALESCE_MILLIS = 1000;
+
+    // Limits of the history.
+    static final int MAX_OPERATIONS = 500;
+    static final int MAX_CHARS = 256 * 1024;
+
+    // Identifies a history file, and its format.
+    private static final int FILE_MAGIC = 0x4e454831;
+
+    private static final class Operation {
+        int start;
+        String removed;
+        String inserted;
+        long time;
+
+        Operation(int start, String removed, String inserted, long time) {
+            this.start = start;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.time = time;
+        }
+
+        int chars() {
+            return removed.length() + inserted.length();
+        }
+    }
+
+    private final Operation[] mOperations = new Operation[MAX_OPERATIONS];
+
+    // The index of the oldest operation in mOperations, the number of operations, and the number
+    // of them that are applied: undo takes back the one before mPosition, redo applies the one at
+    // mPosition.
+    private int mFirst;
+    private int mCount;
+    private int mPosition;
+
+    // The characters held by all operations.
+    private int mChars;
+
+    // Set when the next edit must start a new operation.
+    private boolean mSealed;
+
+    // Cleared while the history itself changes the text, or the editor replaces it.
+    private boolean mRecording = true;
+
+    // The edit announced by beforeTextChanged().
+    private int mPendingStart = -1;
+    private String mPendingRemoved;
+
+    // Told whether undo or redo became available or unavailable.
+    private Runnable mOnStateChanged;
+
+    // The text before the first edit, as read back from a file.
+    private String mOriginal;
+
+    /**
+     * Sets the code to run when {@link #canUndo()} or {@link #canRedo()} change.
+     */
+    void setOnStateChangedListener(Runnable listener) {
+        mOnStateChanged = listener;
+    }
+
+    /**
+     * Turns recording on or off. The editor turns it off while it loads text that is not an
+     * edit of the user's.
+     */
+    void setRecording(boolean recording) {
+        mRecording = recording;
+        mPendingStart = -1;
+    }
+
+    boolean canUndo() {
+        return mPosition > 0;
+    }
+
+    boolean canRedo() {
+        return mPosition < mCount;
+    }
+
+    /**
+     * Forgets every operation.
+     */
+    void clear() {
+        boolean couldUndo = canUndo();
+        boolean couldRedo = canRedo();
+        Arrays.fill(mOperations, null);
+        mFirst = 0;
+        mCount = 0;
+        mPosition = 0;
+        mChars = 0;
+        mSealed = false;
+        notifyState(couldUndo, couldRedo);
+    }
+
+    /**
+     * Takes back the last applied operation.
+     *
+     * @param text The text the operations were recorded on.
+     * @return The position for the cursor after the undo, or -1 if there was nothing to undo or
+     * the text no longer matches the history, which is then cleared.
+     */
+    int undo(Editable text) {
+        if (!canUndo()) {
+            return -1;
+        }
+        Operation operation = get(mPosition - 1);
+        if (!apply(text, operation.start, operation.inserted, operation.removed)) {
+            return -1;
+        }
+        mPosition--;
+        mSealed = true;
+        notifyState(true, mPosition + 1 < mCount);
+        return operation.start + operation.removed.length();
+    }
+
+    /**
+     * Applies the operation after the last applied one again.
+     *
+     * @param text The text the operations were recorded on.
+     * @return The position for the cursor after the redo, or -1 if there was nothing to redo or
+     * the text no longer matches the history, which is then cleared.
+     */
+    int redo(Editable text) {
+        if (!canRedo()) {
+            return -1;
+        }
+        Operation operation = get(mPosition);
+        if (!apply(text, operation.start, operation.removed, operation.inserted)) {
+            return -1;
+        }
+        mPosition++;
+        mSealed = true;
+        notifyState(mPosition > 1, true);
+        return operation.start + operation.inserted.length();
+    }
+
+    // Replaces expected with replacement at start, or clears the history if the text there is
+    // not what the history expects.
+    private boolean apply(Editable text, int start, String expected, String replacement) {
+        int end = start + expected.length();
+        if (end > text.length() || !expected.contentEquals(text.subSequence(start, end))) {
+            clear();
+            return false;
+        }
+        boolean recording = mRecording;
+        mRecording = false;
+        try {
+            text.replace(start, end, replacement);
+        } finally {
+            mRecording = recording;
+        }
+        return true;
+    }
+
+    /**
+     * Records an edit at the given time, merging it into the last operation if it continues it.
+     */
+    void record(int start, String removed, String inserted, long now) {
+        if (removed.isEmpty() && inserted.isEmpty()) {
+            return;
+        }
+        if (removed.length() + inserted.length() > MAX_CHARS) {
+            // Too large to keep; the history before it cannot be undone past it either.
+            clear();
+            return;
+        }
+        boolean couldUndo = canUndo();
+        boolean couldRedo = canRedo();
+
+        // A new edit drops the operations that were undone.
+        while (mCount > mPosition) {
+            mChars -= get(mCount - 1).chars();
+            set(mCount - 1, null);
+            mCount--;
+        }
+
+        Operation last = mCount > 0 && !mSealed ? get(mCount - 1) : null;
+        int lastChars = last != null ? last.chars() : 0;
+        if (last != null && now - last.time <= COALESCE_MILLIS
+                && merge(last, start, removed, inserted)) {
+            last.time = now;
+            mChars += last.chars() - lastChars;
+            if (last.chars() == 0) {
+                // Typing deleted again; nothing is left to undo.
+                set(mCount - 1, null);
+                mCount--;
+            }
+        } else {
+            if (mCount == MAX_OPERATIONS) {
+                dropOldest();
+            }
+            set(mCount, new Operation(start, removed, inserted, now));
+            mCount++;
+            mChars += removed.length() + inserted.length();
+        }
+        mPosition = mCount;
+        mSealed = inserted.indexOf('\n') >= 0;
+        while (mChars > MAX_CHARS && mCount > 1) {
+            dropOldest();
+        }
+        notifyState(couldUndo, couldRedo);
+    }
+
+    // Merges an edit into the last operation if it continues the same typing or deleting.
+    private static boolean merge(Operation last, int start, String removed, String inserted) {
+        int lastEnd = last.start + last.inserted.length();
+        if (removed.isEmpty()) {
+            // Typing on at the end of the last insertion.
+            if (start != lastEnd || last.inserted.isEmpty() && !last.removed.isEmpty()) {
+                return false;
+            }
+            last.inserted = last.inserted + inserted;
+            return true;
+        }
+        if (!last.inserted.isEmpty()) {
+            // An input method replacing the end of the text it just inserted.
+            if (start + removed.length() != lastEnd || start < last.start
+                    || !last.inserted.endsWith(removed)) {
+                return false;
+            }
+            last.inserted = last.inserted.substring(0, start - last.start) + inserted;
+            return true;
+        }
+        if (!inserted.isEmpty()) {
+            return false;
+        }
+        if (start + removed.length() == last.start) {
+            // Backspace.
+            last.start = start;
+            last.removed = removed + last.removed;
+            return true;
+        }
+        if (start == last.start) {
+            // Forward delete.
+            last.removed = last.removed + removed;
+            return true;
+        }
+        return false;
+    }
+
+    private void dropOldest() {
+        mChars -= get(0).chars();
+        set(0, null);
+        mFirst = (mFirst + 1) % MAX_OPERATIONS;
+        mCount--;
+        mPosition--;
+    }
+
+    private Operation get(int index) {
+        return mOperations[(mFirst + index) % MAX_OPERATIONS];
+    }
+
+    private void set(int index, Operation operation) {
+        mOperations[(mFirst + index) % MAX_OPERATIONS] = operation;
+    }
+
+    private void notifyState(boolean couldUndo, boolean couldRedo) {
+        if (mOnStateChanged != null && (couldUndo != canUndo() || couldRedo != canRedo())) {
+            mOnStateChanged.run();
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        if (mRecording) {
+            mPendingStart = start;
+            mPendingRemoved = s.subSequence(start, start + count).toString();
+        }
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (mRecording && mPendingStart == start) {
+            record(start, mPendingRemoved, s.subSequence(start, start + count).toString(),
+                    SystemClock.uptimeMillis());
+        }
+        mPendingStart = -1;
+        mPendingRemoved = null;
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+    }
+
+    /**
+     * Returns the original text stored with the history, if it was read from a file by
+     * {@link #readFrom(File, CharSequence)}.
+     */
+    String getOriginal() {
+        return mOriginal;
+    }
+
+    /**
+     * Writes the history to a file, with the length and hash of the text it applies to, so
+     * {@link #readFrom(File, CharSequence)} can tell whether it still does, and the original text
+     * the editor reverts to.
+     *
+     * @throws IOException if the file cannot be written. A partly written file is deleted.
+     */
+    void writeTo(File file, CharSequence text, String original) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        boolean written = false;
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(text.length());
+            out.writeInt(text.toString().hashCode());
+            out.writeBoolean(original != null);
+            if (original != null) {
+                writeString(out, original);
+            }
+            out.writeInt(mCount);
+            out.writeInt(mPosition);
+            for (int i = 0; i < mCount; i++) {
+                Operation operation = get(i);
+                out.writeInt(operation.start);
+                writeString(out, operation.removed);
+                writeString(out, operation.inserted);
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Replaces this history with one written by {@link #writeTo(File, CharSequence, String)}.
+     *
+     * @return True if the history was read; false, leaving this history as it was, if the file
+     * does not exist, cannot be read, or was written for a different text.
+     */
+    boolean readFrom(File file, CharSequence text) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != FILE_MAGIC || in.readInt() != text.length()
+                        || in.readInt() != text.toString().hashCode()) {
+                    return false;
+                }
+                // No string in the file can be longer than the file.
+                long maxLength = file.length() / 2;
+                String original = in.readBoolean() ? readString(in, maxLength) : null;
+                int count = in.readInt();
+                int position = in.readInt();
+                if (count < 0 || count > MAX_OPERATIONS || position < 0 || position > count) {
+                    return false;
+                }
+                Operation[] operations = new Operation[count];
+                for (int i = 0; i < count; i++) {
+                    operations[i] = new Operation(in.readInt(), readString(in, maxLength),
+                            readString(in, maxLength), 0);
+                }
+
+                boolean couldUndo = canUndo();
+                boolean couldRedo = canRedo();
+                Arrays.fill(mOperations, null);
+                System.arraycopy(operations, 0, mOperations, 0, count);
+                mFirst = 0;
+                mCount = count;
+                mPosition = position;
+                mChars = 0;
+                for (Operation operation : operations) {
+                    mChars += operation.chars();
+                }
+                mSealed = true;
+                mOriginal = original;
+                notifyState(couldUndo, couldRedo);
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private static String readString(DataInputStream in, long maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new EOFException("Bad string length " + length);
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Runs {@link IncrementalExport} for the job scheduled by
+ * {@link IncrementalExport#schedule(android.content.Context)}, through the provider and on a
+ * background thread, like {@link MaintenanceJobService}.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class ExportJobService extends JobService {
+
+    private static final String TAG = "ExportJobService";
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean retry = false;
+                try {
+                    getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                            IncrementalExport.METHOD_EXPORT, null, null);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Export failed", e);
+                    retry = true;
+                }
+                jobFinished(params, retry);
+            }
+        }, TAG).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // A run is short, since it only writes the changes; an interrupted one is redone by
+        // the next run.
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * A full-text index over the titles and bodies of notes, kept in the {@link #TABLE_NAME} FTS4
+ * table. The row of a note has the note's ID as its docid and holds the output of
+ * {@link NoteTokenizer}, so words and CJK bigrams are looked up in the FTS term index instead of
+ * scanning the notes. SQLite's own tokenizers cannot split Chinese text and a custom tokenizer
+ * cannot be registered through {@link SQLiteDatabase}, so the text is tokenized in Java and the
+ * table uses the simple tokenizer, which only splits the stored text at the spaces between
+ * tokens.
+ * <p>
+ * The provider keeps the index current inside the transaction of every write that changes a
+ * title or body; a trigger removes the row of a deleted note.
+ */
+final class FullTextIndex {
+
+    static final String TABLE_NAME = "notes_fts";
+    static final String COLUMN_TITLE = "title";
+    static final String COLUMN_BODY = "body";
+
+    private FullTextIndex() {
+    }
+
+    /**
+     * Creates the index table and the trigger that removes the row of a deleted note.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_NAME + " USING fts4("
+                + COLUMN_TITLE + ", " + COLUMN_BODY + ", tokenize=simple)");
+        db.execSQL("CREATE TRIGGER notes_fts_cleanup AFTER DELETE ON "
+                + NotePad.Notes.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + TABLE_NAME
+                + " WHERE docid = old." + NotePad.Notes._ID + ";"
+                + " END");
+    }
+
+    /**
+     * Indexes every note from scratch, for example after the table was created for an existing
+     * database. Must be called inside a transaction.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(TABLE_NAME, null, null);
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME
+                + " (docid, " + COLUMN_TITLE + ", " + COLUMN_BODY + ") VALUES (?, ?, ?)");
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_TEXT_COLUMNS,
+                null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                insert.bindLong(1, c.getLong(0));
+                insert.bindString(2, titleTokens(c));
+                insert.bindString(3, bodyTokens(c));
+                insert.executeInsert();
+            }
+        } finally {
+            c.close();
+            insert.close();
+        }
+    }
+
+    /**
+     * Replaces the row of one note with its stored title and body. If the note no longer
+     * exists, its row is removed. Must be called inside a transaction.
+     */
+    static void indexNote(SQLiteDatabase db, long noteId) {
+        db.delete(TABLE_NAME, "docid = " + noteId, null);
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_TEXT_COLUMNS,
+                NotePad.Notes._ID + " = " + noteId, null, null, null, null);
+        try {
+            if (c.moveToFirst()) {
+                ContentValues values = new ContentValues();
+                values.put("docid", noteId);
+                values.put(COLUMN_TITLE, titleTokens(c));
+                values.put(COLUMN_BODY, bodyTokens(c));
+                db.insert(TABLE_NAME, null, values);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    // Columns read to build the indexed text of a note.
+    private static final String[] NOTE_TEXT_COLUMNS = {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NoteCodec.COLUMN_DATA,
+            NoteCodec.COLUMN_ENCODING
+    };
+
+    private static String titleTokens(Cursor c) {
+        String title = c.getString(1);
+        return title == null ? "" : NoteTokenizer.toIndexText(title);
+    }
+
+    private static String bodyTokens(Cursor c) {
+        String note = NoteCodec.decode(c.getInt(4), c.getString(2), c.getBlob(3));
+        return note == null ? "" : NoteTokenizer.toIndexText(note);
+    }
+}
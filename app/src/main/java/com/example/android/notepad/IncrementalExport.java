@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduled export of the notes to an append-only log, {@code files/exports/notes.jsonl}, that
+ * costs O(changes) per run. Runs once a day from {@link ExportJobService}, or on demand through
+ * {@link NotePadProvider#call(String, String, Bundle)} with {@link #METHOD_EXPORT}.
+ * <p>
+ * The log holds one JSON object per line:
+ * <ul>
+ * <li>{@code {"op":"put","_id":..,"title":..,"note":..,"category":..,"color":..,
+ * "created":..,"modified":..}}: the note as it is now, replacing any earlier put of the same
+ * ID;</li>
+ * <li>{@code {"op":"delete","_id":..,"deleted":..}}: the note was deleted;</li>
+ * <li>{@code {"op":"commit","time":..,"full":..}}: ends a run. A reader applies the records
+ * in order and ignores anything after the last commit.</li>
+ * </ul>
+ * Each run reads the {@link ChangeLog} after the sequence number the previous run stopped at,
+ * and appends a delete for each note deleted since then and a put for each note inserted or
+ * updated since then, as the note is now. A note changed again while the run reads it is
+ * exported again by the next run.
+ * <p>
+ * Once the log has grown to {@link #COMPACT_RATIO} times the size of its last full export, or
+ * a week after it, the run compacts it: it writes every note to a new log and replaces the old
+ * one. It also compacts if the change log no longer holds every change since the previous run.
+ */
+final class IncrementalExport {
+
+    private static final String TAG = "IncrementalExport";
+
+    /**
+     * The provider call() method that runs an export now and returns its report.
+     */
+    static final String METHOD_EXPORT = "export_changes";
+
+    /**
+     * Extra of {@link #METHOD_EXPORT}: whether to compact the log, writing every note, even if
+     * it is not due. Defaults to false.
+     */
+    static final String EXTRA_FULL = "full";
+
+    /**
+     * The directory, under the app's files directory, of the export log.
+     */
+    static final String EXPORT_DIRECTORY = "exports";
+
+    /**
+     * The name of the export log.
+     */
+    static final String EXPORT_FILE = "notes.jsonl";
+
+    /*
+     * Keys of the report Bundle.
+     */
+    static final String KEY_FILE = "file";
+    static final String KEY_FULL = "full";
+    static final String KEY_PUTS = "puts";
+    static final String KEY_DELETES = "deletes";
+    static final String KEY_WRITTEN_BYTES = "written_bytes";
+    static final String KEY_LOG_BYTES = "log_bytes";
+    static final String KEY_ELAPSED_MS = "elapsed_ms";
+
+    /*
+     * Values of the "op" field of a record.
+     */
+    static final String OP_PUT = "put";
+    static final String OP_DELETE = "delete";
+    static final String OP_COMMIT = "commit";
+
+    // The log is compacted once it is this many times the size of its last full export...
+    private static final int COMPACT_RATIO = 2;
+
+    // ...or this long after the last compaction.
+    private static final long COMPACT_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    // Notes read per query during a compaction, so no cursor holds the whole table.
+    private static final int PAGE_NOTES = 200;
+
+    // The job that runs the export, and how often.
+    private static final int JOB_ID = 2;
+    private static final long JOB_PERIOD_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // The state of the log, kept next to it rather than in the database, so a restored
+    // database does not bring back a stale sequence number.
+    private static final String PREFS_NAME = "incremental_export";
+    private static final String PREF_LOG_BYTES = "log_bytes";
+    private static final String PREF_FULL_BYTES = "full_bytes";
+    private static final String PREF_COMPACTED_AT = "compacted_at";
+    private static final String PREF_SEQUENCE = "sequence";
+
+    // The job and a call() may run at the same time; only one of them writes the log.
+    private static final Object sLock = new Object();
+
+    private static final String[] NOTE_COLUMNS = {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NoteCodec.COLUMN_DATA,
+            NoteCodec.COLUMN_ENCODING,
+            NotePad.Notes.COLUMN_NAME_CATEGORY,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+            NotePad.Notes.COLUMN_NAME_CREATE_DATE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+    };
+
+    private IncrementalExport() {
+    }
+
+    /**
+     * Schedules the export job, once a day. Does nothing before API 21, where JobScheduler
+     * does not exist, or if the job is already pending.
+     */
+    static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        scheduleJob(context);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, ExportJobService.class))
+                .setPeriodic(JOB_PERIOD_MILLIS)
+                .build());
+    }
+
+    /**
+     * Forgets the state of the log, so the next run compacts it. Called when the database is
+     * replaced, since its notes no longer follow from the log and its change log.
+     */
+    static void reset(Context context) {
+        synchronized (sLock) {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear().commit();
+        }
+    }
+
+    /**
+     * Runs one export: appends the changes since the last run to the log, or compacts it if
+     * that is due or asked for, and logs the report.
+     *
+     * @param context The context whose files directory holds the log.
+     * @param db      The provider's database.
+     * @param full    Whether to compact the log even if it is not due.
+     * @return The report, with the keys defined by this class.
+     * @throws IOException if the log cannot be written. The log is left as it was after the
+     *                     previous run.
+     */
+    static Bundle run(Context context, SQLiteDatabase db, boolean full) throws IOException {
+        synchronized (sLock) {
+            long startNanos = System.nanoTime();
+            long startMillis = System.currentTimeMillis();
+            SharedPreferences prefs =
+                    context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            File dir = new File(context.getFilesDir(), EXPORT_DIRECTORY);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            File log = new File(dir, EXPORT_FILE);
+
+            // Reads the last change first: a change after this point is either already
+            // written below, or written by the next run.
+            long sequence = ChangeLog.latestSequence(db);
+            long since = prefs.getLong(PREF_SEQUENCE, -1);
+
+            // A log shorter than the state says, or without state, cannot be appended to, and
+            // neither can a log whose changes since the last run are no longer all known.
+            long logBytes = prefs.getLong(PREF_LOG_BYTES, -1);
+            long fullBytes = prefs.getLong(PREF_FULL_BYTES, 0);
+            if (logBytes < 0 || log.length() < logBytes || since < 0
+                    || !ChangeLog.isComplete(db, since)) {
+                full = true;
+            } else if (logBytes >= COMPACT_RATIO * fullBytes
+                    || startMillis - prefs.getLong(PREF_COMPACTED_AT, 0)
+                    >= COMPACT_INTERVAL_MILLIS) {
+                full = true;
+            }
+
+            Bundle report = new Bundle();
+            report.putString(KEY_FILE, log.getPath());
+            report.putBoolean(KEY_FULL, full);
+            if (full) {
+                File staging = new File(dir, EXPORT_FILE + ".tmp");
+                long written = compact(db, staging, startMillis, report);
+                // Until the new state is stored, the next run has to compact again.
+                prefs.edit().remove(PREF_LOG_BYTES).commit();
+                if (!staging.renameTo(log)) {
+                    staging.delete();
+                    throw new IOException("Cannot replace " + log);
+                }
+                prefs.edit()
+                        .putLong(PREF_LOG_BYTES, written)
+                        .putLong(PREF_FULL_BYTES, written)
+                        .putLong(PREF_COMPACTED_AT, startMillis)
+                        .putLong(PREF_SEQUENCE, sequence)
+                        .commit();
+                report.putLong(KEY_WRITTEN_BYTES, written);
+                report.putLong(KEY_LOG_BYTES, written);
+            } else {
+                // Drops the tail of a run that was interrupted before it committed.
+                if (log.length() > logBytes) {
+                    RandomAccessFile file = new RandomAccessFile(log, "rw");
+                    try {
+                        file.setLength(logBytes);
+                    } finally {
+                        file.close();
+                    }
+                }
+                long written = append(db, log, startMillis, since, sequence, report);
+                prefs.edit()
+                        .putLong(PREF_LOG_BYTES, logBytes + written)
+                        .putLong(PREF_SEQUENCE, sequence)
+                        .commit();
+                report.putLong(KEY_WRITTEN_BYTES, written);
+                report.putLong(KEY_LOG_BYTES, logBytes + written);
+            }
+            report.putLong(KEY_ELAPSED_MS, (System.nanoTime() - startNanos) / 1000000L);
+            Log.i(TAG, format(report).replace('\n', ' '));
+            return report;
+        }
+    }
+
+    /**
+     * Formats a report in one line per item, for logs and the debug menu.
+     */
+    static String format(Bundle report) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(report.getBoolean(KEY_FULL) ? "full" : "incremental");
+        sb.append(": ").append(report.getInt(KEY_PUTS)).append(" notes, ")
+                .append(report.getInt(KEY_DELETES)).append(" deletes");
+        sb.append("\nwritten=").append(report.getLong(KEY_WRITTEN_BYTES) / 1024).append("KB")
+                .append(" log=").append(report.getLong(KEY_LOG_BYTES) / 1024).append("KB");
+        sb.append("\ntotal: ").append(report.getLong(KEY_ELAPSED_MS)).append("ms");
+        return sb.toString();
+    }
+
+    // Writes every note to a new log and returns its size.
+    private static long compact(SQLiteDatabase db, File staging, long startMillis,
+                                Bundle report) throws IOException {
+        FileOutputStream out = new FileOutputStream(staging);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            int puts = 0;
+            long lastId = Long.MIN_VALUE;
+            while (true) {
+                // Pages through the notes by ID, so each query is short and sees a recent state.
+                Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_COLUMNS,
+                        NotePad.Notes._ID + " > ?", new String[]{String.valueOf(lastId)},
+                        null, null, NotePad.Notes._ID, String.valueOf(PAGE_NOTES));
+                try {
+                    if (!c.moveToFirst()) {
+                        break;
+                    }
+                    do {
+                        writeRecord(writer, put(c));
+                        lastId = c.getLong(0);
+                        puts++;
+                    } while (c.moveToNext());
+                } finally {
+                    c.close();
+                }
+            }
+            writeRecord(writer, commit(startMillis, true));
+            writer.flush();
+            out.getFD().sync();
+            report.putInt(KEY_PUTS, puts);
+            report.putInt(KEY_DELETES, 0);
+        } catch (IOException e) {
+            staging.delete();
+            throw e;
+        } finally {
+            out.close();
+        }
+        return staging.length();
+    }
+
+    // Appends the deletes and then the changed notes in the change log after the sequence
+    // number since, up to until, and returns the number of bytes written; writes nothing if
+    // there are no changes.
+    private static long append(SQLiteDatabase db, File log, long startMillis, long since,
+                               long until, Bundle report) throws IOException {
+        long before = log.length();
+
+        // The last change of each note tells whether it is gone or has to be put again. The rows
+        // are looked up by ID: SQLite only takes the bare columns of a MAX() aggregate from the
+        // row with the maximum from 3.7.11 (API 16) on.
+        List<Long> changed = new ArrayList<Long>();
+        List<long[]> deleted = new ArrayList<long[]>();
+        Cursor changes = db.rawQuery("SELECT "
+                + NotePad.NoteChanges.COLUMN_NAME_NOTE_ID + ", "
+                + NotePad.NoteChanges.COLUMN_NAME_OPERATION + ", "
+                + NotePad.NoteChanges.COLUMN_NAME_TIME + ", " + NotePad.NoteChanges._ID
+                + " FROM " + NotePad.NoteChanges.TABLE_NAME
+                + " WHERE " + NotePad.NoteChanges._ID + " IN (SELECT MAX("
+                + NotePad.NoteChanges._ID + ") FROM " + NotePad.NoteChanges.TABLE_NAME
+                + " WHERE " + NotePad.NoteChanges._ID + " > ? AND " + NotePad.NoteChanges._ID
+                + " <= ? GROUP BY " + NotePad.NoteChanges.COLUMN_NAME_NOTE_ID + ")"
+                + " ORDER BY " + NotePad.NoteChanges._ID,
+                new String[]{String.valueOf(since), String.valueOf(until)});
+        try {
+            while (changes.moveToNext()) {
+                if (NotePad.NoteChanges.OPERATION_DELETE.equals(changes.getString(1))) {
+                    deleted.add(new long[]{changes.getLong(0), changes.getLong(2)});
+                } else {
+                    changed.add(changes.getLong(0));
+                }
+            }
+        } finally {
+            changes.close();
+        }
+        if (deleted.isEmpty() && changed.isEmpty()) {
+            report.putInt(KEY_PUTS, 0);
+            report.putInt(KEY_DELETES, 0);
+            return 0;
+        }
+
+        // Deletes go first: a note deleted and then created again under the same ID
+        // ends up as a put.
+        FileOutputStream out = new FileOutputStream(log, true);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            for (long[] delete : deleted) {
+                writeRecord(writer, delete(delete[0], delete[1]));
+            }
+
+            // Reads the changed notes a page at a time. A note deleted since the change log was
+            // read is skipped; its delete is written by the next run.
+            int puts = 0;
+            for (int start = 0; start < changed.size(); start += PAGE_NOTES) {
+                List<Long> page = changed.subList(start,
+                        Math.min(start + PAGE_NOTES, changed.size()));
+                Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_COLUMNS,
+                        NotePad.Notes._ID + " IN (" + TextUtils.join(",", page) + ")",
+                        null, null, null, NotePad.Notes._ID);
+                try {
+                    while (c.moveToNext()) {
+                        writeRecord(writer, put(c));
+                        puts++;
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+            writeRecord(writer, commit(startMillis, false));
+            writer.flush();
+            out.getFD().sync();
+            report.putInt(KEY_PUTS, puts);
+            report.putInt(KEY_DELETES, deleted.size());
+        } finally {
+            out.close();
+        }
+        return log.length() - before;
+    }
+
+    // The put record of the note at the cursor's position, read with NOTE_COLUMNS.
+    private static JSONObject put(Cursor c) {
+        try {
+            JSONObject record = new JSONObject();
+            record.put("op", OP_PUT);
+            record.put("_id", c.getLong(0));
+            record.put("title", c.getString(1));
+            record.put("note", NoteCodec.decode(c.getInt(4), c.getString(2), c.getBlob(3)));
+            record.put("category", c.getString(5));
+            record.put("color", c.getInt(6));
+            record.put("created", c.getLong(7));
+            record.put("modified", c.getLong(8));
+            return record;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JSONObject delete(long noteId, long deleted) {
+        try {
+            JSONObject record = new JSONObject();
+            record.put("op", OP_DELETE);
+            record.put("_id", noteId);
+            record.put("deleted", deleted);
+            return record;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JSONObject commit(long time, boolean full) {
+        try {
+            JSONObject record = new JSONObject();
+            record.put("op", OP_COMMIT);
+            record.put("time", time);
+            record.put("full", full);
+            return record;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Writes a record on its own line. JSONObject escapes line breaks inside strings.
+    private static void writeRecord(Writer writer, JSONObject record) throws IOException {
+        writer.write(record.toString());
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.os.Looper;
+import android.os.StrictMode;
+import android.util.Log;
+
+import androidx.tracing.Trace;
+
+/**
+ * Trace sections for database and file operations, and a main-thread watchdog on top of them.
+ * <p>
+ * Every provider operation and every export step is wrapped in a section, so a trace recorded
+ * with Perfetto or {@code adb shell atrace} shows exactly where the UI thread spent its time.
+ * The sections cost almost nothing when no trace is being recorded.
+ * <p>
+ * When the watchdog is enabled (debug builds, see {@link NotePadApplication}), an operation on
+ * the main thread that takes longer than {@link #getBudgetMillis()} is logged with the stack
+ * of the caller and reported to StrictMode as a slow call.
+ * <p>
+ * Usage:
+ * <pre>
+ * long start = IoTrace.begin(IoTrace.EXPORT_WRITE);
+ * try {
+ *     ...
+ * } finally {
+ *     IoTrace.end(IoTrace.EXPORT_WRITE, start);
+ * }
+ * </pre>
+ */
+final class IoTrace {
+    private static final String TAG = "IoTrace";
+
+    /*
+     * Section names. Trace section names are limited to 127 characters.
+     */
+    static final String PROVIDER_QUERY = "NotePadProvider.query";
+    static final String PROVIDER_INSERT = "NotePadProvider.insert";
+    static final String PROVIDER_BULK_INSERT = "NotePadProvider.bulkInsert";
+    static final String PROVIDER_APPLY_BATCH = "NotePadProvider.applyBatch";
+    static final String PROVIDER_SEED = "NotePadProvider.seedCorpus";
+    static final String PROVIDER_UPDATE = "NotePadProvider.update";
+    static final String PROVIDER_DELETE = "NotePadProvider.delete";
+    static final String PROVIDER_OPEN_FILE = "NotePadProvider.openTypedAssetFile";
+    static final String PROVIDER_WRITE_PIPE = "NotePadProvider.writeDataToPipe";
+    static final String PROVIDER_MAINTENANCE = "NotePadProvider.maintenance";
+    static final String PROVIDER_BACKUP = "NotePadProvider.backup";
+    static final String PROVIDER_RESTORE = "NotePadProvider.restore";
+    static final String PROVIDER_EXPORT = "NotePadProvider.exportChanges";
+    static final String PROVIDER_SYNC = "NotePadProvider.sync";
+    static final String EXPORT_QUERY = "Export.query";
+    static final String EXPORT_WRITE = "Export.writeFile";
+    static final String EDITOR_SAVE_HISTORY = "NoteEditor.saveHistory";
+
+    /**
+     * The default main-thread budget: one frame at 60Hz.
+     */
+    static final long DEFAULT_BUDGET_MILLIS = 16;
+
+    private static volatile boolean sWatchdogEnabled;
+    private static volatile long sBudgetNanos = DEFAULT_BUDGET_MILLIS * 1000000L;
+
+    // This class cannot be instantiated
+    private IoTrace() {
+    }
+
+    /**
+     * Turns the main-thread watchdog on or off. Trace sections are emitted either way.
+     */
+    static void setWatchdogEnabled(boolean enabled) {
+        sWatchdogEnabled = enabled;
+    }
+
+    static long getBudgetMillis() {
+        return sBudgetNanos / 1000000L;
+    }
+
+    static void setBudgetMillis(long millis) {
+        sBudgetNanos = millis * 1000000L;
+    }
+
+    /**
+     * Opens a trace section.
+     *
+     * @return The start time, to pass to {@link #end(String, long)}.
+     */
+    static long begin(String section) {
+        Trace.beginSection(section);
+        return System.nanoTime();
+    }
+
+    /**
+     * Closes the section opened by {@link #begin(String)} and, if the watchdog is on, checks the
+     * elapsed time against the main-thread budget. Must be called on the thread that called
+     * begin(), since trace sections nest per thread.
+     */
+    static void end(String section, long startNanos) {
+        Trace.endSection();
+
+        if (!sWatchdogEnabled) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (elapsedNanos > sBudgetNanos && Looper.myLooper() == Looper.getMainLooper()) {
+            String message = section + " took " + elapsedNanos / 1000000L
+                    + "ms on the main thread (budget " + getBudgetMillis() + "ms)";
+
+            // The Throwable records where the operation was called from.
+            Log.w(TAG, message, new Throwable("Main-thread I/O"));
+            StrictMode.noteSlowCall(message);
+        }
+    }
+}
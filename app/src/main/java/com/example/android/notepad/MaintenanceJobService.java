@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Runs {@link DatabaseMaintenance} for the job scheduled by
+ * {@link DatabaseMaintenance#schedule(android.content.Context)}. The work goes through the
+ * provider, so it uses the provider's database connection, and runs on a background thread
+ * since onStartJob() is called on the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+
+    private static final String TAG = "MaintenanceJobService";
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        DatabaseMaintenance.clearStopRequest();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                            DatabaseMaintenance.METHOD_MAINTENANCE, null, null);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Database maintenance failed", e);
+                }
+                jobFinished(params, false);
+            }
+        }, TAG).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The device left the idle or charging state; stops after the current step and lets the
+        // scheduler run the job again later.
+        DatabaseMaintenance.requestStop();
+        return true;
+    }
+}
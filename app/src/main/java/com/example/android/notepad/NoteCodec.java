@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentValues;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes note bodies for storage. Bodies longer than a threshold are stored Deflate-compressed
+ * in the hidden {@link #COLUMN_DATA} BLOB column, with {@link NotePad.Notes#COLUMN_NAME_NOTE}
+ * set to NULL and {@link #COLUMN_ENCODING} recording how the body was stored. Shorter bodies,
+ * and bodies that do not compress well, stay in the note column as plain TEXT.
+ * <p>
+ * Every write that sets the note also sets {@link NotePad.Notes#COLUMN_NAME_SNIPPET}, so the
+ * notes list can show a preview without reading, let alone decompressing, the body.
+ */
+final class NoteCodec {
+
+    /**
+     * Hidden column holding the compressed body. NULL for plain rows.
+     * <P>Type: BLOB</P>
+     */
+    static final String COLUMN_DATA = "note_data";
+
+    /**
+     * Hidden column recording how the body is stored; one of the ENCODING_ constants.
+     * <P>Type: INTEGER</P>
+     */
+    static final String COLUMN_ENCODING = "note_encoding";
+
+    /*
+     * Body encodings. Rows written before compression existed have ENCODING_PLAIN, the column
+     * default, so they need no migration.
+     */
+    static final int ENCODING_PLAIN = 0;
+    static final int ENCODING_DEFLATE = 1;
+
+    // Reserved for zstd. The platform does not ship a zstd codec, so nothing writes it yet.
+    static final int ENCODING_ZSTD = 2;
+
+    /**
+     * Bodies with at least this many characters are considered for compression. Shorter bodies
+     * fit in a page or two either way and are not worth the CPU.
+     */
+    static final int DEFAULT_THRESHOLD_CHARS = 2048;
+
+    /**
+     * The number of characters of the body kept in the snippet column.
+     */
+    static final int SNIPPET_LENGTH = 200;
+
+    // A compressed body is only kept if it is at most this fraction of the UTF-8 size.
+    private static final float MAX_RATIO = 0.9f;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private NoteCodec() {
+    }
+
+    /**
+     * Rewrites the note in a values map for storage: sets the snippet, and either keeps the body
+     * as plain text or moves it, compressed, into {@link #COLUMN_DATA}. Does nothing if the map
+     * does not contain the note column.
+     *
+     * @param values         The values to be inserted or updated; changed in place.
+     * @param thresholdChars Bodies shorter than this are stored as plain text.
+     */
+    static void encode(ContentValues values, int thresholdChars) {
+        if (!values.containsKey(NotePad.Notes.COLUMN_NAME_NOTE)) {
+            return;
+        }
+        String note = values.getAsString(NotePad.Notes.COLUMN_NAME_NOTE);
+        values.put(NotePad.Notes.COLUMN_NAME_SNIPPET, snippet(note));
+
+        if (note != null && note.length() >= thresholdChars) {
+            byte[] plain = note.getBytes(UTF_8);
+            byte[] compressed = deflate(plain);
+            if (compressed.length <= plain.length * MAX_RATIO) {
+                values.putNull(NotePad.Notes.COLUMN_NAME_NOTE);
+                values.put(COLUMN_DATA, compressed);
+                values.put(COLUMN_ENCODING, ENCODING_DEFLATE);
+                return;
+            }
+        }
+        values.putNull(COLUMN_DATA);
+        values.put(COLUMN_ENCODING, ENCODING_PLAIN);
+    }
+
+    /**
+     * Returns the note body of a stored row.
+     *
+     * @param encoding The value of {@link #COLUMN_ENCODING}.
+     * @param note     The value of the note column, used for plain rows.
+     * @param data     The value of {@link #COLUMN_DATA}, used for compressed rows.
+     */
+    static String decode(int encoding, String note, byte[] data) {
+        switch (encoding) {
+            case ENCODING_PLAIN:
+                return note;
+            case ENCODING_DEFLATE:
+                return data == null ? null : new String(inflate(data), UTF_8);
+            default:
+                throw new IllegalStateException("Unsupported note encoding " + encoding);
+        }
+    }
+
+    /**
+     * Returns the first {@link #SNIPPET_LENGTH} characters of a body, without splitting a
+     * surrogate pair.
+     */
+    static String snippet(String note) {
+        if (note == null || note.length() <= SNIPPET_LENGTH) {
+            return note;
+        }
+        int end = SNIPPET_LENGTH;
+        if (Character.isHighSurrogate(note.charAt(end - 1))) {
+            end--;
+        }
+        return note.substring(0, end);
+    }
+
+    static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed note");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed note", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
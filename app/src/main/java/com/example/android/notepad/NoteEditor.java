@@ -22,6 +22,7 @@ import android.app.Activity;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.ComponentName;
+import android.content.ContentUris;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -33,14 +34,31 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.text.style.BackgroundColorSpan;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import androidx.tracing.Trace;
+
 /**
  * This Activity handles "editing" a note, where editing is responding to
  * {@link Intent#ACTION_VIEW} (request to view data), edit a note
@@ -70,6 +88,26 @@ public class NoteEditor extends Activity {
     // A label for the saved state of the activity
     private static final String ORIGINAL_CONTENT = "origContent";
 
+    // 撤销历史在进程被回收时写入的目录，每篇笔记一个文件
+    private static final String HISTORY_DIR = "edit_history";
+
+    // 大笔记当前显示的一段的起点
+    private static final String WINDOW_START = "windowStart";
+
+    // 超过这个长度的笔记按大笔记编辑：正文保存在 PieceTable 中，编辑框只显示其中一段，
+    // 排版和绘制只涉及这一段
+    static final int LARGE_NOTE_CHARS = 256 * 1024;
+
+    // 大笔记每次显示的长度，按整行对齐
+    static final int WINDOW_CHARS = 32 * 1024;
+
+    // 查找词或正文停止变化这么久后才重新查找
+    private static final long SEARCH_DELAY_MILLIS = 250;
+
+    // 查找结果的高亮颜色：当前结果和其余结果
+    private static final int CURRENT_MATCH_COLOR = 0xFFFFA726;
+    private static final int MATCH_COLOR = 0x66FFEB3B;
+
     // This Activity can be started by more than one action. Each action is represented
     // as a "state" constant
     private static final int STATE_EDIT = 0;
@@ -83,6 +121,23 @@ public class NoteEditor extends Activity {
     private EditText mTitleText;  // 添加标题输入框
     private String mOriginalContent;
     private String mCurrentCategory = "未分类";  // 当前分类
+    private final EditHistory mHistory = new EditHistory();  // 撤销与重做历史
+    private boolean mRestoreHistory;  // 下次 onResume 时从文件恢复撤销历史
+    private PieceTable mLargeNote;  // 大笔记的正文，普通笔记为 null
+    private int mWindowStart;  // 编辑框显示的一段在正文中的起点
+    private int mSavedGeneration;  // 上次保存时正文的编辑次数
+    private String mSavedTitle;  // 上次保存的标题
+    private String mSavedText;  // 上次保存的正文，大笔记为 null（由 mSavedGeneration 判断）
+    private boolean mLoadingText;  // 载入编辑框的文本不是用户的编辑，不写入正文
+    private View mFindBar;  // 查找栏
+    private EditText mFindQuery;
+    private CheckBox mFindRegex;
+    private TextView mFindCount;
+    private NoteSearch mSearch;  // 在后台线程查找正文
+    private int mCurrentMatch = -1;  // 当前查找结果的序号，-1 表示还没有选中
+    private final ArrayList<Object> mHighlights = new ArrayList<Object>();  // 可见区域内的高亮
+    private final Handler mHandler = new Handler();
+    private final Runnable mStartSearch = this::startSearch;
 
     /**
      * Defines a custom EditText View that draws lines between each line of text that is displayed.
@@ -116,10 +171,20 @@ public class NoteEditor extends Activity {
             Rect r = mRect;
             Paint paint = mPaint;
 
+            // Only the lines inside the area being drawn need a line under them; for a long
+            // note, that is a screenful out of thousands.
+            int first = 0;
+            Layout layout = getLayout();
+            if (layout != null && canvas.getClipBounds(r)) {
+                int top = getExtendedPaddingTop();
+                first = layout.getLineForVertical(r.top - top);
+                count = Math.min(count, layout.getLineForVertical(r.bottom - top) + 1);
+            }
+
             /*
-             * Draws one line in the rectangle for every line of text in the EditText
+             * Draws one line in the rectangle for every visible line of text in the EditText
              */
-            for (int i = 0; i < count; i++) {
+            for (int i = first; i < count; i++) {
 
                 // Gets the baseline coordinates for the current line of text
                 int baseline = getLineBounds(i, r);
@@ -250,7 +315,74 @@ public class NoteEditor extends Activity {
          */
         if (savedInstanceState != null) {
             mOriginalContent = savedInstanceState.getString(ORIGINAL_CONTENT);
+            mWindowStart = savedInstanceState.getInt(WINDOW_START);
+            mRestoreHistory = true;
         }
+
+        // 记录正文的每次编辑；onResume 载入笔记后才开始记录，
+        // 这样系统恢复 EditText 状态时写回的文本不会被当作一次编辑
+        mHistory.setRecording(false);
+        mHistory.setOnStateChangedListener(this::invalidateOptionsMenu);
+        mText.addTextChangedListener(mHistory);
+
+        // 大笔记在编辑框中的修改同步写入 PieceTable，只复制修改的文字；
+        // 查找栏打开时，正文修改后重新查找
+        mText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                if (mLoadingText) {
+                    return;
+                }
+                if (mLargeNote != null) {
+                    mLargeNote.replace(mWindowStart + start, mWindowStart + start + before,
+                            s.subSequence(start, start + count));
+                }
+                if (isFindBarShown()) {
+                    scheduleSearch();
+                }
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+
+        // 查找栏：查找词或“正则”改变后重新查找，滚动时只高亮可见区域内的结果
+        mSearch = new NoteSearch(this::onSearchUpdated);
+        mFindBar = findViewById(R.id.find_bar);
+        mFindQuery = (EditText) findViewById(R.id.find_query);
+        mFindRegex = (CheckBox) findViewById(R.id.find_regex);
+        mFindCount = (TextView) findViewById(R.id.find_count);
+        mFindQuery.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                scheduleSearch();
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+        mFindQuery.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                moveToMatch(1);
+                return true;
+            }
+            return false;
+        });
+        mFindRegex.setOnCheckedChangeListener((button, checked) -> scheduleSearch());
+        findViewById(R.id.find_previous).setOnClickListener(v -> moveToMatch(-1));
+        findViewById(R.id.find_next).setOnClickListener(v -> moveToMatch(1));
+        findViewById(R.id.find_close).setOnClickListener(v -> hideFindBar());
+        mText.getViewTreeObserver().addOnScrollChangedListener(this::updateHighlights);
     }
 
     /**
@@ -298,6 +430,7 @@ public class NoteEditor extends Activity {
                 // Set the title of the Activity to include the note title
                 int colTitleIndex = mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_TITLE);
                 String title = mCursor.getString(colTitleIndex);
+                mSavedTitle = title;
                 Resources res = getResources();
                 String text = String.format(res.getString(R.string.title_edit), title);
                 setTitle(text);
@@ -335,11 +468,49 @@ public class NoteEditor extends Activity {
             // the text cursor's position.
             int colNoteIndex = mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_NOTE);
             String note = mCursor.getString(colNoteIndex);
+            mSavedText = note != null && note.length() >= LARGE_NOTE_CHARS ? null : note;
+
+            // 大笔记只把当前一段放进编辑框
+            if (note != null && note.length() >= LARGE_NOTE_CHARS) {
+                mLargeNote = new PieceTable(note);
+                mSavedGeneration = mLargeNote.getGeneration();
+                mWindowStart = mLargeNote.lineStart(Math.min(mWindowStart, note.length()));
+                note = windowText();
+            } else {
+                mLargeNote = null;
+                mWindowStart = 0;
+            }
+
+            boolean changed = !TextUtils.equals(mText.getText(), note);
+            mHistory.setRecording(false);
+            mLoadingText = true;
             mText.setTextKeepState(note);
+            mLoadingText = false;
+
+            // 进程被回收后重建时，从文件恢复撤销历史和原始内容；
+            // 笔记在别处被改过时，历史对不上当前文本，只能清空
+            if (mRestoreHistory) {
+                mRestoreHistory = false;
+                if (mHistory.readFrom(historyFile(), note)) {
+                    if (mOriginalContent == null) {
+                        mOriginalContent = mHistory.getOriginal();
+                    }
+                } else {
+                    mHistory.clear();
+                }
+            } else if (changed) {
+                mHistory.clear();
+            }
+            mHistory.setRecording(true);
 
             // Stores the original note text, to allow the user to revert changes.
             if (mOriginalContent == null) {
-                mOriginalContent = note;
+                mOriginalContent = mLargeNote != null ? mLargeNote.toString() : note;
+            }
+
+            // 重新载入的正文没有高亮，重新查找
+            if (isFindBarShown()) {
+                startSearch();
             }
 
             /*
@@ -352,6 +523,20 @@ public class NoteEditor extends Activity {
         }
     }
 
+    /**
+     * Called when the window gains focus, which happens once the editor's first frame is on
+     * screen. Ends the trace section NotesList starts when a note is clicked. Ending a section
+     * that was never started is harmless, so this does not need to know how the editor was
+     * launched.
+     */
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+        super.onWindowFocusChanged(hasFocus);
+        if (hasFocus) {
+            Trace.endAsyncSection(NotesList.TRACE_OPEN_NOTE, 0);
+        }
+    }
+
     /**
      * This method is called when the Activity loses focus during its normal operation, and is then
      * later on killed. The Activity has a chance to save its state so that the system can restore
@@ -363,14 +548,258 @@ public class NoteEditor extends Activity {
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        // Save away the original text, so we still have it if the activity
-        // needs to be killed while paused.
-        outState.putString(ORIGINAL_CONTENT, mOriginalContent);
+        // Save away the undo history and the original text, so we still have them if the
+        // activity needs to be killed while paused. They go to a file rather than the Bundle,
+        // which would otherwise carry another copy of the whole note. If the file cannot be
+        // written, the original text goes in the Bundle and only the history is lost.
+        // The original text of a large note is not kept: writing megabytes here would stall the
+        // main thread, and the Bundle could not hold them. Reverting then goes back to the last
+        // saved text.
+        outState.putInt(WINDOW_START, mWindowStart);
+        if (mUri == null) {
+            return;
+        }
+        String original = mLargeNote == null ? mOriginalContent : null;
+        long startNanos = IoTrace.begin(IoTrace.EDITOR_SAVE_HISTORY);
+        try {
+            mHistory.writeTo(historyFile(), mText.getText(), original);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save the edit history", e);
+            outState.putString(ORIGINAL_CONTENT, original);
+        } finally {
+            IoTrace.end(IoTrace.EDITOR_SAVE_HISTORY, startNanos);
+        }
+    }
+
+    /**
+     * Returns the part of a large note shown in the editor: about {@link #WINDOW_CHARS}
+     * characters from {@link #mWindowStart}, up to the end of a line.
+     */
+    private String windowText() {
+        int end = Math.min(mLargeNote.length(), mWindowStart + WINDOW_CHARS);
+        return mLargeNote.subSequence(mWindowStart, mLargeNote.lineEnd(end)).toString();
+    }
+
+    /**
+     * Shows the part of a large note starting at the line containing start. The undo history
+     * is cleared, since its positions belong to the part shown before.
+     */
+    private void showWindow(int start) {
+        mWindowStart = mLargeNote.lineStart(start);
+        mHistory.setRecording(false);
+        mLoadingText = true;
+        mText.setText(windowText());
+        mLoadingText = false;
+        mHistory.setRecording(true);
+        mHistory.clear();
+        mText.setSelection(0);
+        invalidateOptionsMenu();
+    }
+
+    private boolean isFindBarShown() {
+        return mFindBar != null && mFindBar.getVisibility() == View.VISIBLE;
+    }
+
+    /**
+     * Shows the find bar and searches for the query left in it, if any.
+     */
+    private void showFindBar() {
+        mFindBar.setVisibility(View.VISIBLE);
+        mFindQuery.requestFocus();
+        mFindQuery.selectAll();
+        startSearch();
+    }
+
+    /**
+     * Hides the find bar, stops searching and removes the highlights.
+     */
+    private void hideFindBar() {
+        mFindBar.setVisibility(View.GONE);
+        mHandler.removeCallbacks(mStartSearch);
+        mSearch.cancel();
+        mCurrentMatch = -1;
+        updateHighlights();
+        mText.requestFocus();
+    }
+
+    /**
+     * Starts searching again shortly, once the query or the note has stopped changing. The
+     * matches found so far no longer apply, so they are dropped now.
+     */
+    private void scheduleSearch() {
+        mHandler.removeCallbacks(mStartSearch);
+        mSearch.cancel();
+        mCurrentMatch = -1;
+        updateHighlights();
+        mHandler.postDelayed(mStartSearch, SEARCH_DELAY_MILLIS);
+    }
+
+    /**
+     * Searches a snapshot of the note for the query in the find bar, in the background. A large
+     * note's snapshot shares the text loaded from the provider instead of copying it.
+     */
+    private void startSearch() {
+        mHandler.removeCallbacks(mStartSearch);
+        mCurrentMatch = -1;
+        String query = mFindQuery.getText().toString();
+        if (query.isEmpty()) {
+            mSearch.cancel();
+            onSearchUpdated();
+            return;
+        }
+        CharSequence snapshot = mLargeNote != null
+                ? mLargeNote.snapshot() : mText.getText().toString();
+        if (mSearch.start(snapshot, query, mFindRegex.isChecked())) {
+            onSearchUpdated();
+        } else {
+            updateHighlights();
+            mFindCount.setText("无效");
+        }
+    }
+
+    /**
+     * Called as matches arrive. Shows the count and highlights the matches. While the query is
+     * being typed, also selects the first match after the cursor once it is found, or the first
+     * match in the note if there is none after the cursor. A search started by an edit of the
+     * note leaves the selection and the shown part of a large note alone, so the next key typed
+     * does not replace a match and the undo history is kept.
+     */
+    private void onSearchUpdated() {
+        int count = mSearch.getMatchCount();
+        if (mCurrentMatch < 0 && count > 0 && mFindQuery.hasFocus()) {
+            int index = mSearch.indexOfMatchAtOrAfter(mWindowStart + mText.getSelectionStart());
+            if (index < count) {
+                showMatch(index);
+            } else if (mSearch.isDone()) {
+                showMatch(0);
+            }
+        }
+        updateFindCount();
+        updateHighlights();
+    }
+
+    private void updateFindCount() {
+        int count = mSearch.getMatchCount();
+        if (mFindQuery.length() == 0) {
+            mFindCount.setText("");
+        } else {
+            String total = count + (mSearch.isTruncated() || !mSearch.isDone() ? "+" : "");
+            mFindCount.setText((mCurrentMatch + 1) + "/" + total);
+        }
+    }
+
+    /**
+     * Moves to the next match if direction is 1, or the previous one if it is -1, going round
+     * at either end.
+     */
+    private void moveToMatch(int direction) {
+        int count = mSearch.getMatchCount();
+        if (count == 0) {
+            return;
+        }
+        int index = mCurrentMatch < 0
+                ? (direction > 0 ? 0 : count - 1) : (mCurrentMatch + direction + count) % count;
+        showMatch(index);
+        updateFindCount();
+        updateHighlights();
+    }
+
+    /**
+     * Selects a match and scrolls it into view, first showing the part of a large note that
+     * contains it.
+     */
+    private void showMatch(int index) {
+        mCurrentMatch = index;
+        int start = mSearch.getMatchStart(index);
+        int end = mSearch.getMatchEnd(index);
+        if (mLargeNote != null && (start < mWindowStart || end > mWindowStart + mText.length())) {
+            showWindow(Math.max(0, start - WINDOW_CHARS / 4));
+        }
+        start = Math.min(start - mWindowStart, mText.length());
+        end = Math.min(end - mWindowStart, mText.length());
+        if (start >= 0) {
+            mText.setSelection(start, end);
+            mText.bringPointIntoView(start);
+        }
+    }
+
+    /**
+     * Highlights the matches on the lines now visible in the editor, and removes the
+     * highlights of the others. A note can have thousands of matches; only a screenful of them
+     * is ever highlighted.
+     */
+    private void updateHighlights() {
+        Editable text = mText.getText();
+        for (Object highlight : mHighlights) {
+            text.removeSpan(highlight);
+        }
+        mHighlights.clear();
+
+        Layout layout = mText.getLayout();
+        int count = mSearch != null && isFindBarShown() ? mSearch.getMatchCount() : 0;
+        if (layout == null || count == 0) {
+            return;
+        }
+        int top = mText.getScrollY() - mText.getExtendedPaddingTop();
+        int visibleStart = mWindowStart
+                + layout.getLineStart(layout.getLineForVertical(Math.max(0, top)));
+        int visibleEnd = mWindowStart
+                + layout.getLineEnd(layout.getLineForVertical(top + mText.getHeight()));
+
+        // The match before the first one starting on screen may end on screen.
+        int index = Math.max(0, mSearch.indexOfMatchAtOrAfter(visibleStart) - 1);
+        for (; index < count; index++) {
+            int start = Math.max(mSearch.getMatchStart(index), visibleStart);
+            int end = Math.min(mSearch.getMatchEnd(index), visibleEnd);
+            if (start >= visibleEnd) {
+                break;
+            }
+            start = Math.min(start - mWindowStart, text.length());
+            end = Math.min(end - mWindowStart, text.length());
+            if (start >= end) {
+                continue;
+            }
+            Object highlight = new BackgroundColorSpan(
+                    index == mCurrentMatch ? CURRENT_MATCH_COLOR : MATCH_COLOR);
+            text.setSpan(highlight, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            mHighlights.add(highlight);
+        }
+    }
+
+    /**
+     * Returns the note text to save. For a large note that has not been edited since it was
+     * last saved, this is null, so the whole note is neither copied nor written again.
+     */
+    private String unsavedNoteText() {
+        if (mLargeNote == null) {
+            return mText.getText().toString();
+        }
+        if (mState == STATE_EDIT && mLargeNote.getGeneration() == mSavedGeneration) {
+            return null;
+        }
+        return mLargeNote.toString();
+    }
+
+    /**
+     * Returns the file the undo history of this note is saved to.
+     */
+    private File historyFile() {
+        return new File(new File(getFilesDir(), HISTORY_DIR),
+                String.valueOf(ContentUris.parseId(mUri)));
     }
     
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // 编辑结束后撤销历史不再需要
+        if (isFinishing() && mUri != null) {
+            historyFile().delete();
+        }
+        // 停止查找
+        mHandler.removeCallbacks(mStartSearch);
+        if (mSearch != null) {
+            mSearch.shutdown();
+        }
         // 关闭 Cursor 释放资源
         if (mCursor != null) {
             mCursor.close();
@@ -403,8 +832,8 @@ public class NoteEditor extends Activity {
         if (mCursor != null) {
 
             // Get the current note text.
-            String text = mText.getText().toString();
-            int length = text.length();
+            String text = unsavedNoteText();
+            int length = mLargeNote != null ? mLargeNote.length() : text.length();
             
             // 获取标题
             String title = "";
@@ -480,14 +909,30 @@ public class NoteEditor extends Activity {
 
         menu.add(0, Menu.FIRST + 10, 0, "选择颜色");
         menu.add(0, Menu.FIRST + 11, 0, "设置分类");
+        menu.add(0, Menu.FIRST + 12, 0, "历史版本");
+        menu.add(0, Menu.FIRST + 13, 0, "上一段");
+        menu.add(0, Menu.FIRST + 14, 0, "下一段");
+        menu.add(0, Menu.FIRST + 15, 0, "查找").setAlphabeticShortcut('f');
 
         return super.onCreateOptionsMenu(menu);
     }
 
     @Override
     public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.menu_undo).setEnabled(mHistory.canUndo());
+        menu.findItem(R.id.menu_redo).setEnabled(mHistory.canRedo());
+        menu.findItem(Menu.FIRST + 13).setVisible(mLargeNote != null && mWindowStart > 0);
+        menu.findItem(Menu.FIRST + 14).setVisible(mLargeNote != null
+                && mWindowStart + mText.length() < mLargeNote.length());
+
         // Check if note has changed and enable/disable the revert option
         if (mCursor == null || !mCursor.moveToFirst()) return true;
+        if (mLargeNote != null) {
+            // 大笔记不逐字比较整篇正文，只看保存后是否编辑过
+            menu.findItem(R.id.menu_revert).setVisible(
+                    mLargeNote.getGeneration() != mSavedGeneration);
+            return super.onPrepareOptionsMenu(menu);
+        }
         int colNoteIndex = mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_NOTE);
         String savedNote = mCursor.getString(colNoteIndex);
         String currentNote = mText.getText().toString();
@@ -513,7 +958,7 @@ public class NoteEditor extends Activity {
         // Handle all of the possible menu actions.
         int id = item.getItemId();
         if(id== R.id.menu_save) {
-            String text = mText.getText().toString();
+            String text = unsavedNoteText();
             String title = "";
             if (mTitleText != null) {
                 title = mTitleText.getText().toString().trim();
@@ -531,6 +976,13 @@ public class NoteEditor extends Activity {
             finish();
         } else if (id == R.id.menu_revert) {
             cancelNote();
+        } else if (id == R.id.menu_undo || id == R.id.menu_redo) {
+            int position = id == R.id.menu_undo
+                    ? mHistory.undo(mText.getText()) : mHistory.redo(mText.getText());
+            if (position >= 0) {
+                mText.setSelection(position);
+            }
+            return true;
         } else if (id == android.R.id.home) {  // 处理返回按钮
             finish();
             return true;
@@ -573,6 +1025,19 @@ public class NoteEditor extends Activity {
         } else if (id == Menu.FIRST + 11) {  // 设置分类
             showCategoryDialog();
             return true;
+        } else if (id == Menu.FIRST + 12) {  // 历史版本
+            showRevisionsDialog();
+            return true;
+        } else if (id == Menu.FIRST + 13) {  // 上一段，与当前一段重叠四分之一
+            showWindow(Math.max(0, mWindowStart - WINDOW_CHARS * 3 / 4));
+            return true;
+        } else if (id == Menu.FIRST + 14) {  // 下一段，与当前一段重叠四分之一
+            showWindow(Math.max(mWindowStart + mText.length() - WINDOW_CHARS / 4,
+                    mWindowStart + 1));
+            return true;
+        } else if (id == Menu.FIRST + 15) {  // 查找
+            showFindBar();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -651,6 +1116,11 @@ public class NoteEditor extends Activity {
      */
     private final void updateNote(String text, String title) {
 
+        // 没有未保存的修改时不写入，修改时间、列表顺序、变更日志和同步状态都保持不变
+        if (mState == STATE_EDIT && !hasUnsavedChanges(text, title)) {
+            return;
+        }
+
         // Sets up a map to contain values to be updated in the provider.
         ContentValues values = new ContentValues();
         values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, System.currentTimeMillis());
@@ -684,8 +1154,11 @@ public class NoteEditor extends Activity {
             values.put(NotePad.Notes.COLUMN_NAME_TITLE, title);
         }
 
-        // This puts the desired notes text into the map.
-        values.put(NotePad.Notes.COLUMN_NAME_NOTE, text);
+        // This puts the desired notes text into the map. A large note without unsaved edits
+        // has none, and keeps its text.
+        if (text != null) {
+            values.put(NotePad.Notes.COLUMN_NAME_NOTE, text);
+        }
 
         /*
          * Updates the provider with the new values in the map. The ListView is updated
@@ -705,11 +1178,29 @@ public class NoteEditor extends Activity {
                     null,    // No selection criteria are used, so no where columns are necessary.
                     null     // No where columns are used, so no where arguments are necessary.
             );
-            
-            // 显式通知内容变化
-            getContentResolver().notifyChange(mUri, null);
+
+            if (mLargeNote != null) {
+                mSavedGeneration = mLargeNote.getGeneration();
+            }
+            if (values.containsKey(NotePad.Notes.COLUMN_NAME_TITLE)) {
+                mSavedTitle = title;
+            }
+            if (text != null) {
+                mSavedText = mLargeNote != null ? null : text;
+            }
         }
     }
+
+    /**
+     * 判断编辑现有笔记时是否有未保存的修改。与 updateNote 一致：空标题不会写入，
+     * 正文为 null 表示大笔记保存后没有编辑过。
+     */
+    private boolean hasUnsavedChanges(String text, String title) {
+        if (title != null && !title.isEmpty() && !title.equals(mSavedTitle)) {
+            return true;
+        }
+        return text != null && (mLargeNote != null || !text.equals(mSavedText));
+    }
     
     /**
      * 只更新笔记内容，不更新标题（用于编辑现有笔记时）
@@ -730,9 +1221,6 @@ public class NoteEditor extends Activity {
                 null,    // No selection criteria are used, so no where columns are necessary.
                 null     // No where columns are used, so no where arguments are necessary.
         );
-        
-        // 显式通知内容变化
-        getContentResolver().notifyChange(mUri, null);
     }
 
     /**
@@ -829,6 +1317,78 @@ public class NoteEditor extends Activity {
                 .show();
     }
     
+    /**
+     * 显示历史版本对话框，选择某个版本后把它的内容放回编辑框，保存后生效
+     */
+    private void showRevisionsDialog() {
+        if (mUri == null) {
+            return;
+        }
+        final long noteId = android.content.ContentUris.parseId(mUri);
+
+        // 列表只查询版本号、时间和字数，不需要还原正文
+        Cursor cursor = getContentResolver().query(
+                NotePad.NoteRevisions.buildRevisionsUri(noteId),
+                new String[]{
+                        NotePad.NoteRevisions.COLUMN_NAME_REVISION,
+                        NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE,
+                        NotePad.NoteRevisions.COLUMN_NAME_LENGTH
+                },
+                null,
+                null,
+                NotePad.NoteRevisions.DEFAULT_SORT_ORDER
+        );
+        if (cursor == null) {
+            return;
+        }
+
+        final int[] revisions = new int[cursor.getCount()];
+        String[] items = new String[cursor.getCount()];
+        java.text.SimpleDateFormat format = new java.text.SimpleDateFormat(
+                "yyyy-MM-dd HH:mm:ss", java.util.Locale.CHINA);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            revisions[i] = cursor.getInt(0);
+            items[i] = "版本 " + revisions[i] + "  "
+                    + format.format(new java.util.Date(cursor.getLong(1)))
+                    + "  (" + cursor.getInt(2) + " 字)";
+        }
+        cursor.close();
+
+        if (items.length == 0) {
+            Toast.makeText(this, "暂无历史版本", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("历史版本")
+                .setItems(items, (dialog, which) -> {
+                    Cursor revision = getContentResolver().query(
+                            NotePad.NoteRevisions.buildRevisionUri(noteId, revisions[which]),
+                            new String[]{NotePad.NoteRevisions.COLUMN_NAME_NOTE},
+                            null,
+                            null,
+                            null
+                    );
+                    if (revision == null) {
+                        return;
+                    }
+                    if (revision.moveToFirst()) {
+                        if (mLargeNote != null) {
+                            // 大笔记替换整篇正文，而不只是当前显示的一段
+                            mLargeNote.replace(0, mLargeNote.length(), revision.getString(0));
+                            showWindow(0);
+                        } else {
+                            mText.setText(revision.getString(0));
+                        }
+                        Toast.makeText(this, "已恢复到版本 " + revisions[which] + "，保存后生效",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                    revision.close();
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
     /**
      * 显示添加分类对话框
      */
@@ -865,6 +1425,5 @@ public class NoteEditor extends Activity {
         values.put(NotePad.Notes.COLUMN_NAME_CATEGORY, category);
         
         getContentResolver().update(mUri, values, null, null);
-        getContentResolver().notifyChange(mUri, null);
     }
 }
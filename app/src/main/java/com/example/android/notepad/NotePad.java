@@ -28,6 +28,14 @@ import android.provider.BaseColumns;
 public final class NotePad {
     public static final String AUTHORITY = "com.google.provider.NotePad";
 
+    /**
+     * The permission another app needs for the provider's call() methods and for writing as the
+     * sync adapter. It is a signature permission, so only apps signed with this app's key, such as
+     * the macrobenchmark APK, can hold it.
+     */
+    public static final String PERMISSION_MANAGE_NOTES =
+            "com.example.android.notepad.permission.MANAGE_NOTES";
+
     // This class cannot be instantiated
     private NotePad() {
     }
@@ -74,9 +82,14 @@ public final class NotePad {
         public static final int NOTE_ID_PATH_POSITION = 1;
 
         /**
-         * Path part for the Live Folder URI
+         * Path part for the widget URI
+         */
+        private static final String PATH_WIDGET = "/widget/notes";
+
+        /**
+         * Path part for the search URI
          */
-        private static final String PATH_LIVE_FOLDER = "/live_folders/notes";
+        private static final String PATH_SEARCH = "/notes/search";
 
         /**
          * The content:// style URL for this table
@@ -99,10 +112,86 @@ public final class NotePad {
             = Uri.parse(SCHEME + AUTHORITY + PATH_NOTE_ID + "/#");
 
         /**
-         * The content Uri pattern for a notes listing for live folders
+         * The content URI of the notes shown by the home-screen widget: the pinned notes and then
+         * the most recently modified ones, in widget order. The rows have the note's
+         * {@link #_ID}, {@link #COLUMN_NAME_TITLE}, {@link #COLUMN_NAME_COLOR},
+         * {@link #COLUMN_NAME_PINNED} and {@link #COLUMN_NAME_MODIFICATION_DATE}. Observers of
+         * this URI are notified only when one of the rows changes.
+         */
+        public static final Uri WIDGET_URI = Uri.parse(SCHEME + AUTHORITY + PATH_WIDGET);
+
+        /**
+         * The content URI for searching notes by their title and text. Build one with
+         * {@link #buildSearchUri(String, String)}. Selections and sort orders apply as they do
+         * for {@link #CONTENT_URI}; without a sort order, fuzzy results come best match first.
+         */
+        public static final Uri SEARCH_URI = Uri.parse(SCHEME + AUTHORITY + PATH_SEARCH);
+
+        /**
+         * Query parameter of {@link #SEARCH_URI} holding the text to search for
          */
-        public static final Uri LIVE_FOLDER_URI
-            = Uri.parse(SCHEME + AUTHORITY + PATH_LIVE_FOLDER);
+        public static final String QUERY_PARAMETER_QUERY = "q";
+
+        /**
+         * Query parameter of {@link #SEARCH_URI} holding the search mode, one of
+         * {@link #SEARCH_MODE_SUBSTRING} (the default), {@link #SEARCH_MODE_TEXT},
+         * {@link #SEARCH_MODE_QUERY} or {@link #SEARCH_MODE_FUZZY}
+         */
+        public static final String QUERY_PARAMETER_MODE = "mode";
+
+        /**
+         * Search mode that finds the notes containing the query, ignoring case
+         */
+        public static final String SEARCH_MODE_SUBSTRING = "substring";
+
+        /**
+         * Search mode that finds the notes containing every word of the query, or a word
+         * starting with it, and every run of Chinese, Japanese or Korean characters of the
+         * query. Full-width letters and digits match their ASCII forms. A query of letters also
+         * finds the notes whose title or category has Chinese characters it spells in pinyin,
+         * in full or by initials, like "biji" or "bjb" for 笔记本.
+         */
+        public static final String SEARCH_MODE_TEXT = "text";
+
+        /**
+         * Search mode that also finds notes containing the query with a few typos, ranked by
+         * how close they come
+         */
+        public static final String SEARCH_MODE_FUZZY = "fuzzy";
+
+        /**
+         * Search mode that reads the query as a list of filters and free text, such as
+         * {@code category:工作 color:red before:2026-01-01 title:plan budget}. Free text is
+         * searched as in {@link #SEARCH_MODE_TEXT}. An invalid filter value makes the query
+         * throw an {@link IllegalArgumentException}.
+         */
+        public static final String SEARCH_MODE_QUERY = "query";
+
+        /**
+         * Returns the URI that searches the notes for the given text in the given mode.
+         */
+        public static Uri buildSearchUri(String query, String mode) {
+            return SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_QUERY, query)
+                    .appendQueryParameter(QUERY_PARAMETER_MODE, mode)
+                    .build();
+        }
+
+        /**
+         * Query parameter of the URI an update notifies, holding the comma-separated names of
+         * the columns the update wrote. Notes are updated through {@link #CONTENT_URI} or a note
+         * ID URI; observers registered for descendants of {@link #CONTENT_URI} receive the
+         * notified URI in {@link android.database.ContentObserver#onChange(boolean, Uri)}.
+         * Without this parameter, as for inserts and deletes, any column may have changed.
+         */
+        public static final String QUERY_PARAMETER_COLUMNS = "columns";
+
+        /**
+         * Query parameter of the {@link #CONTENT_URI} an update of several notes notifies,
+         * holding the comma-separated IDs of the updated notes. A note ID URI names its note
+         * itself. Without this parameter, or an ID in the path, any note may have changed.
+         */
+        public static final String QUERY_PARAMETER_IDS = "ids";
 
         /*
          * MIME type definitions
@@ -124,6 +213,24 @@ public final class NotePad {
          */
         public static final String DEFAULT_SORT_ORDER = "modified DESC";
 
+        /**
+         * Sort order by creation date, newest first
+         */
+        public static final String SORT_ORDER_CREATED = "created DESC";
+
+        /**
+         * Sort order by title, alphabetically, with Chinese titles by their pinyin. Sorts on a
+         * key the provider derives from the title, so it can only be used with the provider's
+         * note URIs.
+         */
+        public static final String SORT_ORDER_TITLE = "title_key ASC";
+
+        /**
+         * Sort order that groups the notes by color, most recently modified first in each
+         * group
+         */
+        public static final String SORT_ORDER_COLOR = "color DESC, modified DESC";
+
         /*
          * Column definitions
          */
@@ -140,6 +247,14 @@ public final class NotePad {
          */
         public static final String COLUMN_NAME_NOTE = "note";
 
+        /**
+         * Column name for the first characters of the note content, maintained by the provider
+         * whenever the note is written. Lists should show this instead of the note, which may be
+         * stored compressed.
+         * <P>Type: TEXT (read-only)</P>
+         */
+        public static final String COLUMN_NAME_SNIPPET = "snippet";
+
         /**
          * Column name for the creation timestamp
          * <P>Type: INTEGER (long from System.curentTimeMillis())</P>
@@ -163,5 +278,232 @@ public final class NotePad {
          * <P>Type: TEXT</P>
          */
         public static final String COLUMN_NAME_CATEGORY = "category";
+
+        /**
+         * Column name for the pinned flag: 1 if the note is pinned to the top of the list,
+         * otherwise 0. Select pinned notes with {@code pinned = 1}, which the provider answers
+         * from an index of the pinned notes alone.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_PINNED = "pinned";
+    }
+
+    /**
+     * Note revisions contract. The revisions of a note are read-only; the provider records a new
+     * revision in the background after the note's text is saved.
+     */
+    public static final class NoteRevisions implements BaseColumns {
+
+        // This class cannot be instantiated
+        private NoteRevisions() {}
+
+        /**
+         * The table name offered by this provider
+         */
+        public static final String TABLE_NAME = "note_revisions";
+
+        /**
+         * Path segment appended to a note ID URI to list the note's revisions
+         */
+        public static final String PATH_REVISIONS = "revisions";
+
+        /**
+         * 0-relative position of the revision number segment in the path part of a revision URI
+         */
+        public static final int REVISION_PATH_POSITION = 3;
+
+        /**
+         * The MIME type of a note's revisions.
+         */
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.google.note.revision";
+
+        /**
+         * The MIME type of a single revision.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                "vnd.android.cursor.item/vnd.google.note.revision";
+
+        /**
+         * The default sort order for the revisions of a note, newest first
+         */
+        public static final String DEFAULT_SORT_ORDER = "revision DESC";
+
+        /**
+         * Returns the URI listing the revisions of a note.
+         */
+        public static Uri buildRevisionsUri(long noteId) {
+            return Notes.CONTENT_ID_URI_BASE.buildUpon()
+                    .appendPath(Long.toString(noteId))
+                    .appendPath(PATH_REVISIONS)
+                    .build();
+        }
+
+        /**
+         * Returns the URI of one revision of a note. Querying it returns the full text of the
+         * note as of that revision in {@link #COLUMN_NAME_NOTE}.
+         */
+        public static Uri buildRevisionUri(long noteId, int revision) {
+            return buildRevisionsUri(noteId).buildUpon()
+                    .appendPath(Integer.toString(revision))
+                    .build();
+        }
+
+        /*
+         * Column definitions
+         */
+
+        /**
+         * Column name for the ID of the note the revision belongs to
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_NOTE_ID = "note_id";
+
+        /**
+         * Column name for the revision number, counting from 1 for each note
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_REVISION = "revision";
+
+        /**
+         * Column name for the time the revision was recorded
+         * <P>Type: INTEGER (long from System.curentTimeMillis())</P>
+         */
+        public static final String COLUMN_NAME_CREATE_DATE = "created";
+
+        /**
+         * Column name for the note title at the time of the revision
+         * <P>Type: TEXT</P>
+         */
+        public static final String COLUMN_NAME_TITLE = "title";
+
+        /**
+         * Column name for the length of the note text in characters
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_LENGTH = "length";
+
+        /**
+         * Column name for the bytes the revision takes in storage
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SIZE = "size";
+
+        /**
+         * Column name for the note text of the revision. Only available from a single revision
+         * URI, since every text has to be rebuilt from snapshots and deltas.
+         * <P>Type: TEXT</P>
+         */
+        public static final String COLUMN_NAME_NOTE = "note";
+    }
+
+    /**
+     * Note changes contract. The provider appends a row to the change log in the same
+     * transaction as every insert, update and delete of a note, so a client can follow the
+     * changes since the last one it has seen instead of reading every note again. The log is
+     * read-only, and rows older than 30 days, or beyond the newest 10000, are dropped by the
+     * periodic database maintenance.
+     */
+    public static final class NoteChanges implements BaseColumns {
+
+        // This class cannot be instantiated
+        private NoteChanges() {}
+
+        /**
+         * The table name offered by this provider
+         */
+        public static final String TABLE_NAME = "note_changes";
+
+        /**
+         * The content URI of the change log. Query it with {@link #buildChangesUri(long)}; the
+         * rows come in the order of their {@link #_ID}, the sequence number of the change, which
+         * only grows. Observers of this URI are notified whenever a note changes.
+         */
+        public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/changes");
+
+        /**
+         * Query parameter of {@link #CONTENT_URI} holding the sequence number of the last change
+         * the client has seen. Only later changes are returned. Defaults to 0, every change.
+         */
+        public static final String QUERY_PARAMETER_SINCE = "since";
+
+        /**
+         * Query parameter of {@link #CONTENT_URI} holding the most changes to return. Defaults
+         * to no limit.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * The MIME type of the change log.
+         */
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.google.note.change";
+
+        /**
+         * The order of the change log, oldest change first. Queries always use it.
+         */
+        public static final String DEFAULT_SORT_ORDER = "_id ASC";
+
+        /**
+         * Operation of a change that inserted a note
+         */
+        public static final String OPERATION_INSERT = "insert";
+
+        /**
+         * Operation of a change that updated a note
+         */
+        public static final String OPERATION_UPDATE = "update";
+
+        /**
+         * Operation of a change that deleted a note
+         */
+        public static final String OPERATION_DELETE = "delete";
+
+        /**
+         * Operation of the single row returned when the changes since the given sequence number
+         * are no longer all in the log, because they were dropped or the database was restored.
+         * The client has to read the notes again, and then continue from the {@link #_ID} of
+         * this row.
+         */
+        public static final String OPERATION_TRUNCATED = "truncated";
+
+        /**
+         * Returns the URI listing the changes after the given sequence number.
+         */
+        public static Uri buildChangesUri(long since) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SINCE, Long.toString(since))
+                    .build();
+        }
+
+        /*
+         * Column definitions
+         */
+
+        /**
+         * Column name for the ID of the changed note
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_NOTE_ID = "note_id";
+
+        /**
+         * Column name for the operation, one of {@link #OPERATION_INSERT},
+         * {@link #OPERATION_UPDATE}, {@link #OPERATION_DELETE} or {@link #OPERATION_TRUNCATED}
+         * <P>Type: TEXT</P>
+         */
+        public static final String COLUMN_NAME_OPERATION = "operation";
+
+        /**
+         * Column name for the comma-separated names of the note columns an update changed, such
+         * as {@code title,modified}. Null for inserts and deletes.
+         * <P>Type: TEXT</P>
+         */
+        public static final String COLUMN_NAME_COLUMNS = "columns";
+
+        /**
+         * Column name for the time of the change
+         * <P>Type: INTEGER (long from System.curentTimeMillis())</P>
+         */
+        public static final String COLUMN_NAME_TIME = "time";
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+/**
+ * The NotePad application. In debug builds it turns on the diagnostics that catch work done on
+ * the UI thread: a StrictMode thread policy for disk access and slow calls, a VM policy for
+ * leaked cursors and databases, and the {@link IoTrace} main-thread watchdog.
+ * <p>
+ * Violations are logged rather than fatal, so the app stays usable while the remaining
+ * main-thread queries are moved off the UI thread.
+ */
+public class NotePadApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        if (BuildConfig.DEBUG) {
+            enableStrictMode();
+            IoTrace.setWatchdogEnabled(true);
+        }
+
+        // Vacuums, analyzes and checks the database while the device is idle and charging.
+        DatabaseMaintenance.schedule(this);
+
+        // Appends the notes changed since the last run to the export log once a day.
+        IncrementalExport.schedule(this);
+    }
+
+    private static void enableStrictMode() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                // Reports the calls flagged by IoTrace when they go over the budget.
+                .detectCustomSlowCalls()
+                .penaltyLog()
+                .build());
+
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedSqlLiteObjects()
+                .detectLeakedClosableObjects()
+                .penaltyLog()
+                .build());
+    }
+}
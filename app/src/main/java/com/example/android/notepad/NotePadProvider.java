@@ -20,32 +20,53 @@ import com.example.android.notepad.NotePad;
 
 import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.content.ContentProvider.PipeDataWriter;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
-import android.provider.LiveFolders;
+import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Provides access to a database of notes. Each note has a title, the note
@@ -63,7 +84,7 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     /**
      * The database version
      */
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 16;
 
     /**
      * A projection map used to select columns from the database
@@ -71,9 +92,37 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     private static HashMap<String, String> sNotesProjectionMap;
 
     /**
-     * A projection map used to select columns from the database
+     * The notes projection map plus the hidden storage columns of the note body. Only used for
+     * projections the provider builds itself, so clients cannot select the raw storage.
+     */
+    private static HashMap<String, String> sNotesStorageProjectionMap;
+
+    /**
+     * The columns returned for notes when the client passes a null projection. The hidden
+     * storage columns are left out.
+     */
+    private static final String[] DEFAULT_NOTES_PROJECTION = new String[]{
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NotePad.Notes.COLUMN_NAME_SNIPPET,
+            NotePad.Notes.COLUMN_NAME_CREATE_DATE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+            NotePad.Notes.COLUMN_NAME_CATEGORY,
+            NotePad.Notes.COLUMN_NAME_PINNED,
+    };
+
+    /**
+     * A projection map for the notes shown by the home-screen widget
+     */
+    private static HashMap<String, String> sWidgetProjectionMap;
+
+    /**
+     * A projection map for listing the revisions of a note. The storage columns are not mapped,
+     * so clients only see the size of a revision.
      */
-    private static HashMap<String, String> sLiveFolderProjectionMap;
+    private static HashMap<String, String> sRevisionsProjectionMap;
 
     /**
      * Standard projection for the interesting columns of a normal note.
@@ -96,8 +145,20 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     // The incoming URI matches the Note ID URI pattern
     private static final int NOTE_ID = 2;
 
-    // The incoming URI matches the Live Folder URI pattern
-    private static final int LIVE_FOLDER_NOTES = 3;
+    // The incoming URI matches the Note Revisions URI pattern
+    private static final int NOTE_REVISIONS = 4;
+
+    // The incoming URI matches the Note Revision URI pattern
+    private static final int NOTE_REVISION_ID = 5;
+
+    // The incoming URI matches the Notes Search URI pattern
+    private static final int NOTES_SEARCH = 6;
+
+    // The incoming URI matches the Widget URI pattern
+    private static final int WIDGET_NOTES = 7;
+
+    // The incoming URI matches the Note Changes URI pattern
+    private static final int NOTE_CHANGES = 8;
 
     /**
      * A UriMatcher instance
@@ -107,6 +168,39 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     // Handle to a new DatabaseHelper.
     private DatabaseHelper mOpenHelper;
 
+    // Held shared by everything that uses the database, including the revision executor, and
+    // exclusively while a restore replaces the database files.
+    private final ReentrantReadWriteLock mDatabaseLock = new ReentrantReadWriteLock();
+
+    // A restore waits this long for other work on the database to finish, polling every
+    // RESTORE_POLL_MILLIS, before it gives up.
+    private static final long RESTORE_WAIT_MILLIS = 10000;
+    private static final long RESTORE_POLL_MILLIS = 50;
+
+    // The user ID of adb shell. Process.SHELL_UID is only public from API 29.
+    private static final int SHELL_UID = 2000;
+
+    // Latency and volume metrics, published through call() and dump().
+    private final ProviderMetrics mMetrics = new ProviderMetrics();
+
+    // Corpus seeding commits after this many notes.
+    private static final int SEED_BATCH_SIZE = 500;
+
+    // Queries over the slow-query threshold, with their plans. Created in onCreate().
+    private SlowQueryLog mSlowQueryLog;
+
+    // Note bodies with at least this many characters are stored compressed.
+    private volatile int mCompressionThreshold = NoteCodec.DEFAULT_THRESHOLD_CHARS;
+
+    // Records note revisions in the background. Created in onCreate().
+    private RevisionStore mRevisions;
+
+    // The last sync change counter handed out, or -1 until it is read from the database.
+    private long mSyncChange = -1;
+
+    // While applyBatch() runs on a thread, the URIs it changed; notifications are sent once the
+    // batch commits instead of once per operation.
+    private final ThreadLocal<Set<Uri>> mDeferredNotifications = new ThreadLocal<Set<Uri>>();
 
     /**
      * A block that instantiates and sets static objects
@@ -126,9 +220,19 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
         // to a note ID operation
         sUriMatcher.addURI(NotePad.AUTHORITY, "notes/#", NOTE_ID);
 
-        // Add a pattern that routes URIs terminated with live_folders/notes to a
-        // live folder operation
-        sUriMatcher.addURI(NotePad.AUTHORITY, "live_folders/notes", LIVE_FOLDER_NOTES);
+        // Add a pattern that routes URIs terminated with widget/notes to the widget snapshot
+        sUriMatcher.addURI(NotePad.AUTHORITY, "widget/notes", WIDGET_NOTES);
+
+        // Add patterns that route the revisions of a note, and a single revision, to revision
+        // operations
+        sUriMatcher.addURI(NotePad.AUTHORITY, "notes/#/revisions", NOTE_REVISIONS);
+        sUriMatcher.addURI(NotePad.AUTHORITY, "notes/#/revisions/#", NOTE_REVISION_ID);
+
+        // Add a pattern that routes searches to a search operation
+        sUriMatcher.addURI(NotePad.AUTHORITY, "notes/search", NOTES_SEARCH);
+
+        // Add a pattern that routes URIs terminated with "changes" to the change log
+        sUriMatcher.addURI(NotePad.AUTHORITY, "changes", NOTE_CHANGES);
 
         /*
          * Creates and initializes a projection map that returns all columns
@@ -159,6 +263,16 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                 NotePad.Notes.COLUMN_NAME_NOTE,
                 NotePad.Notes.COLUMN_NAME_NOTE);
 
+        // Maps "snippet" to "snippet"
+        sNotesProjectionMap.put(
+                NotePad.Notes.COLUMN_NAME_SNIPPET,
+                NotePad.Notes.COLUMN_NAME_SNIPPET);
+
+        // Maps "pinned" to "pinned"
+        sNotesProjectionMap.put(
+                NotePad.Notes.COLUMN_NAME_PINNED,
+                NotePad.Notes.COLUMN_NAME_PINNED);
+
         // Maps "created" to "created"
         sNotesProjectionMap.put(NotePad.Notes.COLUMN_NAME_CREATE_DATE,
                 NotePad.Notes.COLUMN_NAME_CREATE_DATE);
@@ -168,19 +282,45 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                 NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
                 NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE);
 
+        // Adds the storage columns that queries for the note body read behind the scenes.
+        sNotesStorageProjectionMap = new HashMap<String, String>(sNotesProjectionMap);
+        sNotesStorageProjectionMap.put(NoteCodec.COLUMN_DATA, NoteCodec.COLUMN_DATA);
+        sNotesStorageProjectionMap.put(NoteCodec.COLUMN_ENCODING, NoteCodec.COLUMN_ENCODING);
+
         /*
-         * Creates an initializes a projection map for handling Live Folders
+         * Creates and initializes a projection map for the widget snapshot, which has the same
+         * column names as the notes
          */
+        sWidgetProjectionMap = new HashMap<String, String>();
+        for (String column : new String[]{
+                NotePad.Notes._ID,
+                NotePad.Notes.COLUMN_NAME_TITLE,
+                NotePad.Notes.COLUMN_NAME_COLOR,
+                NotePad.Notes.COLUMN_NAME_PINNED,
+                NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE}) {
+            sWidgetProjectionMap.put(column, column);
+        }
 
-        // Creates a new projection map instance
-        sLiveFolderProjectionMap = new HashMap<String, String>();
-
-        // Maps "_ID" to "_ID AS _ID" for a live folder
-        sLiveFolderProjectionMap.put(LiveFolders._ID, NotePad.Notes._ID + " AS " + LiveFolders._ID);
-
-        // Maps "NAME" to "title AS NAME"
-        sLiveFolderProjectionMap.put(LiveFolders.NAME, NotePad.Notes.COLUMN_NAME_TITLE + " AS " +
-                LiveFolders.NAME);
+        /*
+         * Creates and initializes a projection map for listing revisions
+         */
+        sRevisionsProjectionMap = new HashMap<String, String>();
+        sRevisionsProjectionMap.put(NotePad.NoteRevisions._ID, NotePad.NoteRevisions._ID);
+        sRevisionsProjectionMap.put(NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID,
+                NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID);
+        sRevisionsProjectionMap.put(NotePad.NoteRevisions.COLUMN_NAME_REVISION,
+                NotePad.NoteRevisions.COLUMN_NAME_REVISION);
+        sRevisionsProjectionMap.put(NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE,
+                NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE);
+        sRevisionsProjectionMap.put(NotePad.NoteRevisions.COLUMN_NAME_TITLE,
+                NotePad.NoteRevisions.COLUMN_NAME_TITLE);
+        sRevisionsProjectionMap.put(NotePad.NoteRevisions.COLUMN_NAME_LENGTH,
+                NotePad.NoteRevisions.COLUMN_NAME_LENGTH);
+
+        // Maps "size" to the length of the stored snapshot or delta
+        sRevisionsProjectionMap.put(NotePad.NoteRevisions.COLUMN_NAME_SIZE,
+                "length(" + RevisionStore.COLUMN_DATA + ") AS "
+                        + NotePad.NoteRevisions.COLUMN_NAME_SIZE);
     }
 
     /**
@@ -193,6 +333,23 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
 
             // calls the super constructor, requesting the default cursor factory.
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+            // Write-ahead logging lets queries, and the online backup, read while a note is
+            // being saved.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                setWriteAheadLoggingEnabled(true);
+            }
+        }
+
+        /**
+         * Turns on incremental auto-vacuum, so {@link DatabaseMaintenance} can give the pages
+         * freed by deletes back to the file system. Applies to a new database immediately; an
+         * existing database is converted by the first maintenance run. Only called on API 16
+         * and later; older devices are converted by maintenance as well.
+         */
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
         }
 
         /**
@@ -208,8 +365,86 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                     + NotePad.Notes.COLUMN_NAME_CREATE_DATE + " INTEGER,"
                     + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + " INTEGER,"
                     + NotePad.Notes.COLUMN_NAME_COLOR + " INTEGER DEFAULT 0,"
-                    + NotePad.Notes.COLUMN_NAME_CATEGORY + " TEXT DEFAULT '未分类'"
+                    + NotePad.Notes.COLUMN_NAME_CATEGORY + " TEXT DEFAULT '未分类',"
+                    + NotePad.Notes.COLUMN_NAME_SNIPPET + " TEXT,"
+                    + NoteCodec.COLUMN_DATA + " BLOB,"
+                    + NoteCodec.COLUMN_ENCODING + " INTEGER DEFAULT "
+                    + NoteCodec.ENCODING_PLAIN + ","
+                    + TitleCollation.COLUMN_TITLE_KEY + " TEXT,"
+                    + NotePad.Notes.COLUMN_NAME_PINNED + " INTEGER NOT NULL DEFAULT 0,"
+                    + SyncEngine.COLUMN_SYNC_ID + " TEXT,"
+                    + SyncEngine.COLUMN_SYNC_VERSION + " INTEGER NOT NULL DEFAULT 0,"
+                    + SyncEngine.COLUMN_SYNC_DIRTY + " INTEGER NOT NULL DEFAULT 1"
                     + ");");
+            RevisionStore.createTable(db);
+            TrigramIndex.createTable(db);
+            FullTextIndex.createTable(db);
+            PinyinIndex.createTable(db);
+            createNoteIndexes(db);
+            createPinnedIndex(db);
+            WidgetSnapshot.createTable(db);
+            SyncEngine.createTable(db);
+            ChangeLog.createTable(db);
+        }
+
+        /**
+         * Creates the indexes that answer the filters of structured search queries, category
+         * and color comparisons and modification date ranges, and that return the notes in
+         * each of the sort orders of {@link NotePad.Notes} without sorting them. Indexes that
+         * already exist are kept.
+         */
+        private void createNoteIndexes(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS notes_category ON "
+                    + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_CATEGORY + ", "
+                    + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ")");
+            db.execSQL("CREATE INDEX IF NOT EXISTS notes_color ON "
+                    + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_COLOR + ", "
+                    + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ")");
+            db.execSQL("CREATE INDEX IF NOT EXISTS notes_modified ON "
+                    + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ")");
+            db.execSQL("CREATE INDEX IF NOT EXISTS notes_created ON "
+                    + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_CREATE_DATE + ")");
+            db.execSQL("CREATE INDEX IF NOT EXISTS notes_title_key ON "
+                    + NotePad.Notes.TABLE_NAME + " ("
+                    + TitleCollation.COLUMN_TITLE_KEY + ")");
+        }
+
+        /**
+         * Creates the index of pinned notes. Only the pinned notes are in it, so the pinned
+         * section of the list is read from a tiny b-tree however many notes there are. Partial
+         * indexes need SQLite 3.8.0, which ships with API 21; on older versions the index holds
+         * every note, and pinned notes are still a range at its end.
+         */
+        private void createPinnedIndex(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX notes_pinned ON " + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_PINNED + ", "
+                    + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ")"
+                    + (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                            ? " WHERE " + NotePad.Notes.COLUMN_NAME_PINNED + " = 1" : ""));
+        }
+
+        /**
+         * Computes the title sort key of every note. Must be called inside a transaction.
+         */
+        private void fillTitleKeys(SQLiteDatabase db) {
+            Cursor c = db.query(NotePad.Notes.TABLE_NAME,
+                    new String[]{NotePad.Notes._ID, NotePad.Notes.COLUMN_NAME_TITLE},
+                    null, null, null, null, null);
+            ContentValues values = new ContentValues();
+            try {
+                while (c.moveToNext()) {
+                    values.put(TitleCollation.COLUMN_TITLE_KEY,
+                            TitleCollation.titleKey(c.getString(1)));
+                    db.update(NotePad.Notes.TABLE_NAME, values,
+                            NotePad.Notes._ID + " = " + c.getLong(0), null);
+                }
+            } finally {
+                c.close();
+            }
         }
 
         /**
@@ -247,6 +482,100 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                     Log.w(TAG, "Category column may already exist", e);
                 }
             }
+
+            // 添加摘要列和压缩存储列。已有笔记保持明文（编码 0），下次保存时按需压缩
+            if (oldVersion < 5) {
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME
+                        + " ADD COLUMN " + NotePad.Notes.COLUMN_NAME_SNIPPET + " TEXT");
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME
+                        + " ADD COLUMN " + NoteCodec.COLUMN_DATA + " BLOB");
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME
+                        + " ADD COLUMN " + NoteCodec.COLUMN_ENCODING + " INTEGER DEFAULT "
+                        + NoteCodec.ENCODING_PLAIN);
+                db.execSQL("UPDATE " + NotePad.Notes.TABLE_NAME
+                        + " SET " + NotePad.Notes.COLUMN_NAME_SNIPPET + " = substr("
+                        + NotePad.Notes.COLUMN_NAME_NOTE + ", 1, " + NoteCodec.SNIPPET_LENGTH + ")");
+                Log.i(TAG, "Added snippet and compressed storage columns");
+            }
+
+            // 添加历史版本表，已有笔记从下次保存开始记录历史
+            if (oldVersion < 6) {
+                RevisionStore.createTable(db);
+                Log.i(TAG, "Added note revisions table");
+            }
+
+            // 添加三元组搜索索引，并为已有笔记建立索引
+            if (oldVersion < 7) {
+                TrigramIndex.createTable(db);
+                TrigramIndex.rebuild(db);
+                Log.i(TAG, "Added and built the trigram search index");
+            }
+
+            // 添加全文索引；三元组索引改为折叠全角字符，一并重建
+            if (oldVersion < 8) {
+                FullTextIndex.createTable(db);
+                FullTextIndex.rebuild(db);
+                if (oldVersion >= 7) {
+                    TrigramIndex.rebuild(db);
+                }
+                Log.i(TAG, "Added and built the full-text search index");
+            }
+
+            // 添加标题和分类的拼音索引，并为已有笔记建立索引
+            if (oldVersion < 9) {
+                PinyinIndex.createTable(db);
+                PinyinIndex.rebuild(db);
+                Log.i(TAG, "Added and built the pinyin search index");
+            }
+
+            // 为分类、颜色和修改时间建立索引，供组合条件搜索使用（第 10 版）；
+            // 添加标题排序键，并为各种排序方式建立索引（第 11 版）
+            if (oldVersion < 11) {
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME
+                        + " ADD COLUMN " + TitleCollation.COLUMN_TITLE_KEY + " TEXT");
+                fillTitleKeys(db);
+                // 第 10 版的颜色索引只有颜色一列，按颜色排序时还要按修改时间排序
+                db.execSQL("DROP INDEX IF EXISTS notes_color");
+                createNoteIndexes(db);
+                Log.i(TAG, "Added title sort keys and indexes for filters and sort orders");
+            }
+
+            // 添加置顶标记和只包含置顶笔记的部分索引
+            if (oldVersion < 12) {
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME + " ADD COLUMN "
+                        + NotePad.Notes.COLUMN_NAME_PINNED + " INTEGER NOT NULL DEFAULT 0");
+                createPinnedIndex(db);
+                Log.i(TAG, "Added pinned notes");
+            }
+
+            // 添加桌面小部件的笔记快照，取代实时文件夹
+            if (oldVersion < 13) {
+                WidgetSnapshot.createTable(db);
+                WidgetSnapshot.refresh(db);
+                Log.i(TAG, "Added the widget snapshot");
+            }
+
+            // 第 14 版为增量导出添加的删除记录表已由第 16 版的变更日志取代
+
+            // 添加同步状态列和同步删除记录表，已有笔记都标记为待上传
+            if (oldVersion < 15) {
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME + " ADD COLUMN "
+                        + SyncEngine.COLUMN_SYNC_ID + " TEXT");
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME + " ADD COLUMN "
+                        + SyncEngine.COLUMN_SYNC_VERSION + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME + " ADD COLUMN "
+                        + SyncEngine.COLUMN_SYNC_DIRTY + " INTEGER NOT NULL DEFAULT 1");
+                SyncEngine.createTable(db);
+                Log.i(TAG, "Added sync state");
+            }
+
+            // 添加笔记变更日志，增量导出改为读取变更日志，不再需要删除记录表
+            if (oldVersion < 16) {
+                ChangeLog.createTable(db);
+                db.execSQL("DROP TRIGGER IF EXISTS note_tombstones_insert");
+                db.execSQL("DROP TABLE IF EXISTS note_tombstones");
+                Log.i(TAG, "Added the change log");
+            }
             // 不再删除表，保留用户数据
         }
     }
@@ -263,6 +592,18 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
         // something tries to access it, and it's only created if it doesn't already exist.
         mOpenHelper = new DatabaseHelper(getContext());
 
+        // Names the URI patterns so the metrics can be reported per pattern.
+        mMetrics.registerUriPattern(NOTES, "notes");
+        mMetrics.registerUriPattern(NOTE_ID, "notes/#");
+        mMetrics.registerUriPattern(NOTE_REVISIONS, "notes/#/revisions");
+        mMetrics.registerUriPattern(NOTE_REVISION_ID, "notes/#/revisions/#");
+        mMetrics.registerUriPattern(NOTES_SEARCH, "notes/search");
+        mMetrics.registerUriPattern(WIDGET_NOTES, "widget/notes");
+        mMetrics.registerUriPattern(NOTE_CHANGES, "changes");
+
+        mSlowQueryLog = new SlowQueryLog(getContext());
+        mRevisions = new RevisionStore(mOpenHelper, mDatabaseLock.readLock());
+
         // Assumes that any failures will be reported by a thrown exception.
         return true;
     }
@@ -279,18 +620,39 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_QUERY);
+        mDatabaseLock.readLock().lock();
+        try {
+            return queryNotes(uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            IoTrace.end(IoTrace.PROVIDER_QUERY, startNanos);
+        }
+    }
+
+    // The body of query(), run inside its trace section.
+    private Cursor queryNotes(Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
+
+        // Starts timing the query for the provider metrics.
+        long startNanos = System.nanoTime();
 
         // Constructs a new query builder and sets its table name
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
         qb.setTables(NotePad.Notes.TABLE_NAME);
 
+        // The index of the note column in the projection, if the body has to be decoded.
+        int noteIndex = -1;
+
         /**
          * Choose the projection and adjust the "where" clause based on URI pattern-matching.
          */
-        switch (sUriMatcher.match(uri)) {
+        int match = sUriMatcher.match(uri);
+        switch (match) {
             // If the incoming URI is for notes, chooses the Notes projection
             case NOTES:
-                qb.setProjectionMap(sNotesProjectionMap);
+                projection = notesProjection(projection);
+                noteIndex = indexOfNote(projection);
                 break;
 
             /* If the incoming URI is for a single note identified by its ID, chooses the
@@ -298,7 +660,8 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
              * it selects that single note
              */
             case NOTE_ID:
-                qb.setProjectionMap(sNotesProjectionMap);
+                projection = notesProjection(projection);
+                noteIndex = indexOfNote(projection);
                 qb.appendWhere(
                         NotePad.Notes._ID +    // the name of the ID column
                                 "=" +
@@ -306,16 +669,147 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                                 uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION));
                 break;
 
-            case LIVE_FOLDER_NOTES:
-                // If the incoming URI is from a live folder, chooses the live folder projection.
-                qb.setProjectionMap(sLiveFolderProjectionMap);
+            // If the incoming URI is for the widget, reads the snapshot the provider keeps for
+            // it, in widget order unless the caller sorts it.
+            case WIDGET_NOTES:
+                qb.setTables(WidgetSnapshot.TABLE_NAME);
+                qb.setProjectionMap(sWidgetProjectionMap);
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = WidgetSnapshot.DEFAULT_SORT_ORDER;
+                }
                 break;
 
+            // If the incoming URI is a search, restricts the notes to the ones the search indexes
+            // find for the query. A structured query compiles to a selection of its own. Fuzzy
+            // results are ranked best match first unless the caller sorts them. Queries too short
+            // for the index fall back to LIKE, which only sees the snippet of a compressed note.
+            case NOTES_SEARCH: {
+                projection = notesProjection(projection);
+                noteIndex = indexOfNote(projection);
+                String query = uri.getQueryParameter(NotePad.Notes.QUERY_PARAMETER_QUERY);
+                if (TextUtils.isEmpty(query)) {
+                    break;
+                }
+                String mode = uri.getQueryParameter(NotePad.Notes.QUERY_PARAMETER_MODE);
+                if (NotePad.Notes.SEARCH_MODE_QUERY.equals(mode)) {
+                    NoteQuery parsed = NoteQuery.parse(query);
+                    if (parsed.getSelection() != null) {
+                        selection = DatabaseUtils.concatenateWhere(selection,
+                                parsed.getSelection());
+                        selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                                parsed.getSelectionArgs());
+                    }
+                    break;
+                }
+                // The matches are selected by subqueries on the indexes rather than listed, so
+                // the SQL stays small however many notes match. Fuzzy search is the exception:
+                // it ranks at most a hundred notes, which are listed in rank order.
+                SQLiteDatabase searchDb = mOpenHelper.getReadableDatabase();
+                String indexSelection = null;
+                String[] indexArgs = null;
+                if (NotePad.Notes.SEARCH_MODE_FUZZY.equals(mode)) {
+                    long[] ids = TrigramIndex.findFuzzy(searchDb, query);
+                    if (ids != null) {
+                        indexSelection = NotePad.Notes._ID + " IN (" + joinIds(ids) + ")";
+                        if (TextUtils.isEmpty(sortOrder) && ids.length > 0) {
+                            sortOrder = rankOrder(ids);
+                        }
+                    }
+                } else if (NotePad.Notes.SEARCH_MODE_TEXT.equals(mode)) {
+                    if (NoteTokenizer.toMatchQuery(query) != null
+                            || PinyinIndex.prefixRange(query) != null) {
+                        StringBuilder sql = new StringBuilder();
+                        List<String> args = new ArrayList<String>();
+                        new NoteQuery.TextTerm(query).appendSelection(sql, args);
+                        indexSelection = sql.toString();
+                        indexArgs = args.toArray(new String[args.size()]);
+                    }
+                } else {
+                    List<String> args = new ArrayList<String>();
+                    indexSelection = TrigramIndex.substringSelection(searchDb, query, args);
+                    indexArgs = args.toArray(new String[args.size()]);
+                }
+                if (indexSelection == null) {
+                    String pattern = "%" + query + "%";
+                    selection = DatabaseUtils.concatenateWhere(selection,
+                            NotePad.Notes.COLUMN_NAME_TITLE + " LIKE ? OR "
+                                    + NotePad.Notes.COLUMN_NAME_NOTE + " LIKE ? OR "
+                                    + NotePad.Notes.COLUMN_NAME_SNIPPET + " LIKE ?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{pattern, pattern, pattern});
+                } else {
+                    selection = DatabaseUtils.concatenateWhere(selection, indexSelection);
+                    if (indexArgs != null) {
+                        selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                                indexArgs);
+                    }
+                }
+                break;
+            }
+
+            // If the incoming URI is for the revisions of a note, lists them from the revisions
+            // table.
+            case NOTE_REVISIONS:
+                qb.setTables(NotePad.NoteRevisions.TABLE_NAME);
+                qb.setProjectionMap(sRevisionsProjectionMap);
+                qb.appendWhere(NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + "="
+                        + uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION));
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = NotePad.NoteRevisions.DEFAULT_SORT_ORDER;
+                }
+                break;
+
+            // If the incoming URI is for a single revision, rebuilds its text from the snapshot
+            // and deltas. Selection and sort order do not apply to a single row.
+            case NOTE_REVISION_ID:
+                Cursor revision = mRevisions.queryRevision(
+                        Long.parseLong(uri.getPathSegments().get(
+                                NotePad.Notes.NOTE_ID_PATH_POSITION)),
+                        Integer.parseInt(uri.getPathSegments().get(
+                                NotePad.NoteRevisions.REVISION_PATH_POSITION)),
+                        projection);
+                revision.setNotificationUri(getContext().getContentResolver(), uri);
+                mMetrics.record(ProviderMetrics.OP_QUERY, match, startNanos, revision.getCount());
+                return revision;
+
+            // If the incoming URI is for the change log, returns the changes after the sequence
+            // number in the "since" parameter, oldest first. Sort orders do not apply.
+            case NOTE_CHANGES: {
+                String since = uri.getQueryParameter(NotePad.NoteChanges.QUERY_PARAMETER_SINCE);
+                long sinceSequence;
+                try {
+                    sinceSequence = TextUtils.isEmpty(since) ? 0 : Long.parseLong(since);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid since: " + since);
+                }
+                Cursor changes = ChangeLog.query(mOpenHelper.getReadableDatabase(), projection,
+                        selection, selectionArgs, sinceSequence,
+                        uri.getQueryParameter(NotePad.NoteChanges.QUERY_PARAMETER_LIMIT));
+                changes.setNotificationUri(getContext().getContentResolver(), uri);
+                mMetrics.record(ProviderMetrics.OP_QUERY, match, startNanos, changes.getCount());
+                return changes;
+            }
+
             default:
                 // If the URI doesn't match any of the known patterns, throw an exception.
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
+        // Bodies are only read from storage, and only decompressed, if the note column was
+        // requested. Its storage columns are appended to the projection and hidden again by
+        // the cursor wrapper.
+        if (match == NOTES || match == NOTE_ID || match == NOTES_SEARCH) {
+            if (noteIndex >= 0) {
+                String[] storageProjection = new String[projection.length + 2];
+                System.arraycopy(projection, 0, storageProjection, 0, projection.length);
+                storageProjection[projection.length] = NoteCodec.COLUMN_DATA;
+                storageProjection[projection.length + 1] = NoteCodec.COLUMN_ENCODING;
+                projection = storageProjection;
+                qb.setProjectionMap(sNotesStorageProjectionMap);
+            } else {
+                qb.setProjectionMap(sNotesProjectionMap);
+            }
+        }
 
         String orderBy;
         // If no sort order is specified, uses the default
@@ -346,9 +840,62 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
 
         // Tells the Cursor what URI to watch, so it knows when its source data changes
         c.setNotificationUri(getContext().getContentResolver(), uri);
+
+        if (noteIndex >= 0) {
+            c = new DecompressingCursor(c, noteIndex);
+        }
+
+        // getCount() runs the query, so the recorded latency includes the actual database work
+        // instead of just preparing the statement.
+        int count = c.getCount();
+        mMetrics.record(ProviderMetrics.OP_QUERY, match, startNanos, count);
+
+        // If the query was slow, logs it with its plan. The SQL is only rebuilt in that case.
+        long durationNanos = System.nanoTime() - startNanos;
+        if (mSlowQueryLog.isSlow(durationNanos)) {
+            mSlowQueryLog.record(db, uri,
+                    qb.buildQuery(projection, selection, null, null, orderBy, null),
+                    selectionArgs, durationNanos, count);
+        }
         return c;
     }
 
+    /**
+     * Returns the projection to use for a notes query: the default columns if the client passed
+     * null, otherwise the client's projection.
+     */
+    private static String[] notesProjection(String[] projection) {
+        return projection == null ? DEFAULT_NOTES_PROJECTION.clone() : projection;
+    }
+
+    // Joins note IDs into a comma-separated list for an IN clause.
+    private static String joinIds(long[] ids) {
+        StringBuilder sb = new StringBuilder();
+        for (long id : ids) {
+            sb.append(sb.length() == 0 ? "" : ",").append(id);
+        }
+        return sb.toString();
+    }
+
+    // Returns an ORDER BY expression that sorts notes in the order of the given IDs.
+    private static String rankOrder(long[] ids) {
+        StringBuilder sb = new StringBuilder("CASE ").append(NotePad.Notes._ID);
+        for (int i = 0; i < ids.length; i++) {
+            sb.append(" WHEN ").append(ids[i]).append(" THEN ").append(i);
+        }
+        return sb.append(" END").toString();
+    }
+
+    // Returns the index of the note column in a projection, or -1.
+    private static int indexOfNote(String[] projection) {
+        for (int i = 0; i < projection.length; i++) {
+            if (NotePad.Notes.COLUMN_NAME_NOTE.equals(projection[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * This is called when a client calls {@link android.content.ContentResolver#getType(Uri)}.
      * Returns the MIME data type of the URI given as a parameter.
@@ -365,15 +912,27 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
          */
         switch (sUriMatcher.match(uri)) {
 
-            // If the pattern is for notes or live folders, returns the general content type.
+            // If the pattern is for a list of notes, returns the general content type.
             case NOTES:
-            case LIVE_FOLDER_NOTES:
+            case NOTES_SEARCH:
+            case WIDGET_NOTES:
                 return NotePad.Notes.CONTENT_TYPE;
 
             // If the pattern is for note IDs, returns the note ID content type.
             case NOTE_ID:
                 return NotePad.Notes.CONTENT_ITEM_TYPE;
 
+            // If the pattern is for revisions, returns the revision content types.
+            case NOTE_REVISIONS:
+                return NotePad.NoteRevisions.CONTENT_TYPE;
+
+            case NOTE_REVISION_ID:
+                return NotePad.NoteRevisions.CONTENT_ITEM_TYPE;
+
+            // If the pattern is for the change log, returns the change content type.
+            case NOTE_CHANGES:
+                return NotePad.NoteChanges.CONTENT_TYPE;
+
             // If the URI pattern doesn't match any permitted patterns, throws an exception.
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
@@ -405,10 +964,14 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
          */
         switch (sUriMatcher.match(uri)) {
 
-            // If the pattern is for notes or live folders, return null. Data streams are not
-            // supported for this type of URI.
+            // If the pattern is for anything but a single note, return null. Data streams are
+            // not supported for this type of URI.
             case NOTES:
-            case LIVE_FOLDER_NOTES:
+            case NOTE_REVISIONS:
+            case NOTE_REVISION_ID:
+            case NOTES_SEARCH:
+            case WIDGET_NOTES:
+            case NOTE_CHANGES:
                 return null;
 
             // If the pattern is for note IDs and the MIME filter is text/plain, then return
@@ -440,6 +1003,22 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     @Override
     public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts)
             throws FileNotFoundException {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_OPEN_FILE);
+        mDatabaseLock.readLock().lock();
+        try {
+            return openNoteStream(uri, mimeTypeFilter, opts);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            IoTrace.end(IoTrace.PROVIDER_OPEN_FILE, startNanos);
+        }
+    }
+
+    // The body of openTypedAssetFile(), run inside its trace section.
+    private AssetFileDescriptor openNoteStream(Uri uri, String mimeTypeFilter, Bundle opts)
+            throws FileNotFoundException {
+
+        // Starts timing the request for the provider metrics.
+        long startNanos = System.nanoTime();
 
         // Checks to see if the MIME type filter matches a supported MIME type.
         String[] mimeTypes = getStreamTypes(uri, mimeTypeFilter);
@@ -473,9 +1052,11 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
             }
 
             // Start a new thread that pipes the stream data back to the caller.
-            return new AssetFileDescriptor(
+            AssetFileDescriptor afd = new AssetFileDescriptor(
                     openPipeHelper(uri, mimeTypes[0], opts, c, this), 0,
                     AssetFileDescriptor.UNKNOWN_LENGTH);
+            mMetrics.record(ProviderMetrics.OP_OPEN_FILE, sUriMatcher.match(uri), startNanos, 1);
+            return afd;
         }
 
         // If the MIME type is not supported, return a read-only handle to the file.
@@ -490,12 +1071,16 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     @Override
     public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
                                 Bundle opts, Cursor c) {
+        // Runs on the pipe thread, so it gets its own trace section.
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_WRITE_PIPE);
+
         // We currently only support conversion-to-text from a single note entry,
         // so no need for cursor data type checking here.
         FileOutputStream fout = new FileOutputStream(output.getFileDescriptor());
+        CountingOutputStream counter = new CountingOutputStream(fout);
         PrintWriter pw = null;
         try {
-            pw = new PrintWriter(new OutputStreamWriter(fout, "UTF-8"));
+            pw = new PrintWriter(new OutputStreamWriter(counter, "UTF-8"));
             pw.println(c.getString(READ_NOTE_TITLE_INDEX));
             pw.println("");
             pw.println(c.getString(READ_NOTE_NOTE_INDEX));
@@ -506,10 +1091,40 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
             if (pw != null) {
                 pw.flush();
             }
+            mMetrics.addBytesStreamed(counter.getCount());
             try {
                 fout.close();
             } catch (IOException e) {
             }
+            IoTrace.end(IoTrace.PROVIDER_WRITE_PIPE, startNanos);
+        }
+    }
+
+    /**
+     * An output stream that counts the bytes written through it, used to report how much data
+     * writeDataToPipe() streams to clients.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+
+        long getCount() {
+            return mCount;
         }
     }
 //END_INCLUDE(stream)
@@ -526,12 +1141,68 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      */
     @Override
     public Uri insert(Uri uri, ContentValues initialValues) {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_INSERT);
+        mDatabaseLock.readLock().lock();
+        try {
+            return insertNote(uri, initialValues);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            IoTrace.end(IoTrace.PROVIDER_INSERT, startNanos);
+        }
+    }
+
+    // The body of insert(), run inside its trace section.
+    private Uri insertNote(Uri uri, ContentValues initialValues) {
+
+        // Starts timing the insert for the provider metrics.
+        long startNanos = System.nanoTime();
 
         // Validates the incoming URI. Only the full provider URI is allowed for inserts.
         if (sUriMatcher.match(uri) != NOTES) {
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
+        // Only the sync engine sets the sync state; a new note from anyone else is dirty.
+        if (initialValues != null && !isSyncAdapter(uri)) {
+            initialValues = new ContentValues(initialValues);
+            SyncEngine.removeSyncColumns(initialValues);
+        }
+
+        // Inserts the note, filling in defaults for the columns the caller left out.
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long rowId = insertRow(db, initialValues);
+
+        // If the insert succeeded, the row ID exists.
+        if (rowId > 0) {
+            // Creates a URI with the note ID pattern and the new row ID appended to it.
+            Uri noteUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, rowId);
+
+            // Notifies observers registered against this provider that the data changed.
+            notifyChange(noteUri);
+            if (WidgetSnapshot.noteChanged(db, rowId)) {
+                notifyChange(NotePad.Notes.WIDGET_URI);
+            }
+
+            // Records the first revision of the note in the background.
+            mRevisions.schedule(rowId);
+
+            mMetrics.record(ProviderMetrics.OP_INSERT, NOTES, startNanos, 1);
+            return noteUri;
+        }
+
+        // If the insert didn't succeed, then the rowID is <= 0. Throws an exception.
+        throw new SQLException("Failed to insert row into " + uri);
+    }
+
+    /**
+     * Inserts one note into the notes table and the search index, filling in defaults for the
+     * columns that are not included in the incoming map. Shared by insert(), bulkInsert() and
+     * corpus seeding; does not notify observers.
+     *
+     * @return The row ID of the new note, or -1 if the insert failed.
+     */
+    private long insertRow(SQLiteDatabase db, ContentValues initialValues) {
+
         // A map to hold the new record's values.
         ContentValues values;
 
@@ -569,30 +1240,205 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
             values.put(NotePad.Notes.COLUMN_NAME_NOTE, "");
         }
 
-        // Opens the database object in "write" mode.
-        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        // Sets the snippet and compresses the note if it is large.
+        encodeNote(values);
 
-        // Performs the insert and returns the ID of the new note.
-        long rowId = db.insert(
-                NotePad.Notes.TABLE_NAME,        // The table to insert into.
-                NotePad.Notes.COLUMN_NAME_NOTE,  // A hack, SQLite sets this column value to null
-                // if values is empty.
-                values                           // A map of column names, and the values to insert
-                // into the columns.
-        );
+        // Inserts the note and indexes it for search in one transaction.
+        db.beginTransaction();
+        try {
+            long rowId = db.insert(
+                    NotePad.Notes.TABLE_NAME,        // The table to insert into.
+                    NotePad.Notes.COLUMN_NAME_NOTE,  // A hack, SQLite sets this column value to
+                    // null if values is empty.
+                    values                           // A map of column names, and the values to
+                    // insert into the columns.
+            );
+            if (rowId > 0) {
+                indexNote(db, rowId, true, true);
+            }
+            db.setTransactionSuccessful();
 
-        // If the insert succeeded, the row ID exists.
-        if (rowId > 0) {
-            // Creates a URI with the note ID pattern and the new row ID appended to it.
-            Uri noteUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, rowId);
+            // Returns the ID of the new note.
+            return rowId;
+        } finally {
+            db.endTransaction();
+        }
+    }
 
-            // Notifies observers registered against this provider that the data changed.
-            getContext().getContentResolver().notifyChange(noteUri, null);
-            return noteUri;
+    /**
+     * Brings the search indexes of one note up to date with its stored values. Must be called
+     * inside a transaction.
+     *
+     * @param text   Whether the title or body may have changed, for the text indexes
+     * @param pinyin Whether the title or category may have changed, for the pinyin index
+     */
+    private static void indexNote(SQLiteDatabase db, long noteId, boolean text, boolean pinyin) {
+        if (text) {
+            TrigramIndex.indexNote(db, noteId);
+            FullTextIndex.indexNote(db, noteId);
+        }
+        if (pinyin) {
+            PinyinIndex.indexNote(db, noteId);
         }
+    }
 
-        // If the insert didn't succeed, then the rowID is <= 0. Throws an exception.
-        throw new SQLException("Failed to insert row into " + uri);
+    /**
+     * Prepares a values map for storage. The snippet, the storage columns and the title sort key
+     * are maintained by the provider, so values supplied by the caller are dropped; if the map
+     * sets the note, the snippet is derived from it and the body is compressed when it reaches
+     * the threshold, and if it sets the title, its sort key is computed.
+     */
+    private void encodeNote(ContentValues values) {
+        values.remove(NotePad.Notes.COLUMN_NAME_SNIPPET);
+        values.remove(NoteCodec.COLUMN_DATA);
+        values.remove(NoteCodec.COLUMN_ENCODING);
+        values.remove(TitleCollation.COLUMN_TITLE_KEY);
+        NoteCodec.encode(values, mCompressionThreshold);
+        if (values.containsKey(NotePad.Notes.COLUMN_NAME_TITLE)) {
+            values.put(TitleCollation.COLUMN_TITLE_KEY,
+                    TitleCollation.titleKey(values.getAsString(NotePad.Notes.COLUMN_NAME_TITLE)));
+        }
+    }
+
+    /**
+     * This is called when a client calls
+     * {@link android.content.ContentResolver#bulkInsert(Uri, ContentValues[])}.
+     * Inserts all the notes in a single transaction, which is much faster than one insert() per
+     * note, and notifies observers once at the end.
+     *
+     * @return The number of notes inserted.
+     * @throws SQLException if any insert fails; none of the notes are inserted in that case.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_BULK_INSERT);
+        mDatabaseLock.readLock().lock();
+        try {
+            if (sUriMatcher.match(uri) != NOTES) {
+                throw new IllegalArgumentException("Unknown URI " + uri);
+            }
+
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            boolean widgetChanged;
+            db.beginTransaction();
+            try {
+                boolean syncAdapter = isSyncAdapter(uri);
+                for (ContentValues v : values) {
+                    if (!syncAdapter) {
+                        v = new ContentValues(v);
+                        SyncEngine.removeSyncColumns(v);
+                    }
+                    if (insertRow(db, v) <= 0) {
+                        throw new SQLException("Failed to insert row into " + uri);
+                    }
+                }
+                widgetChanged = WidgetSnapshot.refresh(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            notifyChange(uri);
+            if (widgetChanged) {
+                notifyChange(NotePad.Notes.WIDGET_URI);
+            }
+            mMetrics.record(ProviderMetrics.OP_INSERT, NOTES, startNanos, values.length);
+            return values.length;
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            IoTrace.end(IoTrace.PROVIDER_BULK_INSERT, startNanos);
+        }
+    }
+
+    /**
+     * This is called when a client calls
+     * {@link android.content.ContentResolver#applyBatch(String, ArrayList)}.
+     * Applies all the operations in a single transaction: either every operation takes effect or,
+     * if one of them fails, none does. Observers are notified once after the commit, rather than
+     * once per operation.
+     *
+     * @return The results of the operations, in order.
+     * @throws OperationApplicationException if an operation fails; the batch is rolled back.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_APPLY_BATCH);
+        mDatabaseLock.readLock().lock();
+        Set<Uri> changed = new LinkedHashSet<Uri>();
+        try {
+            ContentProviderResult[] results;
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            mDeferredNotifications.set(changed);
+            db.beginTransaction();
+            try {
+                results = super.applyBatch(operations);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                mDeferredNotifications.remove();
+            }
+
+            // One notification for the whole batch. Notifying the notes URI also reaches
+            // observers of single notes, so several changed URIs collapse into that one, which
+            // still lists the notes and columns if the batch only made updates. The widget URI
+            // is not under the notes URI and is notified on its own.
+            if (changed.remove(NotePad.Notes.WIDGET_URI)) {
+                notifyChange(NotePad.Notes.WIDGET_URI);
+            }
+            if (changed.size() == 1) {
+                notifyChange(changed.iterator().next());
+            } else if (!changed.isEmpty()) {
+                notifyChange(ChangeNotifications.merge(changed));
+            }
+            return results;
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            IoTrace.end(IoTrace.PROVIDER_APPLY_BATCH, startNanos);
+        }
+    }
+
+    /**
+     * Inserts the synthetic notes described by the configuration. Runs inside the provider, so
+     * the notes never cross a binder boundary, and commits every {@link #SEED_BATCH_SIZE} notes
+     * so a large corpus does not build one enormous transaction.
+     *
+     * @return A Bundle with the number of notes inserted and the time it took.
+     */
+    private Bundle seedCorpus(CorpusGenerator.Config config) {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_SEED);
+        try {
+            CorpusGenerator generator = new CorpusGenerator(config);
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            int end = config.start + config.count;
+            for (int batch = config.start; batch < end; batch += SEED_BATCH_SIZE) {
+                int batchEnd = Math.min(end, batch + SEED_BATCH_SIZE);
+                db.beginTransaction();
+                try {
+                    for (int i = batch; i < batchEnd; i++) {
+                        if (insertRow(db, generator.valuesFor(i)) <= 0) {
+                            throw new SQLException("Failed to insert corpus note " + i);
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            notifyChange(NotePad.Notes.CONTENT_URI);
+            if (WidgetSnapshot.refresh(db)) {
+                notifyChange(NotePad.Notes.WIDGET_URI);
+            }
+
+            Bundle result = new Bundle();
+            result.putInt(CorpusGenerator.KEY_INSERTED, config.count);
+            result.putLong(CorpusGenerator.KEY_ELAPSED_MS,
+                    (System.nanoTime() - startNanos) / 1000000L);
+            return result;
+        } finally {
+            IoTrace.end(IoTrace.PROVIDER_SEED, startNanos);
+        }
     }
 
     /**
@@ -611,6 +1457,21 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      */
     @Override
     public int delete(Uri uri, String where, String[] whereArgs) {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_DELETE);
+        mDatabaseLock.readLock().lock();
+        try {
+            return deleteNotes(uri, where, whereArgs);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            IoTrace.end(IoTrace.PROVIDER_DELETE, startNanos);
+        }
+    }
+
+    // The body of delete(), run inside its trace section.
+    private int deleteNotes(Uri uri, String where, String[] whereArgs) {
+
+        // Starts timing the delete for the provider metrics.
+        long startNanos = System.nanoTime();
 
         // Opens the database object in "write" mode.
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -618,58 +1479,85 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
 
         int count;
 
-        // Does the delete based on the incoming URI pattern.
-        switch (sUriMatcher.match(uri)) {
-
-            // If the incoming pattern matches the general pattern for notes, does a delete
-            // based on the incoming "where" columns and arguments.
-            case NOTES:
-                count = db.delete(
-                        NotePad.Notes.TABLE_NAME,  // The database table name
-                        where,                     // The incoming where clause column names
-                        whereArgs                  // The incoming where clause values
-                );
-                break;
-
-            // If the incoming URI matches a single note ID, does the delete based on the
-            // incoming data, but modifies the where clause to restrict it to the
-            // particular note ID.
-            case NOTE_ID:
-                /*
-                 * Starts a final WHERE clause by restricting it to the
-                 * desired note ID.
-                 */
-                finalWhere =
-                        NotePad.Notes._ID +                              // The ID column name
-                                " = " +                                          // test for equality
-                                uri.getPathSegments().                           // the incoming note ID
-                                        get(NotePad.Notes.NOTE_ID_PATH_POSITION)
-                ;
-
-                // If there were additional selection criteria, append them to the final
-                // WHERE clause
-                if (where != null) {
-                    finalWhere = finalWhere + " AND " + where;
-                }
+        // Whether the delete changed the notes shown by the widget.
+        boolean widgetChanged;
 
-                // Performs the delete.
-                count = db.delete(
-                        NotePad.Notes.TABLE_NAME,  // The database table name.
-                        finalWhere,                // The final WHERE clause
-                        whereArgs                  // The incoming where clause values.
-                );
-                break;
-
-            // If the incoming pattern is invalid, throws an exception.
-            default:
-                throw new IllegalArgumentException("Unknown URI " + uri);
+        // Deletes the notes, and records the tombstones the next sync pushes, in one
+        // transaction. Deletes made by the sync engine are not pushed back.
+        boolean recordTombstones = !isSyncAdapter(uri);
+        db.beginTransaction();
+        int match = sUriMatcher.match(uri);
+        try {
+            // Does the delete based on the incoming URI pattern.
+            switch (match) {
+
+                // If the incoming pattern matches the general pattern for notes, does a delete
+                // based on the incoming "where" columns and arguments.
+                case NOTES:
+                    if (recordTombstones) {
+                        SyncEngine.recordTombstones(db, where, whereArgs);
+                    }
+                    count = db.delete(
+                            NotePad.Notes.TABLE_NAME,  // The database table name
+                            where,                     // The incoming where clause column names
+                            whereArgs                  // The incoming where clause values
+                    );
+                    widgetChanged = count > 0 && WidgetSnapshot.refresh(db);
+                    break;
+
+                // If the incoming URI matches a single note ID, does the delete based on the
+                // incoming data, but modifies the where clause to restrict it to the
+                // particular note ID.
+                case NOTE_ID:
+                    /*
+                     * Starts a final WHERE clause by restricting it to the
+                     * desired note ID.
+                     */
+                    finalWhere =
+                            NotePad.Notes._ID +                              // The ID column name
+                                    " = " +                                          // test for equality
+                                    uri.getPathSegments().                           // the incoming note ID
+                                            get(NotePad.Notes.NOTE_ID_PATH_POSITION)
+                    ;
+
+                    // If there were additional selection criteria, append them to the final
+                    // WHERE clause
+                    if (where != null) {
+                        finalWhere = finalWhere + " AND " + where;
+                    }
+
+                    // Performs the delete.
+                    if (recordTombstones) {
+                        SyncEngine.recordTombstones(db, finalWhere, whereArgs);
+                    }
+                    count = db.delete(
+                            NotePad.Notes.TABLE_NAME,  // The database table name.
+                            finalWhere,                // The final WHERE clause
+                            whereArgs                  // The incoming where clause values.
+                    );
+                    widgetChanged = count > 0 && WidgetSnapshot.noteChanged(db, Long.parseLong(
+                            uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)));
+                    break;
+
+                // If the incoming pattern is invalid, throws an exception.
+                default:
+                    throw new IllegalArgumentException("Unknown URI " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
 
         /*Gets a handle to the content resolver object for the current context, and notifies it
          * that the incoming URI changed. The object passes this along to the resolver framework,
          * and observers that have registered themselves for the provider are notified.
          */
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
+        if (widgetChanged) {
+            notifyChange(NotePad.Notes.WIDGET_URI);
+        }
+
+        mMetrics.record(ProviderMetrics.OP_DELETE, match, startNanos, count);
 
         // Returns the number of rows deleted.
         return count;
@@ -697,77 +1585,494 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      */
     @Override
     public int update(Uri uri, ContentValues values, String where, String[] whereArgs) {
+        long startNanos = IoTrace.begin(IoTrace.PROVIDER_UPDATE);
+        mDatabaseLock.readLock().lock();
+        try {
+            return updateNotes(uri, values, where, whereArgs);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            IoTrace.end(IoTrace.PROVIDER_UPDATE, startNanos);
+        }
+    }
+
+    // The body of update(), run inside its trace section.
+    private int updateNotes(Uri uri, ContentValues values, String where, String[] whereArgs) {
+
+        // Starts timing the update for the provider metrics.
+        long startNanos = System.nanoTime();
 
         // Opens the database object in "write" mode.
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int count;
         String finalWhere;
 
-        // Does the update based on the incoming URI pattern
-        switch (sUriMatcher.match(uri)) {
-
-            // If the incoming URI matches the general notes pattern, does the update based on
-            // the incoming data.
-            case NOTES:
+        // Copies the values so the caller's map is not changed. The sync engine writes the sync
+        // state itself; other callers cannot.
+        values = new ContentValues(values);
+        boolean syncAdapter = isSyncAdapter(uri);
+        if (!syncAdapter) {
+            SyncEngine.removeSyncColumns(values);
+        }
 
-                // Does the update and returns the number of rows updated.
-                count = db.update(
-                        NotePad.Notes.TABLE_NAME, // The database table name.
-                        values,                   // A map of column names and new values to use.
-                        where,                    // The where clause column names.
-                        whereArgs                 // The where clause column values to select on.
-                );
-                break;
+        // The columns the notification lists, before the note is encoded.
+        Set<String> notifiedColumns = ChangeNotifications.columnsOf(values);
+        encodeNote(values);
+
+        // A local change to a synced column marks the notes for the next sync. Only the notes
+        // whose stored values differ are marked, so saving a note without edits does not.
+        boolean syncedChanged = !syncAdapter && SyncEngine.touchesSyncedColumns(values);
+
+        // If the text changes, the updated notes get a new revision. If the title or the text
+        // changes, their text search indexes are refreshed; if the title or the category
+        // changes, their pinyin index is.
+        boolean textChanged = values.containsKey(NotePad.Notes.COLUMN_NAME_NOTE);
+        boolean titleChanged = values.containsKey(NotePad.Notes.COLUMN_NAME_TITLE);
+        boolean textIndexChanged = textChanged || titleChanged;
+        boolean pinyinChanged = titleChanged
+                || values.containsKey(NotePad.Notes.COLUMN_NAME_CATEGORY);
+        boolean indexChanged = textIndexChanged || pinyinChanged;
+
+        // The notes the update changes. Only listed in full if their indexed values change;
+        // otherwise at most one more than can be notified, since they are only notified.
+        long[] changedIds = null;
+
+        // Whether the update changed the notes shown by the widget.
+        boolean widgetChanged;
+
+        // Updates the notes and their search index in one transaction.
+        db.beginTransaction();
+        int match = sUriMatcher.match(uri);
+        try {
+            // Does the update based on the incoming URI pattern
+            switch (match) {
+
+                // If the incoming URI matches the general notes pattern, does the update based on
+                // the incoming data.
+                case NOTES:
+
+                    // Finds the notes that are about to change, before the update can change
+                    // which notes the selection matches. Their IDs are also notified.
+                    changedIds = selectIds(db, where, whereArgs, indexChanged
+                            ? null : String.valueOf(ChangeNotifications.MAX_IDS + 1));
+
+                    if (syncedChanged) {
+                        SyncEngine.markChanged(db, where, whereArgs, values, nextSyncChange(db));
+                    }
+
+                    // Does the update and returns the number of rows updated.
+                    count = db.update(
+                            NotePad.Notes.TABLE_NAME, // The database table name.
+                            values,                   // A map of column names and new values to use.
+                            where,                    // The where clause column names.
+                            whereArgs                 // The where clause column values to select on.
+                    );
+                    widgetChanged = count > 0 && WidgetSnapshot.refresh(db);
+                    break;
+
+                // If the incoming URI matches a single note ID, does the update based on the
+                // incoming data, but modifies the where clause to restrict it to the particular
+                // note ID.
+                case NOTE_ID:
+                    // From the incoming URI, get the note ID
+                    String noteId = uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION);
+
+                    /*
+                     * Starts creating the final WHERE clause by restricting it to the incoming
+                     * note ID.
+                     */
+                    finalWhere =
+                            NotePad.Notes._ID +                              // The ID column name
+                                    " = " +                                          // test for equality
+                                    uri.getPathSegments().                           // the incoming note ID
+                                            get(NotePad.Notes.NOTE_ID_PATH_POSITION)
+                    ;
+
+                    // If there were additional selection criteria, append them to the final WHERE
+                    // clause
+                    if (where != null) {
+                        finalWhere = finalWhere + " AND " + where;
+                    }
+
+                    if (syncedChanged) {
+                        SyncEngine.markChanged(db, finalWhere, whereArgs, values,
+                                nextSyncChange(db));
+                    }
+
+                    // Does the update and returns the number of rows updated.
+                    count = db.update(
+                            NotePad.Notes.TABLE_NAME, // The database table name.
+                            values,                   // A map of column names and new values to use.
+                            finalWhere,               // The final WHERE clause to use
+                            // placeholders for whereArgs
+                            whereArgs                 // The where clause column values to select on, or
+                            // null if the values are in the where argument.
+                    );
+                    if (indexChanged) {
+                        changedIds = new long[]{Long.parseLong(noteId)};
+                    }
+                    widgetChanged = count > 0
+                            && WidgetSnapshot.noteChanged(db, Long.parseLong(noteId));
+                    break;
+                // If the incoming pattern is invalid, throws an exception.
+                default:
+                    throw new IllegalArgumentException("Unknown URI " + uri);
+            }
 
-            // If the incoming URI matches a single note ID, does the update based on the incoming
-            // data, but modifies the where clause to restrict it to the particular note ID.
-            case NOTE_ID:
-                // From the incoming URI, get the note ID
-                String noteId = uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION);
-
-                /*
-                 * Starts creating the final WHERE clause by restricting it to the incoming
-                 * note ID.
-                 */
-                finalWhere =
-                        NotePad.Notes._ID +                              // The ID column name
-                                " = " +                                          // test for equality
-                                uri.getPathSegments().                           // the incoming note ID
-                                        get(NotePad.Notes.NOTE_ID_PATH_POSITION)
-                ;
-
-                // If there were additional selection criteria, append them to the final WHERE
-                // clause
-                if (where != null) {
-                    finalWhere = finalWhere + " AND " + where;
+            if (indexChanged && changedIds != null && count > 0) {
+                for (long id : changedIds) {
+                    indexNote(db, id, textIndexChanged, pinyinChanged);
                 }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
 
-
-                // Does the update and returns the number of rows updated.
-                count = db.update(
-                        NotePad.Notes.TABLE_NAME, // The database table name.
-                        values,                   // A map of column names and new values to use.
-                        finalWhere,               // The final WHERE clause to use
-                        // placeholders for whereArgs
-                        whereArgs                 // The where clause column values to select on, or
-                        // null if the values are in the where argument.
-                );
-                break;
-            // If the incoming pattern is invalid, throws an exception.
-            default:
-                throw new IllegalArgumentException("Unknown URI " + uri);
+        // Records the saved text as a new revision in the background, once it is committed.
+        if (textChanged && changedIds != null && count > 0) {
+            for (long id : changedIds) {
+                mRevisions.schedule(id);
+            }
         }
 
         /*Gets a handle to the content resolver object for the current context, and notifies it
          * that the incoming URI changed. The object passes this along to the resolver framework,
-         * and observers that have registered themselves for the provider are notified.
+         * and observers that have registered themselves for the provider are notified. The
+         * notified URI lists the columns the update wrote and, if known, the updated notes.
          */
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(ChangeNotifications.forUpdate(uri,
+                match == NOTES ? changedIds : null, notifiedColumns));
+        if (widgetChanged) {
+            notifyChange(NotePad.Notes.WIDGET_URI);
+        }
+
+        mMetrics.record(ProviderMetrics.OP_UPDATE, match, startNanos, count);
 
         // Returns the number of rows updated.
         return count;
     }
 
+    /**
+     * Returns a new value for the sync change counter of a locally changed note. The counter
+     * only grows, so the sync engine can tell whether a note changed again after it read it.
+     */
+    private synchronized long nextSyncChange(SQLiteDatabase db) {
+        if (mSyncChange < 0) {
+            // Starts above every pending change, read through the dirty index, and above 1,
+            // the column default of new notes.
+            mSyncChange = Math.max(1, DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(" + SyncEngine.COLUMN_SYNC_DIRTY + "), 0) FROM "
+                            + NotePad.Notes.TABLE_NAME + " WHERE "
+                            + SyncEngine.COLUMN_SYNC_DIRTY + " > 0", null));
+        }
+        return ++mSyncChange;
+    }
+
+    // Returns the IDs of the notes that match a selection, at most limit of them if it is not
+    // null.
+    private static long[] selectIds(SQLiteDatabase db, String where, String[] whereArgs,
+                                    String limit) {
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, new String[]{NotePad.Notes._ID},
+                where, whereArgs, null, null, null, limit);
+        try {
+            long[] ids = new long[c.getCount()];
+            for (int i = 0; c.moveToNext(); i++) {
+                ids[i] = c.getLong(0);
+            }
+            return ids;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Notifies observers of the given URI that its data changed, and counts the notification in
+     * the provider metrics. Inside applyBatch() the URI is only recorded, and the batch notifies
+     * once it commits. Notifying the widget URI also tells the home-screen widgets to reload;
+     * notifying any other URI, which is a notes URI, also notifies observers of the change log.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> deferred = mDeferredNotifications.get();
+        if (deferred != null) {
+            deferred.add(uri);
+            return;
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+        mMetrics.incrementNotifications();
+        if (NotePad.Notes.WIDGET_URI.equals(uri)) {
+            NoteWidgetProvider.notifyDataChanged(getContext());
+        } else {
+            getContext().getContentResolver().notifyChange(NotePad.NoteChanges.CONTENT_URI, null);
+        }
+    }
+
+    /**
+     * This is called when a client calls
+     * {@link android.content.ContentResolver#call(Uri, String, String, Bundle)}.
+     * Supports {@link ProviderMetrics#METHOD_METRICS}, which returns the provider metrics as a
+     * Bundle and resets them if the argument is {@link ProviderMetrics#ARG_RESET};
+     * {@link SlowQueryLog#METHOD_SLOW_QUERIES}, which returns the slow-query log and clears it if
+     * the argument is {@link SlowQueryLog#ARG_CLEAR}; and
+     * {@link SlowQueryLog#METHOD_SET_THRESHOLD}, which sets the slow-query threshold to the
+     * argument in milliseconds; {@link CorpusGenerator#METHOD_SEED}, which seeds the
+     * synthetic corpus described by the extras; {@link DatabaseMaintenance#METHOD_MAINTENANCE},
+     * which runs database maintenance and returns its report; and
+     * {@link DatabaseBackup#METHOD_BACKUP} and {@link DatabaseBackup#METHOD_RESTORE}, which back
+     * up the database to, or restore it from, the URI in the argument and return their report;
+     * {@link IncrementalExport#METHOD_EXPORT}, which appends the changes since the last
+     * export to the export log, or compacts it, and returns its report; and
+     * {@link SyncEngine#METHOD_SYNC}, which syncs the notes with the server at the URL in the
+     * argument and returns the sync report.
+     *
+     * @return The result Bundle, or null if the method is not supported.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        enforceTrustedCaller("call " + method);
+        // A restore takes the database lock exclusively, so it must not hold it shared first.
+        if (DatabaseBackup.METHOD_RESTORE.equals(method)) {
+            long startNanos = IoTrace.begin(IoTrace.PROVIDER_RESTORE);
+            try {
+                return restoreDatabase(arg);
+            } finally {
+                IoTrace.end(IoTrace.PROVIDER_RESTORE, startNanos);
+            }
+        }
+        mDatabaseLock.readLock().lock();
+        try {
+            return callMethod(method, arg, extras);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    // The body of call() for every method but restore, run while holding the database lock.
+    private Bundle callMethod(String method, String arg, Bundle extras) {
+        if (ProviderMetrics.METHOD_METRICS.equals(method)) {
+            Bundle result = mMetrics.toBundle();
+            if (ProviderMetrics.ARG_RESET.equals(arg)) {
+                mMetrics.reset();
+            }
+            return result;
+        } else if (SlowQueryLog.METHOD_SLOW_QUERIES.equals(method)) {
+            Bundle result = mSlowQueryLog.toBundle();
+            if (SlowQueryLog.ARG_CLEAR.equals(arg)) {
+                mSlowQueryLog.clear();
+            }
+            return result;
+        } else if (SlowQueryLog.METHOD_SET_THRESHOLD.equals(method)) {
+            try {
+                mSlowQueryLog.setThresholdMillis(Long.parseLong(arg));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid threshold " + arg);
+            }
+            return mSlowQueryLog.toBundle();
+        } else if (CorpusGenerator.METHOD_SEED.equals(method)) {
+            return seedCorpus(CorpusGenerator.Config.fromBundle(extras));
+        } else if (DatabaseMaintenance.METHOD_MAINTENANCE.equals(method)) {
+            long startNanos = IoTrace.begin(IoTrace.PROVIDER_MAINTENANCE);
+            try {
+                return DatabaseMaintenance.run(mOpenHelper.getWritableDatabase(), mRevisions);
+            } finally {
+                IoTrace.end(IoTrace.PROVIDER_MAINTENANCE, startNanos);
+            }
+        } else if (DatabaseBackup.METHOD_BACKUP.equals(method)) {
+            long startNanos = IoTrace.begin(IoTrace.PROVIDER_BACKUP);
+            try {
+                return backupDatabase(arg, extras);
+            } finally {
+                IoTrace.end(IoTrace.PROVIDER_BACKUP, startNanos);
+            }
+        } else if (IncrementalExport.METHOD_EXPORT.equals(method)) {
+            long startNanos = IoTrace.begin(IoTrace.PROVIDER_EXPORT);
+            try {
+                return IncrementalExport.run(getContext(), mOpenHelper.getWritableDatabase(),
+                        extras != null && extras.getBoolean(IncrementalExport.EXTRA_FULL));
+            } catch (IOException e) {
+                throw new IllegalStateException("Export failed: " + e.getMessage(), e);
+            } finally {
+                IoTrace.end(IoTrace.PROVIDER_EXPORT, startNanos);
+            }
+        } else if (SyncEngine.METHOD_SYNC.equals(method)) {
+            if (arg == null) {
+                throw new IllegalArgumentException("No sync server");
+            }
+            long startNanos = IoTrace.begin(IoTrace.PROVIDER_SYNC);
+            try {
+                return SyncEngine.sync(getContext(), this, mOpenHelper.getWritableDatabase(),
+                        new SyncClient(arg));
+            } catch (IOException e) {
+                throw new IllegalStateException("Sync failed: " + e.getMessage(), e);
+            } catch (OperationApplicationException e) {
+                throw new IllegalStateException("Sync failed: " + e.getMessage(), e);
+            } finally {
+                IoTrace.end(IoTrace.PROVIDER_SYNC, startNanos);
+            }
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Returns whether a URI is used by the sync engine, which writes the sync columns itself and
+     * whose changes are neither marked dirty nor recorded as tombstones.
+     *
+     * @throws SecurityException if an untrusted caller passes the sync adapter parameter.
+     */
+    private boolean isSyncAdapter(Uri uri) {
+        if (!SyncEngine.isSyncAdapter(uri)) {
+            return false;
+        }
+        enforceTrustedCaller("write as the sync adapter");
+        return true;
+    }
+
+    /**
+     * Throws a SecurityException unless the caller is this app, an app holding
+     * {@link NotePad#PERMISSION_MANAGE_NOTES}, or, in debug builds, adb shell. The provider is
+     * exported so that other apps can read and edit notes, but its call() methods copy, replace
+     * or upload the whole database, and the sync adapter parameter bypasses change tracking.
+     *
+     * @param action What the caller tried to do, for the exception message.
+     */
+    private void enforceTrustedCaller(String action) {
+        int uid = Binder.getCallingUid();
+        if (uid == Process.myUid() || (BuildConfig.DEBUG && uid == SHELL_UID)) {
+            return;
+        }
+        getContext().enforceCallingPermission(NotePad.PERMISSION_MANAGE_NOTES,
+                "uid " + uid + " may not " + action);
+    }
+
+    /**
+     * Prints the provider metrics. Reached through
+     * {@code adb shell dumpsys activity provider com.example.android.notepad/.NotePadProvider}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mMetrics.dump(writer);
+    }
+
+    /**
+     * Backs up the database to the given URI, or to a new file in the backups directory, and
+     * returns the backup report with the location of the backup.
+     *
+     * @throws IllegalStateException if the backup fails; a new file is deleted in that case.
+     */
+    private Bundle backupDatabase(String destination, Bundle extras) {
+        boolean compress = extras == null
+                || extras.getBoolean(DatabaseBackup.EXTRA_COMPRESS, true);
+        File file = null;
+        try {
+            Uri uri;
+            OutputStream out;
+            if (destination != null) {
+                uri = Uri.parse(destination);
+                out = getContext().getContentResolver().openOutputStream(uri);
+                if (out == null) {
+                    throw new FileNotFoundException(destination);
+                }
+            } else {
+                File dir = new File(getContext().getFilesDir(), DatabaseBackup.BACKUP_DIRECTORY);
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Cannot create " + dir);
+                }
+                file = new File(dir, "note_pad-"
+                        + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date())
+                        + (compress ? ".db.gz" : ".db"));
+                uri = Uri.fromFile(file);
+                out = new FileOutputStream(file);
+            }
+            Bundle report = DatabaseBackup.backup(mOpenHelper.getWritableDatabase(), out,
+                    compress);
+            report.putString(DatabaseBackup.KEY_LOCATION, uri.toString());
+            return report;
+        } catch (IOException e) {
+            if (file != null) {
+                file.delete();
+            }
+            throw new IllegalStateException("Backup failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces the database with the backup at the given URI, or with the newest file in the
+     * backups directory, and notifies every observer of the notes. Holds the database lock
+     * exclusively while it runs, so no query, write, revision or other call() method sees the
+     * database files being swapped.
+     *
+     * @throws IllegalArgumentException if there is no backup or it is not one this app can open.
+     * @throws IllegalStateException if the backup cannot be read, other work on the database does
+     * not finish in time, or the database cannot be replaced; the current notes are kept in that
+     * case.
+     */
+    private Bundle restoreDatabase(String source) {
+        try {
+            InputStream in;
+            if (source != null) {
+                in = getContext().getContentResolver().openInputStream(Uri.parse(source));
+                if (in == null) {
+                    throw new FileNotFoundException(source);
+                }
+            } else {
+                File[] files = new File(getContext().getFilesDir(),
+                        DatabaseBackup.BACKUP_DIRECTORY).listFiles();
+                File latest = null;
+                if (files != null) {
+                    for (File f : files) {
+                        if (latest == null || f.getName().compareTo(latest.getName()) > 0) {
+                            latest = f;
+                        }
+                    }
+                }
+                if (latest == null) {
+                    throw new IllegalArgumentException("No backups");
+                }
+                in = new FileInputStream(latest);
+            }
+            Bundle report;
+            lockDatabaseExclusively(in);
+            try {
+                report = DatabaseBackup.restore(mOpenHelper, in, DATABASE_VERSION);
+                // The export log describes the notes that were replaced; the next export
+                // rewrites it.
+                IncrementalExport.reset(getContext());
+                // The restored notes may be older than the server; the next sync pulls
+                // everything.
+                SyncEngine.reset(getContext());
+                synchronized (this) {
+                    mSyncChange = -1;
+                }
+                mRevisions.clearCache();
+            } finally {
+                mDatabaseLock.writeLock().unlock();
+            }
+            notifyChange(NotePad.Notes.CONTENT_URI);
+            notifyChange(NotePad.Notes.WIDGET_URI);
+            return report;
+        } catch (IOException e) {
+            throw new IllegalStateException("Restore failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Takes the database lock exclusively, waiting for the work that holds it to finish, and
+     * closes the stream if that takes too long. The lock is polled rather than waited for: a
+     * waiting writer blocks new readers, and maintenance holds the lock while it waits for a
+     * revision task that needs it too.
+     *
+     * @throws IOException if the lock is still held after {@link #RESTORE_WAIT_MILLIS}.
+     */
+    private void lockDatabaseExclusively(InputStream in) throws IOException {
+        long deadline = SystemClock.uptimeMillis() + RESTORE_WAIT_MILLIS;
+        while (!mDatabaseLock.writeLock().tryLock()) {
+            if (SystemClock.uptimeMillis() >= deadline) {
+                in.close();
+                throw new IOException("The database is busy");
+            }
+            SystemClock.sleep(RESTORE_POLL_MILLIS);
+        }
+    }
+
     /**
      * A test package can call this to get a handle to the database underlying NotePadProvider,
      * so it can insert test data into the database. The test case class is responsible for
@@ -779,4 +2084,26 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     DatabaseHelper getOpenHelperForTest() {
         return mOpenHelper;
     }
+
+    /**
+     * Sets the body length at which notes are stored compressed, so tests and benchmarks can
+     * compare compressed and plain storage. {@link Integer#MAX_VALUE} turns compression off.
+     */
+    void setCompressionThresholdForTest(int thresholdChars) {
+        mCompressionThreshold = thresholdChars;
+    }
+
+    /**
+     * Returns the revision store, so tests can wait for revisions recorded in the background.
+     */
+    RevisionStore getRevisionStoreForTest() {
+        return mRevisions;
+    }
+
+    /**
+     * Returns the slow query log, so tests can wait for entries recorded in the background.
+     */
+    SlowQueryLog getSlowQueryLogForTest() {
+        return mSlowQueryLog;
+    }
 }
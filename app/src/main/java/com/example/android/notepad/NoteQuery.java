@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A search query with filters, such as {@code category:工作 color:red before:2026-01-01
+ * title:foo bar}, parsed into a tree of terms and compiled into a parameterized selection on the
+ * notes table. A query is a list of terms separated by spaces, all of which must match:
+ * <ul>
+ * <li>{@code category:NAME} - the note is in the category.
+ * <li>{@code color:NAME} - the note has the color, by English or Chinese name ({@code red},
+ * {@code 绿色}) or as {@code #RRGGBB}.
+ * <li>{@code before:YYYY-MM-DD}, {@code after:YYYY-MM-DD} - the note was last modified before
+ * the start of the day, or on or after it, in local time.
+ * <li>{@code title:TEXT} - the title contains the text, as full-text search finds it.
+ * <li>Any other term is free text, found in the title or body by the full-text index, or in the
+ * title or category by the pinyin index.
+ * </ul>
+ * A value with spaces is put in double quotes, as in {@code category:"Side projects"}, and a
+ * term starting with {@code -} must not match. Field names are case-insensitive, and a term
+ * whose field is not one of the above is free text, so {@code 12:30} searches for the time.
+ * <p>
+ * Category, color and date terms compile to comparisons that the indexes on those columns
+ * answer. Text terms compile to subqueries on the search indexes; all the positive full-text
+ * terms share one MATCH, so a query with several words and filters runs as one statement.
+ */
+final class NoteQuery {
+
+    static final String FIELD_CATEGORY = "category";
+    static final String FIELD_COLOR = "color";
+    static final String FIELD_BEFORE = "before";
+    static final String FIELD_AFTER = "after";
+    static final String FIELD_TITLE = "title";
+
+    // The note colors offered by the editor, by name.
+    private static final Map<String, Integer> COLORS = new HashMap<String, Integer>();
+
+    static {
+        putColor(0xFFFFFFFF, "white", "白色", "白");
+        putColor(0xFFA8E6CF, "green", "绿色", "绿");
+        putColor(0xFFFFD3B6, "orange", "橙色", "橙");
+        putColor(0xFFB2EBF2, "cyan", "青色", "青", "blue", "蓝色", "蓝");
+        putColor(0xFFFFAAA5, "pink", "粉色", "粉", "red", "红色", "红");
+        putColor(0xFFFFF9C4, "yellow", "黄色", "黄");
+        putColor(0xFFE1BEE7, "purple", "紫色", "紫");
+    }
+
+    private static void putColor(int color, String... names) {
+        for (String name : names) {
+            COLORS.put(name, color);
+        }
+    }
+
+    private final List<Term> mTerms;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+
+    private NoteQuery(List<Term> terms) {
+        mTerms = terms;
+        StringBuilder selection = new StringBuilder();
+        List<String> args = new ArrayList<String>();
+        compile(terms, selection, args);
+        mSelection = selection.length() == 0 ? null : selection.toString();
+        mSelectionArgs = args.isEmpty() ? null : args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @throws IllegalArgumentException if a filter has a missing or invalid value; the message
+     *                                  names the term.
+     */
+    static NoteQuery parse(String query) {
+        List<Term> terms = new ArrayList<Term>();
+        int i = 0;
+        while (i < query.length()) {
+            if (Character.isWhitespace(query.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            // A term runs to the next space outside double quotes.
+            int start = i;
+            boolean quoted = false;
+            while (i < query.length() && (quoted || !Character.isWhitespace(query.charAt(i)))) {
+                if (query.charAt(i) == '"') {
+                    quoted = !quoted;
+                }
+                i++;
+            }
+            Term term = parseTerm(query.substring(start, i));
+            if (term != null) {
+                terms.add(term);
+            }
+        }
+        return new NoteQuery(terms);
+    }
+
+    /**
+     * Returns the terms of the query, in order.
+     */
+    List<Term> getTerms() {
+        return Collections.unmodifiableList(mTerms);
+    }
+
+    /**
+     * Returns whether the query has no terms and matches every note.
+     */
+    boolean isEmpty() {
+        return mTerms.isEmpty();
+    }
+
+    /**
+     * Returns whether the query only has positive free-text terms.
+     */
+    boolean isPlainText() {
+        for (Term term : mTerms) {
+            if (term.negated || !(term instanceof TextTerm)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the columns of the notes table that the query depends on; a change to any other
+     * column cannot add a note to the results, remove one or change their order.
+     */
+    Set<String> getColumns() {
+        Set<String> columns = new HashSet<String>();
+        for (Term term : mTerms) {
+            term.addColumns(columns);
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the selection on the notes table, or null if the query matches every note.
+     */
+    String getSelection() {
+        return mSelection;
+    }
+
+    /**
+     * Returns the arguments of the selection, or null if it has none.
+     */
+    String[] getSelectionArgs() {
+        return mSelectionArgs;
+    }
+
+    /**
+     * One term of a query: a condition on a note, possibly negated.
+     */
+    abstract static class Term {
+        boolean negated;
+
+        /**
+         * Returns the FTS MATCH expression of the term if it can share the MATCH of the query,
+         * or null if it compiles on its own.
+         */
+        String matchExpression() {
+            return null;
+        }
+
+        /**
+         * Appends the condition of the term, without its negation, to a selection.
+         */
+        abstract void appendSelection(StringBuilder sql, List<String> args);
+
+        /**
+         * Adds the columns of the notes table that the term depends on.
+         */
+        abstract void addColumns(Set<String> columns);
+    }
+
+    /**
+     * Free text, searched in the full-text index and, if it could be pinyin, the pinyin index.
+     */
+    static final class TextTerm extends Term {
+        final String text;
+
+        TextTerm(String text) {
+            this.text = text;
+        }
+
+        @Override
+        String matchExpression() {
+            // Text that could be pinyin needs its own condition, to be combined with the pinyin
+            // index.
+            return PinyinIndex.prefixRange(text) == null ? NoteTokenizer.toMatchQuery(text) : null;
+        }
+
+        @Override
+        void appendSelection(StringBuilder sql, List<String> args) {
+            String match = NoteTokenizer.toMatchQuery(text);
+            String[] range = PinyinIndex.prefixRange(text);
+            sql.append('(');
+            if (match != null) {
+                appendMatch(sql, args, match);
+            }
+            if (range != null) {
+                sql.append(match != null ? " OR " : "")
+                        .append(NotePad.Notes._ID).append(" IN (SELECT ")
+                        .append(PinyinIndex.COLUMN_NOTE_ID).append(" FROM ")
+                        .append(PinyinIndex.TABLE_NAME).append(" WHERE ")
+                        .append(PinyinIndex.RANGE_SELECTION).append(')');
+                Collections.addAll(args, range);
+            }
+            sql.append(')');
+        }
+
+        @Override
+        void addColumns(Set<String> columns) {
+            // The full-text index covers the title and body, the pinyin index the title and
+            // category.
+            columns.add(NotePad.Notes.COLUMN_NAME_TITLE);
+            columns.add(NotePad.Notes.COLUMN_NAME_NOTE);
+            columns.add(NotePad.Notes.COLUMN_NAME_CATEGORY);
+        }
+    }
+
+    /**
+     * Text that the title must contain.
+     */
+    static final class TitleTerm extends Term {
+        final String text;
+
+        TitleTerm(String text) {
+            this.text = text;
+        }
+
+        @Override
+        String matchExpression() {
+            return NoteTokenizer.toMatchQuery(text, FullTextIndex.COLUMN_TITLE);
+        }
+
+        @Override
+        void appendSelection(StringBuilder sql, List<String> args) {
+            sql.append('(');
+            appendMatch(sql, args, matchExpression());
+            appendRunChecks(sql, args);
+            sql.append(')');
+        }
+
+        // Adds the exact check of the CJK runs that the column-restricted MATCH only finds by
+        // their bigrams.
+        void appendRunChecks(StringBuilder sql, List<String> args) {
+            for (String run : NoteTokenizer.cjkRuns(text)) {
+                if (run.codePointCount(0, run.length()) > 2) {
+                    sql.append(" AND ").append(NotePad.Notes.COLUMN_NAME_TITLE).append(" LIKE ?");
+                    args.add("%" + run + "%");
+                }
+            }
+        }
+
+        @Override
+        void addColumns(Set<String> columns) {
+            columns.add(NotePad.Notes.COLUMN_NAME_TITLE);
+        }
+    }
+
+    /**
+     * The category the note must be in.
+     */
+    static final class CategoryTerm extends Term {
+        final String category;
+
+        CategoryTerm(String category) {
+            this.category = category;
+        }
+
+        @Override
+        void appendSelection(StringBuilder sql, List<String> args) {
+            sql.append(NotePad.Notes.COLUMN_NAME_CATEGORY).append(" = ?");
+            args.add(category);
+        }
+
+        @Override
+        void addColumns(Set<String> columns) {
+            columns.add(NotePad.Notes.COLUMN_NAME_CATEGORY);
+        }
+    }
+
+    /**
+     * The color the note must have.
+     */
+    static final class ColorTerm extends Term {
+        final int color;
+
+        ColorTerm(int color) {
+            this.color = color;
+        }
+
+        @Override
+        void appendSelection(StringBuilder sql, List<String> args) {
+            // Notes that never had a color are shown white.
+            if (color == 0xFFFFFFFF) {
+                sql.append(NotePad.Notes.COLUMN_NAME_COLOR).append(" IN (0, ?)");
+            } else {
+                sql.append(NotePad.Notes.COLUMN_NAME_COLOR).append(" = ?");
+            }
+            args.add(String.valueOf(color));
+        }
+
+        @Override
+        void addColumns(Set<String> columns) {
+            columns.add(NotePad.Notes.COLUMN_NAME_COLOR);
+        }
+    }
+
+    /**
+     * A bound on the modification date of the note.
+     */
+    static final class DateTerm extends Term {
+        final long millis;
+        final boolean before;
+
+        DateTerm(long millis, boolean before) {
+            this.millis = millis;
+            this.before = before;
+        }
+
+        @Override
+        void appendSelection(StringBuilder sql, List<String> args) {
+            sql.append(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE)
+                    .append(before ? " < ?" : " >= ?");
+            args.add(String.valueOf(millis));
+        }
+
+        @Override
+        void addColumns(Set<String> columns) {
+            columns.add(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE);
+        }
+    }
+
+    // Parses one term; returns null for a term that does not restrict anything, such as
+    // punctuation.
+    private static Term parseTerm(String raw) {
+        boolean negated = raw.length() > 1 && raw.charAt(0) == '-';
+        if (negated) {
+            raw = raw.substring(1);
+        }
+
+        Term term = null;
+        int colon = raw.indexOf(':');
+        int quote = raw.indexOf('"');
+        if (colon > 0 && (quote < 0 || quote > colon)) {
+            String field = raw.substring(0, colon).toLowerCase(Locale.US);
+            String value = unquote(raw.substring(colon + 1));
+            boolean known = true;
+            if (FIELD_CATEGORY.equals(field)) {
+                term = new CategoryTerm(requireValue(field, value));
+            } else if (FIELD_COLOR.equals(field)) {
+                term = new ColorTerm(parseColor(requireValue(field, value)));
+            } else if (FIELD_BEFORE.equals(field) || FIELD_AFTER.equals(field)) {
+                term = new DateTerm(parseDate(field, requireValue(field, value)),
+                        FIELD_BEFORE.equals(field));
+            } else if (FIELD_TITLE.equals(field)) {
+                requireValue(field, value);
+                term = NoteTokenizer.toMatchQuery(value) == null ? null : new TitleTerm(value);
+            } else {
+                known = false;
+            }
+            if (known) {
+                if (term != null) {
+                    term.negated = negated;
+                }
+                return term;
+            }
+        }
+
+        String text = unquote(raw);
+        if (NoteTokenizer.toMatchQuery(text) == null && PinyinIndex.prefixRange(text) == null) {
+            return null;
+        }
+        term = new TextTerm(text);
+        term.negated = negated;
+        return term;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value.replace("\"", "");
+    }
+
+    private static String requireValue(String field, String value) {
+        if (value.trim().isEmpty()) {
+            throw new IllegalArgumentException(field + ": needs a value");
+        }
+        return value;
+    }
+
+    private static int parseColor(String value) {
+        Integer color = COLORS.get(value.toLowerCase(Locale.US));
+        if (color != null) {
+            return color;
+        }
+        if (value.length() == 7 && value.charAt(0) == '#') {
+            try {
+                return 0xFF000000 | Integer.parseInt(value.substring(1), 16);
+            } catch (NumberFormatException e) {
+                // Reported below.
+            }
+        }
+        throw new IllegalArgumentException("color:" + value + " is not a known color");
+    }
+
+    // Returns the start of the given day in local time.
+    private static long parseDate(String field, String value) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        format.setLenient(false);
+        ParsePosition position = new ParsePosition(0);
+        Date date = format.parse(value, position);
+        if (date == null || position.getIndex() != value.length()) {
+            throw new IllegalArgumentException(
+                    field + ":" + value + " is not a date like 2026-01-31");
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return calendar.getTimeInMillis();
+    }
+
+    // Compiles the terms, all of which must match, into a selection.
+    private static void compile(List<Term> terms, StringBuilder sql, List<String> args) {
+        // The positive terms that the full-text index can answer share one MATCH.
+        StringBuilder match = new StringBuilder();
+        List<Term> separate = new ArrayList<Term>();
+        for (Term term : terms) {
+            String expression = term.negated ? null : term.matchExpression();
+            if (expression != null) {
+                match.append(match.length() == 0 ? "" : " ").append(expression);
+            } else {
+                separate.add(term);
+            }
+        }
+
+        if (match.length() > 0) {
+            appendMatch(sql, args, match.toString());
+            for (Term term : terms) {
+                if (!term.negated && term instanceof TitleTerm) {
+                    ((TitleTerm) term).appendRunChecks(sql, args);
+                }
+            }
+        }
+        for (Term term : separate) {
+            if (sql.length() > 0) {
+                sql.append(" AND ");
+            }
+            if (term.negated) {
+                sql.append("NOT (");
+                term.appendSelection(sql, args);
+                sql.append(')');
+            } else {
+                term.appendSelection(sql, args);
+            }
+        }
+    }
+
+    // Appends a condition that the note is found by a MATCH of the full-text index.
+    private static void appendMatch(StringBuilder sql, List<String> args, String match) {
+        sql.append(NotePad.Notes._ID).append(" IN (SELECT docid FROM ")
+                .append(FullTextIndex.TABLE_NAME).append(" WHERE ")
+                .append(FullTextIndex.TABLE_NAME).append(" MATCH ?)");
+        args.add(match);
+    }
+}
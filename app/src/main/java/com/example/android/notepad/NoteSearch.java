@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds text in a note on a background thread. A search runs over a snapshot of the note that
+ * later edits do not change, and hands its matches to the main thread in batches as it finds
+ * them, so the first ones can be shown before a long note has been searched to the end.
+ * <p>
+ * Starting a search cancels the one running: it stops at its next check, even in the middle of
+ * a slow regular expression, and nothing it found afterwards reaches the listener. The matches
+ * of the current search are read on the main thread, in the order they appear in the text.
+ */
+final class NoteSearch {
+    private static final String TAG = "NoteSearch";
+
+    // A search stops after this many matches.
+    static final int MAX_MATCHES = 10000;
+
+    // Matches are handed over when this many are found, or this long after the last handover.
+    static final int BATCH_MATCHES = 256;
+    static final long BATCH_MILLIS = 50;
+
+    // A running search checks whether it was cancelled every this many characters it reads.
+    private static final int CANCEL_CHECK_MASK = 0xfff;
+
+    /**
+     * Told on the main thread when the current search finds more matches or finishes.
+     */
+    interface Listener {
+        void onSearchUpdated();
+    }
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+
+    // The current search, or null if there is none.
+    private volatile Search mCurrent;
+
+    NoteSearch(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Compiles a query. Both kinds ignore case; a literal query matches its text exactly
+     * otherwise.
+     *
+     * @throws PatternSyntaxException if a regular expression is not valid.
+     */
+    static Pattern compile(String query, boolean regex) {
+        int flags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        return Pattern.compile(query, flags | (regex ? Pattern.MULTILINE : Pattern.LITERAL));
+    }
+
+    /**
+     * Cancels the current search and starts searching text for query.
+     *
+     * @param text A snapshot of the note, which must not change while it is searched.
+     * @return False if query is not a valid regular expression; there is then no search.
+     */
+    boolean start(CharSequence text, String query, boolean regex) {
+        cancel();
+        Pattern pattern;
+        try {
+            pattern = compile(query, regex);
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
+        Search search = new Search(text, pattern);
+        mCurrent = search;
+        mExecutor.execute(search);
+        return true;
+    }
+
+    /**
+     * Cancels the current search and forgets its matches.
+     */
+    void cancel() {
+        Search search = mCurrent;
+        if (search != null) {
+            search.mCancelled = true;
+            mCurrent = null;
+        }
+    }
+
+    /**
+     * Cancels the current search and stops the background thread.
+     */
+    void shutdown() {
+        cancel();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Returns the number of matches found so far.
+     */
+    int getMatchCount() {
+        Search search = mCurrent;
+        return search != null ? search.mCount : 0;
+    }
+
+    int getMatchStart(int index) {
+        return mCurrent.mStarts[index];
+    }
+
+    int getMatchEnd(int index) {
+        return mCurrent.mEnds[index];
+    }
+
+    /**
+     * Returns the index of the first match found so far that starts at or after offset, or the
+     * number of matches if there is none.
+     */
+    int indexOfMatchAtOrAfter(int offset) {
+        Search search = mCurrent;
+        if (search == null) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(search.mStarts, 0, search.mCount, offset);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Returns whether the current search has searched all of the text.
+     */
+    boolean isDone() {
+        Search search = mCurrent;
+        return search != null && search.mDone;
+    }
+
+    /**
+     * Returns whether the current search ended before the end of the text, at
+     * {@link #MAX_MATCHES} or because the regular expression was too deeply nested.
+     */
+    boolean isTruncated() {
+        Search search = mCurrent;
+        return search != null && search.mTruncated;
+    }
+
+    private final class Search implements Runnable {
+        private final CharSequence mText;
+        private final Pattern mPattern;
+        volatile boolean mCancelled;
+
+        // The matches handed over so far, and whether the search has ended and why. Only used on
+        // the main thread.
+        int[] mStarts = new int[64];
+        int[] mEnds = new int[64];
+        int mCount;
+        boolean mDone;
+        boolean mTruncated;
+
+        Search(CharSequence text, Pattern pattern) {
+            mText = text;
+            mPattern = pattern;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            int[] starts = new int[BATCH_MATCHES];
+            int[] ends = new int[BATCH_MATCHES];
+            int count = 0;
+            int total = 0;
+            boolean truncated = false;
+            long handedOver = SystemClock.uptimeMillis();
+            try {
+                Matcher matcher = mPattern.matcher(new CancellableText(mText, this));
+                while (matcher.find()) {
+                    if (matcher.end() == matcher.start()) {
+                        // An empty match has nothing to show.
+                        continue;
+                    }
+                    starts[count] = matcher.start();
+                    ends[count] = matcher.end();
+                    count++;
+                    if (++total == MAX_MATCHES) {
+                        truncated = true;
+                        break;
+                    }
+                    long now = SystemClock.uptimeMillis();
+                    if (count == BATCH_MATCHES || now - handedOver >= BATCH_MILLIS) {
+                        handOver(starts, ends, count, false, false);
+                        starts = new int[BATCH_MATCHES];
+                        ends = new int[BATCH_MATCHES];
+                        count = 0;
+                        handedOver = now;
+                    }
+                }
+                handOver(starts, ends, count, true, truncated);
+            } catch (CancellationException e) {
+                // A newer search replaced this one.
+            } catch (StackOverflowError e) {
+                // Some regular expressions recurse once per character they match.
+                Log.w(TAG, "Search for " + mPattern.pattern() + " overflowed the stack", e);
+                handOver(starts, ends, count, true, true);
+            }
+        }
+
+        // Posts found matches to the main thread, unless this search is no longer the current one
+        // by then.
+        private void handOver(final int[] starts, final int[] ends, final int count,
+                final boolean done, final boolean truncated) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCurrent != Search.this) {
+                        return;
+                    }
+                    if (mCount + count > mStarts.length) {
+                        int capacity = Math.max(mStarts.length * 2, mCount + count);
+                        mStarts = Arrays.copyOf(mStarts, capacity);
+                        mEnds = Arrays.copyOf(mEnds, capacity);
+                    }
+                    System.arraycopy(starts, 0, mStarts, mCount, count);
+                    System.arraycopy(ends, 0, mEnds, mCount, count);
+                    mCount += count;
+                    mDone = done;
+                    mTruncated = truncated;
+                    mListener.onSearchUpdated();
+                }
+            });
+        }
+    }
+
+    /**
+     * The text being searched, as the matcher reads it: a search that was cancelled stops at its
+     * next read instead of running to the end.
+     */
+    private static final class CancellableText implements CharSequence {
+        private final CharSequence mText;
+        private final Search mSearch;
+        private int mReads;
+
+        CancellableText(CharSequence text, Search search) {
+            mText = text;
+            mSearch = search;
+        }
+
+        @Override
+        public int length() {
+            return mText.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++mReads & CANCEL_CHECK_MASK) == 0 && mSearch.mCancelled) {
+                throw new CancellationException();
+            }
+            return mText.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return mText.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return mText.toString();
+        }
+    }
+}
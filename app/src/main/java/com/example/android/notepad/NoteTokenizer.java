@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits note text into the tokens of the full-text index. SQLite's built-in FTS tokenizers
+ * split text at spaces and punctuation, so a run of Chinese characters would become a single
+ * token that only matches a query for the whole run. This tokenizer runs in Java instead, and
+ * the index stores its output as space-separated tokens:
+ * <ul>
+ * <li>Latin text (any letters and digits outside the CJK scripts) becomes one token per word.
+ * <li>A run of CJK characters (Han, kana and Hangul) becomes its overlapping bigrams, followed by
+ * its last character on its own. "会议记录" becomes "会议 议记 记录 录". Any CJK substring of
+ * two or more characters is then a phrase of consecutive bigrams, and any single character is
+ * the start of a bigram or the last character of a run.
+ * <li>Text is folded first: full-width ASCII becomes ASCII, the ideographic space becomes a
+ * space, and letters are lower-cased.
+ * </ul>
+ * {@link #toMatchQuery(String)} tokenizes a search query the same way and builds the FTS MATCH
+ * expression for it.
+ */
+final class NoteTokenizer {
+
+    // The offset between a full-width ASCII variant (U+FF01 to U+FF5E) and its ASCII character.
+    private static final int FULLWIDTH_OFFSET = 0xFEE0;
+
+    private NoteTokenizer() {
+    }
+
+    /**
+     * Folds one character: full-width ASCII variants become ASCII, the ideographic space becomes
+     * a space, and letters are lower-cased.
+     */
+    static int fold(int codePoint) {
+        if (codePoint >= 0xFF01 && codePoint <= 0xFF5E) {
+            codePoint -= FULLWIDTH_OFFSET;
+        } else if (codePoint == 0x3000) {
+            codePoint = ' ';
+        }
+        return Character.toLowerCase(codePoint);
+    }
+
+    /**
+     * Returns whether the code point belongs to a script that is written without spaces between
+     * words, and is therefore indexed as bigrams.
+     */
+    static boolean isCjk(int codePoint) {
+        return (codePoint >= 0x3040 && codePoint <= 0x30FF)      // Hiragana and Katakana
+                || (codePoint >= 0x3400 && codePoint <= 0x4DBF)  // CJK Extension A
+                || (codePoint >= 0x4E00 && codePoint <= 0x9FFF)  // CJK Unified Ideographs
+                || (codePoint >= 0xAC00 && codePoint <= 0xD7AF)  // Hangul Syllables
+                || (codePoint >= 0xF900 && codePoint <= 0xFAFF)  // CJK Compatibility Ideographs
+                || (codePoint >= 0x20000 && codePoint <= 0x2FA1F); // Extensions B and later
+    }
+
+    /**
+     * Returns the tokens of a text, in order.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        for (Run run : runs(text)) {
+            if (!run.cjk) {
+                tokens.add(run.text);
+                continue;
+            }
+            String s = run.text;
+            int start = 0;
+            while (true) {
+                int next = s.offsetByCodePoints(start, 1);
+                if (next >= s.length()) {
+                    // The last character of the run, on its own.
+                    tokens.add(s.substring(start));
+                    break;
+                }
+                tokens.add(s.substring(start, s.offsetByCodePoints(next, 1)));
+                start = next;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the tokens of a text joined by spaces, the form the index stores.
+     */
+    static String toIndexText(String text) {
+        StringBuilder sb = new StringBuilder(text.length() * 2);
+        for (String token : tokenize(text)) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds an FTS MATCH expression that finds the notes containing every word and CJK run of
+     * the query. A Latin word matches words that start with it; a CJK run of two or more
+     * characters matches where the run occurs, as a phrase of its bigrams; a single CJK
+     * character matches wherever it occurs.
+     *
+     * @return The expression, or null if the query has no tokens.
+     */
+    static String toMatchQuery(String query) {
+        return toMatchQuery(query, null);
+    }
+
+    /**
+     * Builds an FTS MATCH expression like {@link #toMatchQuery(String)} that only searches the
+     * given column of the index. FTS cannot restrict a phrase to a column, so a CJK run of
+     * three or more characters matches wherever all its bigrams occur in the column, and
+     * callers that need the exact run check it with {@link #cjkRuns(String)}.
+     *
+     * @param column The column to search, or null for all columns.
+     * @return The expression, or null if the query has no tokens.
+     */
+    static String toMatchQuery(String query, String column) {
+        String prefix = column == null ? "" : column + ":";
+        StringBuilder sb = new StringBuilder();
+        for (Run run : runs(query)) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            if (!run.cjk || run.text.codePointCount(0, run.text.length()) == 1) {
+                // Tokens only hold letters and digits, so they cannot form FTS operators or
+                // syntax; operators are also upper case, and tokens are lower case.
+                sb.append(prefix).append(run.text).append('*');
+            } else {
+                List<String> bigrams = tokenize(run.text);
+                // Drops the trailing single character, which is covered by the last bigram.
+                bigrams.remove(bigrams.size() - 1);
+                if (column == null) {
+                    sb.append('"');
+                }
+                for (int i = 0; i < bigrams.size(); i++) {
+                    sb.append(i == 0 ? "" : " ").append(prefix).append(bigrams.get(i));
+                }
+                if (column == null) {
+                    sb.append('"');
+                }
+            }
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Returns the runs of CJK characters in a text, in order.
+     */
+    static List<String> cjkRuns(String text) {
+        List<String> result = new ArrayList<String>();
+        for (Run run : runs(text)) {
+            if (run.cjk) {
+                result.add(run.text);
+            }
+        }
+        return result;
+    }
+
+    // A maximal run of word characters of one kind, already folded.
+    private static final class Run {
+        final String text;
+        final boolean cjk;
+
+        Run(String text, boolean cjk) {
+            this.text = text;
+            this.cjk = cjk;
+        }
+    }
+
+    // Splits folded text into runs of Latin word characters and runs of CJK characters. Any
+    // other character separates runs.
+    private static List<Run> runs(String text) {
+        List<Run> runs = new ArrayList<Run>();
+        StringBuilder current = new StringBuilder();
+        boolean currentCjk = false;
+        for (int i = 0; i < text.length(); ) {
+            int cp = fold(text.codePointAt(i));
+            i += Character.charCount(text.codePointAt(i));
+
+            boolean cjk = isCjk(cp);
+            boolean word = cjk || Character.isLetterOrDigit(cp);
+            if (current.length() > 0 && (!word || cjk != currentCjk)) {
+                runs.add(new Run(current.toString(), currentCjk));
+                current.setLength(0);
+            }
+            if (word) {
+                current.appendCodePoint(cp);
+                currentCjk = cjk;
+            }
+        }
+        if (current.length() > 0) {
+            runs.add(new Run(current.toString(), currentCjk));
+        }
+        return runs;
+    }
+}
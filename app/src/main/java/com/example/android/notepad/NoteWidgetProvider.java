@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.widget.RemoteViews;
+
+/**
+ * The home-screen widget listing the pinned notes and then the most recently modified ones.
+ * The list comes from {@link NoteWidgetService}, which reads the snapshot the provider keeps
+ * at {@link NotePad.Notes#WIDGET_URI}. The widget has no update period: the provider calls
+ * {@link #notifyDataChanged(Context)} when a note shown in the widget changes, and the widget
+ * reloads its list then and only then. Tapping a note opens it in the editor, and tapping the
+ * title opens the notes list.
+ */
+public class NoteWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            appWidgetManager.updateAppWidget(appWidgetId, buildViews(context, appWidgetId));
+        }
+    }
+
+    // Builds the widget frame. The list items are filled in by NoteWidgetService.
+    private static RemoteViews buildViews(Context context, int appWidgetId) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_notes);
+
+        // The data URI tells the widgets apart, so each gets its own list adapter.
+        Intent adapter = new Intent(context, NoteWidgetService.class);
+        adapter.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        adapter.setData(Uri.parse(adapter.toUri(Intent.URI_INTENT_SCHEME)));
+        views.setRemoteAdapter(R.id.widget_list, adapter);
+        views.setEmptyView(R.id.widget_list, R.id.widget_empty);
+
+        // Each item fills in the URI of its note.
+        Intent edit = new Intent(Intent.ACTION_EDIT)
+                .setClassName(context.getPackageName(), NoteEditor.class.getName());
+        views.setPendingIntentTemplate(R.id.widget_list, PendingIntent.getActivity(
+                context, 0, edit, PendingIntent.FLAG_UPDATE_CURRENT | mutableFlag()));
+
+        Intent list = new Intent(Intent.ACTION_VIEW, NotePad.Notes.CONTENT_URI)
+                .setClassName(context.getPackageName(), NotesList.class.getName());
+        views.setOnClickPendingIntent(R.id.widget_title, PendingIntent.getActivity(
+                context, 1, list, PendingIntent.FLAG_UPDATE_CURRENT | immutableFlag()));
+        return views;
+    }
+
+    /**
+     * Tells every widget on the home screen to reload its list. Does nothing in contexts
+     * without the widget service, such as the isolated context of the provider tests.
+     */
+    static void notifyDataChanged(Context context) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        if (manager == null) {
+            return;
+        }
+        int[] appWidgetIds = manager.getAppWidgetIds(
+                new ComponentName(context, NoteWidgetProvider.class));
+        if (appWidgetIds != null && appWidgetIds.length > 0) {
+            manager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+        }
+    }
+
+    // A template whose items fill in the data URI has to be mutable from API 31.
+    private static int mutableFlag() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0;
+    }
+
+    private static int immutableFlag() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Binder;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Supplies the list items of {@link NoteWidgetProvider}. The items are read from the widget
+ * snapshot, at most {@link WidgetSnapshot#MAX_NOTES} rows, and the views of an item are only
+ * built again when its row changed; the other items keep the views built for them before.
+ */
+public class NoteWidgetService extends RemoteViewsService {
+
+    @Override
+    public RemoteViewsFactory onGetViewFactory(Intent intent) {
+        return new NotesFactory(getApplicationContext());
+    }
+
+    private static final String[] PROJECTION = new String[]{
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+            NotePad.Notes.COLUMN_NAME_PINNED,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
+    };
+
+    /**
+     * One widget item: a note and the views built for it.
+     */
+    private static final class Item {
+        final long id;
+        final String title;
+        final int color;
+        final boolean pinned;
+        final long modified;
+        RemoteViews views;
+
+        Item(Cursor c) {
+            id = c.getLong(0);
+            title = c.getString(1);
+            color = c.getInt(2);
+            pinned = c.getInt(3) != 0;
+            modified = c.getLong(4);
+        }
+
+        // Whether the item shows the same as another item of the same note.
+        boolean sameAs(Item other) {
+            return color == other.color && pinned == other.pinned
+                    && modified == other.modified
+                    && (title == null ? other.title == null : title.equals(other.title));
+        }
+    }
+
+    private static final class NotesFactory implements RemoteViewsFactory {
+
+        private final Context mContext;
+
+        // The items in widget order.
+        private List<Item> mItems = new ArrayList<Item>();
+
+        NotesFactory(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public void onCreate() {
+        }
+
+        /**
+         * Reads the snapshot again. Called on a binder thread when the provider notifies the
+         * widget, so it can read from the provider directly.
+         */
+        @Override
+        public void onDataSetChanged() {
+            Map<Long, Item> previous = new HashMap<Long, Item>();
+            for (Item item : mItems) {
+                previous.put(item.id, item);
+            }
+
+            List<Item> items = new ArrayList<Item>();
+            // Reads as the app rather than as the home screen calling in.
+            long identity = Binder.clearCallingIdentity();
+            try {
+                Cursor c = mContext.getContentResolver().query(NotePad.Notes.WIDGET_URI,
+                        PROJECTION, null, null, null);
+                if (c != null) {
+                    try {
+                        while (c.moveToNext()) {
+                            Item item = new Item(c);
+                            Item old = previous.get(item.id);
+                            if (old != null && old.sameAs(item)) {
+                                item.views = old.views;
+                            }
+                            items.add(item);
+                        }
+                    } finally {
+                        c.close();
+                    }
+                }
+            } finally {
+                Binder.restoreCallingIdentity(identity);
+            }
+            mItems = items;
+        }
+
+        @Override
+        public void onDestroy() {
+            mItems.clear();
+        }
+
+        @Override
+        public int getCount() {
+            return mItems.size();
+        }
+
+        @Override
+        public RemoteViews getViewAt(int position) {
+            if (position < 0 || position >= mItems.size()) {
+                return null;
+            }
+            Item item = mItems.get(position);
+            if (item.views == null) {
+                item.views = buildViews(item);
+            }
+            return item.views;
+        }
+
+        // Builds the views of one item, in the style of the notes list.
+        private RemoteViews buildViews(Item item) {
+            RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                    R.layout.widget_notes_item);
+            views.setTextViewText(R.id.widget_item_title,
+                    item.pinned ? "📌 " + item.title : item.title);
+            views.setTextViewText(R.id.widget_item_time, new java.text.SimpleDateFormat(
+                    "yyyy-MM-dd  HH:mm",
+                    java.util.Locale.CHINA).format(new java.util.Date(item.modified)));
+            if (item.color != 0) {
+                views.setInt(R.id.widget_item, "setBackgroundColor", item.color);
+            }
+            views.setOnClickFillInIntent(R.id.widget_item, new Intent().setData(
+                    ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, item.id)));
+            return views;
+        }
+
+        @Override
+        public RemoteViews getLoadingView() {
+            return null;
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return 1;
+        }
+
+        // Note IDs are stable, so the home screen can keep the views of items that only moved.
+        @Override
+        public long getItemId(int position) {
+            return mItems.get(position).id;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+    }
+}
@@ -22,22 +22,30 @@ import android.app.ListActivity;
 import android.content.ClipboardManager;
 import android.content.ClipData;
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MergeCursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import android.view.ActionMode;
 import android.view.ContextMenu;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ContextMenu.ContextMenuInfo;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.SimpleCursorAdapter;
@@ -46,10 +54,15 @@ import android.widget.Toast;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Objects;
+import java.util.Set;
 import android.text.TextUtils;
 
+import androidx.tracing.Trace;
+
 
 /**
  * Displays a list of notes. Will display notes from the {@link Uri}
@@ -65,12 +78,27 @@ public class NotesList extends ListActivity {
 
     // For logging and debugging
     private static final String TAG = "NotesList";
+
+    /**
+     * Trace section covering the time from a click on a note until NoteEditor has drawn it.
+     * NoteEditor closes the section. The macrobenchmark module measures it by name.
+     */
+    static final String TRACE_OPEN_NOTE = "NotesList.openNote";
+
+    /**
+     * Trace section covering one search query, measured by the macrobenchmark module.
+     */
+    static final String TRACE_SEARCH = "NotesList.doSearch";
     
     // 权限请求常量
     private static final int REQUEST_STORAGE_PERMISSION = 1001;
     private static final int REQUEST_EXPORT_ALL = 1002;
     private static final int REQUEST_EXPORT_SINGLE = 1003;
+    private static final int REQUEST_EXPORT_SELECTED = 1004;
+    private static final int REQUEST_BACKUP_DOCUMENT = 1005;
+    private static final int REQUEST_RESTORE_DOCUMENT = 1006;
     private Uri pendingExportUri = null;
+    private long[] pendingExportIds = null;
 
     /**
      * The columns needed by the cursor adapter
@@ -80,8 +108,9 @@ public class NotesList extends ListActivity {
             NotePad.Notes.COLUMN_NAME_TITLE, // 1
             NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
             NotePad.Notes.COLUMN_NAME_COLOR, // 添加颜色列
-            NotePad.Notes.COLUMN_NAME_NOTE, // 添加内容列
-            NotePad.Notes.COLUMN_NAME_CATEGORY // 添加分类列
+            NotePad.Notes.COLUMN_NAME_SNIPPET, // 内容摘要列，列表不读取（也不解压）完整正文
+            NotePad.Notes.COLUMN_NAME_CATEGORY, // 添加分类列
+            NotePad.Notes.COLUMN_NAME_PINNED // 置顶标记
     };
     /**
      * The index of the title column
@@ -91,6 +120,57 @@ public class NotesList extends ListActivity {
     // 当前选中的分类
     private String mCurrentCategory = null;
 
+    // 列表的排序方式，保存在偏好设置中；每种排序在 Provider 中都有对应的索引
+    private static final String PREFS_NAME = "notes_list";
+    private static final String KEY_SORT_ORDER = "sort_order";
+    private static final String[] SORT_ORDERS = {
+            NotePad.Notes.DEFAULT_SORT_ORDER,
+            NotePad.Notes.SORT_ORDER_CREATED,
+            NotePad.Notes.SORT_ORDER_TITLE,
+            NotePad.Notes.SORT_ORDER_COLOR
+    };
+    private static final String[] SORT_ORDER_NAMES = {"修改时间", "创建时间", "标题", "颜色"};
+    // 每种排序方式所依据的列
+    private static final String[] SORT_COLUMNS = {
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_CREATE_DATE,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_COLOR
+    };
+    private String mSortOrder = NotePad.Notes.DEFAULT_SORT_ORDER;
+
+    // 列表显示的列：修改这些列之外的列（如浏览全部笔记时的分类）不需要重新查询
+    private static final String[] DISPLAYED_COLUMNS = {
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+            NotePad.Notes.COLUMN_NAME_SNIPPET,
+            NotePad.Notes.COLUMN_NAME_PINNED
+    };
+
+    // 观察笔记的变化。Provider 的更新通知带有被修改的笔记 ID 和列：不影响列表的修改直接忽略，
+    // 不改变顺序的修改只重新读取这几行，其余修改才重新查询整个列表
+    private final ContentObserver mNotesObserver = new ContentObserver(
+            new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onNotesChanged(uri);
+        }
+    };
+
+    // 正在显示的搜索：搜索框里的内容，以及它依赖的列；没有搜索时为 null
+    private String mSearchKey;
+    private Set<String> mSearchColumns;
+
+    // 界面在前台时才处理变化；在后台期间有需要重新查询的变化时，返回列表时查询一次
+    private boolean mResumed;
+    private boolean mListStale;
+
     /**
      * onCreate is called when Android starts this Activity from scratch.
      */
@@ -114,6 +194,13 @@ public class NotesList extends ListActivity {
             intent.setData(NotePad.Notes.CONTENT_URI);
         }
 
+        // 恢复上次选择的排序方式
+        String savedOrder = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getString(KEY_SORT_ORDER, null);
+        if (java.util.Arrays.asList(SORT_ORDERS).contains(savedOrder)) {
+            mSortOrder = savedOrder;
+        }
+
         /*
          * Sets the callback for context menu activation for the ListView. The listener is set
          * to be this Activity. The effect is that context menus are enabled for items in the
@@ -121,31 +208,32 @@ public class NotesList extends ListActivity {
          */
         getListView().setOnCreateContextMenuListener(this);
 
+        // 多选模式：从上下文菜单的“多选”进入，批量操作在一个事务中完成
+        getListView().setMultiChoiceModeListener(new BatchModeListener());
+
+        // 从创建到销毁一直观察笔记，在编辑器中的修改也能在返回时知道是否需要重新查询
+        getContentResolver().registerContentObserver(intent.getData(), true, mNotesObserver);
+
         /* 使用 getContentResolver().query() 替代废弃的 managedQuery()
          *
          * Please see the introductory note about performing provider operations on the UI thread.
          */
-        Cursor cursor = getContentResolver().query(
-                getIntent().getData(),            // Use the default content URI for the provider.
-                PROJECTION,                       // Return the note ID and title for each note.
-                null,                             // No where clause, return all records.
-                null,                             // No where clause, therefore no where column values.
-                NotePad.Notes.DEFAULT_SORT_ORDER  // Use the default sort order.
-        );
+        Cursor cursor = queryNotes(null, null);
         
         // 安全地输出列名日志
         if (cursor != null) {
             Log.d("NotesList", "columns = " + Arrays.toString(cursor.getColumnNames()));
         } else {
-            // Cursor 为 null 时，创建一个空的 adapter
+            // Cursor 为 null 时，创建一个空的 adapter，返回列表时再查询
             setListAdapter(new SimpleCursorAdapter(this, R.layout.noteslist_item, null, new String[]{}, new int[]{}));
+            mListStale = true;
             return;
         }
         
 // 1. 新的映射：标题 + 内容 + 时间
         String[] dataColumns = {
                 NotePad.Notes.COLUMN_NAME_TITLE,
-                NotePad.Notes.COLUMN_NAME_NOTE,
+                NotePad.Notes.COLUMN_NAME_SNIPPET,
                 NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
         };
         int[] viewIDs = {
@@ -167,52 +255,7 @@ public class NotesList extends ListActivity {
         cursor.setNotificationUri(getContentResolver(), getIntent().getData());
         
 // 3. 关键：ViewBinder 把 long 时间转成可读字符串
-        adapter.setViewBinder(new SimpleCursorAdapter.ViewBinder() {
-            @Override
-            public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
-                if (view.getId() == R.id.time_stamp) {          // 只处理时间那一列
-                    long t = cursor.getLong(columnIndex);
-                    String txt = new java.text.SimpleDateFormat(
-                            "yyyy-MM-dd  HH:mm",
-                            java.util.Locale.CHINA).format(new java.util.Date(t));
-                    ((TextView) view).setText(txt);
-                    return true;                                // 我亲自处理了
-                }
-                if (view.getId() == android.R.id.text1) {
-                    // 先设置标题文本
-                    String title = cursor.getString(columnIndex);
-                    ((TextView) view).setText(title);
-                    
-                    // 然后处理颜色 - 只给卡片的父容器设置背景色
-                    int colorColIndex = cursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_COLOR);
-                    if (colorColIndex != -1) {
-                        int color = cursor.getInt(colorColIndex);
-                        // 获取CardView并设置背景色
-                        android.view.View parent = (android.view.View) view.getParent();
-                        if (parent != null && parent.getParent() instanceof androidx.cardview.widget.CardView) {
-                            androidx.cardview.widget.CardView cardView = (androidx.cardview.widget.CardView) parent.getParent();
-                            if (color == 0) {
-                                cardView.setCardBackgroundColor(0xFFFFFFFF);
-                            } else {
-                                cardView.setCardBackgroundColor(color);
-                            }
-                        }
-                    }
-                    return true;
-                }
-                if (view.getId() == R.id.note_content) {
-                    // 处理内容视图
-                    String content = cursor.getString(columnIndex);
-                    // 限制内容显示长度
-                    if (content != null && content.length() > 100) {
-                        content = content.substring(0, 100) + "...";
-                    }
-                    ((TextView) view).setText(content);
-                    return true;
-                }
-                return false;                                   // 其余交给系统
-            }
-        });
+        adapter.setViewBinder(new NoteViewBinder());
 
 // 4. 挂上 ListView
         setListAdapter(adapter);
@@ -226,23 +269,155 @@ public class NotesList extends ListActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // 每次返回列表时重新查询数据，确保显示最新内容
-        refreshNotesList();
+        mResumed = true;
+        // 离开列表期间笔记有变化时才重新查询，否则直接显示原来的列表
+        if (mListStale) {
+            mListStale = false;
+            refreshCurrentView();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mResumed = false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        getContentResolver().unregisterContentObserver(mNotesObserver);
+        super.onDestroy();
+    }
+
+    /**
+     * 处理笔记变化的通知。通知的 URI 带有被修改的列和笔记 ID 时（见 {@link ChangeNotifications}），
+     * 只修改列表不显示的列则忽略；只修改显示的列、不影响顺序和筛选时，只重新读取这些笔记并刷新可见的行；
+     * 新建、删除或影响顺序的修改重新查询整个列表。
+     */
+    private void onNotesChanged(Uri uri) {
+        Set<String> columns = ChangeNotifications.getColumns(uri);
+        if (columns != null && !touchesList(columns)) {
+            return;
+        }
+        if (!mResumed) {
+            mListStale = true;
+            return;
+        }
+        long[] ids = ChangeNotifications.getIds(uri);
+        if (columns != null && ids != null && !touchesOrder(columns) && patchRows(ids)) {
+            return;
+        }
+        refreshCurrentView();
+    }
+
+    // 修改的列是否影响列表的内容：显示的列、排序依据的列，以及按分类浏览时的分类
+    private boolean touchesList(Set<String> columns) {
+        for (String column : DISPLAYED_COLUMNS) {
+            if (columns.contains(column)) {
+                return true;
+            }
+        }
+        return touchesOrder(columns);
+    }
+
+    // 修改的列是否可能改变列表的顺序或筛选结果。置顶区总是按修改时间排序；
+    // 搜索时，搜索条件用到的列（关键词对应标题、正文和分类）既决定结果，也决定模糊搜索的相似度顺序
+    private boolean touchesOrder(Set<String> columns) {
+        int order = Arrays.asList(SORT_ORDERS).indexOf(mSortOrder);
+        return columns.contains(NotePad.Notes.COLUMN_NAME_PINNED)
+                || columns.contains(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE)
+                || (order >= 0 && columns.contains(SORT_COLUMNS[order]))
+                || (mCurrentCategory != null
+                        && columns.contains(NotePad.Notes.COLUMN_NAME_CATEGORY))
+                || (mSearchColumns != null && !Collections.disjoint(columns, mSearchColumns));
+    }
+
+    /**
+     * 只重新读取给定的笔记，替换列表中对应行的内容，刷新可见的行。
+     *
+     * @return 是否完成；列表还没有数据时返回 false，由调用方重新查询
+     */
+    private boolean patchRows(long[] ids) {
+        SimpleCursorAdapter adapter = (SimpleCursorAdapter) getListAdapter();
+        Cursor current = adapter == null ? null : adapter.getCursor();
+        if (current == null) {
+            return false;
+        }
+        if (ids.length == 0) {
+            return true;
+        }
+        StringBuilder in = new StringBuilder();
+        for (long id : ids) {
+            in.append(in.length() == 0 ? "" : ",").append(id);
+        }
+        Cursor rows = getContentResolver().query(getIntent().getData(), PROJECTION,
+                NotePad.Notes._ID + " IN (" + in + ")", null, null);
+        if (rows == null) {
+            return false;
+        }
+        PatchedCursor patched = current instanceof PatchedCursor
+                ? (PatchedCursor) current : new PatchedCursor(current);
+        try {
+            while (rows.moveToNext()) {
+                patched.patch(rows);
+            }
+        } finally {
+            rows.close();
+        }
+        if (patched == current) {
+            adapter.notifyDataSetChanged();
+        } else {
+            // swapCursor 不关闭原来的 Cursor，它由 PatchedCursor 持有
+            adapter.swapCursor(patched);
+        }
+        return true;
     }
     
+    /**
+     * 查询列表中的笔记：置顶笔记排在最前，按修改时间排序，只从置顶笔记的部分索引中读取，
+     * 与笔记总数无关；其余笔记按所选的排序方式排在后面。
+     */
+    private Cursor queryNotes(String selection, String[] args) {
+        return queryNotes(Objects.requireNonNull(getIntent().getData()), selection, args,
+                NotePad.Notes.DEFAULT_SORT_ORDER, mSortOrder);
+    }
+
+    /**
+     * 分两段查询 uri：先是置顶笔记（按 pinnedOrder 排序），再是其余笔记（按 othersOrder 排序）。
+     * 搜索结果也用它分段，排序传 null 时由 Provider 按相似度排序。
+     */
+    private Cursor queryNotes(Uri uri, String selection, String[] args,
+            String pinnedOrder, String othersOrder) {
+        Cursor pinned = getContentResolver().query(
+                uri,
+                PROJECTION,
+                DatabaseUtils.concatenateWhere(selection,
+                        NotePad.Notes.COLUMN_NAME_PINNED + " = 1"),
+                args,
+                pinnedOrder);
+        Cursor others = getContentResolver().query(
+                uri,
+                PROJECTION,
+                DatabaseUtils.concatenateWhere(selection,
+                        NotePad.Notes.COLUMN_NAME_PINNED + " = 0"),
+                args,
+                othersOrder);
+        if (pinned == null || others == null) {
+            if (pinned != null) {
+                pinned.close();
+            }
+            return others;
+        }
+        return new MergeCursor(new Cursor[]{pinned, others});
+    }
+
     /**
      * 刷新笔记列表
      */
     private void refreshNotesList() {
         try {
             // 重新查询数据
-            Cursor cursor = getContentResolver().query(
-                    getIntent().getData(),            // Use the default content URI for the provider.
-                    PROJECTION,                       // Return the note ID and title for each note.
-                    null,                             // No where clause, return all records.
-                    null,                             // No where clause, therefore no where column values.
-                    NotePad.Notes.DEFAULT_SORT_ORDER  // Use the default sort order.
-            );
+            Cursor cursor = queryNotes(null, null);
             
             // 确保新 Cursor 能接收到数据变化通知
             if (cursor != null) {
@@ -298,11 +473,29 @@ public class NotesList extends ListActivity {
         menu.add(0, Menu.FIRST + 2, 0, "显示全部")
                 .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
 
+        // 排序方式（溢出菜单）
+        menu.add(0, Menu.FIRST + 8, 0, "排序方式")
+                .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+
+        // 备份与恢复（溢出菜单）
+        menu.add(0, Menu.FIRST + 9, 0, "备份与恢复")
+                .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+
         // 分类按钮
         menu.add(0, Menu.FIRST + 4, 0, "分类")
                 .setIcon(android.R.drawable.ic_menu_agenda)
                 .setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
 
+        // 慢查询日志（仅调试版本）
+        if (isDebuggable()) {
+            menu.add(0, Menu.FIRST + 5, 0, "慢查询日志")
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+            menu.add(0, Menu.FIRST + 6, 0, "生成测试数据")
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+            menu.add(0, Menu.FIRST + 7, 0, "数据库维护")
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+        }
+
         return super.onCreateOptionsMenu(menu);
 
     }
@@ -411,6 +604,7 @@ public class NotesList extends ListActivity {
             return true;
         } else if (id == Menu.FIRST + 1) {          // 搜索
             android.widget.SearchView sv = new android.widget.SearchView(this);
+            sv.setQueryHint("关键词，或 category:工作 color:red before:2026-01-01");
             sv.setOnQueryTextListener(new android.widget.SearchView.OnQueryTextListener() {
                 @Override public boolean onQueryTextSubmit(String s) {
                     doSearch(s);
@@ -442,6 +636,21 @@ public class NotesList extends ListActivity {
         } else if (id == Menu.FIRST + 4) {          // 分类
             showCategoryDialog();
             return true;
+        } else if (id == Menu.FIRST + 8) {          // 排序方式
+            showSortOrderDialog();
+            return true;
+        } else if (id == Menu.FIRST + 9) {          // 备份与恢复
+            showBackupDialog();
+            return true;
+        } else if (id == Menu.FIRST + 5) {          // 慢查询日志
+            showSlowQueryLog();
+            return true;
+        } else if (id == Menu.FIRST + 6) {          // 生成测试数据
+            showSeedCorpusDialog();
+            return true;
+        } else if (id == Menu.FIRST + 7) {          // 数据库维护
+            runMaintenance();
+            return true;
         } else if (id == R.id.menu_export) {        // 导出为TXT
             requestStoragePermission(REQUEST_EXPORT_ALL);
             return true;
@@ -453,17 +662,55 @@ public class NotesList extends ListActivity {
     }
 
     private void doSearch(String key) {
-        String selection = TextUtils.isEmpty(key) ? null :
-                NotePad.Notes.COLUMN_NAME_TITLE + " LIKE ? OR " +
-                        NotePad.Notes.COLUMN_NAME_NOTE + " LIKE ?";
-        String[] args = TextUtils.isEmpty(key) ? null :
-                new String[]{"%" + key + "%", "%" + key + "%"};
-        Cursor c = getContentResolver().query(
-                Objects.requireNonNull(getIntent().getData()),
-                PROJECTION,
-                selection,
-                args,
-                NotePad.Notes.DEFAULT_SORT_ORDER);
+        Trace.beginSection(TRACE_SEARCH);
+        try {
+            searchNotes(key);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void searchNotes(String key) {
+        // 搜索框支持组合条件，如 category:工作 color:red before:2026-01-01 title:计划 预算，
+        // 由 Provider 编译成一条查询。关键词走全文索引：英文按单词前缀匹配，中文按相邻字组匹配，
+        // 全角字母数字与半角等同，长笔记压缩存储后也能搜到
+        NoteQuery query;
+        try {
+            query = NoteQuery.parse(key == null ? "" : key);
+        } catch (IllegalArgumentException e) {
+            Toast.makeText(this, "搜索条件有误：" + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // 按分类浏览时只在当前分类内搜索，不再退出分类
+        String selection = null;
+        String[] args = null;
+        if (mCurrentCategory != null && !"未分类".equals(mCurrentCategory)) {
+            selection = NotePad.Notes.COLUMN_NAME_CATEGORY + " = ?";
+            args = new String[]{mCurrentCategory};
+        }
+
+        // 记下搜索，笔记变化时重新执行这次搜索，而不是回到未筛选的列表；重复执行时不再提示
+        boolean repeated = key != null && key.equals(mSearchKey);
+        mSearchKey = query.isEmpty() ? null : key;
+        mSearchColumns = query.isEmpty() ? null : query.getColumns();
+
+        // 与未搜索时一样，置顶笔记排在最前
+        Cursor c = query.isEmpty()
+                ? queryNotes(selection, args)
+                : queryNotes(NotePad.Notes.buildSearchUri(key, NotePad.Notes.SEARCH_MODE_QUERY),
+                        selection, args, NotePad.Notes.DEFAULT_SORT_ORDER, mSortOrder);
+
+        // 只有关键词且没有完全匹配时改用模糊搜索，容忍少量错别字，两段内都按相似度排序
+        if (!query.isEmpty() && query.isPlainText() && c != null && c.getCount() == 0) {
+            c.close();
+            c = queryNotes(NotePad.Notes.buildSearchUri(key, NotePad.Notes.SEARCH_MODE_FUZZY),
+                    selection, args, null, null);
+            if (c != null && c.getCount() > 0 && !repeated) {
+                Toast.makeText(this, "没有完全匹配的笔记，显示相近的结果", Toast.LENGTH_SHORT).show();
+            }
+        }
+
         SimpleCursorAdapter a = (SimpleCursorAdapter) getListAdapter();
         a.changeCursor(c);
         
@@ -476,17 +723,27 @@ public class NotesList extends ListActivity {
      */
     private void exportNotesToTxt() {
         // 查询所有笔记
-        Cursor cursor = getContentResolver().query(
-                getIntent().getData(),
-                new String[]{
-                        NotePad.Notes.COLUMN_NAME_TITLE,
-                        NotePad.Notes.COLUMN_NAME_NOTE,
-                        NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
-                },
-                null,
-                null,
-                NotePad.Notes.DEFAULT_SORT_ORDER
-        );
+        long queryStart = IoTrace.begin(IoTrace.EXPORT_QUERY);
+        Cursor cursor;
+        try {
+            cursor = getContentResolver().query(
+                    getIntent().getData(),
+                    new String[]{
+                            NotePad.Notes.COLUMN_NAME_TITLE,
+                            NotePad.Notes.COLUMN_NAME_NOTE,
+                            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
+                    },
+                    null,
+                    null,
+                    NotePad.Notes.DEFAULT_SORT_ORDER
+            );
+            // getCount() 会真正执行查询，让查询耗时计入导出的 trace 区段
+            if (cursor != null) {
+                cursor.getCount();
+            }
+        } finally {
+            IoTrace.end(IoTrace.EXPORT_QUERY, queryStart);
+        }
 
         if (cursor == null) {
             Toast.makeText(this, "无法获取笔记数据", Toast.LENGTH_SHORT).show();
@@ -555,9 +812,14 @@ public class NotesList extends ListActivity {
             File file = new File(dir, fileName);
             
             // 写入文件
-            FileWriter writer = new FileWriter(file);
-            writer.write(content);
-            writer.close();
+            long writeStart = IoTrace.begin(IoTrace.EXPORT_WRITE);
+            try {
+                FileWriter writer = new FileWriter(file);
+                writer.write(content);
+                writer.close();
+            } finally {
+                IoTrace.end(IoTrace.EXPORT_WRITE, writeStart);
+            }
             
             // 通知用户文件已保存
             Toast.makeText(this, "笔记已导出到: " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
@@ -578,17 +840,26 @@ public class NotesList extends ListActivity {
      */
     private void exportSingleNoteToTxt(Uri noteUri) {
         // 查询单个笔记
-        Cursor cursor = getContentResolver().query(
-                noteUri,
-                new String[]{
-                        NotePad.Notes.COLUMN_NAME_TITLE,
-                        NotePad.Notes.COLUMN_NAME_NOTE,
-                        NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
-                },
-                null,
-                null,
-                null
-        );
+        long queryStart = IoTrace.begin(IoTrace.EXPORT_QUERY);
+        Cursor cursor;
+        try {
+            cursor = getContentResolver().query(
+                    noteUri,
+                    new String[]{
+                            NotePad.Notes.COLUMN_NAME_TITLE,
+                            NotePad.Notes.COLUMN_NAME_NOTE,
+                            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
+                    },
+                    null,
+                    null,
+                    null
+            );
+            if (cursor != null) {
+                cursor.getCount();
+            }
+        } finally {
+            IoTrace.end(IoTrace.EXPORT_QUERY, queryStart);
+        }
         
         if (cursor == null) {
             Toast.makeText(this, "无法获取笔记数据", Toast.LENGTH_SHORT).show();
@@ -656,9 +927,14 @@ public class NotesList extends ListActivity {
             File file = new File(dir, fileName);
             
             // 写入文件
-            FileWriter writer = new FileWriter(file);
-            writer.write(content);
-            writer.close();
+            long writeStart = IoTrace.begin(IoTrace.EXPORT_WRITE);
+            try {
+                FileWriter writer = new FileWriter(file);
+                writer.write(content);
+                writer.close();
+            } finally {
+                IoTrace.end(IoTrace.EXPORT_WRITE, writeStart);
+            }
             
             // 通知用户文件已保存
             Toast.makeText(this, "笔记已导出到: " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
@@ -700,7 +976,8 @@ public class NotesList extends ListActivity {
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         
-        if (requestCode == REQUEST_EXPORT_ALL || requestCode == REQUEST_EXPORT_SINGLE) {
+        if (requestCode == REQUEST_EXPORT_ALL || requestCode == REQUEST_EXPORT_SINGLE
+                || requestCode == REQUEST_EXPORT_SELECTED) {
             if (grantResults.length > 0 && grantResults[0] == android.content.pm.PackageManager.PERMISSION_GRANTED) {
                 // 权限被授予，执行导出操作
                 handleExportAfterPermission(requestCode);
@@ -720,6 +997,9 @@ public class NotesList extends ListActivity {
         } else if (requestCode == REQUEST_EXPORT_SINGLE && pendingExportUri != null) {
             exportSingleNoteToTxt(pendingExportUri);
             pendingExportUri = null;
+        } else if (requestCode == REQUEST_EXPORT_SELECTED && pendingExportIds != null) {
+            exportSelectedNotes(pendingExportIds);
+            pendingExportIds = null;
         }
     }
     
@@ -788,6 +1068,12 @@ public class NotesList extends ListActivity {
         // Sets the menu header to be the title of the selected note.
         menu.setHeaderTitle(cursor.getString(COLUMN_INDEX_TITLE));
 
+        // 置顶的笔记显示“取消置顶”
+        int pinnedColIndex = cursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_PINNED);
+        if (pinnedColIndex != -1 && cursor.getInt(pinnedColIndex) != 0) {
+            menu.findItem(R.id.context_pin).setTitle("取消置顶");
+        }
+
         // Append to the
         // menu items for any other activities that can do stuff with it
         // as well.  This does a query on the system for any activities that
@@ -882,10 +1168,385 @@ public class NotesList extends ListActivity {
             pendingExportUri = noteUri;
             requestStoragePermission(REQUEST_EXPORT_SINGLE);
             return true;
+        } else if (id == R.id.context_pin) {
+            // 切换置顶状态，列表收到通知后重新查询，笔记移入或移出置顶区
+            Cursor cursor = (Cursor) getListAdapter().getItem(info.position);
+            boolean pinned = cursor != null && cursor.getInt(
+                    cursor.getColumnIndexOrThrow(NotePad.Notes.COLUMN_NAME_PINNED)) != 0;
+            ContentValues values = new ContentValues();
+            values.put(NotePad.Notes.COLUMN_NAME_PINNED, pinned ? 0 : 1);
+            getContentResolver().update(noteUri, values, null, null);
+            return true;
+        } else if (id == R.id.context_select) {
+            // 进入多选模式，并选中长按的笔记
+            getListView().setChoiceMode(ListView.CHOICE_MODE_MULTIPLE_MODAL);
+            getListView().setItemChecked(info.position, true);
+            return true;
         }
         return super.onContextItemSelected(item);
     }
 
+    /**
+     * 把列表项的列绑定到视图：时间转成可读字符串，置顶笔记的标题前加 📌，卡片按颜色设置背景，内容截断显示。
+     * 使用具名类而不是匿名类，基线配置文件（baseline-prof.txt）中的类名不随匿名类的声明顺序变化。
+     */
+    private static class NoteViewBinder implements SimpleCursorAdapter.ViewBinder {
+        @Override
+        public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
+            if (view.getId() == R.id.time_stamp) {          // 只处理时间那一列
+                long t = cursor.getLong(columnIndex);
+                String txt = new java.text.SimpleDateFormat(
+                        "yyyy-MM-dd  HH:mm",
+                        java.util.Locale.CHINA).format(new java.util.Date(t));
+                ((TextView) view).setText(txt);
+                return true;                                // 我亲自处理了
+            }
+            if (view.getId() == android.R.id.text1) {
+                // 先设置标题文本
+                String title = cursor.getString(columnIndex);
+                int pinnedColIndex = cursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_PINNED);
+                if (pinnedColIndex != -1 && cursor.getInt(pinnedColIndex) != 0) {
+                    title = "📌 " + title;
+                }
+                ((TextView) view).setText(title);
+                
+                // 然后处理颜色 - 只给卡片的父容器设置背景色
+                int colorColIndex = cursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_COLOR);
+                if (colorColIndex != -1) {
+                    int color = cursor.getInt(colorColIndex);
+                    // 获取CardView并设置背景色
+                    android.view.View parent = (android.view.View) view.getParent();
+                    if (parent != null && parent.getParent() instanceof androidx.cardview.widget.CardView) {
+                        androidx.cardview.widget.CardView cardView = (androidx.cardview.widget.CardView) parent.getParent();
+                        if (color == 0) {
+                            cardView.setCardBackgroundColor(0xFFFFFFFF);
+                        } else {
+                            cardView.setCardBackgroundColor(color);
+                        }
+                    }
+                }
+                return true;
+            }
+            if (view.getId() == R.id.note_content) {
+                // 处理内容视图
+                String content = cursor.getString(columnIndex);
+                // 限制内容显示长度
+                if (content != null && content.length() > 100) {
+                    content = content.substring(0, 100) + "...";
+                }
+                ((TextView) view).setText(content);
+                return true;
+            }
+            return false;                                   // 其余交给系统
+        }
+    }
+
+    /**
+     * 多选模式的回调：标题显示选中数量，菜单提供批量删除、移动分类、设置颜色和导出。
+     * 退出多选后恢复普通模式，长按重新弹出上下文菜单。
+     */
+    private class BatchModeListener implements AbsListView.MultiChoiceModeListener {
+
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            menu.add(0, Menu.FIRST, 0, "删除")
+                    .setIcon(android.R.drawable.ic_menu_delete)
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+            menu.add(0, Menu.FIRST + 1, 0, "移动到分类")
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+            menu.add(0, Menu.FIRST + 2, 0, "设置颜色")
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+            menu.add(0, Menu.FIRST + 3, 0, "导出为TXT")
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public void onItemCheckedStateChanged(ActionMode mode, int position, long id,
+                                              boolean checked) {
+            mode.setTitle("已选择 " + getListView().getCheckedItemCount() + " 项");
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            // 结束多选会清空选中状态，所以先取出 ID
+            long[] ids = getListView().getCheckedItemIds();
+            if (ids.length == 0) {
+                return false;
+            }
+
+            int id = item.getItemId();
+            if (id == Menu.FIRST) {                 // 删除
+                confirmBatchDelete(ids);
+            } else if (id == Menu.FIRST + 1) {      // 移动到分类
+                showBatchCategoryDialog(ids);
+            } else if (id == Menu.FIRST + 2) {      // 设置颜色
+                showBatchColorDialog(ids);
+            } else if (id == Menu.FIRST + 3) {      // 导出为TXT
+                pendingExportIds = ids;
+                requestStoragePermission(REQUEST_EXPORT_SELECTED);
+            } else {
+                return false;
+            }
+            mode.finish();
+            return true;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            // 不能在回调中直接切换模式，ListView 此时还在结束多选
+            getListView().post(() -> getListView().setChoiceMode(ListView.CHOICE_MODE_NONE));
+        }
+    }
+
+    /**
+     * 确认批量删除选中的笔记
+     */
+    private void confirmBatchDelete(final long[] ids) {
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("批量删除")
+                .setMessage("确定要删除选中的 " + ids.length + " 篇笔记吗？")
+                .setPositiveButton("删除", (dialog, which) -> {
+                    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+                    for (long id : ids) {
+                        ops.add(ContentProviderOperation.newDelete(noteUri(id)).build());
+                    }
+                    applyBatch(ops, "已删除 " + ids.length + " 篇笔记");
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    /**
+     * 把选中的笔记移动到已有分类或新分类
+     */
+    private void showBatchCategoryDialog(final long[] ids) {
+        final String[] categories = getAllCategories().toArray(new String[0]);
+
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("移动到分类")
+                .setItems(categories, (dialog, which) -> moveToCategory(ids, categories[which]))
+                .setNeutralButton("新分类", (dialog, which) -> {
+                    final android.widget.EditText input = new android.widget.EditText(this);
+                    input.setHint("请输入分类名称");
+                    new android.app.AlertDialog.Builder(this)
+                            .setTitle("新分类")
+                            .setView(input)
+                            .setPositiveButton("确定", (d, w) -> {
+                                String categoryName = input.getText().toString().trim();
+                                if (!categoryName.isEmpty()) {
+                                    moveToCategory(ids, categoryName);
+                                }
+                            })
+                            .setNegativeButton("取消", null)
+                            .show();
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    private void moveToCategory(long[] ids, String category) {
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        for (long id : ids) {
+            ops.add(ContentProviderOperation.newUpdate(noteUri(id))
+                    .withValue(NotePad.Notes.COLUMN_NAME_CATEGORY, category)
+                    .build());
+        }
+        applyBatch(ops, "已将 " + ids.length + " 篇笔记移动到 '" + category + "'");
+    }
+
+    /**
+     * 为选中的笔记设置颜色，颜色选项与编辑界面一致
+     */
+    private void showBatchColorDialog(final long[] ids) {
+        final int[] colors = {
+            0xFFFFFFFF,  // 白色
+            0xFFA8E6CF,  // 绿色
+            0xFFFFD3B6,  // 橙色
+            0xFFB2EBF2,  // 青色
+            0xFFFFAAA5,  // 粉色
+            0xFFFFF9C4,  // 黄色
+            0xFFE1BEE7   // 紫色
+        };
+        String[] names = {"白色", "绿色", "橙色", "青色", "粉色", "黄色", "紫色"};
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("选择笔记颜色")
+                .setItems(names, (dialog, which) -> {
+                    ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+                    for (long id : ids) {
+                        ops.add(ContentProviderOperation.newUpdate(noteUri(id))
+                                .withValue(NotePad.Notes.COLUMN_NAME_COLOR, colors[which])
+                                .build());
+                    }
+                    applyBatch(ops, "已更新 " + ids.length + " 篇笔记的颜色");
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    private Uri noteUri(long id) {
+        return ContentUris.withAppendedId(getIntent().getData(), id);
+    }
+
+    /**
+     * 在后台线程执行批量操作。Provider 在一个事务中完成全部操作并只通知一次，
+     * 列表收到这一次通知后刷新：只改颜色时只重新读取这些笔记，其余情况重新查询一次。
+     */
+    private void applyBatch(final ArrayList<ContentProviderOperation> ops, final String doneMessage) {
+        new android.os.AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                try {
+                    getContentResolver().applyBatch(NotePad.AUTHORITY, ops);
+                    return true;
+                } catch (Exception e) {
+                    Log.e(TAG, "Batch of " + ops.size() + " operations failed", e);
+                    return false;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Boolean ok) {
+                Toast.makeText(NotesList.this, ok ? doneMessage : "批量操作失败，笔记未做修改",
+                        Toast.LENGTH_SHORT).show();
+            }
+        }.execute();
+    }
+
+    /**
+     * 选择列表的排序方式：修改时间、创建时间、标题（中文按拼音）或颜色
+     */
+    private void showSortOrderDialog() {
+        int checked = java.util.Arrays.asList(SORT_ORDERS).indexOf(mSortOrder);
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("排序方式")
+                .setSingleChoiceItems(SORT_ORDER_NAMES, checked, (dialog, which) -> {
+                    mSortOrder = SORT_ORDERS[which];
+                    getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                            .putString(KEY_SORT_ORDER, mSortOrder)
+                            .apply();
+                    dialog.dismiss();
+                    refreshCurrentView();
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    /**
+     * 按当前的搜索或分类筛选重新查询列表
+     */
+    private void refreshCurrentView() {
+        if (mSearchKey != null) {
+            searchNotes(mSearchKey);
+        } else if (mCurrentCategory != null) {
+            filterByCategory(mCurrentCategory);
+        } else {
+            refreshNotesList();
+        }
+    }
+
+    /**
+     * 在后台线程把选中的笔记导出到一个TXT文件
+     */
+    private void exportSelectedNotes(final long[] ids) {
+        // ID 都是数字，直接写进 IN 子句，避免超过 SQLite 的参数个数上限
+        StringBuilder in = new StringBuilder();
+        for (long id : ids) {
+            in.append(in.length() == 0 ? "" : ",").append(id);
+        }
+        final String selection = NotePad.Notes._ID + " IN (" + in + ")";
+
+        new android.os.AsyncTask<Void, Void, Object>() {
+            @Override
+            protected Object doInBackground(Void... params) {
+                long queryStart = IoTrace.begin(IoTrace.EXPORT_QUERY);
+                Cursor cursor;
+                try {
+                    cursor = getContentResolver().query(
+                            getIntent().getData(),
+                            new String[]{
+                                    NotePad.Notes.COLUMN_NAME_TITLE,
+                                    NotePad.Notes.COLUMN_NAME_NOTE,
+                                    NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
+                            },
+                            selection,
+                            null,
+                            NotePad.Notes.DEFAULT_SORT_ORDER
+                    );
+                } finally {
+                    IoTrace.end(IoTrace.EXPORT_QUERY, queryStart);
+                }
+                if (cursor == null) {
+                    return "无法获取笔记数据";
+                }
+
+                StringBuilder content = new StringBuilder();
+                java.text.SimpleDateFormat format = new java.text.SimpleDateFormat(
+                        "yyyy-MM-dd HH:mm:ss", java.util.Locale.CHINA);
+                content.append("笔记导出文件\n");
+                content.append("导出时间: ").append(format.format(new java.util.Date())).append("\n\n");
+                try {
+                    while (cursor.moveToNext()) {
+                        content.append("标题: ").append(cursor.getString(0)).append("\n");
+                        content.append("修改时间: ")
+                                .append(format.format(new java.util.Date(cursor.getLong(2))))
+                                .append("\n");
+                        content.append("内容:\n").append(cursor.getString(1)).append("\n");
+                        content.append("----------------------------------------\n\n");
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                File dir = Environment.getExternalStoragePublicDirectory(
+                        Environment.DIRECTORY_DOCUMENTS);
+                if (!dir.exists() && !dir.mkdirs()) {
+                    return "无法创建目录";
+                }
+                File file = new File(dir, "notes_selected_" + new java.text.SimpleDateFormat(
+                        "yyyyMMdd_HHmmss", java.util.Locale.CHINA).format(new java.util.Date())
+                        + ".txt");
+
+                long writeStart = IoTrace.begin(IoTrace.EXPORT_WRITE);
+                try {
+                    FileWriter writer = new FileWriter(file);
+                    try {
+                        writer.write(content.toString());
+                    } finally {
+                        writer.close();
+                    }
+                } catch (java.io.IOException e) {
+                    Log.e(TAG, "Export failed", e);
+                    return "导出失败: " + e.getMessage();
+                } finally {
+                    IoTrace.end(IoTrace.EXPORT_WRITE, writeStart);
+                }
+                return file;
+            }
+
+            @Override
+            protected void onPostExecute(Object result) {
+                if (!(result instanceof File)) {
+                    Toast.makeText(NotesList.this, (String) result, Toast.LENGTH_LONG).show();
+                    return;
+                }
+                File file = (File) result;
+                Toast.makeText(NotesList.this, "已导出 " + ids.length + " 篇笔记到: "
+                        + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+
+                // 通知系统扫描文件
+                Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
+                mediaScanIntent.setData(Uri.fromFile(file));
+                sendBroadcast(mediaScanIntent);
+            }
+        }.execute();
+    }
+
     /**
      * This method is called when the user clicks a note in the displayed list.
      * <p>
@@ -915,12 +1576,259 @@ public class NotesList extends ListActivity {
             setResult(RESULT_OK, new Intent().setData(uri));
         } else {
 
+            // Starts timing the open; NoteEditor ends the section once it has drawn the note.
+            Trace.beginAsyncSection(TRACE_OPEN_NOTE, 0);
+
             // Sends out an Intent to start an Activity that can handle ACTION_EDIT. The
             // Intent's data is the note ID URI. The effect is to call NoteEdit.
             startActivity(new Intent(Intent.ACTION_EDIT, uri).setClassName(/* TODO: provide the application ID. For example: */ getPackageName(), "com.example.android.notepad.NoteEditor"));
         }
     }
     
+    /**
+     * 当前是否为可调试的构建
+     */
+    private boolean isDebuggable() {
+        return (getApplicationInfo().flags & android.content.pm.ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    /**
+     * 显示慢查询日志：超过阈值的查询及其 EXPLAIN QUERY PLAN 输出
+     */
+    private void showSlowQueryLog() {
+        Bundle result = getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                SlowQueryLog.METHOD_SLOW_QUERIES, null, null);
+        java.util.ArrayList<Bundle> entries =
+                result.getParcelableArrayList(SlowQueryLog.KEY_ENTRIES);
+
+        StringBuilder message = new StringBuilder();
+        message.append("阈值: ").append(result.getLong(SlowQueryLog.KEY_THRESHOLD_MS)).append("ms\n");
+        if (entries == null || entries.isEmpty()) {
+            message.append("\n没有慢查询记录");
+        } else {
+            // 最新的记录显示在最前面
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                message.append('\n').append(SlowQueryLog.format(entries.get(i))).append('\n');
+            }
+        }
+
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("慢查询日志")
+                .setMessage(message)
+                .setPositiveButton("确定", null)
+                .setNeutralButton("清空", (dialog, which) -> {
+                    getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                            SlowQueryLog.METHOD_SLOW_QUERIES, SlowQueryLog.ARG_CLEAR, null);
+                })
+                .show();
+    }
+
+    /**
+     * 显示生成测试数据对话框（仅调试版本）。数据由 {@link CorpusGenerator} 按固定种子生成，
+     * 每次生成的内容都相同，可用于在本地复现大数据量下的问题。
+     */
+    private void showSeedCorpusDialog() {
+        final String[] labels = {
+                "1,000 条笔记",
+                "10,000 条笔记",
+                "100,000 条笔记",
+                "100 条笔记，其中约 5% 为 2MB 大笔记"
+        };
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("生成测试数据")
+                .setItems(labels, (dialog, which) -> {
+                    CorpusGenerator.Builder builder = new CorpusGenerator.Builder();
+                    if (which == 0) {
+                        builder.setCount(1000);
+                    } else if (which == 1) {
+                        builder.setCount(10000);
+                    } else if (which == 2) {
+                        builder.setCount(100000);
+                    } else {
+                        builder.setCount(100).setLargeNotes(50, 2 * 1024 * 1024);
+                    }
+                    seedCorpus(builder);
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    /**
+     * 在后台线程中生成测试数据，新数据接在已有笔记之后编号
+     */
+    private void seedCorpus(final CorpusGenerator.Builder builder) {
+        Toast.makeText(this, "正在生成测试数据…", Toast.LENGTH_SHORT).show();
+        new android.os.AsyncTask<Void, Void, Bundle>() {
+            @Override
+            protected Bundle doInBackground(Void... params) {
+                Cursor c = getContentResolver().query(NotePad.Notes.CONTENT_URI,
+                        new String[]{NotePad.Notes._ID}, null, null, null);
+                int existing = 0;
+                if (c != null) {
+                    existing = c.getCount();
+                    c.close();
+                }
+                builder.setStart(existing);
+                return getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                        CorpusGenerator.METHOD_SEED, null, builder.build().toBundle());
+            }
+
+            @Override
+            protected void onPostExecute(Bundle result) {
+                Toast.makeText(NotesList.this, "已生成 "
+                        + result.getInt(CorpusGenerator.KEY_INSERTED) + " 条笔记，耗时 "
+                        + result.getLong(CorpusGenerator.KEY_ELAPSED_MS) + "ms",
+                        Toast.LENGTH_LONG).show();
+            }
+        }.execute();
+    }
+
+    /**
+     * 立即在后台线程执行一次数据库维护（仅调试版本），完成后显示回收的空间和各步骤耗时
+     */
+    private void runMaintenance() {
+        Toast.makeText(this, "正在维护数据库…", Toast.LENGTH_SHORT).show();
+        DatabaseMaintenance.clearStopRequest();
+        new android.os.AsyncTask<Void, Void, Bundle>() {
+            @Override
+            protected Bundle doInBackground(Void... params) {
+                return getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                        DatabaseMaintenance.METHOD_MAINTENANCE, null, null);
+            }
+
+            @Override
+            protected void onPostExecute(Bundle result) {
+                new android.app.AlertDialog.Builder(NotesList.this)
+                        .setTitle("数据库维护")
+                        .setMessage(DatabaseMaintenance.format(result))
+                        .setPositiveButton("确定", null)
+                        .show();
+            }
+        }.execute();
+    }
+
+    /**
+     * 备份与恢复：备份包含笔记的全部字段和历史版本，可以保存在应用存储中或通过系统文件选择器保存到任意位置
+     */
+    private void showBackupDialog() {
+        final boolean documents =
+                android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.KITKAT;
+        String[] items = documents
+                ? new String[]{"备份到应用存储", "备份到文件…", "从最近的备份恢复", "从文件恢复…"}
+                : new String[]{"备份到应用存储", "从最近的备份恢复"};
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("备份与恢复")
+                .setItems(items, (dialog, which) -> {
+                    int action = documents ? which : which * 2;
+                    if (action == 0) {
+                        runBackup(null);
+                    } else if (action == 1) {
+                        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                                .addCategory(Intent.CATEGORY_OPENABLE)
+                                .setType("application/gzip")
+                                .putExtra(Intent.EXTRA_TITLE, "note_pad-"
+                                        + new java.text.SimpleDateFormat("yyyyMMdd-HHmm",
+                                        java.util.Locale.US).format(new java.util.Date())
+                                        + ".db.gz");
+                        startActivityForResult(intent, REQUEST_BACKUP_DOCUMENT);
+                    } else if (action == 2) {
+                        confirmRestore(null);
+                    } else {
+                        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                                .addCategory(Intent.CATEGORY_OPENABLE)
+                                .setType("*/*");
+                        startActivityForResult(intent, REQUEST_RESTORE_DOCUMENT);
+                    }
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == REQUEST_BACKUP_DOCUMENT) {
+            runBackup(data.getData());
+        } else if (requestCode == REQUEST_RESTORE_DOCUMENT) {
+            confirmRestore(data.getData());
+        }
+    }
+
+    /**
+     * 在后台线程备份数据库；备份期间仍可以编辑和保存笔记。目标为空时保存到应用存储
+     */
+    private void runBackup(final Uri destination) {
+        Toast.makeText(this, "正在备份…", Toast.LENGTH_SHORT).show();
+        new android.os.AsyncTask<Void, Void, Object>() {
+            @Override
+            protected Object doInBackground(Void... params) {
+                try {
+                    return getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                            DatabaseBackup.METHOD_BACKUP,
+                            destination == null ? null : destination.toString(), null);
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Object result) {
+                if (result instanceof Bundle) {
+                    new android.app.AlertDialog.Builder(NotesList.this)
+                            .setTitle("备份完成")
+                            .setMessage(DatabaseBackup.format((Bundle) result))
+                            .setPositiveButton("确定", null)
+                            .show();
+                } else {
+                    Toast.makeText(NotesList.this, "备份失败: "
+                            + ((Exception) result).getMessage(), Toast.LENGTH_LONG).show();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 确认后在后台线程恢复备份。备份先经过完整性检查，检查不通过时当前笔记保持不变
+     */
+    private void confirmRestore(final Uri source) {
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("恢复备份")
+                .setMessage("恢复会用备份替换当前的全部笔记，确定继续吗？")
+                .setPositiveButton("恢复", (dialog, which) -> {
+                    new android.os.AsyncTask<Void, Void, Object>() {
+                        @Override
+                        protected Object doInBackground(Void... params) {
+                            try {
+                                return getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                                        DatabaseBackup.METHOD_RESTORE,
+                                        source == null ? null : source.toString(), null);
+                            } catch (RuntimeException e) {
+                                return e;
+                            }
+                        }
+
+                        @Override
+                        protected void onPostExecute(Object result) {
+                            if (result instanceof Bundle) {
+                                Toast.makeText(NotesList.this, "已恢复 "
+                                        + ((Bundle) result).getLong(DatabaseBackup.KEY_NOTES)
+                                        + " 条笔记", Toast.LENGTH_LONG).show();
+                                refreshCurrentView();
+                            } else {
+                                Toast.makeText(NotesList.this, "恢复失败: "
+                                        + ((Exception) result).getMessage(),
+                                        Toast.LENGTH_LONG).show();
+                            }
+                        }
+                    }.execute();
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
     /**
      * 显示分类选择对话框
      */
@@ -1047,6 +1955,8 @@ public class NotesList extends ListActivity {
      */
     private void filterByCategory(String category) {
         mCurrentCategory = category;
+        mSearchKey = null;
+        mSearchColumns = null;
         
         String selection = null;
         String[] args = null;
@@ -1056,12 +1966,7 @@ public class NotesList extends ListActivity {
             args = new String[]{category};
         }
         
-        Cursor c = getContentResolver().query(
-                Objects.requireNonNull(getIntent().getData()),
-                PROJECTION,
-                selection,
-                args,
-                NotePad.Notes.DEFAULT_SORT_ORDER);
+        Cursor c = queryNotes(selection, args);
                 
         SimpleCursorAdapter a = (SimpleCursorAdapter) getListAdapter();
         a.changeCursor(c);
@@ -1157,22 +2062,11 @@ public class NotesList extends ListActivity {
             Toast.makeText(this, "分类 '" + categoryName + "' 已删除", Toast.LENGTH_SHORT).show();
         }
         
-        // 刷新列表
+        // 如果当前正在查看被删除的分类，则显示全部笔记。其余情况由变化通知决定：
+        // 浏览全部笔记时分类不显示，不需要重新查询
         if (categoryName.equals(mCurrentCategory)) {
-            // 如果当前正在查看被删除的分类，则显示全部笔记
             mCurrentCategory = null;
             doSearch("");
-        } else {
-            // 刷新当前视图
-            Cursor c = getContentResolver().query(
-                    Objects.requireNonNull(getIntent().getData()),
-                    PROJECTION,
-                    null,
-                    null,
-                    NotePad.Notes.DEFAULT_SORT_ORDER);
-            SimpleCursorAdapter a = (SimpleCursorAdapter) getListAdapter();
-            a.changeCursor(c);
-            c.setNotificationUri(getContentResolver(), getIntent().getData());
         }
     }
 }
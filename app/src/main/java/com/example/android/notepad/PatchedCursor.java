@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.provider.BaseColumns;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Wraps a list cursor and returns newer values for some of its rows, so a list can show the
+ * changes of a few notes without querying all of them again. Each patched row is read with the
+ * same columns as the wrapped cursor and found by its {@link BaseColumns#_ID}; the rows keep
+ * their positions, so only changes that leave the order and the filter of the list alone can be
+ * patched in.
+ */
+class PatchedCursor extends CursorWrapper {
+
+    private final int mIdIndex;
+
+    // The newer values of the patched rows, by note ID.
+    private final Map<Long, Object[]> mRows = new HashMap<Long, Object[]>();
+
+    /**
+     * @param cursor A cursor with an {@link BaseColumns#_ID} column. Closed with this cursor.
+     */
+    PatchedCursor(Cursor cursor) {
+        super(cursor);
+        mIdIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+    }
+
+    /**
+     * Replaces the values of the row with the ID of the current row of the given cursor, which
+     * has the same columns as this one. A row that this cursor does not have is ignored when
+     * reading.
+     */
+    void patch(Cursor row) {
+        Object[] values = new Object[row.getColumnCount()];
+        for (int i = 0; i < values.length; i++) {
+            switch (row.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = row.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    values[i] = row.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    values[i] = row.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    values[i] = row.getBlob(i);
+                    break;
+                default:
+                    values[i] = null;
+                    break;
+            }
+        }
+        mRows.put(row.getLong(mIdIndex), values);
+    }
+
+    // The patched values of the current row, or null if it is not patched.
+    private Object[] current() {
+        if (mRows.isEmpty() || isBeforeFirst() || isAfterLast()) {
+            return null;
+        }
+        return mRows.get(super.getLong(mIdIndex));
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        Object[] row = current();
+        if (row == null) {
+            return super.getString(columnIndex);
+        }
+        Object value = row[columnIndex];
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        Object[] row = current();
+        if (row == null) {
+            return super.getLong(columnIndex);
+        }
+        Object value = row[columnIndex];
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return (short) getLong(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        Object[] row = current();
+        if (row == null) {
+            return super.getDouble(columnIndex);
+        }
+        Object value = row[columnIndex];
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value == null ? 0 : Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return (float) getDouble(columnIndex);
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        Object[] row = current();
+        if (row == null) {
+            return super.getBlob(columnIndex);
+        }
+        Object value = row[columnIndex];
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        Object[] row = current();
+        return row == null ? super.isNull(columnIndex) : row[columnIndex] == null;
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        Object[] row = current();
+        if (row == null) {
+            return super.getType(columnIndex);
+        }
+        Object value = row[columnIndex];
+        if (value == null) {
+            return Cursor.FIELD_TYPE_NULL;
+        } else if (value instanceof Long) {
+            return Cursor.FIELD_TYPE_INTEGER;
+        } else if (value instanceof Double) {
+            return Cursor.FIELD_TYPE_FLOAT;
+        } else if (value instanceof byte[]) {
+            return Cursor.FIELD_TYPE_BLOB;
+        }
+        return Cursor.FIELD_TYPE_STRING;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.text.GetChars;
+
+import java.util.ArrayList;
+
+/**
+ * The text of a large note as a piece table. The text loaded from the provider is kept as it is
+ * and never copied; inserted text is appended to a second buffer, and the note is described by a
+ * list of pieces, each a range of one of the two buffers. An edit splits at most two pieces and
+ * adds at most one, so its cost depends on the number of pieces, not on the length of the note,
+ * and typing on at the end of the last insertion only lengthens its piece.
+ * <p>
+ * Reading a range with {@link #subSequence(int, int)} or
+ * {@link #getChars(int, int, char[], int)} copies only that range; only {@link #toString()}
+ * copies the whole text, which the editor does just to save it.
+ */
+final class PieceTable implements GetChars {
+
+    // Lines longer than this are not searched for their start; see lineStart().
+    static final int MAX_LINE_SCAN = 4096;
+
+    private static final class Piece {
+        final boolean added;
+        int start;
+        int length;
+
+        Piece(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    private final String mOriginal;
+    private final StringBuilder mAdded = new StringBuilder();
+    private final ArrayList<Piece> mPieces = new ArrayList<Piece>();
+
+    // The offset of each piece in the text, or null after an edit until it is needed again.
+    private int[] mOffsets;
+    private int mLength;
+
+    // Counts the edits, so the editor can tell whether the text changed since it saved it.
+    private int mGeneration;
+
+    // The piece charAt() read last; reading on from there needs no search.
+    private int mLastPiece;
+
+    PieceTable(String original) {
+        mOriginal = original;
+        mLength = original.length();
+        if (mLength > 0) {
+            mPieces.add(new Piece(false, 0, mLength));
+        }
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + mLength);
+        }
+        int[] offsets = offsets();
+        int i = mLastPiece;
+        if (i >= offsets.length || index < offsets[i]
+                || index >= offsets[i] + mPieces.get(i).length) {
+            i = findPiece(index);
+            mLastPiece = i;
+        }
+        Piece piece = mPieces.get(i);
+        int offset = piece.start + index - offsets[i];
+        return piece.added ? mAdded.charAt(offset) : mOriginal.charAt(offset);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("range " + start + ".." + end + ", length "
+                    + mLength);
+        }
+        if (start == end) {
+            return;
+        }
+        for (int i = findPiece(start); start < end; i++) {
+            Piece piece = mPieces.get(i);
+            int from = piece.start + start - mOffsets[i];
+            int count = Math.min(end - start, piece.length - (start - mOffsets[i]));
+            if (piece.added) {
+                mAdded.getChars(from, from + count, dest, destoff);
+            } else {
+                mOriginal.getChars(from, from + count, dest, destoff);
+            }
+            start += count;
+            destoff += count;
+        }
+    }
+
+    /**
+     * Returns the whole text. Unedited, this is the text the table was created with.
+     */
+    @Override
+    public String toString() {
+        if (mPieces.size() == 1 && !mPieces.get(0).added && mLength == mOriginal.length()) {
+            return mOriginal;
+        }
+        return subSequence(0, mLength).toString();
+    }
+
+    /**
+     * Returns a copy of the text that later edits do not change, for reading on another thread.
+     * The copy shares the loaded text; only the inserted text and the list of pieces are copied.
+     */
+    PieceTable snapshot() {
+        PieceTable copy = new PieceTable(mOriginal);
+        copy.mAdded.append(mAdded);
+        copy.mPieces.clear();
+        for (Piece piece : mPieces) {
+            copy.mPieces.add(new Piece(piece.added, piece.start, piece.length));
+        }
+        copy.mLength = mLength;
+        copy.mGeneration = mGeneration;
+        return copy;
+    }
+
+    /**
+     * Replaces the range from start to end with text.
+     */
+    void replace(int start, int end, CharSequence text) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("range " + start + ".." + end + ", length "
+                    + mLength);
+        }
+        int inserted = text.length();
+        if (start == end && inserted == 0) {
+            return;
+        }
+        int first = split(start);
+        int last = split(end);
+        mPieces.subList(first, last).clear();
+        if (inserted > 0) {
+            Piece previous = first > 0 ? mPieces.get(first - 1) : null;
+            if (previous != null && previous.added
+                    && previous.start + previous.length == mAdded.length()) {
+                // Typing on: the new text follows the previous piece in the buffer too.
+                previous.length += inserted;
+            } else {
+                mPieces.add(first, new Piece(true, mAdded.length(), inserted));
+            }
+            mAdded.append(text);
+        }
+        mLength += inserted - (end - start);
+        mOffsets = null;
+        mGeneration++;
+    }
+
+    /**
+     * Returns the number of edits made to the text.
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns the number of pieces the text is made of.
+     */
+    int getPieceCount() {
+        return mPieces.size();
+    }
+
+    /**
+     * Returns the start of the line containing offset, or offset itself if the line starts more
+     * than {@link #MAX_LINE_SCAN} characters before it.
+     */
+    int lineStart(int offset) {
+        int limit = Math.max(0, offset - MAX_LINE_SCAN);
+        for (int i = offset; i > limit; i--) {
+            if (charAt(i - 1) == '\n') {
+                return i;
+            }
+        }
+        return limit == 0 ? 0 : offset;
+    }
+
+    /**
+     * Returns the end of the line containing offset, after its line break, or offset itself if
+     * the line ends more than {@link #MAX_LINE_SCAN} characters after it.
+     */
+    int lineEnd(int offset) {
+        int limit = Math.min(mLength, offset + MAX_LINE_SCAN);
+        for (int i = offset; i < limit; i++) {
+            if (charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return limit == mLength ? mLength : offset;
+    }
+
+    // Returns the index of the piece containing index, which must be in the text.
+    private int findPiece(int index) {
+        int[] offsets = offsets();
+        int low = 0;
+        int high = mPieces.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Makes offset the start of a piece, and returns that piece's index, or the number of pieces
+    // if offset is the end of the text.
+    private int split(int offset) {
+        if (offset == mLength) {
+            return mPieces.size();
+        }
+        int i = findPiece(offset);
+        int within = offset - mOffsets[i];
+        if (within == 0) {
+            return i;
+        }
+        Piece piece = mPieces.get(i);
+        mPieces.add(i + 1, new Piece(piece.added, piece.start + within, piece.length - within));
+        piece.length = within;
+        mOffsets = null;
+        return i + 1;
+    }
+
+    private int[] offsets() {
+        if (mOffsets == null) {
+            int[] offsets = new int[mPieces.size()];
+            int offset = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = offset;
+                offset += mPieces.get(i).length;
+            }
+            mOffsets = offsets;
+        }
+        return mOffsets;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index of the pinyin of note titles and categories, kept in the {@link #TABLE_NAME} table,
+ * so that "biji" or "bjb" finds a note titled 笔记本. Each key is the toneless pinyin, or the
+ * initials, of a title or category from one of its syllables to the end: 我的笔记本 gives
+ * "wodebijiben", "debijiben", "bijiben", "jiben", "ben" and "wdbjb", "dbjb", "bjb", "jb", "b".
+ * A query is looked up as a prefix of the keys, a range scan of the primary key, so it matches
+ * any run of syllables that starts a syllable.
+ * <p>
+ * A character with several readings is indexed by its most common one. Letters and digits are
+ * kept as they are, one word per unit, and other characters only separate units. Only titles
+ * and categories with Chinese characters are indexed; the full-text index already finds the
+ * others. The provider keeps the index current inside the transaction of every write that
+ * changes a title or category; a trigger removes the rows of a deleted note.
+ */
+final class PinyinIndex {
+
+    static final String TABLE_NAME = "note_pinyin";
+    static final String COLUMN_KEY = "key";
+    static final String COLUMN_NOTE_ID = "note_id";
+
+    // Keys are cut to this many characters; longer queries do not use the index.
+    static final int MAX_KEY_LENGTH = 48;
+
+    // Only keys starting in the first units of a field are indexed, so a long title does not
+    // add hundreds of rows.
+    private static final int MAX_UNITS = 32;
+
+    private static final String[] NOTE_COLUMNS = {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_CATEGORY
+    };
+
+    private static final HanyuPinyinOutputFormat FORMAT = new HanyuPinyinOutputFormat();
+
+    static {
+        FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    private PinyinIndex() {
+    }
+
+    /**
+     * Creates the index table, its index by note and the trigger that removes the rows of a
+     * deleted note.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                + COLUMN_KEY + " TEXT NOT NULL,"
+                + COLUMN_NOTE_ID + " INTEGER NOT NULL,"
+                + "PRIMARY KEY (" + COLUMN_KEY + ", " + COLUMN_NOTE_ID + ")"
+                + ")" + (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                        ? " WITHOUT ROWID;" : ";"));
+        db.execSQL("CREATE INDEX note_pinyin_note_id ON " + TABLE_NAME
+                + " (" + COLUMN_NOTE_ID + ")");
+        db.execSQL("CREATE TRIGGER note_pinyin_cleanup AFTER DELETE ON "
+                + NotePad.Notes.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + TABLE_NAME
+                + " WHERE " + COLUMN_NOTE_ID + " = old." + NotePad.Notes._ID + ";"
+                + " END");
+    }
+
+    /**
+     * Indexes every note from scratch. Must be called inside a transaction.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(TABLE_NAME, null, null);
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME
+                + " (" + COLUMN_KEY + ", " + COLUMN_NOTE_ID + ") VALUES (?, ?)");
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_COLUMNS,
+                null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                long noteId = c.getLong(0);
+                for (String key : noteKeys(c)) {
+                    insert.bindString(1, key);
+                    insert.bindLong(2, noteId);
+                    insert.executeInsert();
+                }
+            }
+        } finally {
+            c.close();
+            insert.close();
+        }
+    }
+
+    /**
+     * Replaces the rows of one note with the keys of its stored title and category. If the note
+     * no longer exists, its rows are removed. Must be called inside a transaction.
+     */
+    static void indexNote(SQLiteDatabase db, long noteId) {
+        db.delete(TABLE_NAME, COLUMN_NOTE_ID + " = " + noteId, null);
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_COLUMNS,
+                NotePad.Notes._ID + " = " + noteId, null, null, null, null);
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME
+                + " (" + COLUMN_KEY + ", " + COLUMN_NOTE_ID + ") VALUES (?, ?)");
+        try {
+            if (c.moveToFirst()) {
+                for (String key : noteKeys(c)) {
+                    insert.bindString(1, key);
+                    insert.bindLong(2, noteId);
+                    insert.executeInsert();
+                }
+            }
+        } finally {
+            c.close();
+            insert.close();
+        }
+    }
+
+    /**
+     * Selects the rows whose key lies in the range returned by {@link #prefixRange(String)},
+     * which are bound as its two arguments.
+     */
+    static final String RANGE_SELECTION = COLUMN_KEY + " >= ? AND " + COLUMN_KEY + " < ?";
+
+    /**
+     * Returns the range of keys that start with the query: all keys with the prefix sort
+     * between it and the prefix with its last character incremented. Spaces in the query are
+     * ignored.
+     *
+     * @return The lower bound, inclusive, and the upper bound, exclusive, or null if the query
+     * is not made of ASCII letters and digits and cannot be pinyin.
+     */
+    static String[] prefixRange(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+        for (int i = 0; i < query.length(); i++) {
+            int ch = NoteTokenizer.fold(query.charAt(i));
+            if ((ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9')) {
+                sb.append((char) ch);
+            } else if (ch != ' ') {
+                return null;
+            }
+        }
+        if (sb.length() == 0 || sb.length() > MAX_KEY_LENGTH) {
+            return null;
+        }
+        String low = sb.toString();
+        sb.setCharAt(sb.length() - 1, (char) (sb.charAt(sb.length() - 1) + 1));
+        return new String[]{low, sb.toString()};
+    }
+
+    /**
+     * Returns the keys of one title or category: the full pinyin and the initials from each
+     * unit to the end. Returns no keys if the text has no Chinese characters.
+     */
+    static Set<String> keys(String text) {
+        if (text == null) {
+            return Collections.emptySet();
+        }
+        List<String> syllables = new ArrayList<String>();
+        List<String> initials = new ArrayList<String>();
+        boolean hasHan = false;
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length() && syllables.size() < MAX_UNITS; i++) {
+            int ch = NoteTokenizer.fold(text.charAt(i));
+            String pinyin = NoteTokenizer.isCjk(ch) ? pinyin((char) ch) : null;
+            if (pinyin == null && ch < 0x80 && Character.isLetterOrDigit(ch)) {
+                word.append((char) ch);
+                continue;
+            }
+            if (word.length() > 0) {
+                syllables.add(word.toString());
+                initials.add(word.toString());
+                word.setLength(0);
+            }
+            if (pinyin != null) {
+                syllables.add(pinyin);
+                initials.add(pinyin.substring(0, 1));
+                hasHan = true;
+            }
+        }
+        if (word.length() > 0 && syllables.size() < MAX_UNITS) {
+            syllables.add(word.toString());
+            initials.add(word.toString());
+        }
+        if (!hasHan) {
+            return Collections.emptySet();
+        }
+
+        Set<String> keys = new HashSet<String>();
+        StringBuilder full = new StringBuilder();
+        StringBuilder abbreviated = new StringBuilder();
+        for (int i = syllables.size() - 1; i >= 0; i--) {
+            full.insert(0, syllables.get(i));
+            abbreviated.insert(0, initials.get(i));
+            keys.add(truncate(full));
+            keys.add(truncate(abbreviated));
+        }
+        return keys;
+    }
+
+    // The keys of the title and category of the note at the cursor position.
+    private static Set<String> noteKeys(Cursor c) {
+        Set<String> keys = new HashSet<String>(keys(c.getString(1)));
+        keys.addAll(keys(c.getString(2)));
+        return keys;
+    }
+
+    /**
+     * Returns the toneless pinyin of a Chinese character in lower case, with v for ü, or null
+     * if it has none. A character with several readings gives its most common one.
+     */
+    static String pinyin(char ch) {
+        try {
+            String[] readings = PinyinHelper.toHanyuPinyinStringArray(ch, FORMAT);
+            return readings == null || readings.length == 0 ? null : readings[0];
+        } catch (BadHanyuPinyinOutputFormatCombination e) {
+            // Only happens for tone marks combined with a v for ü, which FORMAT does not use.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String truncate(CharSequence key) {
+        return key.length() > MAX_KEY_LENGTH
+                ? key.subSequence(0, MAX_KEY_LENGTH).toString() : key.toString();
+    }
+}
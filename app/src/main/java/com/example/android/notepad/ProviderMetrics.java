@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.os.Bundle;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects latency and volume metrics for {@link NotePadProvider}. Every counter is an atomic,
+ * so recording never takes a lock and never blocks a provider call that runs on another binder
+ * thread.
+ * <p>
+ * Latencies go into power-of-two histograms in microseconds, one per operation and one per
+ * operation and URI pattern. The provider publishes a snapshot through
+ * {@link NotePadProvider#call(String, String, Bundle)} with {@link #METHOD_METRICS} and through
+ * {@code adb shell dumpsys activity provider com.example.android.notepad/.NotePadProvider}.
+ */
+final class ProviderMetrics {
+
+    /**
+     * The provider call() method that returns a snapshot of the metrics. Passing
+     * {@link #ARG_RESET} as the argument clears the metrics after taking the snapshot.
+     */
+    static final String METHOD_METRICS = "metrics";
+
+    /**
+     * Argument for {@link #METHOD_METRICS} that resets every counter after the snapshot.
+     */
+    static final String ARG_RESET = "reset";
+
+    /*
+     * Operation codes, used as indexes into the per-operation tables.
+     */
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_UPDATE = 2;
+    static final int OP_DELETE = 3;
+    static final int OP_OPEN_FILE = 4;
+    private static final int OP_COUNT = 5;
+
+    private static final String[] OP_NAMES = {
+            "query", "insert", "update", "delete", "openTypedAssetFile"
+    };
+
+    // The largest UriMatcher code that gets its own histograms. Unknown URIs (NO_MATCH, -1) and
+    // anything larger are folded into slot 0.
+    private static final int MAX_URI_CODE = 31;
+
+    // Names of the URI patterns, indexed by UriMatcher code.
+    private final String[] mUriNames = new String[MAX_URI_CODE + 1];
+
+    // One histogram per operation.
+    private final Histogram[] mOpLatency = new Histogram[OP_COUNT];
+
+    // One histogram per operation and URI pattern, created when the pattern is registered.
+    private final Histogram[][] mUriLatency = new Histogram[OP_COUNT][MAX_URI_CODE + 1];
+
+    // Rows returned by queries and rows changed by insert/update/delete, per operation.
+    private final AtomicLongArray mRows = new AtomicLongArray(OP_COUNT);
+
+    // Bytes written to clients through writeDataToPipe().
+    private final AtomicLong mBytesStreamed = new AtomicLong();
+
+    // Calls to ContentResolver.notifyChange() made by the provider.
+    private final AtomicLong mNotifications = new AtomicLong();
+
+    // When the metrics were created or last reset, from System.currentTimeMillis().
+    private volatile long mSinceMillis = System.currentTimeMillis();
+
+    ProviderMetrics() {
+        for (int op = 0; op < OP_COUNT; op++) {
+            mOpLatency[op] = new Histogram();
+            mUriLatency[op][0] = new Histogram();
+        }
+        mUriNames[0] = "unknown";
+    }
+
+    /**
+     * Gives a UriMatcher code a readable name and its own histograms. Must be called before the
+     * provider serves requests, since the histogram table is not guarded.
+     */
+    void registerUriPattern(int code, String pattern) {
+        if (code <= 0 || code > MAX_URI_CODE) {
+            throw new IllegalArgumentException("URI code out of range: " + code);
+        }
+        mUriNames[code] = pattern;
+        for (int op = 0; op < OP_COUNT; op++) {
+            mUriLatency[op][code] = new Histogram();
+        }
+    }
+
+    /**
+     * Records one completed operation.
+     *
+     * @param op         One of the OP_ constants.
+     * @param uriCode    The UriMatcher code of the request URI.
+     * @param startNanos The value of {@link System#nanoTime()} when the operation started.
+     * @param rows       Rows returned (queries) or changed (writes).
+     */
+    void record(int op, int uriCode, long startNanos, long rows) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        mOpLatency[op].add(micros);
+        mUriLatency[op][slot(uriCode)].add(micros);
+        if (rows > 0) {
+            mRows.addAndGet(op, rows);
+        }
+    }
+
+    void addBytesStreamed(long bytes) {
+        mBytesStreamed.addAndGet(bytes);
+    }
+
+    void incrementNotifications() {
+        mNotifications.incrementAndGet();
+    }
+
+    /**
+     * Clears every counter. Counters are cleared one by one, so a call that races with reset()
+     * may be partly counted; that is acceptable for diagnostics.
+     */
+    void reset() {
+        for (int op = 0; op < OP_COUNT; op++) {
+            mOpLatency[op].reset();
+            for (Histogram h : mUriLatency[op]) {
+                if (h != null) {
+                    h.reset();
+                }
+            }
+            mRows.set(op, 0);
+        }
+        mBytesStreamed.set(0);
+        mNotifications.set(0);
+        mSinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns a snapshot of the metrics. Top-level keys are "since", "bytes_streamed" and
+     * "notifications"; each operation that has been called has a nested Bundle under its name
+     * with "count", "rows", "mean_us", "p50_us", "p90_us", "p99_us", "max_us" and a
+     * "uris" Bundle holding the same latency keys per URI pattern.
+     */
+    Bundle toBundle() {
+        Bundle result = new Bundle();
+        result.putLong("since", mSinceMillis);
+        result.putLong("bytes_streamed", mBytesStreamed.get());
+        result.putLong("notifications", mNotifications.get());
+
+        for (int op = 0; op < OP_COUNT; op++) {
+            Histogram total = mOpLatency[op];
+            if (total.count() == 0) {
+                continue;
+            }
+            Bundle opBundle = total.toBundle();
+            opBundle.putLong("rows", mRows.get(op));
+
+            Bundle uris = new Bundle();
+            for (int code = 0; code <= MAX_URI_CODE; code++) {
+                Histogram h = mUriLatency[op][code];
+                if (h != null && h.count() > 0) {
+                    uris.putBundle(mUriNames[code], h.toBundle());
+                }
+            }
+            opBundle.putBundle("uris", uris);
+            result.putBundle(OP_NAMES[op], opBundle);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the metrics in a human readable form, for ContentProvider.dump().
+     */
+    void dump(PrintWriter pw) {
+        pw.println("NotePadProvider metrics since "
+                + new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss", java.util.Locale.CHINA)
+                        .format(new java.util.Date(mSinceMillis)));
+        pw.println("  notifications=" + mNotifications.get()
+                + " bytes_streamed=" + mBytesStreamed.get());
+
+        for (int op = 0; op < OP_COUNT; op++) {
+            Histogram total = mOpLatency[op];
+            if (total.count() == 0) {
+                continue;
+            }
+            pw.println("  " + OP_NAMES[op] + ": " + total.summary()
+                    + " rows=" + mRows.get(op));
+            for (int code = 0; code <= MAX_URI_CODE; code++) {
+                Histogram h = mUriLatency[op][code];
+                if (h != null && h.count() > 0) {
+                    pw.println("    " + mUriNames[code] + ": " + h.summary());
+                }
+            }
+        }
+    }
+
+    private int slot(int uriCode) {
+        if (uriCode <= 0 || uriCode > MAX_URI_CODE || mUriLatency[0][uriCode] == null) {
+            return 0;
+        }
+        return uriCode;
+    }
+
+    /**
+     * A latency histogram with power-of-two buckets: bucket i counts values in
+     * [2^(i-1), 2^i) microseconds, bucket 0 counts values below 1us, and the last bucket
+     * collects everything above about 17 seconds.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 26;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        void add(long micros) {
+            if (micros < 0) {
+                micros = 0;
+            }
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            mBuckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            mCount.incrementAndGet();
+            mSum.addAndGet(micros);
+
+            // Lock-free maximum: retry until the stored value is at least this sample.
+            long max = mMax.get();
+            while (micros > max && !mMax.compareAndSet(max, micros)) {
+                max = mMax.get();
+            }
+        }
+
+        long count() {
+            return mCount.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+
+        /**
+         * Returns the upper bound of the bucket that holds the given quantile, in microseconds.
+         */
+        long percentile(double quantile) {
+            long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) {
+                    return i == 0 ? 1 : Math.min(1L << i, mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        long mean() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSum.get() / count;
+        }
+
+        Bundle toBundle() {
+            Bundle b = new Bundle();
+            b.putLong("count", mCount.get());
+            b.putLong("mean_us", mean());
+            b.putLong("p50_us", percentile(0.50));
+            b.putLong("p90_us", percentile(0.90));
+            b.putLong("p99_us", percentile(0.99));
+            b.putLong("max_us", mMax.get());
+            return b;
+        }
+
+        String summary() {
+            return "count=" + mCount.get()
+                    + " mean=" + mean() + "us"
+                    + " p50<=" + percentile(0.50) + "us"
+                    + " p90<=" + percentile(0.90) + "us"
+                    + " p99<=" + percentile(0.99) + "us"
+                    + " max=" + mMax.get() + "us";
+        }
+    }
+}
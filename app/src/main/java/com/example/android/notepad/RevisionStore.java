@@ -0,0 +1,596 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps the revision history of notes in the {@link NotePad.NoteRevisions} table.
+ * <p>
+ * Each revision is stored either as a snapshot (the Deflate-compressed text) or as a
+ * {@link TextDelta} against the previous revision. A new snapshot starts a chain after
+ * {@link #SNAPSHOT_INTERVAL} deltas, or as soon as the deltas since the last snapshot would
+ * outweigh the snapshot itself, so rebuilding any revision reads one snapshot and a bounded
+ * number of deltas.
+ * <p>
+ * Revisions are recorded on a background thread after the provider saves a note's text. Saves
+ * that arrive while a note is already queued are coalesced, and a save that leaves the text
+ * unchanged adds no revision. When a note has more than {@link #MAX_REVISIONS} plus
+ * {@link #COMPACT_SLACK} revisions, the history is compacted: the newest {@link #KEEP_RECENT}
+ * revisions are kept, older ones are thinned to the last revision of each day, and at most
+ * {@link #MAX_REVISIONS} survive. Deleting a note deletes its revisions through a trigger.
+ */
+final class RevisionStore {
+
+    private static final String TAG = "RevisionStore";
+
+    // Storage kinds of a revision.
+    private static final int KIND_SNAPSHOT = 0;
+    private static final int KIND_DELTA = 1;
+
+    // Hidden storage columns of the revisions table.
+    static final String COLUMN_KIND = "kind";
+    static final String COLUMN_DATA = "data";
+
+    // The most deltas between two snapshots.
+    static final int SNAPSHOT_INTERVAL = 16;
+
+    // Retention policy, per note.
+    static final int KEEP_RECENT = 20;
+    static final int MAX_REVISIONS = 50;
+    static final int COMPACT_SLACK = 10;
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] ALL_COLUMNS = {
+            NotePad.NoteRevisions._ID,
+            NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID,
+            NotePad.NoteRevisions.COLUMN_NAME_REVISION,
+            NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE,
+            NotePad.NoteRevisions.COLUMN_NAME_TITLE,
+            NotePad.NoteRevisions.COLUMN_NAME_LENGTH,
+            NotePad.NoteRevisions.COLUMN_NAME_SIZE,
+            NotePad.NoteRevisions.COLUMN_NAME_NOTE,
+    };
+
+    private final SQLiteOpenHelper mOpenHelper;
+    // The provider's shared database lock, held by every task on the executor.
+    private final Lock mDatabaseLock;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    // Notes queued for recording, guarded by itself.
+    private final Set<Long> mPending = new HashSet<Long>();
+
+    // The chain of the note recorded last, so consecutive saves of the same note do not rebuild
+    // its text. Only used on the executor thread, and by clearCache() while no task can run.
+    private long mCachedNoteId = -1;
+    private Chain mCachedChain;
+
+    RevisionStore(SQLiteOpenHelper openHelper, Lock databaseLock) {
+        mOpenHelper = openHelper;
+        mDatabaseLock = databaseLock;
+    }
+
+    /**
+     * Forgets the cached chain. Called while the provider holds its database lock exclusively,
+     * after the database was replaced.
+     */
+    void clearCache() {
+        mCachedNoteId = -1;
+        mCachedChain = null;
+    }
+
+    /**
+     * Creates the revisions table, its index and the trigger that deletes the revisions of a
+     * deleted note.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + NotePad.NoteRevisions.TABLE_NAME + " ("
+                + NotePad.NoteRevisions._ID + " INTEGER PRIMARY KEY,"
+                + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " INTEGER NOT NULL,"
+                + NotePad.NoteRevisions.COLUMN_NAME_REVISION + " INTEGER NOT NULL,"
+                + NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE + " INTEGER,"
+                + NotePad.NoteRevisions.COLUMN_NAME_TITLE + " TEXT,"
+                + NotePad.NoteRevisions.COLUMN_NAME_LENGTH + " INTEGER,"
+                + COLUMN_KIND + " INTEGER NOT NULL,"
+                + COLUMN_DATA + " BLOB NOT NULL,"
+                + "UNIQUE (" + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + ", "
+                + NotePad.NoteRevisions.COLUMN_NAME_REVISION + ")"
+                + ");");
+        db.execSQL("CREATE TRIGGER note_revisions_cleanup AFTER DELETE ON "
+                + NotePad.Notes.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + NotePad.NoteRevisions.TABLE_NAME
+                + " WHERE " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = old."
+                + NotePad.Notes._ID + ";"
+                + " END");
+    }
+
+    /**
+     * Queues the current text of a note to be recorded as a new revision.
+     */
+    void schedule(final long noteId) {
+        synchronized (mPending) {
+            if (!mPending.add(noteId)) {
+                return;
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Leaves the queue first, so a save made while recording queues another run.
+                synchronized (mPending) {
+                    mPending.remove(noteId);
+                }
+                mDatabaseLock.lock();
+                try {
+                    record(noteId);
+                } catch (RuntimeException e) {
+                    mCachedChain = null;
+                    Log.w(TAG, "Failed to record revision of note " + noteId, e);
+                } finally {
+                    mDatabaseLock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until every queued revision has been recorded. For tests.
+     */
+    void awaitIdle() {
+        try {
+            mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns one revision of a note, with its full text, as a single-row cursor. The cursor is
+     * empty if the revision does not exist.
+     *
+     * @param projection The columns to return, from {@link NotePad.NoteRevisions}; null for all.
+     * @throws IllegalArgumentException if the projection contains an unknown column.
+     */
+    Cursor queryRevision(long noteId, int revision, String[] projection) {
+        String[] columns = projection == null ? ALL_COLUMNS : projection;
+        for (String column : columns) {
+            if (indexOf(ALL_COLUMNS, column) < 0) {
+                throw new IllegalArgumentException("Invalid column " + column);
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        Cursor c = db.query(NotePad.NoteRevisions.TABLE_NAME,
+                new String[]{
+                        NotePad.NoteRevisions._ID,
+                        NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE,
+                        NotePad.NoteRevisions.COLUMN_NAME_TITLE,
+                        NotePad.NoteRevisions.COLUMN_NAME_LENGTH,
+                        "length(" + COLUMN_DATA + ")"},
+                NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ? AND "
+                        + NotePad.NoteRevisions.COLUMN_NAME_REVISION + " = ?",
+                new String[]{Long.toString(noteId), Integer.toString(revision)},
+                null, null, null);
+        try {
+            if (!c.moveToFirst()) {
+                return cursor;
+            }
+
+            // Only rebuilds the text if the caller asked for it.
+            String text = indexOf(columns, NotePad.NoteRevisions.COLUMN_NAME_NOTE) >= 0
+                    ? rebuild(db, noteId, revision) : null;
+
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                switch (indexOf(ALL_COLUMNS, columns[i])) {
+                    case 0: row[i] = c.getLong(0); break;
+                    case 1: row[i] = noteId; break;
+                    case 2: row[i] = revision; break;
+                    case 3: row[i] = c.getLong(1); break;
+                    case 4: row[i] = c.getString(2); break;
+                    case 5: row[i] = c.getInt(3); break;
+                    case 6: row[i] = c.getInt(4); break;
+                    default: row[i] = text; break;
+                }
+            }
+            cursor.addRow(row);
+            return cursor;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Returns the text of a note as of a revision, or null if the revision does not exist.
+     */
+    String rebuild(SQLiteDatabase db, long noteId, int revision) {
+        Cursor c = db.rawQuery("SELECT " + NotePad.NoteRevisions.COLUMN_NAME_REVISION + ", "
+                + COLUMN_KIND + ", " + COLUMN_DATA
+                + " FROM " + NotePad.NoteRevisions.TABLE_NAME
+                + " WHERE " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ?1"
+                + " AND " + NotePad.NoteRevisions.COLUMN_NAME_REVISION + " <= ?2"
+                + " AND " + NotePad.NoteRevisions.COLUMN_NAME_REVISION + " >= (SELECT MAX("
+                + NotePad.NoteRevisions.COLUMN_NAME_REVISION + ") FROM "
+                + NotePad.NoteRevisions.TABLE_NAME
+                + " WHERE " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ?1"
+                + " AND " + NotePad.NoteRevisions.COLUMN_NAME_REVISION + " <= ?2"
+                + " AND " + COLUMN_KIND + " = " + KIND_SNAPSHOT + ")"
+                + " ORDER BY " + NotePad.NoteRevisions.COLUMN_NAME_REVISION,
+                new String[]{Long.toString(noteId), Integer.toString(revision)});
+        try {
+            String text = null;
+            int last = -1;
+            while (c.moveToNext()) {
+                text = decode(text, c.getInt(1), c.getBlob(2));
+                last = c.getInt(0);
+            }
+            return last == revision ? text : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Compacts the history of every note that is over the limit, on the background thread, and
+     * waits for it. Returns the number of notes compacted.
+     */
+    int compactAll() {
+        try {
+            return mExecutor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    mDatabaseLock.lock();
+                    try {
+                        return compactNotesOverLimit();
+                    } finally {
+                        mDatabaseLock.unlock();
+                    }
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Compacts every note with more than MAX_REVISIONS revisions. Runs on the executor thread.
+    private int compactNotesOverLimit() {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        List<Long> noteIds = new ArrayList<Long>();
+        Cursor c = db.rawQuery("SELECT " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID
+                + " FROM " + NotePad.NoteRevisions.TABLE_NAME
+                + " GROUP BY " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID
+                + " HAVING COUNT(*) > " + MAX_REVISIONS, null);
+        try {
+            while (c.moveToNext()) {
+                noteIds.add(c.getLong(0));
+            }
+        } finally {
+            c.close();
+        }
+        for (long noteId : noteIds) {
+            db.beginTransaction();
+            try {
+                compact(db, noteId);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return noteIds.size();
+    }
+
+    // Records the current text of a note as its next revision. Runs on the executor thread.
+    private void record(long noteId) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            // Reads the note in the same transaction, so a note deleted meanwhile is skipped.
+            Cursor c = db.query(NotePad.Notes.TABLE_NAME,
+                    new String[]{
+                            NotePad.Notes.COLUMN_NAME_TITLE,
+                            NotePad.Notes.COLUMN_NAME_NOTE,
+                            NoteCodec.COLUMN_DATA,
+                            NoteCodec.COLUMN_ENCODING},
+                    NotePad.Notes._ID + " = ?", new String[]{Long.toString(noteId)},
+                    null, null, null);
+            String title;
+            String text;
+            try {
+                if (!c.moveToFirst()) {
+                    return;
+                }
+                title = c.getString(0);
+                text = NoteCodec.decode(c.getInt(3), c.getString(1),
+                        c.isNull(2) ? null : c.getBlob(2));
+            } finally {
+                c.close();
+            }
+            if (text == null) {
+                text = "";
+            }
+
+            Chain chain = loadChain(db, noteId);
+            if (chain == null ? text.isEmpty() : text.equals(chain.text)) {
+                return;
+            }
+            int revision = chain == null ? 1 : chain.revision + 1;
+            if (chain == null) {
+                chain = new Chain();
+            }
+            int kind = chain.append(revision, text);
+
+            ContentValues values = new ContentValues();
+            values.put(NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID, noteId);
+            values.put(NotePad.NoteRevisions.COLUMN_NAME_REVISION, revision);
+            values.put(NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE, System.currentTimeMillis());
+            values.put(NotePad.NoteRevisions.COLUMN_NAME_TITLE, title);
+            values.put(NotePad.NoteRevisions.COLUMN_NAME_LENGTH, text.length());
+            values.put(COLUMN_KIND, kind);
+            values.put(COLUMN_DATA, chain.lastData);
+            db.insertOrThrow(NotePad.NoteRevisions.TABLE_NAME, null, values);
+
+            mCachedNoteId = noteId;
+            mCachedChain = chain;
+
+            if (revisionCount(db, noteId) > MAX_REVISIONS + COMPACT_SLACK) {
+                compact(db, noteId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the chain ending at the latest revision of a note, or null if the note has none.
+     */
+    private Chain loadChain(SQLiteDatabase db, long noteId) {
+        Cursor c = db.rawQuery("SELECT MAX(" + NotePad.NoteRevisions.COLUMN_NAME_REVISION
+                + ") FROM " + NotePad.NoteRevisions.TABLE_NAME
+                + " WHERE " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ?",
+                new String[]{Long.toString(noteId)});
+        int latest;
+        try {
+            if (!c.moveToFirst() || c.isNull(0)) {
+                return null;
+            }
+            latest = c.getInt(0);
+        } finally {
+            c.close();
+        }
+
+        // The cached chain is only valid if nothing was recorded for the note since.
+        if (mCachedChain != null && mCachedNoteId == noteId
+                && mCachedChain.revision == latest) {
+            return mCachedChain;
+        }
+
+        c = db.rawQuery("SELECT " + NotePad.NoteRevisions.COLUMN_NAME_REVISION + ", "
+                + COLUMN_KIND + ", " + COLUMN_DATA
+                + " FROM " + NotePad.NoteRevisions.TABLE_NAME
+                + " WHERE " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ?1"
+                + " AND " + NotePad.NoteRevisions.COLUMN_NAME_REVISION + " >= (SELECT MAX("
+                + NotePad.NoteRevisions.COLUMN_NAME_REVISION + ") FROM "
+                + NotePad.NoteRevisions.TABLE_NAME
+                + " WHERE " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ?1"
+                + " AND " + COLUMN_KIND + " = " + KIND_SNAPSHOT + ")"
+                + " ORDER BY " + NotePad.NoteRevisions.COLUMN_NAME_REVISION,
+                new String[]{Long.toString(noteId)});
+        try {
+            Chain chain = new Chain();
+            while (c.moveToNext()) {
+                chain.load(c.getInt(0), c.getInt(1), c.getBlob(2));
+            }
+            return chain.revision == latest ? chain : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Applies the retention policy to a note's history and re-encodes the revisions that are
+     * kept, since dropping a revision breaks the delta that follows it. Must be called in a
+     * transaction.
+     */
+    private void compact(SQLiteDatabase db, long noteId) {
+        // Reads the whole history first, since the rows are rewritten below.
+        int count;
+        int[] revisions;
+        long[] created;
+        int[] kinds;
+        byte[][] data;
+        Cursor c = db.query(NotePad.NoteRevisions.TABLE_NAME,
+                new String[]{
+                        NotePad.NoteRevisions.COLUMN_NAME_REVISION,
+                        NotePad.NoteRevisions.COLUMN_NAME_CREATE_DATE,
+                        COLUMN_KIND,
+                        COLUMN_DATA},
+                NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ?",
+                new String[]{Long.toString(noteId)},
+                null, null, NotePad.NoteRevisions.COLUMN_NAME_REVISION);
+        try {
+            count = c.getCount();
+            if (count <= MAX_REVISIONS) {
+                return;
+            }
+            revisions = new int[count];
+            created = new long[count];
+            kinds = new int[count];
+            data = new byte[count][];
+            for (int i = 0; c.moveToNext(); i++) {
+                revisions[i] = c.getInt(0);
+                created[i] = c.getLong(1);
+                kinds[i] = c.getInt(2);
+                data[i] = c.getBlob(3);
+            }
+        } finally {
+            c.close();
+        }
+
+        // Chooses the revisions to keep, newest first.
+        boolean[] keep = new boolean[count];
+        int kept = 0;
+        long lastDay = Long.MIN_VALUE;
+        for (int i = count - 1; i >= 0 && kept < MAX_REVISIONS; i--) {
+            long day = created[i] / DAY_MILLIS;
+            if (count - i <= KEEP_RECENT || day != lastDay) {
+                keep[i] = true;
+                kept++;
+                lastDay = day;
+            }
+        }
+
+        // Replays the history oldest first, deleting dropped revisions and re-encoding kept ones
+        // against the previous kept revision.
+        String where = NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ? AND "
+                + NotePad.NoteRevisions.COLUMN_NAME_REVISION + " = ?";
+        String[] args = new String[]{Long.toString(noteId), null};
+        String text = null;
+        Chain chain = new Chain();
+        for (int i = 0; i < count; i++) {
+            text = decode(text, kinds[i], data[i]);
+            data[i] = null;
+            args[1] = Integer.toString(revisions[i]);
+            if (keep[i]) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_KIND, chain.append(revisions[i], text));
+                values.put(COLUMN_DATA, chain.lastData);
+                db.update(NotePad.NoteRevisions.TABLE_NAME, values, where, args);
+            } else {
+                db.delete(NotePad.NoteRevisions.TABLE_NAME, where, args);
+            }
+        }
+        mCachedNoteId = noteId;
+        mCachedChain = chain;
+    }
+
+    private static int revisionCount(SQLiteDatabase db, long noteId) {
+        Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + NotePad.NoteRevisions.TABLE_NAME
+                + " WHERE " + NotePad.NoteRevisions.COLUMN_NAME_NOTE_ID + " = ?",
+                new String[]{Long.toString(noteId)});
+        try {
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    // Returns the text of a revision given the text of the one before it.
+    private static String decode(String previous, int kind, byte[] data) {
+        if (kind == KIND_SNAPSHOT) {
+            return new String(NoteCodec.inflate(data), UTF_8);
+        }
+        if (previous == null) {
+            throw new IllegalStateException("Revision delta without a snapshot");
+        }
+        return TextDelta.apply(previous, data);
+    }
+
+    private static int indexOf(String[] array, String value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The state of a snapshot chain: the text of its last revision, and how much the deltas
+     * since its snapshot cost, which decides when the next snapshot starts.
+     */
+    private static final class Chain {
+        int revision = -1;
+        String text;
+        int deltas;
+        long deltaBytes;
+        long snapshotBytes;
+
+        // The encoded form of the revision appended last.
+        byte[] lastData;
+
+        /**
+         * Encodes the next revision and appends it to the chain.
+         *
+         * @return The kind the revision was encoded as; its data is in {@link #lastData}.
+         */
+        int append(int revision, String newText) {
+            int kind = KIND_SNAPSHOT;
+            byte[] data = null;
+            if (text != null && deltas < SNAPSHOT_INTERVAL) {
+                byte[] delta = TextDelta.create(text, newText);
+                if (deltaBytes + delta.length <= snapshotBytes) {
+                    kind = KIND_DELTA;
+                    data = delta;
+                }
+            }
+            if (data == null) {
+                data = NoteCodec.deflate(newText.getBytes(UTF_8));
+            }
+            advance(revision, newText, kind, data);
+            return kind;
+        }
+
+        // Adds a stored revision while loading a chain.
+        void load(int revision, int kind, byte[] data) {
+            advance(revision, decode(text, kind, data), kind, data);
+        }
+
+        private void advance(int revision, String newText, int kind, byte[] data) {
+            if (kind == KIND_SNAPSHOT) {
+                deltas = 0;
+                deltaBytes = 0;
+                snapshotBytes = data.length;
+            } else {
+                deltas++;
+                deltaBytes += data.length;
+            }
+            this.revision = revision;
+            text = newText;
+            lastData = data;
+        }
+    }
+}
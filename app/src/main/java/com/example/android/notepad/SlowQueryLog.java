@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records provider queries that take longer than a configurable threshold. Each entry holds the
+ * SQL, the shape of the selection arguments, the duration, the row count and the output of
+ * EXPLAIN QUERY PLAN, so a slow search or category filter can be diagnosed after the fact.
+ * <p>
+ * Nothing the user typed is recorded: the URI is stored without its query parameters, which
+ * hold the search text, the literals in the SQL are replaced by placeholders and the arguments
+ * are described by {@link #describeArgs(String[])}.
+ * <p>
+ * The most recent entries are kept in a bounded in-memory ring buffer and are also appended to
+ * an app-private log file. Both are read through
+ * {@link NotePadProvider#call(String, String, Bundle)} with {@link #METHOD_SLOW_QUERIES}.
+ * <p>
+ * Only the threshold check runs on the caller's thread. Capturing the plan and writing the log
+ * happen on a single background thread, so a slow query is not made slower by being logged.
+ */
+final class SlowQueryLog {
+    private static final String TAG = "SlowQueryLog";
+
+    /**
+     * The provider call() method that returns the recorded slow queries. Passing
+     * {@link #ARG_CLEAR} as the argument clears the buffer and the log file afterwards.
+     */
+    static final String METHOD_SLOW_QUERIES = "slow_queries";
+
+    /**
+     * The provider call() method that sets the threshold in milliseconds, given as the argument.
+     * The value is persisted, and 0 disables the log.
+     */
+    static final String METHOD_SET_THRESHOLD = "slow_query_threshold";
+
+    /**
+     * Argument for {@link #METHOD_SLOW_QUERIES} that clears the recorded entries.
+     */
+    static final String ARG_CLEAR = "clear";
+
+    /*
+     * Keys of the Bundles returned by toBundle().
+     */
+    static final String KEY_THRESHOLD_MS = "threshold_ms";
+    static final String KEY_ENTRIES = "entries";
+    static final String KEY_TIME = "time";
+    static final String KEY_URI = "uri";
+    static final String KEY_SQL = "sql";
+    static final String KEY_ARGS = "args";
+    static final String KEY_DURATION_MS = "duration_ms";
+    static final String KEY_ROWS = "rows";
+    static final String KEY_PLAN = "plan";
+
+    /**
+     * The default threshold. A query over 50ms already drops frames when it runs on the UI
+     * thread, which is where NotesList runs its searches.
+     */
+    static final long DEFAULT_THRESHOLD_MS = 50;
+
+    // Number of entries kept in memory.
+    private static final int CAPACITY = 64;
+
+    // The log file is rotated to LOG_FILE + ".1" once it grows past this size.
+    private static final long MAX_LOG_BYTES = 256 * 1024;
+
+    private static final String LOG_FILE = "slow_queries.log";
+    private static final String PREFS_NAME = "diagnostics";
+    private static final String PREF_THRESHOLD = "slow_query_threshold_ms";
+
+    private final SharedPreferences mPrefs;
+    private final File mLogFile;
+    private final ArrayDeque<Bundle> mEntries = new ArrayDeque<Bundle>(CAPACITY);
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private volatile long mThresholdNanos;
+
+    SlowQueryLog(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mLogFile = new File(context.getFilesDir(), LOG_FILE);
+        mThresholdNanos = mPrefs.getLong(PREF_THRESHOLD, DEFAULT_THRESHOLD_MS) * 1000000L;
+    }
+
+    long getThresholdMillis() {
+        return mThresholdNanos / 1000000L;
+    }
+
+    /**
+     * Sets and persists the threshold. 0 turns the log off.
+     */
+    void setThresholdMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Negative threshold: " + millis);
+        }
+        mThresholdNanos = millis * 1000000L;
+        mPrefs.edit().putLong(PREF_THRESHOLD, millis).apply();
+    }
+
+    /**
+     * Returns true if a query that took the given time should be recorded.
+     */
+    boolean isSlow(long durationNanos) {
+        long threshold = mThresholdNanos;
+        return threshold > 0 && durationNanos >= threshold;
+    }
+
+    /**
+     * Records a slow query. The plan is captured and the entry stored in the background.
+     *
+     * @param db            The database the query ran on, used for EXPLAIN QUERY PLAN.
+     * @param uri           The URI the client queried. Only its path is stored.
+     * @param sql           The SQL that ran, as built by SQLiteQueryBuilder. It is stored with
+     *                      its literals redacted.
+     * @param selectionArgs The arguments bound to the SQL.
+     * @param durationNanos How long the query took.
+     * @param rows          The number of rows the query returned.
+     */
+    void record(final SQLiteDatabase db, final Uri uri, final String sql,
+                final String[] selectionArgs, final long durationNanos, final int rows) {
+        final long now = System.currentTimeMillis();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle entry = new Bundle();
+                entry.putLong(KEY_TIME, now);
+                entry.putString(KEY_URI, uri.buildUpon().clearQuery().build().toString());
+                entry.putString(KEY_SQL, redactLiterals(sql));
+                entry.putString(KEY_ARGS, describeArgs(selectionArgs));
+                entry.putLong(KEY_DURATION_MS, durationNanos / 1000000L);
+                entry.putInt(KEY_ROWS, rows);
+                entry.putString(KEY_PLAN, explain(db, sql, selectionArgs));
+                add(entry);
+                append(entry);
+            }
+        });
+    }
+
+    /**
+     * Waits until every queued entry has been stored. For tests.
+     */
+    void awaitIdle() {
+        try {
+            mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the threshold and the recorded entries, oldest first, under {@link #KEY_ENTRIES}.
+     */
+    Bundle toBundle() {
+        Bundle result = new Bundle();
+        result.putLong(KEY_THRESHOLD_MS, getThresholdMillis());
+        synchronized (mEntries) {
+            result.putParcelableArrayList(KEY_ENTRIES, new ArrayList<Bundle>(mEntries));
+        }
+        return result;
+    }
+
+    /**
+     * Clears the in-memory entries and deletes the log files.
+     */
+    void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mLogFile.delete();
+                new File(mLogFile.getPath() + ".1").delete();
+            }
+        });
+    }
+
+    private void add(Bundle entry) {
+        synchronized (mEntries) {
+            if (mEntries.size() == CAPACITY) {
+                mEntries.removeFirst();
+            }
+            mEntries.addLast(entry);
+        }
+    }
+
+    /**
+     * Appends one entry to the log file. Runs on the executor thread only.
+     */
+    private void append(Bundle entry) {
+        if (mLogFile.length() > MAX_LOG_BYTES) {
+            File old = new File(mLogFile.getPath() + ".1");
+            old.delete();
+            mLogFile.renameTo(old);
+        }
+        PrintWriter pw = null;
+        try {
+            pw = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(mLogFile, true), "UTF-8"));
+            pw.println(format(entry));
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + mLogFile, e);
+        } finally {
+            if (pw != null) {
+                pw.close();
+            }
+        }
+    }
+
+    /**
+     * Formats an entry as a few human readable lines, for the log file and the debug screen.
+     */
+    static String format(Bundle entry) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.CHINA);
+        return sdf.format(new Date(entry.getLong(KEY_TIME)))
+                + " " + entry.getLong(KEY_DURATION_MS) + "ms"
+                + " rows=" + entry.getInt(KEY_ROWS)
+                + " uri=" + entry.getString(KEY_URI) + "\n"
+                + "  sql: " + entry.getString(KEY_SQL) + "\n"
+                + "  args: " + entry.getString(KEY_ARGS) + "\n"
+                + "  plan: " + entry.getString(KEY_PLAN).replace("\n", "\n        ");
+    }
+
+    /**
+     * Describes the arguments by type and length only. The values themselves are search terms
+     * typed by the user and must not end up in a log file.
+     */
+    static String describeArgs(String[] args) {
+        if (args == null) {
+            return "[]";
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String arg = args[i];
+            if (arg == null) {
+                sb.append("null");
+            } else if (arg.startsWith("%") || arg.endsWith("%")) {
+                // A LIKE pattern; the position of the wildcards decides whether an index helps.
+                sb.append(arg.startsWith("%") ? "%" : "")
+                        .append("str(").append(arg.replace("%", "").length()).append(')')
+                        .append(arg.endsWith("%") ? "%" : "");
+            } else {
+                sb.append("str(").append(arg.length()).append(')');
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Replaces the string, blob and number literals in the SQL with placeholders: a string
+     * becomes '?' and a number #. Searches build some of their SQL from the search text, such
+     * as trigram codes and lists of matching note IDs, so the literals may reveal it. Quoted
+     * identifiers, and digits inside identifiers, are kept.
+     */
+    static String redactLiterals(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // A string literal, in which '' is an escaped quote.
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                sb.append("'?'");
+                i++;
+            } else if (c == '"' || c == '`' || c == '[') {
+                // A quoted identifier.
+                char close = c == '[' ? ']' : c;
+                int end = sql.indexOf(close, i + 1);
+                end = end < 0 ? length : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isLetter(c) || c == '_' || c == '?') {
+                // An identifier, or a numbered parameter such as ?1.
+                int start = i++;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i))
+                        || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                sb.append(sql, start, i);
+            } else if (Character.isDigit(c)
+                    || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)))) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i))
+                        || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('#');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN for the SQL and returns the plan rows, one per line.
+     */
+    private static String explain(SQLiteDatabase db, String sql, String[] selectionArgs) {
+        Cursor c = null;
+        try {
+            c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+            int detail = c.getColumnIndex("detail");
+            StringBuilder sb = new StringBuilder();
+            while (c.moveToNext()) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(detail >= 0 ? c.getString(detail) : c.getString(c.getColumnCount() - 1));
+            }
+            return sb.toString();
+        } catch (RuntimeException e) {
+            // The database may have been closed, or the SQL may not be explainable; the rest of
+            // the entry is still useful.
+            return "unavailable: " + e.getMessage();
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+}
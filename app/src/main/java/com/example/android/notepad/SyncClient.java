@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The HTTP transport of {@link SyncEngine}. Sends JSON requests gzipped, asks for gzipped
+ * responses, and counts the bytes that cross the network in each direction.
+ * <p>
+ * The server offers two endpoints under the base URL:
+ * <ul>
+ * <li>{@code POST push}: the body is {@code {"device":..,"changes":[..]}}; the response maps
+ * the ID of every change to the version the server gave it,
+ * {@code {"server":..,"versions":{..}}}.</li>
+ * <li>{@code GET pull?since=..&limit=..&device=..}: returns at most {@code limit} changes
+ * with a version past {@code since} that were not pushed by {@code device}, oldest first, as
+ * {@code {"server":..,"changes":[..],"watermark":..,"more":..}}.</li>
+ * </ul>
+ * A change is {@code {"id":..,"version":..,"deleted":..}} with the note columns of
+ * {@link SyncEngine}; {@code "server"} identifies the server's data set, so a client can tell
+ * when it is talking to a different or wiped server.
+ */
+final class SyncClient {
+
+    private static final int TIMEOUT_MILLIS = 30000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String mBaseUrl;
+
+    private long mSentBytes;
+    private long mReceivedBytes;
+    private int mRequests;
+
+    /**
+     * @param baseUrl The URL the endpoint names are appended to.
+     */
+    SyncClient(String baseUrl) {
+        mBaseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+
+    /**
+     * Sends changes to the server and returns its response.
+     */
+    JSONObject push(String device, JSONArray changes) throws IOException {
+        try {
+            JSONObject body = new JSONObject();
+            body.put("device", device);
+            body.put("changes", changes);
+            return request("push", body);
+        } catch (JSONException e) {
+            throw new IOException("Invalid push request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Asks the server for the changes past a watermark and returns its response.
+     */
+    JSONObject pull(String device, long since, int limit) throws IOException {
+        return request("pull?since=" + since + "&limit=" + limit
+                + "&device=" + URLEncoder.encode(device, "UTF-8"), null);
+    }
+
+    long getSentBytes() {
+        return mSentBytes;
+    }
+
+    long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+
+    int getRequests() {
+        return mRequests;
+    }
+
+    // Makes one request, a POST of the body or a GET if it is null, and parses the response.
+    private JSONObject request(String path, JSONObject body) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(mBaseUrl + path).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            // Set explicitly, so the response arrives compressed and is counted as such; the
+            // connection then leaves the decompression to this class.
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            mRequests++;
+            if (body != null) {
+                byte[] payload = gzip(body.toString().getBytes("UTF-8"));
+                connection.setDoOutput(true);
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+                connection.setRequestProperty("Content-Encoding", "gzip");
+                connection.setFixedLengthStreamingMode(payload.length);
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(payload);
+                } finally {
+                    out.close();
+                }
+                mSentBytes += payload.length;
+            }
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status + " from " + path);
+            }
+            byte[] response = readAll(connection.getInputStream());
+            mReceivedBytes += response.length;
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                response = readAll(new GZIPInputStream(new ByteArrayInputStream(response)));
+            }
+            try {
+                return new JSONObject(new String(response, "UTF-8"));
+            } catch (JSONException e) {
+                throw new IOException("Invalid response from " + path + ": " + e.getMessage());
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Two-way delta sync of the notes with a server, through {@link SyncClient}. Runs through
+ * {@link NotePadProvider#call(String, String, Bundle)} with {@link #METHOD_SYNC}.
+ * <p>
+ * The provider tracks what has to be sent: every note has a {@link #COLUMN_SYNC_ID} shared
+ * with the server, the {@link #COLUMN_SYNC_VERSION} the server gave its last synced state,
+ * and a {@link #COLUMN_SYNC_DIRTY} change counter that local writes to the synced columns
+ * raise. Deleting a note that the server knows leaves a row in {@link #TOMBSTONES_TABLE}.
+ * Writes made through a URI marked with {@link #PARAM_CALLER_IS_SYNC_ADAPTER} are the sync
+ * engine's own and are not tracked.
+ * <p>
+ * A sync first pulls the changes past the server watermark, page by page, and applies each
+ * page with one {@link NotePadProvider#applyBatch(ArrayList)}, in one transaction and with
+ * one notification. A remote change does not overwrite a note that has local changes; those
+ * win and are pushed next. The sync then pushes the deletes and the changed notes in gzipped
+ * batches, found through partial indexes, so a sync with nothing to do costs a few queries and
+ * one request. A note edited while its batch was in flight keeps its newer counter and goes
+ * out with the next sync. Notes created on this device get their sync ID when first pushed.
+ */
+final class SyncEngine {
+
+    private static final String TAG = "SyncEngine";
+
+    /**
+     * The provider call() method that syncs with the server at the URL in the argument and
+     * returns the sync report.
+     */
+    static final String METHOD_SYNC = "sync";
+
+    /**
+     * The query parameter that marks the writes of the sync engine, which must not be synced
+     * back. Its value is "true".
+     */
+    static final String PARAM_CALLER_IS_SYNC_ADAPTER = "caller_is_syncadapter";
+
+    /*
+     * Columns of the notes table maintained for sync. They are not in the projection map, and
+     * the provider drops them from the values of other callers.
+     */
+    static final String COLUMN_SYNC_ID = "sync_id";
+    static final String COLUMN_SYNC_VERSION = "sync_version";
+    static final String COLUMN_SYNC_DIRTY = "sync_dirty";
+
+    /**
+     * The table of deleted notes still to be pushed, by sync ID.
+     */
+    static final String TOMBSTONES_TABLE = "sync_tombstones";
+    static final String COLUMN_DELETED = "deleted";
+
+    /*
+     * Keys of the report Bundle.
+     */
+    static final String KEY_SERVER_RESET = "server_reset";
+    static final String KEY_PULLED = "pulled";
+    static final String KEY_APPLIED = "applied";
+    static final String KEY_PUSHED = "pushed";
+    static final String KEY_PUSHED_DELETES = "pushed_deletes";
+    static final String KEY_REQUESTS = "requests";
+    static final String KEY_SENT_BYTES = "sent_bytes";
+    static final String KEY_RECEIVED_BYTES = "received_bytes";
+    static final String KEY_WATERMARK = "watermark";
+    static final String KEY_ELAPSED_MS = "elapsed_ms";
+
+    // The note columns whose local change marks the note dirty. The modification date is synced
+    // too, but a new date alone is not a change: the editor writes one on every save, and it is
+    // pushed with the note's next real change.
+    private static final String[] SYNCED_COLUMNS = {
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NotePad.Notes.COLUMN_NAME_CATEGORY,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+            NotePad.Notes.COLUMN_NAME_PINNED,
+            NotePad.Notes.COLUMN_NAME_CREATE_DATE,
+    };
+
+    // The stored form of the note column, compared instead of it once the values are encoded.
+    private static final String[] ENCODED_NOTE_COLUMNS = {
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NoteCodec.COLUMN_DATA,
+            NoteCodec.COLUMN_ENCODING,
+    };
+
+    private static final String[] PUSH_COLUMNS = {
+            NotePad.Notes._ID,
+            COLUMN_SYNC_ID,
+            COLUMN_SYNC_DIRTY,
+            COLUMN_SYNC_VERSION,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NoteCodec.COLUMN_DATA,
+            NoteCodec.COLUMN_ENCODING,
+            NotePad.Notes.COLUMN_NAME_CATEGORY,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+            NotePad.Notes.COLUMN_NAME_PINNED,
+            NotePad.Notes.COLUMN_NAME_CREATE_DATE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+    };
+
+    // Applies a remote change only to a note without local changes and with an older version.
+    private static final String SKIP_LOCAL_CHANGES =
+            COLUMN_SYNC_DIRTY + " = 0 AND " + COLUMN_SYNC_VERSION + " < ?";
+
+    // Changes per request. A pull page must also fit in the 999 arguments of the lookup query.
+    private static final int PUSH_BATCH = 500;
+    private static final int PULL_BATCH = 500;
+
+    // The sync state, kept outside the database like the export state.
+    private static final String PREFS_NAME = "sync";
+    private static final String PREF_SERVER = "server";
+    private static final String PREF_DEVICE = "device";
+    private static final String PREF_WATERMARK = "watermark";
+
+    // Only one sync runs at a time.
+    private static final Object sLock = new Object();
+
+    private SyncEngine() {
+    }
+
+    /**
+     * Creates the tombstone table and the indexes of the sync columns. The dirty index only
+     * holds the notes waiting to be pushed, from API 21 where SQLite has partial indexes.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TOMBSTONES_TABLE + " ("
+                + COLUMN_SYNC_ID + " TEXT PRIMARY KEY,"
+                + COLUMN_DELETED + " INTEGER NOT NULL"
+                + ");");
+        db.execSQL("CREATE UNIQUE INDEX notes_sync_id ON " + NotePad.Notes.TABLE_NAME
+                + " (" + COLUMN_SYNC_ID + ")");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            db.execSQL("CREATE INDEX notes_sync_dirty ON " + NotePad.Notes.TABLE_NAME
+                    + " (" + NotePad.Notes._ID + ") WHERE " + COLUMN_SYNC_DIRTY + " > 0");
+        } else {
+            db.execSQL("CREATE INDEX notes_sync_dirty ON " + NotePad.Notes.TABLE_NAME
+                    + " (" + COLUMN_SYNC_DIRTY + ", " + NotePad.Notes._ID + ")");
+        }
+    }
+
+    /**
+     * Returns the URI marked as a write of the sync engine.
+     */
+    static Uri asSyncAdapter(Uri uri) {
+        return uri.buildUpon().appendQueryParameter(PARAM_CALLER_IS_SYNC_ADAPTER, "true").build();
+    }
+
+    static boolean isSyncAdapter(Uri uri) {
+        return "true".equals(uri.getQueryParameter(PARAM_CALLER_IS_SYNC_ADAPTER));
+    }
+
+    /**
+     * Drops the sync columns from the values of a caller other than the sync engine.
+     */
+    static void removeSyncColumns(ContentValues values) {
+        values.remove(COLUMN_SYNC_ID);
+        values.remove(COLUMN_SYNC_VERSION);
+        values.remove(COLUMN_SYNC_DIRTY);
+    }
+
+    /**
+     * Returns true if the values write a synced column.
+     */
+    static boolean touchesSyncedColumns(ContentValues values) {
+        for (String column : SYNCED_COLUMNS) {
+            if (values.containsKey(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks dirty the notes of a local update whose synced columns the update changes. A note
+     * whose stored values equal the written ones, such as one saved again without edits, keeps
+     * its state. Must be called inside the update's transaction, before the values are written.
+     *
+     * @param values The encoded values of the update.
+     * @param change The sync change counter to store in the dirty notes.
+     */
+    static void markChanged(SQLiteDatabase db, String where, String[] whereArgs,
+            ContentValues values, long change) {
+        StringBuilder changed = new StringBuilder();
+        List<Object> changedArgs = new ArrayList<Object>();
+        for (String column : SYNCED_COLUMNS) {
+            if (!values.containsKey(column)) {
+                continue;
+            }
+            String[] stored = NotePad.Notes.COLUMN_NAME_NOTE.equals(column)
+                    ? ENCODED_NOTE_COLUMNS : new String[]{column};
+            for (String storedColumn : stored) {
+                changed.append(changed.length() == 0 ? "" : " OR ")
+                        .append(storedColumn).append(" IS NOT ?");
+                changedArgs.add(values.get(storedColumn));
+            }
+        }
+        if (changed.length() == 0) {
+            return;
+        }
+
+        SQLiteStatement update = db.compileStatement("UPDATE " + NotePad.Notes.TABLE_NAME
+                + " SET " + COLUMN_SYNC_DIRTY + " = ?"
+                + " WHERE " + DatabaseUtils.concatenateWhere(where, changed.toString()));
+        try {
+            int index = 1;
+            update.bindLong(index++, change);
+            if (whereArgs != null) {
+                for (String arg : whereArgs) {
+                    DatabaseUtils.bindObjectToProgram(update, index++, arg);
+                }
+            }
+            for (Object arg : changedArgs) {
+                DatabaseUtils.bindObjectToProgram(update, index++, arg);
+            }
+            update.executeUpdateDelete();
+        } finally {
+            update.close();
+        }
+    }
+
+    /**
+     * Records the tombstones of the notes a delete is about to remove, for those the server
+     * knows. Must be called inside the delete's transaction.
+     */
+    static void recordTombstones(SQLiteDatabase db, String where, String[] whereArgs) {
+        String sql = "INSERT OR REPLACE INTO " + TOMBSTONES_TABLE
+                + " (" + COLUMN_SYNC_ID + ", " + COLUMN_DELETED + ")"
+                + " SELECT " + COLUMN_SYNC_ID + ", " + System.currentTimeMillis()
+                + " FROM " + NotePad.Notes.TABLE_NAME
+                + " WHERE " + COLUMN_SYNC_VERSION + " > 0"
+                + (where != null ? " AND (" + where + ")" : "");
+        if (whereArgs != null) {
+            db.execSQL(sql, whereArgs);
+        } else {
+            db.execSQL(sql);
+        }
+    }
+
+    /**
+     * Forgets the server watermark and this device's identity, so the next sync pulls
+     * everything again, including what this device pushed. Called when the database is
+     * replaced by a backup, which may be older than the server.
+     */
+    static void reset(Context context) {
+        synchronized (sLock) {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .remove(PREF_WATERMARK)
+                    .remove(PREF_DEVICE)
+                    .commit();
+        }
+    }
+
+    /**
+     * Runs one sync: pulls and applies the remote changes, then pushes the local ones.
+     *
+     * @param context  The context of the sync state.
+     * @param provider The provider the remote changes are applied through.
+     * @param db       The provider's database, for reading and acknowledging local changes.
+     * @param client   The connection to the server.
+     * @return The report, with the keys defined by this class.
+     * @throws IOException if a request fails or the server's response is not understood. What
+     *                     was applied and acknowledged before stays; the next sync resumes.
+     */
+    static Bundle sync(Context context, NotePadProvider provider, SQLiteDatabase db,
+                       SyncClient client) throws IOException, OperationApplicationException {
+        synchronized (sLock) {
+            long startNanos = System.nanoTime();
+            SharedPreferences prefs =
+                    context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String device = prefs.getString(PREF_DEVICE, null);
+            if (device == null) {
+                device = UUID.randomUUID().toString();
+                prefs.edit().putString(PREF_DEVICE, device).commit();
+            }
+            String server = prefs.getString(PREF_SERVER, null);
+            long watermark = prefs.getLong(PREF_WATERMARK, 0);
+            Bundle report = new Bundle();
+            try {
+                int pulled = 0;
+                int applied = 0;
+                boolean more = true;
+                while (more) {
+                    JSONObject response = client.pull(device, watermark, PULL_BATCH);
+                    String responseServer = response.getString("server");
+                    if (!responseServer.equals(server)) {
+                        // A different or wiped server: every note is pushed again, and the
+                        // changes are pulled from the start.
+                        resetServer(db);
+                        server = responseServer;
+                        prefs.edit()
+                                .putString(PREF_SERVER, server)
+                                .putLong(PREF_WATERMARK, 0)
+                                .commit();
+                        report.putBoolean(KEY_SERVER_RESET, true);
+                        if (watermark != 0) {
+                            watermark = 0;
+                            continue;
+                        }
+                    }
+                    JSONArray changes = response.getJSONArray("changes");
+                    applied += apply(provider, db, changes);
+                    pulled += changes.length();
+                    // Stops if the server does not move on, rather than asking again forever.
+                    long next = response.getLong("watermark");
+                    more = response.optBoolean("more") && next > watermark;
+                    watermark = next;
+                    prefs.edit().putLong(PREF_WATERMARK, watermark).commit();
+                }
+                report.putInt(KEY_PULLED, pulled);
+                report.putInt(KEY_APPLIED, applied);
+
+                report.putInt(KEY_PUSHED_DELETES, pushDeletes(db, client, device, server));
+                report.putInt(KEY_PUSHED, pushNotes(db, client, device, server));
+            } catch (JSONException e) {
+                throw new IOException("Invalid sync response: " + e.getMessage());
+            }
+
+            report.putLong(KEY_WATERMARK, watermark);
+            report.putInt(KEY_REQUESTS, client.getRequests());
+            report.putLong(KEY_SENT_BYTES, client.getSentBytes());
+            report.putLong(KEY_RECEIVED_BYTES, client.getReceivedBytes());
+            report.putLong(KEY_ELAPSED_MS, (System.nanoTime() - startNanos) / 1000000L);
+            Log.i(TAG, format(report).replace('\n', ' '));
+            return report;
+        }
+    }
+
+    /**
+     * Formats a report in one line per item, for logs and the debug menu.
+     */
+    static String format(Bundle report) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("pulled=").append(report.getInt(KEY_PULLED))
+                .append(" applied=").append(report.getInt(KEY_APPLIED));
+        sb.append("\npushed=").append(report.getInt(KEY_PUSHED))
+                .append(" deletes=").append(report.getInt(KEY_PUSHED_DELETES));
+        sb.append("\nrequests=").append(report.getInt(KEY_REQUESTS))
+                .append(" sent=").append(report.getLong(KEY_SENT_BYTES) / 1024).append("KB")
+                .append(" received=").append(report.getLong(KEY_RECEIVED_BYTES) / 1024)
+                .append("KB");
+        if (report.getBoolean(KEY_SERVER_RESET)) {
+            sb.append("\nnew server");
+        }
+        sb.append("\ntotal: ").append(report.getLong(KEY_ELAPSED_MS)).append("ms");
+        return sb.toString();
+    }
+
+    // Marks every note as unknown to the server and drops the tombstones, for a new server.
+    private static void resetServer(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("UPDATE " + NotePad.Notes.TABLE_NAME + " SET "
+                    + COLUMN_SYNC_VERSION + " = 0, "
+                    + COLUMN_SYNC_DIRTY + " = MAX(" + COLUMN_SYNC_DIRTY + ", 1)");
+            db.delete(TOMBSTONES_TABLE, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Applies one page of remote changes in one batch and returns the number that took effect.
+    private static int apply(NotePadProvider provider, SQLiteDatabase db, JSONArray changes)
+            throws JSONException, OperationApplicationException {
+        int n = changes.length();
+        if (n == 0) {
+            return 0;
+        }
+
+        // Finds the local notes of the changes.
+        String[] ids = new String[n];
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            ids[i] = changes.getJSONObject(i).getString("id");
+            in.append(i == 0 ? "?" : ",?");
+        }
+        Map<String, Long> local = new HashMap<String, Long>();
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME,
+                new String[]{NotePad.Notes._ID, COLUMN_SYNC_ID},
+                COLUMN_SYNC_ID + " IN (" + in + ")", ids, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                local.put(c.getString(1), c.getLong(0));
+            }
+        } finally {
+            c.close();
+        }
+
+        ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>(n);
+        for (int i = 0; i < n; i++) {
+            JSONObject change = changes.getJSONObject(i);
+            long version = change.getLong("version");
+            String[] args = {String.valueOf(version)};
+            Long noteId = local.get(ids[i]);
+            Uri noteUri = noteId == null ? null : asSyncAdapter(
+                    ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, noteId));
+            if (change.optBoolean("deleted")) {
+                if (noteUri != null) {
+                    ops.add(ContentProviderOperation.newDelete(noteUri)
+                            .withSelection(SKIP_LOCAL_CHANGES, args)
+                            .build());
+                }
+            } else if (noteUri != null) {
+                ops.add(ContentProviderOperation.newUpdate(noteUri)
+                        .withValues(valuesOf(change, version))
+                        .withSelection(SKIP_LOCAL_CHANGES, args)
+                        .build());
+            } else {
+                ContentValues values = valuesOf(change, version);
+                values.put(COLUMN_SYNC_ID, ids[i]);
+                ops.add(ContentProviderOperation.newInsert(
+                        asSyncAdapter(NotePad.Notes.CONTENT_URI))
+                        .withValues(values)
+                        .build());
+            }
+        }
+
+        int applied = 0;
+        for (ContentProviderResult result : provider.applyBatch(ops)) {
+            if (result.uri != null || (result.count != null && result.count > 0)) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    // The values of a remote note, with its sync state.
+    private static ContentValues valuesOf(JSONObject change, long version) throws JSONException {
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, optString(change, "title"));
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, optString(change, "note"));
+        values.put(NotePad.Notes.COLUMN_NAME_CATEGORY, optString(change, "category"));
+        values.put(NotePad.Notes.COLUMN_NAME_COLOR, change.optInt("color"));
+        values.put(NotePad.Notes.COLUMN_NAME_PINNED, change.optInt("pinned"));
+        values.put(NotePad.Notes.COLUMN_NAME_CREATE_DATE, change.getLong("created"));
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, change.getLong("modified"));
+        values.put(COLUMN_SYNC_VERSION, version);
+        values.put(COLUMN_SYNC_DIRTY, 0);
+        return values;
+    }
+
+    // Pushes the tombstones and returns how many the server took.
+    private static int pushDeletes(SQLiteDatabase db, SyncClient client, String device,
+                                   String server) throws IOException, JSONException {
+        int pushed = 0;
+        long lastRow = 0;
+        while (true) {
+            JSONArray changes = new JSONArray();
+            ArrayList<String> ids = new ArrayList<String>();
+            ArrayList<Long> deleted = new ArrayList<Long>();
+            Cursor c = db.query(TOMBSTONES_TABLE,
+                    new String[]{"rowid", COLUMN_SYNC_ID, COLUMN_DELETED},
+                    "rowid > ?", new String[]{String.valueOf(lastRow)},
+                    null, null, "rowid", String.valueOf(PUSH_BATCH));
+            try {
+                while (c.moveToNext()) {
+                    lastRow = c.getLong(0);
+                    JSONObject change = new JSONObject();
+                    change.put("id", c.getString(1));
+                    change.put("deleted", true);
+                    change.put("modified", c.getLong(2));
+                    changes.put(change);
+                    ids.add(c.getString(1));
+                    deleted.add(c.getLong(2));
+                }
+            } finally {
+                c.close();
+            }
+            if (ids.isEmpty()) {
+                return pushed;
+            }
+
+            JSONObject versions = checkServer(client.push(device, changes), server)
+                    .getJSONObject("versions");
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < ids.size(); i++) {
+                    if (versions.has(ids.get(i))) {
+                        // A note deleted again meanwhile keeps its newer tombstone.
+                        db.delete(TOMBSTONES_TABLE,
+                                COLUMN_SYNC_ID + " = ? AND " + COLUMN_DELETED + " = ?",
+                                new String[]{ids.get(i), String.valueOf(deleted.get(i))});
+                        pushed++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (ids.size() < PUSH_BATCH) {
+                return pushed;
+            }
+        }
+    }
+
+    // Pushes the dirty notes and returns how many the server took.
+    private static int pushNotes(SQLiteDatabase db, SyncClient client, String device,
+                                 String server) throws IOException, JSONException {
+        // Notes created since the last sync get their sync ID, through the sync ID index.
+        db.execSQL("UPDATE " + NotePad.Notes.TABLE_NAME + " SET " + COLUMN_SYNC_ID
+                + " = lower(hex(randomblob(16))) WHERE " + COLUMN_SYNC_ID + " IS NULL");
+
+        int pushed = 0;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            JSONArray changes = new JSONArray();
+            ArrayList<long[]> rows = new ArrayList<long[]>();
+            ArrayList<String> ids = new ArrayList<String>();
+            Cursor c = db.query(NotePad.Notes.TABLE_NAME, PUSH_COLUMNS,
+                    COLUMN_SYNC_DIRTY + " > 0 AND " + NotePad.Notes._ID + " > ?",
+                    new String[]{String.valueOf(lastId)},
+                    null, null, NotePad.Notes._ID, String.valueOf(PUSH_BATCH));
+            try {
+                while (c.moveToNext()) {
+                    lastId = c.getLong(0);
+                    JSONObject change = new JSONObject();
+                    change.put("id", c.getString(1));
+                    change.put("base", c.getLong(3));
+                    change.put("title", c.getString(4));
+                    change.put("note", NoteCodec.decode(c.getInt(7), c.getString(5),
+                            c.getBlob(6)));
+                    change.put("category", c.getString(8));
+                    change.put("color", c.getInt(9));
+                    change.put("pinned", c.getInt(10));
+                    change.put("created", c.getLong(11));
+                    change.put("modified", c.getLong(12));
+                    changes.put(change);
+                    rows.add(new long[]{lastId, c.getLong(2)});
+                    ids.add(c.getString(1));
+                }
+            } finally {
+                c.close();
+            }
+            if (ids.isEmpty()) {
+                return pushed;
+            }
+
+            JSONObject versions = checkServer(client.push(device, changes), server)
+                    .getJSONObject("versions");
+            // Records the new versions. A note whose counter moved on while the batch was in
+            // flight stays dirty.
+            db.beginTransaction();
+            SQLiteStatement ack = db.compileStatement("UPDATE " + NotePad.Notes.TABLE_NAME
+                    + " SET " + COLUMN_SYNC_VERSION + " = ?, " + COLUMN_SYNC_DIRTY
+                    + " = CASE WHEN " + COLUMN_SYNC_DIRTY + " = ? THEN 0 ELSE "
+                    + COLUMN_SYNC_DIRTY + " END WHERE " + NotePad.Notes._ID + " = ?");
+            try {
+                for (int i = 0; i < ids.size(); i++) {
+                    if (!versions.has(ids.get(i))) {
+                        continue;
+                    }
+                    ack.bindLong(1, versions.getLong(ids.get(i)));
+                    ack.bindLong(2, rows.get(i)[1]);
+                    ack.bindLong(3, rows.get(i)[0]);
+                    ack.executeUpdateDelete();
+                    pushed++;
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                ack.close();
+                db.endTransaction();
+            }
+            if (ids.size() < PUSH_BATCH) {
+                return pushed;
+            }
+        }
+    }
+
+    // Fails if a response comes from another server than the pull did.
+    private static JSONObject checkServer(JSONObject response, String server)
+            throws IOException, JSONException {
+        if (!response.getString("server").equals(server)) {
+            throw new IOException("The server changed during the sync");
+        }
+        return response;
+    }
+
+    // Returns a string field, or null if it is missing or null.
+    private static String optString(JSONObject object, String name) {
+        return object.isNull(name) ? null : object.optString(name);
+    }
+}
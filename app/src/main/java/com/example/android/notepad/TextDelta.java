@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Computes and applies compact deltas between two versions of a note. A delta is a list of
+ * operations that rebuild the target from the base: COPY a range of the base, or INSERT new
+ * text. Matching works like rsync: the base is indexed by the hash of each aligned block of
+ * {@link #BLOCK} characters, the target is scanned with a rolling hash, and every hit is
+ * extended in both directions. An edit anywhere in a long note therefore costs a few bytes of
+ * copy operations plus the inserted text.
+ * <p>
+ * Encoded form: a flag byte (0 raw, 1 Deflate over the rest), the target length, then the
+ * operations, with all integers as unsigned varints and inserted text as UTF-8. Ranges never
+ * split a surrogate pair, so every inserted range is valid UTF-16.
+ */
+final class TextDelta {
+
+    // Length of the blocks the base is indexed by. Shorter matches are sent as inserted text.
+    private static final int BLOCK = 16;
+
+    // Multiplier of the polynomial rolling hash.
+    private static final int HASH_BASE = 31;
+
+    private static final int OP_COPY = 0;
+    private static final int OP_INSERT = 1;
+
+    private static final int FLAG_RAW = 0;
+    private static final int FLAG_DEFLATE = 1;
+
+    // Deltas at least this large are Deflate-compressed if that makes them smaller.
+    private static final int MIN_DEFLATE_BYTES = 128;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private TextDelta() {
+    }
+
+    /**
+     * Returns a delta that turns {@code base} into {@code target}.
+     */
+    static byte[] create(String base, String target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length());
+
+        int targetLength = target.length();
+        int baseLength = base.length();
+        int pending = 0;
+
+        if (baseLength >= BLOCK && targetLength >= BLOCK) {
+            HashMap<Integer, Integer> index = new HashMap<Integer, Integer>(baseLength / BLOCK * 2);
+            for (int offset = 0; offset + BLOCK <= baseLength; offset += BLOCK) {
+                Integer h = hash(base, offset);
+                if (!index.containsKey(h)) {
+                    index.put(h, offset);
+                }
+            }
+
+            // HASH_BASE^(BLOCK-1), to remove the leading character from the rolling hash.
+            int topPower = 1;
+            for (int k = 1; k < BLOCK; k++) {
+                topPower *= HASH_BASE;
+            }
+
+            int i = 0;
+            int h = hash(target, 0);
+            while (i + BLOCK <= targetLength) {
+                Integer candidate = index.get(h);
+                if (candidate != null && target.regionMatches(i, base, candidate, BLOCK)) {
+                    int start = i;
+                    int baseStart = candidate;
+
+                    // Extends the match backwards over text not yet emitted, and forwards.
+                    while (start > pending && baseStart > 0
+                            && target.charAt(start - 1) == base.charAt(baseStart - 1)) {
+                        start--;
+                        baseStart--;
+                    }
+                    int end = i + BLOCK;
+                    int baseEnd = candidate + BLOCK;
+                    while (end < targetLength && baseEnd < baseLength
+                            && target.charAt(end) == base.charAt(baseEnd)) {
+                        end++;
+                        baseEnd++;
+                    }
+
+                    // Keeps surrogate pairs whole on both ends of the copied range.
+                    if (start > pending && Character.isLowSurrogate(target.charAt(start))) {
+                        start++;
+                        baseStart++;
+                    }
+                    if (end < targetLength && Character.isLowSurrogate(target.charAt(end))) {
+                        end--;
+                    }
+
+                    if (end > start) {
+                        if (start > pending) {
+                            writeInsert(out, target, pending, start);
+                        }
+                        out.write(OP_COPY);
+                        writeVarint(out, baseStart);
+                        writeVarint(out, end - start);
+                        pending = end;
+                        i = end;
+                        if (i + BLOCK <= targetLength) {
+                            h = hash(target, i);
+                        }
+                        continue;
+                    }
+                }
+
+                // Rolls the hash one character forward.
+                if (i + BLOCK < targetLength) {
+                    h = (h - target.charAt(i) * topPower) * HASH_BASE + target.charAt(i + BLOCK);
+                }
+                i++;
+            }
+        }
+
+        if (pending < targetLength) {
+            writeInsert(out, target, pending, targetLength);
+        }
+
+        byte[] ops = out.toByteArray();
+        if (ops.length >= MIN_DEFLATE_BYTES) {
+            byte[] deflated = NoteCodec.deflate(ops);
+            if (deflated.length < ops.length) {
+                return withFlag(FLAG_DEFLATE, deflated);
+            }
+        }
+        return withFlag(FLAG_RAW, ops);
+    }
+
+    /**
+     * Applies a delta created by {@link #create(String, String)} to the same base.
+     *
+     * @throws IllegalArgumentException if the delta is corrupt or does not fit the base.
+     */
+    static String apply(String base, byte[] delta) {
+        if (delta.length == 0) {
+            throw new IllegalArgumentException("Empty delta");
+        }
+        byte[] ops = new byte[delta.length - 1];
+        System.arraycopy(delta, 1, ops, 0, ops.length);
+        if (delta[0] == FLAG_DEFLATE) {
+            ops = NoteCodec.inflate(ops);
+        } else if (delta[0] != FLAG_RAW) {
+            throw new IllegalArgumentException("Unknown delta format " + delta[0]);
+        }
+
+        int[] pos = new int[1];
+        int targetLength = readVarint(ops, pos);
+        StringBuilder sb = new StringBuilder(targetLength);
+        try {
+            while (pos[0] < ops.length) {
+                int op = ops[pos[0]++];
+                if (op == OP_COPY) {
+                    int offset = readVarint(ops, pos);
+                    int length = readVarint(ops, pos);
+                    sb.append(base, offset, offset + length);
+                } else if (op == OP_INSERT) {
+                    int length = readVarint(ops, pos);
+                    sb.append(new String(ops, pos[0], length, UTF_8));
+                    pos[0] += length;
+                } else {
+                    throw new IllegalArgumentException("Unknown delta operation " + op);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Delta does not fit its base", e);
+        }
+        if (sb.length() != targetLength) {
+            throw new IllegalArgumentException("Delta produced " + sb.length()
+                    + " characters, expected " + targetLength);
+        }
+        return sb.toString();
+    }
+
+    private static int hash(String s, int offset) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k++) {
+            h = h * HASH_BASE + s.charAt(offset + k);
+        }
+        return h;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, String s, int start, int end) {
+        byte[] bytes = s.substring(start, end).getBytes(UTF_8);
+        out.write(OP_INSERT);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] withFlag(int flag, byte[] body) {
+        byte[] result = new byte[body.length + 1];
+        result[0] = (byte) flag;
+        System.arraycopy(body, 0, result, 1, body.length);
+        return result;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] in, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in[pos[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A trigram index over the titles and bodies of notes, kept in the {@link #TABLE_NAME} table.
+ * Every distinct run of three characters of a note's folded text is one row, so a substring
+ * query of {@link #MIN_QUERY_LENGTH} or more characters is answered by intersecting the rows of
+ * its trigrams instead of running LIKE over every note. Since the index is built from the plain
+ * text, it also finds notes whose bodies are stored compressed, which LIKE cannot see.
+ * <p>
+ * The same rows serve fuzzy search: the notes sharing the most trigrams with the query are
+ * ranked by the edit distance between the query and the closest substring of the note, so
+ * fragments with a typo still find their note.
+ * <p>
+ * Text is folded before indexing and searching: letters are lower-cased, full-width letters and
+ * digits become ASCII and runs of white space become one space. The indexed text of a note is
+ * its title and body, separated and surrounded by a space. The provider keeps the index current
+ * inside the transaction of every write that changes a title or body; a trigger removes the rows
+ * of a deleted note.
+ */
+final class TrigramIndex {
+
+    static final String TABLE_NAME = "note_trigrams";
+    static final String COLUMN_TRIGRAM = "trigram";
+    static final String COLUMN_NOTE_ID = "note_id";
+
+    /**
+     * Queries with fewer characters than this, after folding, cannot use the index.
+     */
+    static final int MIN_QUERY_LENGTH = 3;
+
+    // Fuzzy search computes the edit distance for at most this many candidates.
+    private static final int MAX_FUZZY_CANDIDATES = 100;
+
+    // Candidate notes are read back in chunks of this many IDs.
+    private static final int READ_CHUNK = 200;
+
+    // A substring query is looked up by at most this many of its trigrams. Any subset selects
+    // every note that contains the query, and the check against the text drops the rest; the
+    // cap keeps the bound arguments far below SQLite's limit of 999.
+    private static final int MAX_QUERY_TRIGRAMS = 32;
+
+    // A substring query checks the text of at most this many candidates. Past that, reading and
+    // decompressing them inside query() costs more than the LIKE scan it replaces.
+    private static final int MAX_CHECKED = 500;
+
+    private TrigramIndex() {
+    }
+
+    /**
+     * Creates the index table, its index by note and the trigger that removes the rows of a
+     * deleted note.
+     */
+    static void createTable(SQLiteDatabase db) {
+        // Searches look rows up by trigram, updates by note. From API 21 on, the table is stored
+        // in its primary key b-tree and needs no separate rowid b-tree.
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                + COLUMN_TRIGRAM + " INTEGER NOT NULL,"
+                + COLUMN_NOTE_ID + " INTEGER NOT NULL,"
+                + "PRIMARY KEY (" + COLUMN_TRIGRAM + ", " + COLUMN_NOTE_ID + ")"
+                + ")" + (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                        ? " WITHOUT ROWID;" : ";"));
+        db.execSQL("CREATE INDEX note_trigrams_note_id ON " + TABLE_NAME
+                + " (" + COLUMN_NOTE_ID + ")");
+        db.execSQL("CREATE TRIGGER note_trigrams_cleanup AFTER DELETE ON "
+                + NotePad.Notes.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + TABLE_NAME
+                + " WHERE " + COLUMN_NOTE_ID + " = old." + NotePad.Notes._ID + ";"
+                + " END");
+    }
+
+    /**
+     * Indexes every note from scratch, for example after the table was created for an existing
+     * database. Must be called inside a transaction.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(TABLE_NAME, null, null);
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME
+                + " (" + COLUMN_TRIGRAM + ", " + COLUMN_NOTE_ID + ") VALUES (?, ?)");
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_TEXT_COLUMNS,
+                null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                long noteId = c.getLong(0);
+                for (long trigram : trigrams(indexText(c))) {
+                    insert.bindLong(1, trigram);
+                    insert.bindLong(2, noteId);
+                    insert.executeInsert();
+                }
+            }
+        } finally {
+            c.close();
+            insert.close();
+        }
+    }
+
+    /**
+     * Brings the rows of one note up to date with its stored title and body. Only the trigrams
+     * that appeared or disappeared are written, so a small edit of a large note is cheap. If the
+     * note no longer exists, its rows are removed. Must be called inside a transaction.
+     */
+    static void indexNote(SQLiteDatabase db, long noteId) {
+        Set<Long> current;
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_TEXT_COLUMNS,
+                NotePad.Notes._ID + " = " + noteId, null, null, null, null);
+        try {
+            current = c.moveToFirst() ? trigrams(indexText(c)) : Collections.<Long>emptySet();
+        } finally {
+            c.close();
+        }
+
+        Set<Long> indexed = new HashSet<Long>();
+        c = db.query(TABLE_NAME, new String[]{COLUMN_TRIGRAM},
+                COLUMN_NOTE_ID + " = " + noteId, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                indexed.add(c.getLong(0));
+            }
+        } finally {
+            c.close();
+        }
+
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_NAME
+                + " WHERE " + COLUMN_TRIGRAM + " = ? AND " + COLUMN_NOTE_ID + " = ?");
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME
+                + " (" + COLUMN_TRIGRAM + ", " + COLUMN_NOTE_ID + ") VALUES (?, ?)");
+        try {
+            for (long trigram : indexed) {
+                if (!current.contains(trigram)) {
+                    delete.bindLong(1, trigram);
+                    delete.bindLong(2, noteId);
+                    delete.executeUpdateDelete();
+                }
+            }
+            for (long trigram : current) {
+                if (!indexed.contains(trigram)) {
+                    insert.bindLong(1, trigram);
+                    insert.bindLong(2, noteId);
+                    insert.executeInsert();
+                }
+            }
+        } finally {
+            delete.close();
+            insert.close();
+        }
+    }
+
+    /**
+     * Returns a selection on the notes table for the notes whose indexed text contains the
+     * query, ignoring case. The notes that have the trigrams of the query are selected by a
+     * subquery on the index, so the SQL does not grow with the number of matches. For a query
+     * longer than one trigram, the candidates are checked against their text, and the few that
+     * have the trigrams without containing the query are excluded by ID. The trigrams and IDs
+     * are bound as arguments, so the SQL holds nothing derived from the query.
+     *
+     * @param selectionArgs The list to which the arguments of the selection are appended.
+     * @return The selection, or null if the caller has to fall back to a scan: the query is too
+     * short for the index, or more than {@link #MAX_CHECKED} candidates would have to be checked.
+     * Nothing is appended in that case.
+     */
+    static String substringSelection(SQLiteDatabase db, String query,
+            List<String> selectionArgs) {
+        final String folded = fold(query).trim();
+        if (folded.length() < MIN_QUERY_LENGTH) {
+            return null;
+        }
+
+        // Notes that contain the trigrams of the query are candidates. A query of one trigram
+        // matches exactly the notes that contain it.
+        List<String> args = new ArrayList<String>();
+        for (long trigram : trigrams(folded)) {
+            if (args.size() == MAX_QUERY_TRIGRAMS) {
+                break;
+            }
+            args.add(String.valueOf(trigram));
+        }
+        String candidates = candidatesQuery(args.size());
+        String selection = NotePad.Notes._ID + " IN (" + candidates + ")";
+        if (folded.length() == MIN_QUERY_LENGTH) {
+            selectionArgs.addAll(args);
+            return selection;
+        }
+
+        // Longer queries can have all their trigrams in a note without containing the query. A
+        // common trigram can make most of the table a candidate, in which case checking them all
+        // is not worth it.
+        Cursor c = db.rawQuery(candidates + " LIMIT " + (MAX_CHECKED + 1),
+                args.toArray(new String[args.size()]));
+        long[] candidateIds;
+        try {
+            if (c.getCount() > MAX_CHECKED) {
+                return null;
+            }
+            candidateIds = new long[c.getCount()];
+            for (int i = 0; c.moveToNext(); i++) {
+                candidateIds[i] = c.getLong(0);
+            }
+        } finally {
+            c.close();
+        }
+        final List<Long> excluded = new ArrayList<Long>();
+        readTexts(db, candidateIds, new TextVisitor() {
+            @Override
+            public void visit(long noteId, String text) {
+                if (!text.contains(folded)) {
+                    excluded.add(noteId);
+                }
+            }
+        });
+        selectionArgs.addAll(args);
+        if (excluded.isEmpty()) {
+            return selection;
+        }
+        StringBuilder sb = new StringBuilder(selection)
+                .append(" AND ").append(NotePad.Notes._ID).append(" NOT IN (");
+        for (int i = 0; i < excluded.size(); i++) {
+            sb.append(i == 0 ? "?" : ",?");
+            selectionArgs.add(String.valueOf(excluded.get(i)));
+        }
+        return sb.append(')').toString();
+    }
+
+    // Selects the IDs of the notes whose index has every one of the given number of trigrams,
+    // which are bound as arguments.
+    private static String candidatesQuery(int trigramCount) {
+        StringBuilder sb = new StringBuilder("SELECT ").append(COLUMN_NOTE_ID)
+                .append(" FROM ").append(TABLE_NAME)
+                .append(" WHERE ").append(COLUMN_TRIGRAM).append(" IN (");
+        for (int i = 0; i < trigramCount; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.append(") GROUP BY ").append(COLUMN_NOTE_ID)
+                .append(" HAVING COUNT(*) = ").append(trigramCount).toString();
+    }
+
+    /**
+     * Finds the notes that contain the query or something close to it. Up to
+     * {@link #MAX_FUZZY_CANDIDATES} notes sharing the most trigrams with the query are ranked by
+     * the smallest number of edits that turn the query into a substring of the note; notes that
+     * need more edits than {@link #maxEdits(int)} allows for the query length are dropped.
+     *
+     * @return The IDs of the matching notes, best match first, or null if the query is too
+     * short for the index.
+     */
+    static long[] findFuzzy(SQLiteDatabase db, String query) {
+        final String folded = fold(query).trim();
+        if (folded.length() < MIN_QUERY_LENGTH) {
+            return null;
+        }
+        final int maxEdits = maxEdits(folded.length());
+
+        // Padding the query adds the trigrams at word boundaries. Every edit changes at most
+        // three trigrams, which bounds how few a real match can share.
+        Set<Long> trigrams = trigrams(" " + folded + " ");
+        int minHits = Math.max(1, trigrams.size() - 3 * maxEdits);
+
+        final Map<Long, Integer> hits = new HashMap<Long, Integer>();
+        Cursor c = db.rawQuery("SELECT " + COLUMN_NOTE_ID + ", COUNT(*) AS hits"
+                + " FROM " + TABLE_NAME
+                + " WHERE " + COLUMN_TRIGRAM + " IN (" + join(trigrams) + ")"
+                + " GROUP BY " + COLUMN_NOTE_ID
+                + " HAVING hits >= " + minHits
+                + " ORDER BY hits DESC"
+                + " LIMIT " + MAX_FUZZY_CANDIDATES, null);
+        long[] candidates;
+        try {
+            candidates = new long[c.getCount()];
+            for (int i = 0; c.moveToNext(); i++) {
+                candidates[i] = c.getLong(0);
+                hits.put(candidates[i], c.getInt(1));
+            }
+        } finally {
+            c.close();
+        }
+
+        final Map<Long, Integer> distances = new HashMap<Long, Integer>();
+        readTexts(db, candidates, new TextVisitor() {
+            @Override
+            public void visit(long noteId, String text) {
+                int distance = editDistance(folded, text);
+                if (distance <= maxEdits) {
+                    distances.put(noteId, distance);
+                }
+            }
+        });
+
+        // Fewest edits first, then most shared trigrams, then newest note.
+        List<Long> ranked = new ArrayList<Long>(distances.keySet());
+        Collections.sort(ranked, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                int byDistance = distances.get(a) - distances.get(b);
+                if (byDistance != 0) {
+                    return byDistance;
+                }
+                int byHits = hits.get(b) - hits.get(a);
+                return byHits != 0 ? byHits : b.compareTo(a);
+            }
+        });
+        long[] result = new long[ranked.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ranked.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many edits fuzzy search tolerates for a folded query of the given length.
+     */
+    static int maxEdits(int length) {
+        return length <= 5 ? 1 : length <= 10 ? 2 : 3;
+    }
+
+    /**
+     * Folds text for indexing and searching: lower-cases it, turns full-width letters and digits
+     * into ASCII and turns every run of white space into a single space.
+     */
+    static String fold(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append((char) NoteTokenizer.fold(ch));
+        }
+        if (space) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the distinct trigrams of a folded text. A trigram packs its three UTF-16 code
+     * units into one long.
+     */
+    static Set<Long> trigrams(String folded) {
+        Set<Long> result = new HashSet<Long>();
+        for (int i = 0; i + 3 <= folded.length(); i++) {
+            result.add(((long) folded.charAt(i) << 32)
+                    | ((long) folded.charAt(i + 1) << 16)
+                    | folded.charAt(i + 2));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the smallest number of insertions, deletions and substitutions that turn the
+     * pattern into some substring of the text. Patterns of up to 64 characters use Myers'
+     * bit-parallel algorithm, which takes one pass over the text; longer ones use the classic
+     * dynamic programming table, one row at a time.
+     */
+    static int editDistance(String pattern, String text) {
+        int m = pattern.length();
+        if (m == 0) {
+            return 0;
+        }
+        if (m > 64) {
+            return editDistanceDp(pattern, text);
+        }
+
+        // The positions of each pattern character, as a bit mask.
+        Map<Character, Long> peq = new HashMap<Character, Long>();
+        for (int i = 0; i < m; i++) {
+            Character ch = pattern.charAt(i);
+            Long mask = peq.get(ch);
+            peq.put(ch, (mask == null ? 0L : mask) | (1L << i));
+        }
+
+        long pv = -1L;
+        long mv = 0L;
+        long last = 1L << (m - 1);
+        int score = m;
+        int best = m;
+        for (int j = 0; j < text.length() && best > 0; j++) {
+            Long mask = peq.get(text.charAt(j));
+            long eq = mask == null ? 0L : mask;
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0) {
+                score++;
+            } else if ((mh & last) != 0) {
+                score--;
+            }
+            // A match may start anywhere in the text, so no carry enters the first row.
+            ph <<= 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            best = Math.min(best, score);
+        }
+        return best;
+    }
+
+    // The dynamic programming version of editDistance(), for long patterns.
+    private static int editDistanceDp(String pattern, String text) {
+        int m = pattern.length();
+        int[] column = new int[m + 1];
+        for (int i = 0; i <= m; i++) {
+            column[i] = i;
+        }
+        int best = m;
+        for (int j = 0; j < text.length() && best > 0; j++) {
+            char ch = text.charAt(j);
+            int diagonal = 0;
+            column[0] = 0;
+            for (int i = 1; i <= m; i++) {
+                int above = column[i];
+                int cost = pattern.charAt(i - 1) == ch ? 0 : 1;
+                column[i] = Math.min(Math.min(column[i - 1] + 1, above + 1), diagonal + cost);
+                diagonal = above;
+            }
+            best = Math.min(best, column[m]);
+        }
+        return best;
+    }
+
+    // Columns read to build the indexed text of a note, in the order indexText() expects.
+    private static final String[] NOTE_TEXT_COLUMNS = {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NoteCodec.COLUMN_DATA,
+            NoteCodec.COLUMN_ENCODING
+    };
+
+    // Builds the folded, indexed text of the note at the cursor position.
+    private static String indexText(Cursor c) {
+        String title = c.getString(1);
+        String note = NoteCodec.decode(c.getInt(4), c.getString(2), c.getBlob(3));
+        return fold(" " + (title == null ? "" : title) + " " + (note == null ? "" : note) + " ");
+    }
+
+    private interface TextVisitor {
+        void visit(long noteId, String text);
+    }
+
+    // Reads the indexed text of the given notes, a chunk at a time.
+    private static void readTexts(SQLiteDatabase db, long[] noteIds, TextVisitor visitor) {
+        for (int start = 0; start < noteIds.length; start += READ_CHUNK) {
+            long[] chunk = Arrays.copyOfRange(noteIds, start,
+                    Math.min(noteIds.length, start + READ_CHUNK));
+            StringBuilder in = new StringBuilder();
+            for (long id : chunk) {
+                in.append(in.length() == 0 ? "" : ",").append(id);
+            }
+            Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_TEXT_COLUMNS,
+                    NotePad.Notes._ID + " IN (" + in + ")", null, null, null, null);
+            try {
+                while (c.moveToNext()) {
+                    visitor.visit(c.getLong(0), indexText(c));
+                }
+            } finally {
+                c.close();
+            }
+        }
+    }
+
+    // Joins numbers into a comma-separated list for an IN clause.
+    private static String join(Set<Long> values) {
+        StringBuilder sb = new StringBuilder();
+        for (long value : values) {
+            sb.append(sb.length() == 0 ? "" : ",").append(value);
+        }
+        return sb.toString();
+    }
+}
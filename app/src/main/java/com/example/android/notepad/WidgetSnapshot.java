@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The notes shown by the home-screen widget, kept in the {@link #TABLE_NAME} table: the pinned
+ * notes and then the most recently modified ones, at most {@link #MAX_NOTES} in all. The widget
+ * reads the table through {@link NotePad.Notes#WIDGET_URI}, so a refresh reads a few rows
+ * however many notes there are.
+ * <p>
+ * The provider brings the table up to date on every write. A write to a
+ * note that is neither in the table nor new enough to enter it leaves the table alone; otherwise
+ * the top notes are read again from the notes_pinned and notes_modified indexes and only the
+ * rows that differ are written. The provider tells the widget to refresh only when a row
+ * changed.
+ */
+final class WidgetSnapshot {
+
+    static final String TABLE_NAME = "widget_notes";
+    static final String COLUMN_POSITION = "position";
+
+    // The number of notes the widget shows.
+    static final int MAX_NOTES = 20;
+
+    /**
+     * The order of the rows, which is the order of the widget
+     */
+    static final String DEFAULT_SORT_ORDER = COLUMN_POSITION + " ASC";
+
+    private static final String[] NOTE_COLUMNS = {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+            NotePad.Notes.COLUMN_NAME_PINNED,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE
+    };
+
+    private WidgetSnapshot() {
+    }
+
+    /**
+     * Creates the snapshot table. The rows are keyed by note ID, so a note is in it at most
+     * once. There is no trigger for deleted notes: the provider refreshes the snapshot after a
+     * delete, and has to see the row of the deleted note to know that the widget changed.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                + NotePad.Notes._ID + " INTEGER PRIMARY KEY,"
+                + COLUMN_POSITION + " INTEGER NOT NULL,"
+                + NotePad.Notes.COLUMN_NAME_TITLE + " TEXT,"
+                + NotePad.Notes.COLUMN_NAME_COLOR + " INTEGER,"
+                + NotePad.Notes.COLUMN_NAME_PINNED + " INTEGER,"
+                + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + " INTEGER"
+                + ");");
+    }
+
+    /**
+     * Brings the snapshot up to date after a write to one note. Joins the transaction of the
+     * write, if there is one.
+     *
+     * @return Whether a row of the snapshot changed.
+     */
+    static boolean noteChanged(SQLiteDatabase db, long noteId) {
+        if (affects(db, noteId)) {
+            return refresh(db);
+        }
+        return false;
+    }
+
+    // Whether a write to the note can change the snapshot: the note is in it, or still exists
+    // and is pinned, fits in a snapshot that is not full, or is at least as new as the oldest
+    // unpinned note the snapshot holds.
+    private static boolean affects(SQLiteDatabase db, long noteId) {
+        Cursor c = db.rawQuery("SELECT count(*), min(CASE WHEN "
+                + NotePad.Notes.COLUMN_NAME_PINNED + " = 0 THEN "
+                + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + " END), sum("
+                + NotePad.Notes._ID + " = " + noteId + ") FROM " + TABLE_NAME, null);
+        int count;
+        boolean hasUnpinned;
+        long oldest;
+        try {
+            c.moveToFirst();
+            count = c.getInt(0);
+            hasUnpinned = !c.isNull(1);
+            oldest = c.getLong(1);
+            if (c.getInt(2) > 0) {
+                return true;
+            }
+        } finally {
+            c.close();
+        }
+
+        c = db.query(NotePad.Notes.TABLE_NAME, new String[]{
+                        NotePad.Notes.COLUMN_NAME_PINNED,
+                        NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE},
+                NotePad.Notes._ID + " = " + noteId, null, null, null, null);
+        try {
+            if (!c.moveToFirst()) {
+                return false;
+            }
+            return c.getInt(0) != 0 || count < MAX_NOTES
+                    || (hasUnpinned && c.getLong(1) >= oldest);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Reads the top notes again and writes the rows of the snapshot that differ. Joins the
+     * caller's transaction, if there is one.
+     *
+     * @return Whether a row of the snapshot changed.
+     */
+    static boolean refresh(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            boolean changed = update(db);
+            db.setTransactionSuccessful();
+            return changed;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // The body of refresh(), run inside its transaction.
+    private static boolean update(SQLiteDatabase db) {
+        List<ContentValues> top = new ArrayList<ContentValues>(MAX_NOTES);
+        addNotes(db, NotePad.Notes.COLUMN_NAME_PINNED + " = 1", top);
+        addNotes(db, NotePad.Notes.COLUMN_NAME_PINNED + " = 0", top);
+
+        Map<Long, ContentValues> current = new HashMap<Long, ContentValues>();
+        Cursor c = db.query(TABLE_NAME, null, null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                ContentValues row = new ContentValues();
+                DatabaseUtils.cursorRowToContentValues(c, row);
+                current.put(row.getAsLong(NotePad.Notes._ID), row);
+            }
+        } finally {
+            c.close();
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < top.size(); i++) {
+            ContentValues row = top.get(i);
+            row.put(COLUMN_POSITION, i);
+            ContentValues old = current.remove(row.getAsLong(NotePad.Notes._ID));
+            if (old == null || !sameRow(old, row)) {
+                db.replace(TABLE_NAME, null, row);
+                changed = true;
+            }
+        }
+        for (Long id : current.keySet()) {
+            db.delete(TABLE_NAME, NotePad.Notes._ID + " = " + id, null);
+            changed = true;
+        }
+        return changed;
+    }
+
+    // Appends the notes matching the selection, newest first, until the snapshot is full.
+    private static void addNotes(SQLiteDatabase db, String selection, List<ContentValues> top) {
+        int limit = MAX_NOTES - top.size();
+        if (limit <= 0) {
+            return;
+        }
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, NOTE_COLUMNS, selection, null, null, null,
+                NotePad.Notes.DEFAULT_SORT_ORDER, Integer.toString(limit));
+        try {
+            while (c.moveToNext()) {
+                ContentValues row = new ContentValues();
+                row.put(NotePad.Notes._ID, c.getLong(0));
+                row.put(NotePad.Notes.COLUMN_NAME_TITLE, c.getString(1));
+                row.put(NotePad.Notes.COLUMN_NAME_COLOR, c.getInt(2));
+                row.put(NotePad.Notes.COLUMN_NAME_PINNED, c.getInt(3));
+                row.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, c.getLong(4));
+                top.add(row);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    // Whether two rows hold the same values. Rows read back from the table hold strings for
+    // every column, so the values are compared as strings.
+    private static boolean sameRow(ContentValues a, ContentValues b) {
+        for (String key : b.keySet()) {
+            if (!TextUtils.equals(a.getAsString(key), b.getAsString(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.notepad.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * Records the baseline profile shipped in app/src/main/baseline-prof.txt.
+ * <p>
+ * The generator walks the journeys whose code should be compiled ahead of time: starting
+ * NotesList (which opens the provider and its database), binding and scrolling the first pages
+ * of the list, and opening a note in NoteEditor. It needs a device running API 33 or later, or a
+ * rooted device. The resulting {@code BaselineProfileGenerator_generate-baseline-prof.txt} in the
+ * test output directory replaces the app's baseline-prof.txt.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule mBaselineProfileRule = new BaselineProfileRule();
+
+    @BeforeClass
+    public static void seedNotes() {
+        NoteSeeder.ensureNotes(NoteSeeder.DEFAULT_NOTE_COUNT);
+    }
+
+    @Test
+    public void generate() {
+        mBaselineProfileRule.collect(
+                NotePadBenchmarks.PACKAGE_NAME,
+                15,                    // maxIterations
+                3,                     // stableIterations
+                null,                  // outputFilePrefix, defaults to the test name
+                true,                  // includeInStartupProfile
+                false,                 // strictStability
+                rule -> Boolean.TRUE,  // keep every rule the journeys produce
+                scope -> {
+                    // Cold start of NotesList.
+                    scope.pressHome();
+                    scope.startActivityAndWait();
+
+                    // First scroll through the list.
+                    UiDevice device = scope.getDevice();
+                    UiObject2 list = device.wait(
+                            Until.findObject(NotePadBenchmarks.NOTES_LIST),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+                    list.setGestureMargin(device.getDisplayWidth() / 5);
+                    list.fling(Direction.DOWN);
+                    device.waitForIdle();
+                    list.fling(Direction.UP);
+                    device.waitForIdle();
+
+                    // Opening a note in the editor.
+                    list.getChildren().get(0).click();
+                    device.wait(Until.hasObject(NotePadBenchmarks.EDITOR_TITLE),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+                    device.pressBack();
+                    device.wait(Until.hasObject(NotePadBenchmarks.NOTES_LIST),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+                    return Unit.INSTANCE;
+                });
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.notepad.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.ExperimentalMetricApi;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import kotlin.Unit;
+
+/**
+ * Measures the time from tapping a note in NotesList (onListItemClick) until NoteEditor has
+ * drawn the note. The app brackets that interval with the {@link
+ * NotePadBenchmarks#TRACE_OPEN_NOTE} trace section.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+@ExperimentalMetricApi
+public class EditorOpenBenchmark {
+
+    @Rule
+    public MacrobenchmarkRule mBenchmarkRule = new MacrobenchmarkRule();
+
+    @BeforeClass
+    public static void seedNotes() {
+        NoteSeeder.ensureNotes(NoteSeeder.DEFAULT_NOTE_COUNT);
+    }
+
+    @Test
+    public void openNote() {
+        mBenchmarkRule.measureRepeated(
+                NotePadBenchmarks.PACKAGE_NAME,
+                Arrays.<Metric>asList(
+                        new TraceSectionMetric(NotePadBenchmarks.TRACE_OPEN_NOTE,
+                                TraceSectionMetric.Mode.First.INSTANCE, "openNote", true),
+                        new FrameTimingMetric()),
+                CompilationMode.DEFAULT,
+                null,
+                NotePadBenchmarks.ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    UiDevice device = scope.getDevice();
+                    UiObject2 list = device.wait(
+                            Until.findObject(NotePadBenchmarks.NOTES_LIST),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+                    list.getChildren().get(0).click();
+                    device.wait(Until.hasObject(NotePadBenchmarks.EDITOR_TITLE),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+
+                    // Returns to the list so the next iteration starts from the same place.
+                    device.pressBack();
+                    device.wait(Until.hasObject(NotePadBenchmarks.NOTES_LIST),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+                    return Unit.INSTANCE;
+                });
+    }
+}
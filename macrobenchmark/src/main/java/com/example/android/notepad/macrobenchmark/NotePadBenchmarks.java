@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad.macrobenchmark;
+
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.BySelector;
+
+/**
+ * Constants shared by the NotePad macrobenchmarks.
+ */
+final class NotePadBenchmarks {
+
+    /**
+     * The package of the app under test.
+     */
+    static final String PACKAGE_NAME = "com.example.android.notepad";
+
+    /**
+     * The number of measured iterations for each benchmark.
+     */
+    static final int ITERATIONS = 10;
+
+    /**
+     * Trace section the app emits from the moment a list item is clicked until NoteEditor has
+     * drawn its first frame. Must match NotesList.TRACE_OPEN_NOTE.
+     */
+    static final String TRACE_OPEN_NOTE = "NotesList.openNote";
+
+    /**
+     * Trace section the app emits around each search query. Must match NotesList.TRACE_SEARCH.
+     */
+    static final String TRACE_SEARCH = "NotesList.doSearch";
+
+    /**
+     * Selects the ListView hosted by NotesList.
+     */
+    static final BySelector NOTES_LIST = By.res("android", "list");
+
+    /**
+     * Selects the title field of NoteEditor, used to tell that the editor is on screen.
+     */
+    static final BySelector EDITOR_TITLE = By.res(PACKAGE_NAME, "note_title");
+
+    /**
+     * How long to wait for a UI element before giving up, in milliseconds.
+     */
+    static final long UI_TIMEOUT_MS = 5000;
+
+    // This class cannot be instantiated
+    private NotePadBenchmarks() {
+    }
+}
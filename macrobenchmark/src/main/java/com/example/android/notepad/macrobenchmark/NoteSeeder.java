@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad.macrobenchmark;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+/**
+ * Fills the NotePad provider with a predictable set of notes before a benchmark runs, so every
+ * build is measured against a database of the same shape. The notes come from the app's
+ * deterministic corpus generator, reached through the provider's "seed_corpus" call; the
+ * provider is exported, so the benchmark process talks to it through an ordinary
+ * ContentResolver.
+ */
+final class NoteSeeder {
+
+    /**
+     * The number of notes the list benchmarks expect to find in the database.
+     */
+    static final int DEFAULT_NOTE_COUNT = 10000;
+
+    // The notes URI of the app under test. The benchmark APK cannot link against the app's
+    // NotePad contract or CorpusGenerator, so the values below are repeated here.
+    static final Uri NOTES_URI = Uri.parse("content://com.google.provider.NotePad/notes");
+
+    // CorpusGenerator.METHOD_SEED and its configuration keys.
+    private static final String METHOD_SEED = "seed_corpus";
+    private static final String KEY_SEED = "seed";
+    private static final String KEY_START = "start";
+    private static final String KEY_COUNT = "count";
+
+    // The corpus seed. Changing it changes every benchmark's data set.
+    private static final long SEED = 20260101L;
+
+    // This class cannot be instantiated
+    private NoteSeeder() {
+    }
+
+    /**
+     * Seeds notes until the provider holds at least {@code count} of them. Existing notes are
+     * kept and the corpus continues from the next index, so repeated runs only pay for seeding
+     * once per device and always end up with the same notes.
+     */
+    static void ensureNotes(int count) {
+        ContentResolver resolver =
+                InstrumentationRegistry.getInstrumentation().getContext().getContentResolver();
+
+        int existing = countNotes(resolver);
+        if (existing >= count) {
+            return;
+        }
+
+        Bundle config = new Bundle();
+        config.putLong(KEY_SEED, SEED);
+        config.putInt(KEY_START, existing);
+        config.putInt(KEY_COUNT, count - existing);
+        resolver.call(NOTES_URI, METHOD_SEED, null, config);
+    }
+
+    private static int countNotes(ContentResolver resolver) {
+        Cursor c = resolver.query(NOTES_URI, new String[] {"_id"}, null, null, null);
+        if (c == null) {
+            return 0;
+        }
+        try {
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.notepad.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Measures frame timing while flinging through the noteslist_item CardView list. Jank shows up
+ * as long frameDurationCpuMs / frameOverrunMs percentiles in the results.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ScrollBenchmark {
+
+    // The number of flings done in each measured iteration.
+    private static final int FLINGS = 3;
+
+    @Rule
+    public MacrobenchmarkRule mBenchmarkRule = new MacrobenchmarkRule();
+
+    @BeforeClass
+    public static void seedNotes() {
+        NoteSeeder.ensureNotes(NoteSeeder.DEFAULT_NOTE_COUNT);
+    }
+
+    @Test
+    public void flingNotesList() {
+        mBenchmarkRule.measureRepeated(
+                NotePadBenchmarks.PACKAGE_NAME,
+                Collections.<Metric>singletonList(new FrameTimingMetric()),
+                CompilationMode.DEFAULT,
+                null,
+                NotePadBenchmarks.ITERATIONS,
+                scope -> {
+                    // Every iteration starts at the top of a freshly launched list.
+                    scope.killProcess();
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    UiDevice device = scope.getDevice();
+                    UiObject2 list = device.wait(
+                            Until.findObject(NotePadBenchmarks.NOTES_LIST),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+
+                    // Keeps the gesture away from the system navigation areas.
+                    list.setGestureMargin(device.getDisplayWidth() / 5);
+                    for (int i = 0; i < FLINGS; i++) {
+                        list.fling(Direction.DOWN);
+                    }
+                    device.waitForIdle();
+                    return Unit.INSTANCE;
+                });
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.notepad.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.ExperimentalMetricApi;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import kotlin.Unit;
+
+/**
+ * Measures the search that runs when a query, typed one character at a time into the NotesList
+ * search dialog, is submitted. The dialog does not search while typing, so each iteration runs
+ * exactly one search, bracketed by the {@link NotePadBenchmarks#TRACE_SEARCH} trace section;
+ * the results report its duration and the total time spent searching, which includes any
+ * search the app adds, such as the fuzzy fallback.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+@ExperimentalMetricApi
+public class SearchBenchmark {
+
+    // The query typed in each iteration. It mixes CJK and Latin text and matches a subset of the
+    // seeded corpus.
+    private static final String QUERY = "会议记录 plan";
+
+    @Rule
+    public MacrobenchmarkRule mBenchmarkRule = new MacrobenchmarkRule();
+
+    @BeforeClass
+    public static void seedNotes() {
+        NoteSeeder.ensureNotes(NoteSeeder.DEFAULT_NOTE_COUNT);
+    }
+
+    @Test
+    public void typeAndSubmitSearch() {
+        mBenchmarkRule.measureRepeated(
+                NotePadBenchmarks.PACKAGE_NAME,
+                Arrays.<Metric>asList(
+                        new TraceSectionMetric(NotePadBenchmarks.TRACE_SEARCH,
+                                TraceSectionMetric.Mode.Max.INSTANCE, "searchSlowest", true),
+                        new TraceSectionMetric(NotePadBenchmarks.TRACE_SEARCH,
+                                TraceSectionMetric.Mode.Sum.INSTANCE, "searchTotal", true)),
+                CompilationMode.DEFAULT,
+                null,
+                NotePadBenchmarks.ITERATIONS,
+                scope -> {
+                    scope.killProcess();
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    UiDevice device = scope.getDevice();
+                    device.findObject(By.desc("搜索")).click();
+
+                    UiObject2 field = device.wait(
+                            Until.findObject(By.clazz("android.widget.AutoCompleteTextView")),
+                            NotePadBenchmarks.UI_TIMEOUT_MS);
+                    for (int i = 1; i <= QUERY.length(); i++) {
+                        field.setText(QUERY.substring(0, i));
+                    }
+                    device.findObject(By.text("确定")).click();
+                    device.waitForIdle();
+                    return Unit.INSTANCE;
+                });
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.notepad.macrobenchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.filters.LargeTest;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import kotlin.Unit;
+
+/**
+ * Measures how long NotesList takes to show its first frame, from a cold process and from a
+ * warm one, with {@link NoteSeeder#DEFAULT_NOTE_COUNT} notes in the database.
+ * <p>
+ * Each start mode runs twice: once with no ahead-of-time compilation, which is what a fresh
+ * install without a baseline profile gets, and once with the app's shipped baseline profile
+ * compiled in. The difference between the two is the startup gain of the profile.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+
+    @Rule
+    public MacrobenchmarkRule mBenchmarkRule = new MacrobenchmarkRule();
+
+    private final StartupMode mStartupMode;
+    private final CompilationMode mCompilationMode;
+
+    public StartupBenchmark(StartupMode startupMode, String compilationName) {
+        mStartupMode = startupMode;
+        mCompilationMode = "baselineProfile".equals(compilationName)
+                ? new CompilationMode.Partial(BaselineProfileMode.Require, 0)
+                : new CompilationMode.None();
+    }
+
+    @Parameterized.Parameters(name = "mode={0},compilation={1}")
+    public static List<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {
+                {StartupMode.COLD, "none"},
+                {StartupMode.COLD, "baselineProfile"},
+                {StartupMode.WARM, "none"},
+                {StartupMode.WARM, "baselineProfile"},
+        });
+    }
+
+    @BeforeClass
+    public static void seedNotes() {
+        NoteSeeder.ensureNotes(NoteSeeder.DEFAULT_NOTE_COUNT);
+    }
+
+    @Test
+    public void startup() {
+        mBenchmarkRule.measureRepeated(
+                NotePadBenchmarks.PACKAGE_NAME,
+                Collections.<Metric>singletonList(new StartupTimingMetric()),
+                mCompilationMode,
+                mStartupMode,
+                NotePadBenchmarks.ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                });
+    }
+}